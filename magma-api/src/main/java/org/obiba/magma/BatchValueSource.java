@@ -0,0 +1,21 @@
+package org.obiba.magma;
+
+import java.util.List;
+
+/**
+ * A {@code ValueSource} that can provide the values of several {@code ValueSet} at once, sharing its evaluation set up
+ * (e.g. a script engine context) between them.
+ *
+ * @see org.obiba.magma.support.Values#getValues(ValueSource, List)
+ */
+public interface BatchValueSource extends ValueSource {
+
+  /**
+   * Get the values of several value sets.
+   *
+   * @param valueSets
+   * @return the values, in the order of the value sets
+   */
+  List<Value> getValues(List<ValueSet> valueSets);
+
+}
@@ -38,4 +38,12 @@ public interface Datasource extends Initialisable, Disposable, AttributeAware, T
   void setAttributeValue(String name, Value value);
 
   boolean isTransactional();
+
+  /**
+   * Whether value sets of a table can be written by several {@link ValueTableWriter}s at the same time, each one in
+   * its own thread.
+   *
+   * @return
+   */
+  boolean canWriteConcurrently();
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2014 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+/**
+ * A progress listener that is also informed of the throughput of the reading and writing stages of a copy, to find out
+ * which one is the bottleneck.
+ */
+public interface DatasourceCopierThroughputListener extends DatasourceCopierProgressListener {
+
+  /**
+   * Called along with {@link #status(String, long, long, int)}.
+   *
+   * @param table the copied table
+   * @param readsPerSecond value sets read per second since the copy started
+   * @param writesPerSecond value sets written per second since the copy started
+   */
+  void throughput(String table, double readsPerSecond, double writesPerSecond);
+
+}
@@ -34,6 +34,20 @@ public class MagmaCacheExtension implements MagmaEngineExtension {
     return cacheManager.getCache("magma-table-entities");
   }
 
+  public boolean hasWhereClauseCache() {
+    return hasCacheManager() && cacheManager.getCache("magma-where-clause") != null;
+  }
+
+  /**
+   * The cache of the results of the where clauses of the views. Results are updated after being put in the cache, which
+   * must then store its values by reference.
+   *
+   * @return
+   */
+  public Cache getWhereClauseCache() {
+    return cacheManager.getCache("magma-where-clause");
+  }
+
   public boolean hasCacheManager() {
     return cacheManager != null;
   }
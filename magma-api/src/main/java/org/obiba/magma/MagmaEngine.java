@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
@@ -13,6 +14,7 @@ import org.obiba.magma.concurrent.LockManager;
 import org.obiba.magma.support.Disposables;
 import org.obiba.magma.support.Initialisables;
 import org.obiba.magma.support.ValueTableReference;
+import org.obiba.magma.support.VariableEntityDictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +37,12 @@ public class MagmaEngine implements DatasourceRegistry {
   @SuppressWarnings("StaticNonFinalField")
   private static MagmaEngine instance;
 
+  /**
+   * Incremented each time datasources, tables, views or variables are added, removed or replaced, across engine
+   * instances.
+   */
+  private static final AtomicLong registryGeneration = new AtomicLong();
+
   private final ValueTypeFactory valueTypeFactory;
 
   private DatasourceRegistry datasourceRegistry = new DefaultDatasourceRegistry();
@@ -43,12 +51,15 @@ public class MagmaEngine implements DatasourceRegistry {
 
   private final LockManager lockManager = new LockManager();
 
+  private final VariableEntityDictionary variableEntityDictionary = new VariableEntityDictionary();
+
   public MagmaEngine() {
     if(instance != null) {
       throw new IllegalStateException(
           "MagmaEngine already instantiated. Only one instance of MagmaEngine should be instantiated.");
     }
     instance = this;
+    registryChanged();
 
     singletons = new LinkedHashSet<>();
     valueTypeFactory = new ValueTypeFactory();
@@ -67,6 +78,24 @@ public class MagmaEngine implements DatasourceRegistry {
     return instance != null;
   }
 
+  /**
+   * The current generation of the datasources, tables, views and variables: resolutions of variable references made at
+   * this generation are valid until it changes.
+   *
+   * @return
+   */
+  public static long getRegistryGeneration() {
+    return registryGeneration.get();
+  }
+
+  /**
+   * Signal that datasources, tables, views or variables were added, removed or replaced, so that the resolutions of
+   * variable references made so far are stale.
+   */
+  public static void registryChanged() {
+    registryGeneration.incrementAndGet();
+  }
+
   public MagmaEngine extend(@NotNull MagmaEngineExtension extension) {
     //noinspection ConstantConditions
     if(extension == null) throw new IllegalArgumentException("extension cannot be null");
@@ -114,6 +143,7 @@ public class MagmaEngine implements DatasourceRegistry {
 
   public void decorate(Decorator<DatasourceRegistry> registryDecorator) {
     datasourceRegistry = registryDecorator.decorate(datasourceRegistry);
+    registryChanged();
   }
 
   @Override
@@ -128,22 +158,29 @@ public class MagmaEngine implements DatasourceRegistry {
 
   @Override
   public Datasource addDatasource(Datasource datasource) {
-    return getDatasourceRegistry().addDatasource(datasource);
+    Datasource added = getDatasourceRegistry().addDatasource(datasource);
+    registryChanged();
+    return added;
   }
 
   @Override
   public Datasource addDatasource(DatasourceFactory factory) {
-    return getDatasourceRegistry().addDatasource(factory);
+    Datasource added = getDatasourceRegistry().addDatasource(factory);
+    registryChanged();
+    return added;
   }
 
   @Override
   public void addDecorator(Decorator<Datasource> decorator) {
     getDatasourceRegistry().addDecorator(decorator);
+    registryChanged();
   }
 
   @Override
   public String addTransientDatasource(DatasourceFactory factory) {
-    return getDatasourceRegistry().addTransientDatasource(factory);
+    String uid = getDatasourceRegistry().addTransientDatasource(factory);
+    registryChanged();
+    return uid;
   }
 
   @Override
@@ -169,17 +206,28 @@ public class MagmaEngine implements DatasourceRegistry {
   @Override
   public void removeDatasource(Datasource datasource) {
     getDatasourceRegistry().removeDatasource(datasource);
+    registryChanged();
   }
 
   @Override
   public void removeTransientDatasource(@Nullable String uid) {
     getDatasourceRegistry().removeTransientDatasource(uid);
+    registryChanged();
   }
 
   ValueTypeFactory getValueTypeFactory() {
     return valueTypeFactory;
   }
 
+  /**
+   * The ordinals of all the entities seen by this engine.
+   *
+   * @return
+   */
+  public VariableEntityDictionary getVariableEntityDictionary() {
+    return variableEntityDictionary;
+  }
+
   public void lock(Collection<String> lockNames) throws InterruptedException {
     lockManager.lock(lockNames);
   }
@@ -200,6 +248,7 @@ public class MagmaEngine implements DatasourceRegistry {
     Disposables.silentlyDispose(datasourceRegistry);
     singletons = null;
     instance = null;
+    registryChanged();
   }
 
 }
@@ -0,0 +1,33 @@
+package org.obiba.magma;
+
+import java.util.SortedSet;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A block of values read in bulk from a {@link ValueTable}: the values of several variables for several entities,
+ * organised as one column of values per variable. Each column is ordered as the entities of the block.
+ */
+public interface ValueBlock {
+
+  @NotNull
+  ValueTable getValueTable();
+
+  @NotNull
+  SortedSet<VariableEntity> getVariableEntities();
+
+  @NotNull
+  Iterable<Variable> getVariables();
+
+  /**
+   * Get the column of values of a variable, one value per entity of the block, in the order of the entities. Entities
+   * without a value set in the table get a null value (or a null sequence for repeatable variables).
+   *
+   * @param variable
+   * @return
+   * @throws NoSuchVariableException when the variable was not requested in this block
+   */
+  @NotNull
+  Iterable<Value> getValues(@NotNull Variable variable) throws NoSuchVariableException;
+
+}
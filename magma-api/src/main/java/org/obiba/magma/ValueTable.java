@@ -49,6 +49,19 @@ public interface ValueTable extends Timestamped {
 
   VariableValueSource getVariableValueSource(String variableName) throws NoSuchVariableException;
 
+  /**
+   * Read the values of several variables for several entities in one go. Implementations may read the block with a
+   * single bulk scan of the underlying storage instead of one call per value.
+   *
+   * @param variables the variables to read, each one will be a column of the block
+   * @param entities the entities to read, ordered as the values of each column
+   * @return
+   * @throws NoSuchVariableException when one of the variables is not in this table
+   */
+  @NotNull
+  ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException;
+
   boolean isView();
 
   String getTableReference();
@@ -0,0 +1,32 @@
+package org.obiba.magma;
+
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A {@code ValueTable} that can read the values of several variables for all its value sets with a single scan, handing
+ * them over one value set at a time: unlike a {@link ValueBlock}, the values of the whole table are not held in memory.
+ */
+public interface ValueTableScanner {
+
+  /**
+   * Read the values of the variables for each value set of the table, in no particular order.
+   *
+   * @param variables
+   * @param handler receives the values of each value set
+   * @throws NoSuchVariableException
+   */
+  void scan(@NotNull Iterable<Variable> variables, @NotNull ValuesHandler handler) throws NoSuchVariableException;
+
+  interface ValuesHandler {
+
+    /**
+     * @param entity
+     * @param values the values of the entity, in the order of the scanned variables
+     */
+    void handle(@NotNull VariableEntity entity, @NotNull List<Value> values);
+
+  }
+
+}
@@ -1,6 +1,8 @@
 package org.obiba.magma.concurrent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
@@ -10,12 +12,15 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 
+import org.obiba.magma.BatchValueSource;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.Values;
+import org.obiba.magma.views.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +33,11 @@ public class ConcurrentValueTableReader {
 
   private static final int BUFFER_SIZE = 200;
 
+  /**
+   * Posted by each reader once it is done, whatever the reason (no more entities, cancellation or error).
+   */
+  private static final List<VariableEntityValues> END_OF_READ = Collections.emptyList();
+
   private static final Logger log = LoggerFactory.getLogger(ConcurrentValueTableReader.class);
 
   private boolean ignoreReadErrors = false;
@@ -46,10 +56,12 @@ public class ConcurrentValueTableReader {
 
   private Variable[] variables;
 
-  private BlockingQueue<VariableEntityValues> writeQueue;
+  private BlockingQueue<List<VariableEntityValues>> writeQueue;
 
   private int bufferSize = BUFFER_SIZE;
 
+  private int batchSize = 1;
+
   private ConcurrentValueTableReader() {
   }
 
@@ -88,12 +100,7 @@ public class ConcurrentValueTableReader {
     for(int i = 0; i < nbConcurrentReaders; i++) {
       readers.add(executorService.submit(new ConcurrentValueSetReader(variableValueSources, readQueue, writeQueue)));
     }
-    while(!isReadCompleted(readers)) {
-      flushQueue();
-    }
-    // Flush remaining values if any
-    // This is necessary due to a race condition between isReadComplete() and readers appending to the write queue
-    flushQueue();
+    writeValues(readers.size());
     return readers;
   }
 
@@ -105,27 +112,29 @@ public class ConcurrentValueTableReader {
     return variableValueSources;
   }
 
-  private void flushQueue() {
-    VariableEntityValues values;
-
-    while((values = writeQueue.poll()) != null) {
-      callback.onValues(values.getEntity(), variables, values.getValues());
-      log.trace("write onCallback for entity {}", values.getEntity().getIdentifier());
-    }
-  }
-
   /**
-   * Returns true when all readers have finished submitting to the writeQueue. false otherwise.
+   * Blocks on the write queue and calls back for each read value set until every reader has posted its end of read.
    *
-   * @return
+   * @param nbReaders
    */
-  private boolean isReadCompleted(Iterable<Future<?>> readers) {
-    for(Future<?> reader : readers) {
-      if(!reader.isDone()) {
-        return false;
+  private void writeValues(int nbReaders) {
+    int running = nbReaders;
+    try {
+      while(running > 0) {
+        List<VariableEntityValues> batch = writeQueue.take();
+        if(batch == END_OF_READ) {
+          running--;
+        } else {
+          for(VariableEntityValues values : batch) {
+            callback.onValues(values.getEntity(), variables, values.getValues());
+            log.trace("write onCallback for entity {}", values.getEntity().getIdentifier());
+          }
+        }
       }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
     }
-    return true;
   }
 
   private void waitForReaders(Iterable<Future<?>> readers) {
@@ -182,10 +191,10 @@ public class ConcurrentValueTableReader {
 
     private final BlockingQueue<VariableEntity> readQueue;
 
-    private final BlockingQueue<VariableEntityValues> writeQueue;
+    private final BlockingQueue<List<VariableEntityValues>> writeQueue;
 
     private ConcurrentValueSetReader(VariableValueSource[] sources, BlockingQueue<VariableEntity> readQueue,
-        BlockingQueue<VariableEntityValues> writeQueue) {
+        BlockingQueue<List<VariableEntityValues>> writeQueue) {
       this.sources = sources;
       this.readQueue = readQueue;
       this.writeQueue = writeQueue;
@@ -194,32 +203,106 @@ public class ConcurrentValueTableReader {
     @Override
     public void run() {
       try {
-        VariableEntity entity = readQueue.poll();
-        while(entity != null && !callback.isCancelled()) {
-          if(valueTable.hasValueSet(entity)) {
-            log.trace("Read entity {}", entity.getIdentifier());
-            writeQueue.put(new VariableEntityValues(entity, readValues(entity)));
-          }
-          entity = readQueue.poll();
+        List<VariableEntity> entities = pollEntities();
+        while(!entities.isEmpty() && !callback.isCancelled()) {
+          List<VariableEntityValues> batch = readValues(entities);
+          if(!batch.isEmpty()) writeQueue.put(batch);
+          entities = pollEntities();
         }
       } catch(InterruptedException e) {
         // do nothing
+      } finally {
+        endOfRead();
       }
     }
 
-    private Value[] readValues(VariableEntity entity) {
-      ValueSet valueSet = valueTable.getValueSet(entity);
-      Value[] values = new Value[sources.length];
+    private List<VariableEntity> pollEntities() {
+      List<VariableEntity> entities = Lists.newArrayListWithCapacity(batchSize);
+      readQueue.drainTo(entities, batchSize);
+      return entities;
+    }
+
+    private void endOfRead() {
+      try {
+        writeQueue.put(END_OF_READ);
+      } catch(InterruptedException e) {
+        // reading was aborted, nobody is waiting for this reader anymore
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Read the values of a batch of entities: each source is asked for the values of all the value sets at once, so
+     * that a {@link BatchValueSource} (e.g. a script) shares its evaluation set up between them.
+     *
+     * @param entities
+     * @return
+     */
+    private List<VariableEntityValues> readValues(List<VariableEntity> entities) {
+      List<VariableEntity> readEntities = Lists.newArrayListWithCapacity(entities.size());
+      List<ValueSet> valueSets = Lists.newArrayListWithCapacity(entities.size());
+      for(VariableEntity entity : entities) {
+        if(valueTable.hasValueSet(entity)) {
+          log.trace("Read entity {}", entity.getIdentifier());
+          readEntities.add(entity);
+          valueSets.add(valueTable.getValueSet(entity));
+        }
+      }
+
+      Value[][] values = new Value[valueSets.size()][sources.length];
+      List<List<Value>> sourcesValues = readSourcesValues(valueSets);
       for(int i = 0; i < sources.length; i++) {
+        List<Value> sourceValues = sourcesValues.get(i);
+        for(int j = 0; j < values.length; j++) {
+          values[j][i] = sourceValues.get(j);
+        }
+      }
+
+      List<VariableEntityValues> batch = Lists.newArrayListWithCapacity(values.length);
+      for(int j = 0; j < values.length; j++) {
+        batch.add(new VariableEntityValues(readEntities.get(j), values[j]));
+      }
+      return batch;
+    }
+
+    /**
+     * Read the values of all the sources. The variables of a {@link View} are read together, so that the derived
+     * variables they have in common are evaluated once per entity.
+     *
+     * @param valueSets
+     * @return the values of each source, in the order of the sources
+     */
+    private List<List<Value>> readSourcesValues(List<ValueSet> valueSets) {
+      if(valueTable instanceof View) {
         try {
-          values[i] = sources[i].getValue(valueSet);
+          return ((View) valueTable).getValues(Arrays.asList(variables), valueSets);
         } catch(RuntimeException e) {
           log.debug("Read exception", e);
-          if(ignoreReadErrors) {
-            values[i] = sources[i].getValueType().nullValue();
-          } else {
-            throw e;
-          }
+          if(!ignoreReadErrors) throw e;
+        }
+      }
+      List<List<Value>> values = Lists.newArrayListWithCapacity(sources.length);
+      for(VariableValueSource source : sources) {
+        values.add(readValues(source, valueSets));
+      }
+      return values;
+    }
+
+    private List<Value> readValues(VariableValueSource source, List<ValueSet> valueSets) {
+      try {
+        return Values.getValues(source, valueSets);
+      } catch(RuntimeException e) {
+        log.debug("Read exception", e);
+        if(!ignoreReadErrors) throw e;
+      }
+      // read the value sets one by one to find the ones in error
+      List<Value> values = Lists.newArrayListWithCapacity(valueSets.size());
+      for(ValueSet valueSet : valueSets) {
+        try {
+          values.add(source.getValue(valueSet));
+        } catch(RuntimeException e) {
+          log.debug("Read exception", e);
+          values.add(source.getValueType().nullValue());
         }
       }
       return values;
@@ -290,6 +373,20 @@ public class ConcurrentValueTableReader {
       return this;
     }
 
+    /**
+     * Readers read and hand off the value sets by batches of this size instead of one by one, to reduce the contention
+     * on the write queue and to let the sources that support it evaluate a whole batch at once. The buffer size is then
+     * a number of batches.
+     *
+     * @param batchSize
+     * @return
+     */
+    public Builder withBatchSize(int batchSize) {
+      if(batchSize < 1) throw new IllegalArgumentException("batchSize must be greater than 0");
+      reader.batchSize = batchSize;
+      return this;
+    }
+
     public Builder from(ValueTable source) {
       reader.valueTable = source;
       return this;
@@ -13,6 +13,7 @@ import javax.validation.constraints.NotNull;
 import org.obiba.magma.AbstractAttributeAware;
 import org.obiba.magma.Attribute;
 import org.obiba.magma.Datasource;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.NoSuchValueTableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
@@ -178,8 +179,14 @@ public abstract class AbstractDatasource extends AbstractAttributeAware implemen
     return false;
   }
 
+  @Override
+  public boolean canWriteConcurrently() {
+    return false;
+  }
+
   protected void addValueTable(ValueTable vt) {
     if(!valueTables.contains(vt)) valueTables.add(vt);
+    MagmaEngine.registryChanged();
   }
 
   protected void removeValueTable(String tableName) {
@@ -189,6 +196,7 @@ public abstract class AbstractDatasource extends AbstractAttributeAware implemen
   protected void removeValueTable(ValueTable toRemove) {
     valueTables.remove(toRemove);
     Disposables.dispose(toRemove);
+    MagmaEngine.registryChanged();
   }
 
   @SuppressWarnings("NoopMethodInAbstractClass")
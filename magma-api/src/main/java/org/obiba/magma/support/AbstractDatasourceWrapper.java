@@ -216,4 +216,9 @@ public abstract class AbstractDatasourceWrapper implements Datasource {
 
   @Override
   public boolean isTransactional() { return  getWrappedDatasource().isTransactional(); }
+
+  @Override
+  public boolean canWriteConcurrently() {
+    return getWrappedDatasource().canWriteConcurrently();
+  }
 }
@@ -13,11 +13,13 @@ import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.Datasource;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.Initialisable;
 import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
@@ -148,6 +150,17 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
     return variableValueSource;
   }
 
+  /**
+   * Reads the block through the {@link org.obiba.magma.VectorSource} of each variable, when supported. Subclasses
+   * backed by a storage allowing bulk reads should override this method.
+   */
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @Override
   public void initialise() {
     Initialisables.initialise(getSources());
@@ -157,6 +170,7 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
     for(VariableValueSource variableValueSource : factory.createSources()) {
       sources.put(variableValueSource.getName(), variableValueSource);
     }
+    MagmaEngine.registryChanged();
   }
 
   protected void addVariableValueSources(Collection<VariableValueSource> sourcesToAdd) {
@@ -174,14 +188,17 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
     for(VariableValueSource variableValueSource : list) {
       sources.put(variableValueSource.getName(), variableValueSource);
     }
+    MagmaEngine.registryChanged();
   }
 
   protected void addVariableValueSource(VariableValueSource source) {
     sources.put(source.getName(), source);
+    MagmaEngine.registryChanged();
   }
 
   protected void removeVariableValueSource(String variableName) {
     sources.remove(variableName);
+    MagmaEngine.registryChanged();
   }
 
   protected void removeVariableValueSources(Iterable<VariableValueSource> sourcesToRemove) {
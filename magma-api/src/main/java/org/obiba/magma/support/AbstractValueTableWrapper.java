@@ -10,6 +10,7 @@ import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
@@ -98,6 +99,13 @@ public abstract class AbstractValueTableWrapper implements ValueTableWrapper {
     return getWrappedValueTable().getVariableValueSource(variableName);
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return getWrappedValueTable().getValueBlock(variables, entities);
+  }
+
   @Override
   public boolean hasValueSet(VariableEntity entity) {
     return getWrappedValueTable().hasValueSet(entity);
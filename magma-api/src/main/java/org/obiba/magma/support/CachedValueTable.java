@@ -14,6 +14,7 @@ import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
@@ -184,6 +185,13 @@ public class CachedValueTable implements ValueTable {
     return new CachedVariableValueSource(this, variableName, cache);
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @Override
   public boolean hasValueSet(final VariableEntity entity) {
     return getCached(getCacheKey("hasValueSet", entity.getIdentifier()), new Supplier<Boolean>() {
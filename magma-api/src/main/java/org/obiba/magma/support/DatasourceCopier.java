@@ -5,6 +5,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -21,6 +22,7 @@ import org.obiba.magma.ValueTableWriter.VariableWriter;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.support.MultiplexingValueTableWriter.MultiplexedValueSetWriter;
+import org.obiba.magma.views.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -244,10 +246,16 @@ public class DatasourceCopier {
       ValueSetWriter valueSetWriter) {
     if(!copyValues) return;
     notifyListeners(sourceTable, valueSet, false);
-    for(Variable variable : sourceTable.getVariables()) {
-      Value value = sourceTable.getValue(variable, valueSet);
-      if(!value.isNull() || copyNullValues) {
-        valueSetWriter.writeValue(variableTransformer.transform(variable), value);
+    if(sourceTable instanceof View && ((View) sourceTable).isViewOfDerivedVariables()) {
+      // the derived variables of a view are evaluated together, see View#getValues(List, List)
+      List<Variable> variables = ImmutableList.copyOf(sourceTable.getVariables());
+      List<List<Value>> values = ((View) sourceTable).getValues(variables, ImmutableList.of(valueSet));
+      for(int i = 0; i < variables.size(); i++) {
+        writeValue(valueSetWriter, variables.get(i), values.get(i).get(0));
+      }
+    } else {
+      for(Variable variable : sourceTable.getVariables()) {
+        writeValue(valueSetWriter, variable, sourceTable.getValue(variable, valueSet));
       }
     }
     if(valueSetWriter instanceof MultiplexedValueSetWriter) {
@@ -258,6 +266,12 @@ public class DatasourceCopier {
     }
   }
 
+  private void writeValue(ValueSetWriter valueSetWriter, Variable variable, Value value) {
+    if(!value.isNull() || copyNullValues) {
+      valueSetWriter.writeValue(variableTransformer.transform(variable), value);
+    }
+  }
+
   public void copyMetadata(ValueTable sourceTable, String destinationTableName, ValueTableWriter tableWriter)
       throws IOException {
     if(!copyMetadata) return;
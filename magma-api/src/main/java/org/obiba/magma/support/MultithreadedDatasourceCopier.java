@@ -1,21 +1,25 @@
 package org.obiba.magma.support;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.Datasource;
 import org.obiba.magma.DatasourceCopierProgressListener;
+import org.obiba.magma.DatasourceCopierThroughputListener;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
@@ -24,9 +28,12 @@ import org.obiba.magma.ValueTableWriter.ValueSetWriter;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.views.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 public class MultithreadedDatasourceCopier {
@@ -62,6 +69,18 @@ public class MultithreadedDatasourceCopier {
       return this;
     }
 
+    /**
+     * Number of value set writers, each one with its own {@link ValueTableWriter}. Only applies when the destination
+     * {@link Datasource#canWriteConcurrently()}, otherwise a single writer is used.
+     *
+     * @param writers
+     * @return
+     */
+    public Builder withWriters(int writers) {
+      copier.concurrentWriters = writers;
+      return this;
+    }
+
     public Builder withReaderListener(ReaderListener readerListener) {
       copier.readerListener = readerListener;
       return this;
@@ -113,6 +132,8 @@ public class MultithreadedDatasourceCopier {
 
   private int concurrentReaders = 3;
 
+  private int concurrentWriters = 1;
+
   @NotNull
   private DatasourceCopier.Builder copier = DatasourceCopier.Builder.newCopier();
 
@@ -131,8 +152,11 @@ public class MultithreadedDatasourceCopier {
 
   private long entitiesToCopy = 0;
 
-  @SuppressWarnings("FieldMayBeFinal")
-  private long entitiesCopied = 0;
+  private final AtomicLong entitiesRead = new AtomicLong();
+
+  private final AtomicLong entitiesCopied = new AtomicLong();
+
+  private final Stopwatch stopwatch = Stopwatch.createUnstarted();
 
   private int nextPercentIncrement = 0;
 
@@ -147,9 +171,8 @@ public class MultithreadedDatasourceCopier {
   }
 
   public void copy() throws IOException {
-    ThreadPoolExecutor executor = (ThreadPoolExecutor) (threadFactory == null //
-        ? Executors.newFixedThreadPool(concurrentReaders) //
-        : Executors.newFixedThreadPool(concurrentReaders, threadFactory));
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) newFixedThreadPool(concurrentReaders);
+    stopwatch.start();
 
     prepareVariables();
 
@@ -170,7 +193,7 @@ public class MultithreadedDatasourceCopier {
     }
     try {
       write(writeQueue);
-      checkReadersForException();
+      checkForException(readers);
     } finally {
       log.debug("Finished multi-threaded copy. Submitted tasks {}, executed tasks {}", executor.getTaskCount(),
           executor.getCompletedTaskCount());
@@ -178,18 +201,48 @@ public class MultithreadedDatasourceCopier {
     }
   }
 
+  private ExecutorService newFixedThreadPool(int nThreads) {
+    return threadFactory == null //
+        ? Executors.newFixedThreadPool(nThreads) //
+        : Executors.newFixedThreadPool(nThreads, threadFactory);
+  }
+
   private void write(BlockingQueue<VariableEntityValues> writeQueue) throws IOException {
     copyVariables();
-    // The writers could also be concurrent, but dues to transaction isolation issues, it is currently ran
-    // synchronously
-    new ConcurrentValueSetWriter(writeQueue).run();
+    int writers = getConcurrentWriters();
+    if(writers == 1) {
+      new ConcurrentValueSetWriter(writeQueue).run();
+      return;
+    }
+
+    // Each writer has its own table writer, and thus its own transaction: this is only done when the destination
+    // declares that its table writers can be used concurrently.
+    ExecutorService executor = newFixedThreadPool(writers - 1);
+    List<Future<?>> otherWriters = Lists.newArrayList();
+    try {
+      for(int i = 1; i < writers; i++) {
+        otherWriters.add(executor.submit(new ConcurrentValueSetWriter(writeQueue)));
+      }
+      new ConcurrentValueSetWriter(writeQueue).run();
+      checkForException(otherWriters);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int getConcurrentWriters() {
+    if(concurrentWriters > 1 && !destinationDatasource.canWriteConcurrently()) {
+      log.debug("Datasource {} cannot be written concurrently, using a single writer.", destinationDatasource.getName());
+      return 1;
+    }
+    return Math.max(1, concurrentWriters);
   }
 
   @SuppressWarnings("OverlyNestedMethod")
-  private void checkReadersForException() {
-    for(Future<?> reader : readers) {
+  private void checkForException(Iterable<Future<?>> futures) {
+    for(Future<?> future : futures) {
       try {
-        reader.get();
+        future.get();
       } catch(InterruptedException e) {
         throw new RuntimeException(e);
       } catch(ExecutionException e) {
@@ -256,6 +309,7 @@ public class MultithreadedDatasourceCopier {
         VariableEntity entity = null;
         while((entity = readQueue.poll()) != null) {
           copyEntity(entity);
+          entitiesRead.incrementAndGet();
         }
       } catch(InterruptedException ignored) {
       }
@@ -268,8 +322,11 @@ public class MultithreadedDatasourceCopier {
       boolean hasOnlyNullValues = true;
       Value[] values = new Value[sources.length];
 
+      List<List<Value>> viewValues = sourceTable instanceof View
+          ? ((View) sourceTable).getValues(Arrays.asList(variables), ImmutableList.of(valueSet))
+          : null;
       for(int i = 0; i < sources.length; i++) {
-        Value value = sources[i].getValue(valueSet);
+        Value value = viewValues == null ? sources[i].getValue(valueSet) : viewValues.get(i).get(0);
         values[i] = value;
         hasOnlyNullValues &= value.isNull();
       }
@@ -349,21 +406,30 @@ public class MultithreadedDatasourceCopier {
         log.trace("Dequeued entity {}", values.valueSet.getVariableEntity().getIdentifier());
         datasourceCopier.copyValues(sourceTable, destinationName, values.valueSet, variables, values.values, writer);
       }
-      entitiesCopied++;
-      printProgress();
+      printProgress(entitiesCopied.incrementAndGet());
     }
 
     @SuppressWarnings("NumericCastThatLosesPrecision")
-    private void printProgress() {
+    private void printProgress(long copied) {
       try {
         if(entitiesToCopy > 0) {
-          int percentComplete = (int) (entitiesCopied / (double) entitiesToCopy * 100);
-          if(percentComplete >= nextPercentIncrement) {
-            log.info("Copy {}% complete.", percentComplete);
-            for(DatasourceCopierProgressListener listener : progressListeners) {
-              listener.status(sourceTable.getName(), entitiesCopied, entitiesToCopy, percentComplete);
+          int percentComplete = (int) (copied / (double) entitiesToCopy * 100);
+          synchronized(progressListeners) {
+            if(percentComplete >= nextPercentIncrement) {
+              log.info("Copy {}% complete.", percentComplete);
+              double seconds = stopwatch.elapsed(TimeUnit.MILLISECONDS) / 1000d;
+              double readsPerSecond = seconds > 0 ? entitiesRead.get() / seconds : 0;
+              double writesPerSecond = seconds > 0 ? copied / seconds : 0;
+              log.debug("Copy throughput: {} reads/s, {} writes/s", readsPerSecond, writesPerSecond);
+              for(DatasourceCopierProgressListener listener : progressListeners) {
+                listener.status(sourceTable.getName(), copied, entitiesToCopy, percentComplete);
+                if(listener instanceof DatasourceCopierThroughputListener) {
+                  ((DatasourceCopierThroughputListener) listener)
+                      .throughput(sourceTable.getName(), readsPerSecond, writesPerSecond);
+                }
+              }
+              nextPercentIncrement = percentComplete + 1;
             }
-            nextPercentIncrement = percentComplete + 1;
           }
         }
       } catch(RuntimeException e) {
@@ -14,6 +14,7 @@ import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
@@ -130,6 +131,13 @@ public class NullValueTable implements ValueTable {
     throw new NoSuchVariableException("null", variableName);
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @NotNull
   @Override
   public Timestamps getTimestamps() {
@@ -20,6 +20,7 @@ import javax.validation.constraints.NotNull;
 import org.obiba.magma.AbstractAttributeAware;
 import org.obiba.magma.Attribute;
 import org.obiba.magma.Datasource;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.NoSuchValueTableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
@@ -51,6 +52,7 @@ public class StaticDatasource extends AbstractAttributeAware implements Datasour
 
   public void addValueTable(StaticValueTable table) {
     tableMap.put(table.getName(), table);
+    MagmaEngine.registryChanged();
   }
 
   @Override
@@ -164,6 +166,11 @@ public class StaticDatasource extends AbstractAttributeAware implements Datasour
     return false;
   }
 
+  @Override
+  public boolean canWriteConcurrently() {
+    return false;
+  }
+
   @Override
   public String getName() {
     return name;
@@ -0,0 +1,82 @@
+package org.obiba.magma.support;
+
+import java.util.Map;
+import java.util.SortedSet;
+
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+public class ValueBlockBean implements ValueBlock {
+
+  @NotNull
+  private final ValueTable table;
+
+  @NotNull
+  private final SortedSet<VariableEntity> entities;
+
+  private final Map<String, Variable> variables = Maps.newLinkedHashMap();
+
+  private final Map<String, Iterable<Value>> columns = Maps.newHashMap();
+
+  @SuppressWarnings("ConstantConditions")
+  public ValueBlockBean(@NotNull ValueTable table, @NotNull SortedSet<VariableEntity> entities) {
+    if(table == null) throw new IllegalArgumentException("table cannot be null");
+    if(entities == null) throw new IllegalArgumentException("entities cannot be null");
+    this.table = table;
+    this.entities = entities;
+  }
+
+  /**
+   * Add the column of values of a variable. Values are expected to be in the order of the entities of this block.
+   *
+   * @param variable
+   * @param values
+   * @return this for chaining
+   */
+  public ValueBlockBean addColumn(@NotNull Variable variable, @NotNull Iterable<Value> values) {
+    variables.put(variable.getName(), variable);
+    columns.put(variable.getName(), values);
+    return this;
+  }
+
+  @NotNull
+  @Override
+  public ValueTable getValueTable() {
+    return table;
+  }
+
+  @NotNull
+  @Override
+  public SortedSet<VariableEntity> getVariableEntities() {
+    return entities;
+  }
+
+  @NotNull
+  @Override
+  public Iterable<Variable> getVariables() {
+    return ImmutableList.copyOf(variables.values());
+  }
+
+  @NotNull
+  @Override
+  public Iterable<Value> getValues(@NotNull Variable variable) throws NoSuchVariableException {
+    Iterable<Value> values = columns.get(variable.getName());
+    if(values == null) throw new NoSuchVariableException(table.getName(), variable.getName());
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return "valueBlock[" + table + ":" + variables.size() + "x" + entities.size() + "]";
+  }
+
+}
@@ -1,8 +1,12 @@
 package org.obiba.magma.support;
 
 import java.util.Arrays;
+import java.util.List;
 
+import org.obiba.magma.BatchValueSource;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSource;
 import org.obiba.magma.ValueType;
 
 import com.google.common.base.Function;
@@ -54,4 +58,23 @@ public final class Values {
   public static Value asSequence(ValueType type, Object... values) {
     return type.sequenceOf(asValues(type, values));
   }
+
+  /**
+   * Get the values of several value sets from a {@code ValueSource}, in one call when it is a {@code
+   * BatchValueSource}, one value set after the other otherwise.
+   *
+   * @param source
+   * @param valueSets
+   * @return the values, in the order of the value sets
+   */
+  public static List<Value> getValues(ValueSource source, List<ValueSet> valueSets) {
+    if(source instanceof BatchValueSource) {
+      return ((BatchValueSource) source).getValues(valueSets);
+    }
+    List<Value> values = Lists.newArrayListWithCapacity(valueSets.size());
+    for(ValueSet valueSet : valueSets) {
+      values.add(source.getValue(valueSet));
+    }
+    return values;
+  }
 }
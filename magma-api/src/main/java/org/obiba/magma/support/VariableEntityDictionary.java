@@ -0,0 +1,114 @@
+package org.obiba.magma.support;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Engine-wide dictionary of the entities: each entity, by type and identifier, is given an int ordinal the first time
+ * it is seen. Ordinals are never reassigned, so that sets of entities can be stored as bitmaps of ordinals (see
+ * {@link VariableEntitySet}) and an entity is held once in memory, whatever the number of sets it belongs to.
+ * <p/>
+ * Identifiers are mapped to ordinals per entity type, and ordinals are unique across entity types.
+ * <p/>
+ * Ordinals are assigned under lock and looked up without lock. An ordinal must have been obtained from the dictionary
+ * (directly or through a {@link VariableEntitySet}) to be resolved with {@link #getEntity(int)}.
+ */
+public class VariableEntityDictionary {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final ConcurrentMap<String, ConcurrentMap<String, Integer>> ordinalsByType = Maps.newConcurrentMap();
+
+  private volatile VariableEntity[] entities = new VariableEntity[INITIAL_CAPACITY];
+
+  // guarded by this
+  private int size;
+
+  /**
+   * Get the ordinal of an entity, giving it one if it has none yet.
+   *
+   * @param entity
+   * @return
+   */
+  public int getOrdinal(@NotNull VariableEntity entity) {
+    Integer ordinal = getOrdinals(entity.getType()).get(entity.getIdentifier());
+    return ordinal == null ? register(entity) : ordinal;
+  }
+
+  /**
+   * Find the ordinal of an entity, without giving it one.
+   *
+   * @param entity
+   * @return -1 if the entity has no ordinal
+   */
+  public int findOrdinal(@NotNull VariableEntity entity) {
+    ConcurrentMap<String, Integer> ordinals = ordinalsByType.get(entity.getType());
+    Integer ordinal = ordinals == null ? null : ordinals.get(entity.getIdentifier());
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * Get the entity of an ordinal.
+   *
+   * @param ordinal
+   * @return
+   */
+  @NotNull
+  public VariableEntity getEntity(int ordinal) {
+    VariableEntity entity = ordinal < 0 ? null : getEntityOrNull(ordinal);
+    if(entity == null) throw new IllegalArgumentException("unknown entity ordinal: " + ordinal);
+    return entity;
+  }
+
+  /**
+   * The number of entities having an ordinal, all types included.
+   *
+   * @return
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  @Nullable
+  private VariableEntity getEntityOrNull(int ordinal) {
+    VariableEntity[] current = entities;
+    return ordinal < current.length ? current[ordinal] : null;
+  }
+
+  private synchronized int register(VariableEntity entity) {
+    ConcurrentMap<String, Integer> ordinals = getOrdinals(entity.getType());
+    Integer ordinal = ordinals.get(entity.getIdentifier());
+    if(ordinal != null) return ordinal;
+
+    VariableEntity[] current = entities;
+    if(size == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+      entities = current;
+    }
+    // keep our own immutable instance rather than the one of the caller
+    current[size] = entity instanceof VariableEntityBean
+        ? entity
+        : new VariableEntityBean(entity.getType(), entity.getIdentifier());
+    // the entity is published before its ordinal
+    ordinals.put(entity.getIdentifier(), size);
+    return size++;
+  }
+
+  private ConcurrentMap<String, Integer> getOrdinals(String entityType) {
+    ConcurrentMap<String, Integer> ordinals = ordinalsByType.get(entityType);
+    if(ordinals == null) {
+      ConcurrentMap<String, Integer> newOrdinals = Maps.newConcurrentMap();
+      ordinals = ordinalsByType.putIfAbsent(entityType, newOrdinals);
+      if(ordinals == null) ordinals = newOrdinals;
+    }
+    return ordinals;
+  }
+
+}
@@ -0,0 +1,249 @@
+package org.obiba.magma.support;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An immutable set of entities, stored as a bitmap of their ordinals in the {@link VariableEntityDictionary} of the
+ * engine. A set of 500k entities takes about 64KB, and the union or intersection of two sets is a bitwise operation.
+ * <p/>
+ * Entities are iterated in the order of their ordinals, that is in the order they were first seen by the engine.
+ */
+public final class VariableEntitySet extends AbstractSet<VariableEntity> implements Serializable {
+
+  private static final long serialVersionUID = -2396513426412876253L;
+
+  private static final VariableEntitySet EMPTY = new VariableEntitySet(null, new BitSet());
+
+  private final transient VariableEntityDictionary dictionary;
+
+  private final transient BitSet ordinals;
+
+  private final transient int size;
+
+  private VariableEntitySet(VariableEntityDictionary dictionary, BitSet ordinals) {
+    this.dictionary = dictionary;
+    this.ordinals = ordinals;
+    size = ordinals.cardinality();
+  }
+
+  public static VariableEntitySet of() {
+    return EMPTY;
+  }
+
+  /**
+   * Get a set of the entities, without copying them if they already are a {@link VariableEntitySet}.
+   *
+   * @param entities
+   * @return
+   */
+  public static VariableEntitySet copyOf(@NotNull Iterable<? extends VariableEntity> entities) {
+    if(entities instanceof VariableEntitySet) return (VariableEntitySet) entities;
+    return builder().addAll(entities).build();
+  }
+
+  public static Builder builder() {
+    return new Builder(MagmaEngine.get().getVariableEntityDictionary());
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if(size == 0 || !(o instanceof VariableEntity)) return false;
+    int ordinal = dictionary.findOrdinal((VariableEntity) o);
+    return ordinal >= 0 && ordinals.get(ordinal);
+  }
+
+  /**
+   * Whether the entity of an ordinal is in this set, the ordinal being given by the dictionary of the engine.
+   *
+   * @param ordinal
+   * @return
+   */
+  public boolean containsOrdinal(int ordinal) {
+    return ordinal >= 0 && ordinals.get(ordinal);
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if(isCompatible(c)) {
+      BitSet missing = (BitSet) ((VariableEntitySet) c).ordinals.clone();
+      missing.andNot(ordinals);
+      return missing.isEmpty();
+    }
+    return super.containsAll(c);
+  }
+
+  @Override
+  public Iterator<VariableEntity> iterator() {
+    return new Iterator<VariableEntity>() {
+
+      private int next = ordinals.nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public VariableEntity next() {
+        if(next < 0) throw new NoSuchElementException();
+        VariableEntity entity = dictionary.getEntity(next);
+        next = ordinals.nextSetBit(next + 1);
+        return entity;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * The entities that are in this set or in the other one.
+   *
+   * @param other
+   * @return
+   */
+  public VariableEntitySet union(@NotNull Set<? extends VariableEntity> other) {
+    if(other.isEmpty()) return this;
+    if(isEmpty()) return copyOf(other);
+    return builder().addAll(this).addAll(other).build();
+  }
+
+  /**
+   * The entities that are in this set and in the other one.
+   *
+   * @param other
+   * @return
+   */
+  public VariableEntitySet intersection(@NotNull Set<?> other) {
+    if(isEmpty() || other.isEmpty()) return of();
+    if(isCompatible(other)) {
+      BitSet intersection = (BitSet) ordinals.clone();
+      intersection.and(((VariableEntitySet) other).ordinals);
+      return new VariableEntitySet(dictionary, intersection);
+    }
+    BitSet intersection = new BitSet();
+    for(int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+      if(other.contains(dictionary.getEntity(ordinal))) intersection.set(ordinal);
+    }
+    return new VariableEntitySet(dictionary, intersection);
+  }
+
+  /**
+   * The entities that are in this set and not in the other one.
+   *
+   * @param other
+   * @return
+   */
+  public VariableEntitySet difference(@NotNull Set<?> other) {
+    if(isEmpty() || other.isEmpty()) return this;
+    if(isCompatible(other)) {
+      BitSet difference = (BitSet) ordinals.clone();
+      difference.andNot(((VariableEntitySet) other).ordinals);
+      return new VariableEntitySet(dictionary, difference);
+    }
+    BitSet difference = (BitSet) ordinals.clone();
+    for(int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+      if(other.contains(dictionary.getEntity(ordinal))) difference.clear(ordinal);
+    }
+    return new VariableEntitySet(dictionary, difference);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if(this == o) return true;
+    if(isCompatible(o)) return ordinals.equals(((VariableEntitySet) o).ordinals);
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  /**
+   * Whether the other object is a set of ordinals of the same dictionary, on which bitwise operations apply.
+   */
+  private boolean isCompatible(Object o) {
+    return o instanceof VariableEntitySet && ((VariableEntitySet) o).dictionary == dictionary && dictionary != null;
+  }
+
+  private Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  /**
+   * Ordinals are specific to an engine: entities are serialized and given ordinals again when deserialized.
+   */
+  private static class SerializedForm implements Serializable {
+
+    private static final long serialVersionUID = 5029387149367425391L;
+
+    private final List<VariableEntity> entities;
+
+    private SerializedForm(VariableEntitySet set) {
+      entities = Lists.newArrayList(set);
+    }
+
+    private Object readResolve() {
+      return copyOf(entities);
+    }
+  }
+
+  public static class Builder {
+
+    private final VariableEntityDictionary dictionary;
+
+    private final BitSet ordinals = new BitSet();
+
+    private Builder(VariableEntityDictionary dictionary) {
+      this.dictionary = dictionary;
+    }
+
+    public Builder add(@NotNull VariableEntity entity) {
+      ordinals.set(dictionary.getOrdinal(entity));
+      return this;
+    }
+
+    public Builder addAll(@NotNull Iterable<? extends VariableEntity> entities) {
+      if(entities instanceof VariableEntitySet && ((VariableEntitySet) entities).dictionary == dictionary) {
+        ordinals.or(((VariableEntitySet) entities).ordinals);
+      } else {
+        for(VariableEntity entity : entities) {
+          add(entity);
+        }
+      }
+      return this;
+    }
+
+    public VariableEntitySet build() {
+      return ordinals.isEmpty() ? EMPTY : new VariableEntitySet(dictionary, (BitSet) ordinals.clone());
+    }
+  }
+
+}
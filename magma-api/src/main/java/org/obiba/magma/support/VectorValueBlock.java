@@ -0,0 +1,49 @@
+package org.obiba.magma.support;
+
+import java.util.SortedSet;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+
+/**
+ * A {@link org.obiba.magma.ValueBlock} which columns are lazily read from the {@link VariableValueSource}s of a table:
+ * through their {@link org.obiba.magma.VectorSource} when supported, one value set at a time otherwise.
+ */
+public class VectorValueBlock extends ValueBlockBean {
+
+  public VectorValueBlock(@NotNull ValueTable table, @NotNull Iterable<Variable> variables,
+      @NotNull SortedSet<VariableEntity> entities) {
+    super(table, entities);
+    for(Variable variable : variables) {
+      addColumn(variable, getColumn(table.getVariableValueSource(variable.getName()), entities));
+    }
+  }
+
+  private Iterable<Value> getColumn(final VariableValueSource source, SortedSet<VariableEntity> entities) {
+    if(source.supportVectorSource()) {
+      return source.asVectorSource().getValues(entities);
+    }
+    return Iterables.transform(entities, new Function<VariableEntity, Value>() {
+      @Override
+      public Value apply(@Nullable VariableEntity input) {
+        ValueTable table = getValueTable();
+        if(input == null || !table.hasValueSet(input)) {
+          return source.getVariable().isRepeatable()
+              ? source.getValueType().nullSequence()
+              : source.getValueType().nullValue();
+        }
+        return source.getValue(table.getValueSet(input));
+      }
+    });
+  }
+
+}
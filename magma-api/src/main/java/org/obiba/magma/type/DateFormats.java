@@ -0,0 +1,109 @@
+package org.obiba.magma.type;
+
+import java.io.Serializable;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+/**
+ * The date formats supported by a date or date time type. A {@code SimpleDateFormat} is not thread safe: rather than
+ * sharing them between threads, each thread gets its own copy of the formats, as well as its own {@code Calendar}.
+ * <p/>
+ * Formats are not lenient, otherwise 2 digits could be interpreted as a 4 digits year.
+ */
+final class DateFormats implements Serializable {
+
+  private static final long serialVersionUID = 6419839473290735312L;
+
+  private final String[] patterns;
+
+  private final transient SimpleDateFormat[] prototypes;
+
+  private final transient ThreadLocal<SimpleDateFormat[]> formats = new ThreadLocal<SimpleDateFormat[]>() {
+    @Override
+    protected SimpleDateFormat[] initialValue() {
+      SimpleDateFormat[] copies = new SimpleDateFormat[prototypes.length];
+      for(int i = 0; i < prototypes.length; i++) {
+        copies[i] = (SimpleDateFormat) prototypes[i].clone();
+      }
+      return copies;
+    }
+  };
+
+  private final transient ThreadLocal<Calendar> calendars = new ThreadLocal<Calendar>() {
+    @Override
+    protected Calendar initialValue() {
+      return (Calendar) prototypes[0].getCalendar().clone();
+    }
+  };
+
+  /**
+   * @param patterns the patterns, the preferred one first
+   */
+  DateFormats(String... patterns) {
+    this.patterns = patterns.clone();
+    prototypes = new SimpleDateFormat[patterns.length];
+    for(int i = 0; i < patterns.length; i++) {
+      prototypes[i] = new SimpleDateFormat(patterns[i]);
+      prototypes[i].setLenient(false);
+    }
+  }
+
+  /**
+   * Parse the string with the first format that matches it.
+   *
+   * @param string
+   * @return null if no format matches
+   */
+  @Nullable
+  Date parse(String string) {
+    for(SimpleDateFormat format : formats.get()) {
+      Date date = format.parse(string, new ParsePosition(0));
+      if(date != null) return date;
+    }
+    return null;
+  }
+
+  /**
+   * Format a date with the preferred format.
+   *
+   * @param date
+   * @return
+   */
+  String format(Date date) {
+    return formats.get()[0].format(date);
+  }
+
+  /**
+   * Get the calendar of the current thread, cleared, in the time zone of the formats and not lenient.
+   *
+   * @return
+   */
+  Calendar getCalendar() {
+    Calendar calendar = calendars.get();
+    calendar.clear();
+    return calendar;
+  }
+
+  /**
+   * The patterns, for error messages.
+   *
+   * @return
+   */
+  String getPatterns() {
+    StringBuilder builder = new StringBuilder();
+    for(String pattern : patterns) {
+      if(builder.length() > 0) builder.append(", ");
+      builder.append('\'').append(pattern).append('\'');
+    }
+    return builder.toString();
+  }
+
+  private Object readResolve() {
+    return new DateFormats(patterns);
+  }
+
+}
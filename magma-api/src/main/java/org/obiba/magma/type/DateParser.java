@@ -0,0 +1,211 @@
+package org.obiba.magma.type;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.MagmaDate;
+
+/**
+ * Recognizes the shape of the most common date and date time strings in a single pass, so that they are parsed without
+ * trying each {@code SimpleDateFormat} in turn. The shapes are the ones of the supported patterns, with fields of 1 or
+ * 2 digits (4 for years, up to 3 for milliseconds):
+ * <ul>
+ * <li>dates: <code>yyyy-MM-dd</code> and <code>dd-MM-yyyy</code>, the separator being one of <code>-/. </code></li>
+ * <li>date times: <code>yyyy-MM-dd HH:mm[:ss]</code>, in the default time zone, the date separator being one of
+ * <code>-/. </code></li>
+ * <li>ISO 8601 date times: <code>yyyy-MM-dd'T'HH:mm[:ss[.SSS]]</code>, followed by <code>Z</code> or by a
+ * <code>+hhmm</code> time zone offset</li>
+ * </ul>
+ * The fields must be valid (no lenient date) and the year after the Gregorian calendar cutover. Other strings are left
+ * to the formats: the result is the one of the first format that matches the string.
+ */
+final class DateParser {
+
+  private static final String DATE_SEPARATORS = "-/. ";
+
+  private static final int GREGORIAN_CUTOVER_YEAR = 1582;
+
+  private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+  private final String string;
+
+  private int pos;
+
+  // number of digits of the last number read
+  private int digits;
+
+  private DateParser(String string) {
+    this.string = string;
+  }
+
+  /**
+   * Parse a date.
+   *
+   * @param string
+   * @param formats the supported formats, used when the string does not have a common shape
+   * @return null if the string is not a supported date
+   */
+  @Nullable
+  static MagmaDate parseDate(String string, DateFormats formats) {
+    MagmaDate date = new DateParser(string).parseDate();
+    if(date != null) return date;
+    Date parsed = formats.parse(string);
+    return parsed == null ? null : new MagmaDate(parsed);
+  }
+
+  /**
+   * Parse a date time.
+   *
+   * @param string
+   * @param formats the supported formats, used when the string does not have a common shape
+   * @return null if the string is not a supported date time
+   */
+  @Nullable
+  static Date parseDateTime(String string, DateFormats formats) {
+    Date date = new DateParser(string).parseDateTime(formats.getCalendar());
+    if(date != null) return date;
+    // Java before 7 does not support the 'Zulu' timezone (Z). Replace it with a SimpleDateFormat-friendly timezone
+    return formats.parse(string.endsWith("Z") ? string.replaceFirst("Z$", "UTC") : string);
+  }
+
+  @Nullable
+  private MagmaDate parseDate() {
+    int first = number();
+    int firstDigits = digits;
+    char separator = next();
+    if(DATE_SEPARATORS.indexOf(separator) < 0) return null;
+    int month = field(2);
+    if(month < 0 || !accept(separator)) return null;
+    int last = number();
+    if(!atEnd()) return null;
+
+    if(firstDigits == 4 && digits >= 1 && digits <= 2) {
+      return isValidDate(first, month, last) ? new MagmaDate(first, month - 1, last) : null;
+    }
+    if(firstDigits >= 1 && firstDigits <= 2 && digits == 4) {
+      return isValidDate(last, month, first) ? new MagmaDate(last, month - 1, first) : null;
+    }
+    return null;
+  }
+
+  @Nullable
+  private Date parseDateTime(Calendar calendar) {
+    int year = number();
+    if(digits != 4) return null;
+    char separator = next();
+    if(DATE_SEPARATORS.indexOf(separator) < 0) return null;
+    int month = field(2);
+    if(month < 0 || !accept(separator)) return null;
+    int day = field(2);
+    if(!isValidDate(year, month, day)) return null;
+
+    boolean iso = separator == '-' && accept('T');
+    if(!iso && !accept(' ')) return null;
+    int hour = field(2);
+    if(hour < 0 || hour > 23 || !accept(':')) return null;
+    int minute = field(2);
+    if(minute < 0 || minute > 59) return null;
+    int second = 0;
+    boolean hasSeconds = accept(':');
+    if(hasSeconds) {
+      second = field(2);
+      if(second < 0 || second > 59) return null;
+    }
+    int millis = 0;
+    if(iso && hasSeconds && accept('.')) {
+      millis = field(3);
+      if(millis < 0) return null;
+    }
+
+    calendar.set(year, month - 1, day, hour, minute, second);
+    calendar.set(Calendar.MILLISECOND, millis);
+    if(iso) {
+      int offset = zoneOffset();
+      if(offset == Integer.MIN_VALUE) return null;
+      calendar.set(Calendar.ZONE_OFFSET, offset);
+      calendar.set(Calendar.DST_OFFSET, 0);
+    } else if(!atEnd()) {
+      return null;
+    }
+    return getTime(calendar);
+  }
+
+  /**
+   * Read the time zone that ends an ISO 8601 date time.
+   *
+   * @return the offset in milliseconds, or {@code Integer.MIN_VALUE} if there is none
+   */
+  private int zoneOffset() {
+    if(accept('Z')) return atEnd() ? 0 : Integer.MIN_VALUE;
+    int sign = accept('+') ? 1 : accept('-') ? -1 : 0;
+    int offset = number();
+    if(sign == 0 || digits != 4 || !atEnd()) return Integer.MIN_VALUE;
+    int hours = offset / 100;
+    int minutes = offset % 100;
+    if(hours > 23 || minutes > 59) return Integer.MIN_VALUE;
+    return sign * (hours * 60 + minutes) * 60 * 1000;
+  }
+
+  @Nullable
+  private Date getTime(Calendar calendar) {
+    try {
+      return new Date(calendar.getTimeInMillis());
+    } catch(IllegalArgumentException e) {
+      // a local time that does not exist, e.g. skipped by a daylight saving time change
+      return null;
+    }
+  }
+
+  /**
+   * Read an unsigned number.
+   *
+   * @return the number, or -1 if there is no digit at the current position
+   */
+  private int number() {
+    int start = pos;
+    int value = 0;
+    while(pos < string.length() && pos - start < 9) {
+      char c = string.charAt(pos);
+      if(c < '0' || c > '9') break;
+      value = value * 10 + c - '0';
+      pos++;
+    }
+    digits = pos - start;
+    return digits == 0 ? -1 : value;
+  }
+
+  /**
+   * Read a number of at most the given number of digits.
+   *
+   * @return the number, or -1 if it has no digit or too many digits
+   */
+  private int field(int maxDigits) {
+    int value = number();
+    return digits > maxDigits ? -1 : value;
+  }
+
+  private char next() {
+    return pos < string.length() ? string.charAt(pos++) : 0;
+  }
+
+  private boolean accept(char c) {
+    if(pos < string.length() && string.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean atEnd() {
+    return pos == string.length();
+  }
+
+  private static boolean isValidDate(int year, int month, int day) {
+    if(year <= GREGORIAN_CUTOVER_YEAR || month < 1 || month > 12 || day < 1) return false;
+    boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    return day <= (month == 2 && leap ? 29 : DAYS_IN_MONTH[month - 1]);
+  }
+
+}
@@ -2,8 +2,6 @@ package org.obiba.magma.type;
 
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -24,35 +22,12 @@ public class DateType extends AbstractValueType {
   private static WeakReference<DateType> instance;
 
   /**
-   * Preferred format.
+   * The preferred format first, then other common date formats.
    */
-  private static final SimpleDateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd");
-
-  /**
-   * These are used to support common date formats.
-   */
-  private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[] { //
-      ISO_8601, //
-      new SimpleDateFormat("yyyy/MM/dd"), //
-      new SimpleDateFormat("yyyy.MM.dd"), //
-      new SimpleDateFormat("yyyy MM dd"), //
-      new SimpleDateFormat("dd-MM-yyyy"), //
-      new SimpleDateFormat("dd/MM/yyyy"), //
-      new SimpleDateFormat("dd.MM.yyyy"), //
-      new SimpleDateFormat("dd MM yyyy") };
-
-  private String dateFormatPatterns = "";
+  private final DateFormats dateFormats = new DateFormats("yyyy-MM-dd", "yyyy/MM/dd", "yyyy.MM.dd", "yyyy MM dd",
+      "dd-MM-yyyy", "dd/MM/yyyy", "dd.MM.yyyy", "dd MM yyyy");
 
   private DateType() {
-    // Force strict year parsing, otherwise 2 digits can be interpreted as a 4 digits year...
-    for(SimpleDateFormat format : dateFormats) {
-      format.setLenient(false);
-      if(dateFormatPatterns.isEmpty()) {
-        dateFormatPatterns = "'" + format.toPattern() + "'";
-      } else {
-        dateFormatPatterns += ", '" + format.toPattern() + "'";
-      }
-    }
   }
 
   @SuppressWarnings("ConstantConditions")
@@ -105,22 +80,12 @@ public class DateType extends AbstractValueType {
       return nullValue();
     }
 
-    for(SimpleDateFormat format : dateFormats) {
-      try {
-        return parseDate(format, string);
-      } catch(ParseException e) {
-        // ignored
-      }
-    }
-    throw new MagmaRuntimeException(
-        "Cannot parse date from string value '" + string + "'. Expected format is one of " + dateFormatPatterns);
-  }
-
-  private Value parseDate(SimpleDateFormat format, String string) throws ParseException {
-    // DateFormat is not thread safe
-    synchronized(format) {
-      return Factory.newValue(this, new MagmaDate(format.parse(string)));
+    MagmaDate date = DateParser.parseDate(string, dateFormats);
+    if(date == null) {
+      throw new MagmaRuntimeException("Cannot parse date from string value '" + string +
+          "'. Expected format is one of " + dateFormats.getPatterns());
     }
+    return Factory.newValue(this, date);
   }
 
   @NotNull
@@ -170,9 +135,7 @@ public class DateType extends AbstractValueType {
   @Override
   protected String toString(Object object) {
     if(object != null) {
-      synchronized(ISO_8601) {
-        return ISO_8601.format(((MagmaDate) object).asDate());
-      }
+      return dateFormats.format(((MagmaDate) object).asDate());
     }
     return null;
   }
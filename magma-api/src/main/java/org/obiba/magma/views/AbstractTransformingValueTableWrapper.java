@@ -1,18 +1,21 @@
 package org.obiba.magma.views;
 
 import java.util.Set;
+import java.util.SortedSet;
 
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.support.AbstractValueTableWrapper;
 import org.obiba.magma.support.AbstractVariableValueSourceWrapper;
+import org.obiba.magma.support.VectorValueBlock;
 import org.obiba.magma.transform.BijectiveFunction;
 import org.obiba.magma.transform.BijectiveFunctions;
 import org.obiba.magma.transform.TransformingValueTable;
@@ -109,6 +112,13 @@ public abstract class AbstractTransformingValueTableWrapper extends AbstractValu
         .apply(super.getVariableValueSource(getVariableNameMappingFunction().unapply(variableName)));
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @NotNull
   @Override
   public BijectiveFunction<VariableEntity, VariableEntity> getVariableEntityMappingFunction() {
@@ -0,0 +1,26 @@
+package org.obiba.magma.views;
+
+import java.util.List;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.Variable;
+
+/**
+ * A {@link ListClause} which derived variables can be evaluated together, so that the values they have in common (e.g.
+ * a variable of the view referred to by several others) are computed only once per entity.
+ *
+ * @see View#getValues(List, List)
+ */
+public interface BatchListClause extends ListClause {
+
+  /**
+   * Get the values of several variables of the list for several value sets.
+   *
+   * @param variables the variables of the list
+   * @param valueSets the value sets of the table the {@link View} is applied to
+   * @return the values of each variable, in the order of the variables, then in the order of the value sets
+   */
+  List<List<Value>> getValues(List<Variable> variables, List<ValueSet> valueSets);
+
+}
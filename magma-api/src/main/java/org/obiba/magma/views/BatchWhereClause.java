@@ -0,0 +1,23 @@
+package org.obiba.magma.views;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.ValueSet;
+
+/**
+ * A {@link WhereClause} that can select several {@link ValueSet} at once, sharing its evaluation set up between them.
+ */
+public interface BatchWhereClause extends WhereClause {
+
+  /**
+   * Indicates which of the specified value sets are selected by this clause, in the context of a view if any.
+   *
+   * @param valueSets
+   * @param view
+   * @return the selection flags, in the order of the value sets
+   */
+  boolean[] where(List<ValueSet> valueSets, @Nullable View view);
+
+}
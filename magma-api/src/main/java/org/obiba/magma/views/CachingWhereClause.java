@@ -1,39 +1,317 @@
 package org.obiba.magma.views;
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
 
-import org.obiba.magma.ValueSet;
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
 
-import com.google.common.collect.MapMaker;
+import org.obiba.magma.MagmaCacheExtension;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.VariableEntityDictionary;
+import org.springframework.cache.Cache;
 
-class CachingWhereClause implements WhereClause {
+import com.google.common.collect.Lists;
 
-  /**
-   * Cache the result in this map. Note that this cache will only work if == returns true for the keys. This should be
-   * the case as we pass-around the same ValueSet instance all the time. It is important to use weak keys since we don't
-   * want the cache to prevent collecting garbage.
-   */
-  // TODO: this should be handled in a general-level caching package.
-  private final ConcurrentMap<ValueSet, Boolean> cache = new MapMaker().weakKeys().makeMap();
+/**
+ * Remembers which entities were selected by an expensive {@link WhereClause} in a view, so that it is evaluated once per
+ * entity whatever the number of {@link ValueSet} instances of this entity.
+ * <p/>
+ * Results are stored as bitmaps of the entity ordinals (see {@link VariableEntityDictionary}), along with the last
+ * update of the value set they were obtained from: an entity is evaluated again when its value set was updated since.
+ * All the results are evicted when the view or the table it is applied to is updated: this is checked once per batch of
+ * value sets, as the timestamps of a table may cost a query, and single value sets are checked against the current
+ * results. Results are not cached when neither the view nor the value set have a last update, as nothing tells when
+ * they become stale; a last update which is the time it is read at is no last update.
+ * <p/>
+ * Results are shared between threads. When the engine has a {@link MagmaCacheExtension} with a where clause cache, they
+ * are stored there by reference, keyed by view, otherwise they are held by this clause.
+ */
+class CachingWhereClause implements BatchWhereClause {
 
+  @NotNull
   private final WhereClause expensiveClause;
 
-  CachingWhereClause(WhereClause expensiveClause) {
+  @Nullable
+  private volatile WhereClauseResults results;
+
+  CachingWhereClause(@NotNull WhereClause expensiveClause) {
     this.expensiveClause = expensiveClause;
   }
 
+  /**
+   * Without a view, results cannot be kept up to date: the expensive clause is evaluated.
+   */
   @Override
   public boolean where(ValueSet valueSet) {
     return where(valueSet, null);
   }
 
   @Override
-  public boolean where(ValueSet valueSet, View view) {
-    if(cache.containsKey(valueSet)) {
-      return cache.get(valueSet);
+  public boolean where(ValueSet valueSet, @Nullable View view) {
+    WhereClauseResults current = view == null ? null : getCurrentResults(view);
+    int ordinal = current == null ? -1 : getOrdinal(valueSet);
+    if(ordinal < 0) return expensiveClause.where(valueSet, view);
+
+    long valueSetUpdate = getLastUpdate(valueSet.getTimestamps());
+    Boolean selected = current.get(ordinal, valueSetUpdate);
+    if(selected == null) {
+      selected = expensiveClause.where(valueSet, view);
+      current.put(ordinal, valueSetUpdate, selected);
+    }
+    return selected;
+  }
+
+  /**
+   * Only the value sets which result is not cached are submitted to the expensive clause, at once if it is a
+   * {@link BatchWhereClause}.
+   */
+  @Override
+  public boolean[] where(List<ValueSet> valueSets, @Nullable View view) {
+    WhereClauseResults current = view == null ? null : updateResults(view);
+    boolean[] selected = new boolean[valueSets.size()];
+    int[] ordinals = new int[valueSets.size()];
+    long[] valueSetUpdates = new long[valueSets.size()];
+    List<Integer> misses = Lists.newArrayList();
+    for(int i = 0; i < valueSets.size(); i++) {
+      ValueSet valueSet = valueSets.get(i);
+      ordinals[i] = current == null ? -1 : getOrdinal(valueSet);
+      Boolean cached = null;
+      if(ordinals[i] >= 0) {
+        valueSetUpdates[i] = getLastUpdate(valueSet.getTimestamps());
+        cached = current.get(ordinals[i], valueSetUpdates[i]);
+      }
+      if(cached == null) {
+        misses.add(i);
+      } else {
+        selected[i] = cached;
+      }
+    }
+    if(misses.isEmpty()) return selected;
+
+    boolean[] evaluated = evaluate(valueSets, misses, view);
+    for(int i = 0; i < evaluated.length; i++) {
+      int index = misses.get(i);
+      selected[index] = evaluated[i];
+      if(ordinals[index] >= 0) current.put(ordinals[index], valueSetUpdates[index], evaluated[i]);
+    }
+    return selected;
+  }
+
+  private boolean[] evaluate(List<ValueSet> valueSets, List<Integer> indexes, @Nullable View view) {
+    List<ValueSet> batch = Lists.newArrayListWithCapacity(indexes.size());
+    for(int index : indexes) {
+      batch.add(valueSets.get(index));
+    }
+    if(expensiveClause instanceof BatchWhereClause) {
+      return ((BatchWhereClause) expensiveClause).where(batch, view);
+    }
+    boolean[] selected = new boolean[batch.size()];
+    for(int i = 0; i < selected.length; i++) {
+      selected[i] = expensiveClause.where(batch.get(i), view);
+    }
+    return selected;
+  }
+
+  /**
+   * Forget the results obtained so far, when the view is known to be updated.
+   *
+   * @param view
+   */
+  void evict(View view) {
+    results = null;
+    Cache cache = getWhereClauseCache();
+    if(cache != null) cache.evict(view.getTableCacheKey());
+  }
+
+  /**
+   * Get the current results, without checking the timestamps of the view unless there are none.
+   */
+  private WhereClauseResults getCurrentResults(View view) {
+    WhereClauseResults current = getCachedResults(view);
+    return current == null ? updateResults(view) : current;
+  }
+
+  /**
+   * Get the results for the current state of the view, new ones if the view or its table were updated since the
+   * cached ones were obtained.
+   */
+  private WhereClauseResults updateResults(View view) {
+    long viewUpdate = getLastUpdate(view.getTimestamps(), System.currentTimeMillis());
+    WhereClauseResults current = getCachedResults(view);
+    if(current == null || !current.isUpToDate(viewUpdate)) {
+      current = new WhereClauseResults(viewUpdate);
+      results = current;
+      Cache cache = getWhereClauseCache();
+      if(cache != null) cache.put(view.getTableCacheKey(), current);
+    }
+    return current;
+  }
+
+  @Nullable
+  private WhereClauseResults getCachedResults(View view) {
+    Cache cache = getWhereClauseCache();
+    if(cache == null) return results;
+    Cache.ValueWrapper wrapper = cache.get(view.getTableCacheKey());
+    return wrapper == null ? null : (WhereClauseResults) wrapper.get();
+  }
+
+  @Nullable
+  private Cache getWhereClauseCache() {
+    if(MagmaEngine.get().hasExtension(MagmaCacheExtension.class)) {
+      MagmaCacheExtension cacheExtension = MagmaEngine.get().getExtension(MagmaCacheExtension.class);
+      if(cacheExtension.hasWhereClauseCache()) return cacheExtension.getWhereClauseCache();
+    }
+    return null;
+  }
+
+  private int getOrdinal(ValueSet valueSet) {
+    VariableEntity entity = valueSet.getVariableEntity();
+    return entity == null ? -1 : MagmaEngine.get().getVariableEntityDictionary().getOrdinal(entity);
+  }
+
+  private static long getLastUpdate(@Nullable Timestamps timestamps) {
+    Value lastUpdate = timestamps == null ? null : timestamps.getLastUpdate();
+    return lastUpdate == null || lastUpdate.isNull()
+        ? WhereClauseResults.NO_UPDATE
+        : ((Date) lastUpdate.getValue()).getTime();
+  }
+
+  /**
+   * @param now the time the timestamps are read at
+   */
+  private static long getLastUpdate(Timestamps timestamps, long now) {
+    long lastUpdate = getLastUpdate(timestamps);
+    return lastUpdate >= now ? WhereClauseResults.NO_UPDATE : lastUpdate;
+  }
+
+  /**
+   * The results of a where clause for a state of a view: the entities which were evaluated, with the last update of
+   * their value set when evaluated, and the ones which were selected, by ordinal.
+   * <p/>
+   * The results are updated in place, after they are put in the where clause cache: this cache must store its values by
+   * reference (as a {@code ConcurrentMapCache} does by default), the ordinals being those of the current engine anyway.
+   */
+  static class WhereClauseResults {
+
+    static final long NO_UPDATE = Long.MIN_VALUE;
+
+    // guarded by this
+    private long viewUpdate;
+
+    // guarded by this
+    private final OrdinalUpdates valueSetUpdates = new OrdinalUpdates();
+
+    // guarded by this
+    private final BitSet selected = new BitSet();
+
+    WhereClauseResults(long viewUpdate) {
+      this.viewUpdate = viewUpdate;
+    }
+
+    /**
+     * Results obtained without a last update of the view hold the value set updates they depend on: they are still up to
+     * date when the view gets a last update, as a view read in the millisecond of its creation does.
+     */
+    synchronized boolean isUpToDate(long update) {
+      if(viewUpdate == NO_UPDATE) viewUpdate = update;
+      return viewUpdate == update;
+    }
+
+    /**
+     * @return null if the entity was not evaluated, or if its value set was updated since
+     */
+    @Nullable
+    synchronized Boolean get(int ordinal, long valueSetUpdate) {
+      if(!isCacheable(valueSetUpdate) || !valueSetUpdates.contains(ordinal, valueSetUpdate)) return null;
+      return selected.get(ordinal);
+    }
+
+    synchronized void put(int ordinal, long valueSetUpdate, boolean isSelected) {
+      if(!isCacheable(valueSetUpdate)) return;
+      valueSetUpdates.put(ordinal, valueSetUpdate);
+      selected.set(ordinal, isSelected);
+    }
+
+    private boolean isCacheable(long valueSetUpdate) {
+      return viewUpdate != NO_UPDATE || valueSetUpdate != NO_UPDATE;
+    }
+  }
+
+  /**
+   * The last updates of the evaluated value sets by entity ordinal, in an open addressing hash table: its size depends
+   * on the number of entities evaluated in the view, not on the largest ordinal of the engine.
+   */
+  static class OrdinalUpdates {
+
+    private static final int FREE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] ordinals = newOrdinals(INITIAL_CAPACITY);
+
+    private long[] updates = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    boolean contains(int ordinal, long update) {
+      int slot = slot(ordinals, ordinal);
+      return ordinals[slot] == ordinal && updates[slot] == update;
+    }
+
+    void put(int ordinal, long update) {
+      int slot = slot(ordinals, ordinal);
+      if(ordinals[slot] != ordinal) {
+        ordinals[slot] = ordinal;
+        size++;
+      }
+      updates[slot] = update;
+      // keep the table at most half full
+      if(size * 2 > ordinals.length) resize();
+    }
+
+    int size() {
+      return size;
+    }
+
+    private void resize() {
+      int[] oldOrdinals = ordinals;
+      long[] oldUpdates = updates;
+      ordinals = newOrdinals(oldOrdinals.length * 2);
+      updates = new long[oldOrdinals.length * 2];
+      for(int i = 0; i < oldOrdinals.length; i++) {
+        if(oldOrdinals[i] != FREE) {
+          int slot = slot(ordinals, oldOrdinals[i]);
+          ordinals[slot] = oldOrdinals[i];
+          updates[slot] = oldUpdates[i];
+        }
+      }
+    }
+
+    /**
+     * @return the slot of the ordinal, or the free slot where it would be added
+     */
+    private static int slot(int[] ordinals, int ordinal) {
+      int mask = ordinals.length - 1;
+      // spread the consecutive ordinals
+      int hash = ordinal * 0x9E3779B9;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while(ordinals[slot] != FREE && ordinals[slot] != ordinal) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private static int[] newOrdinals(int capacity) {
+      int[] ordinals = new int[capacity];
+      Arrays.fill(ordinals, FREE);
+      return ordinals;
     }
-    boolean where = expensiveClause.where(valueSet);
-    cache.put(valueSet, where);
-    return where;
   }
 }
@@ -4,22 +4,28 @@
 package org.obiba.magma.views;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.Datasource;
 import org.obiba.magma.Initialisable;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueType;
@@ -31,6 +37,9 @@ import org.obiba.magma.support.AbstractVariableValueSourceWrapper;
 import org.obiba.magma.support.NullTimestamps;
 import org.obiba.magma.support.UnionTimestamps;
 import org.obiba.magma.support.ValueSetBean;
+import org.obiba.magma.support.VariableEntityDictionary;
+import org.obiba.magma.support.VariableEntitySet;
+import org.obiba.magma.support.VectorValueBlock;
 
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
@@ -45,15 +54,24 @@ import com.google.common.collect.Multimap;
 @SuppressWarnings({ "UnusedDeclaration", "TransientFieldInNonSerializableClass" })
 public class JoinTable implements ValueTable, Initialisable {
 
-  private static final int DEFAULT_ENTITY_COUNT = 5000;
-
   @NotNull
   private final List<ValueTable> tables;
 
   /**
-   * Cached set of all variables of all tables in the join (i.e., the union).
+   * Cached map of all variables of all tables in the join (i.e., the union), by name.
    */
-  private transient Set<Variable> unionOfVariables;
+  private transient Map<String, Variable> unionOfVariables;
+
+  /**
+   * Cached entities of all tables in the join, see {@link #updateJoinIndex()}.
+   */
+  @Nullable
+  private transient volatile JoinIndex joinIndex;
+
+  /**
+   * Whether the timestamps of the tables were checked for the current {@link #joinIndex}.
+   */
+  private transient volatile boolean joinIndexChecked;
 
   /**
    * Cached map of variable names to tables.
@@ -73,10 +91,6 @@ public class JoinTable implements ValueTable, Initialisable {
   @NotNull
   private transient final Map<String, JoinableVariable> joinableVariablesByName = Maps.newHashMap();
 
-  // An arbitrary number to initialise the LinkedHashSet with a capacity close to the actual value
-  // See getVariableEntities()
-  private transient int lastEntityCount = DEFAULT_ENTITY_COUNT;
-
   private transient boolean variableAnalysed = false;
 
   /**
@@ -171,8 +185,16 @@ public class JoinTable implements ValueTable, Initialisable {
 
   @Override
   public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
-    if(hasValueSet(entity)) {
-      return new JoinedValueSet(this, entity);
+    if(!variableAnalysed) analyseVariables();
+
+    JoinIndex index = getJoinIndex();
+    if(index == null) {
+      if(hasValueSetInTables(entity)) return new JoinedValueSet(this, entity, null);
+    } else {
+      BitSet entityTables = index.getTables(entity);
+      if(!entityTables.isEmpty()) return new JoinedValueSet(this, entity, entityTables);
+      // the entity may have been written since the index was built
+      if(hasValueSetInTables(entity)) return new JoinedValueSet(this, entity, null);
     }
     throw new NoSuchValueSetException(this, entity);
   }
@@ -211,22 +233,29 @@ public class JoinTable implements ValueTable, Initialisable {
   public Set<VariableEntity> getVariableEntities() {
     if(!variableAnalysed) analyseVariables();
 
-    // Set the initial capacity to the number of entities we saw in the previous call to this method
-    Set<VariableEntity> entities = new LinkedHashSet<>(lastEntityCount);
+    JoinIndex index = updateJoinIndex();
+    return index == null ? getUnionOfEntities() : index.getEntities();
+  }
+
+  private Set<VariableEntity> getUnionOfEntities() {
+    // the union of the entity sets of the tables is a bitwise OR when they are already sets of ordinals
+    VariableEntitySet.Builder entities = VariableEntitySet.builder();
     for(ValueTable table : getTables()) {
       entities.addAll(table.getVariableEntities());
     }
-    // Remember this value so that next time around, the set is initialised with a capacity closer to the actual value.
-    lastEntityCount = entities.size();
-    return entities;
+    return entities.build();
   }
 
   @Override
   public Iterable<ValueSet> getValueSets() {
-    return Iterables.transform(getVariableEntities(), new Function<VariableEntity, ValueSet>() {
+    if(!variableAnalysed) analyseVariables();
+
+    final JoinIndex index = updateJoinIndex();
+    Set<VariableEntity> entities = index == null ? getUnionOfEntities() : index.getEntities();
+    return Iterables.transform(entities, new Function<VariableEntity, ValueSet>() {
       @Override
       public ValueSet apply(VariableEntity from) {
-        return new JoinedValueSet(JoinTable.this, from);
+        return new JoinedValueSet(JoinTable.this, from, index == null ? null : index.getTables(from));
       }
     });
   }
@@ -238,12 +267,11 @@ public class JoinTable implements ValueTable, Initialisable {
 
   @Override
   public Variable getVariable(String name) throws NoSuchVariableException {
-    for(Variable variable : getVariables()) {
-      if(variable.getName().equals(name)) {
-        return variable;
-      }
-    }
-    throw new NoSuchVariableException(name);
+    if(!variableAnalysed) analyseVariables();
+
+    Variable variable = unionOfVariables().get(name);
+    if(variable == null) throw new NoSuchVariableException(name);
+    return variable;
   }
 
   @Override
@@ -262,22 +290,36 @@ public class JoinTable implements ValueTable, Initialisable {
         throw new NoSuchVariableException(variableName);
       }
       variableValueSourceMap.put(variableName,
-          new JoinedVariableValueSource(variableName, tablesWithVariable, table.getVariableValueSource(variableName)));
+          new JoinedVariableValueSource(variableName, tablesWithVariable, getTableIndexes(tablesWithVariable),
+              table.getVariableValueSource(variableName)));
     }
 
     return variableValueSourceMap.get(variableName);
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @Override
   public Iterable<Variable> getVariables() {
     if(!variableAnalysed) analyseVariables();
-    return unionOfVariables();
+    return unionOfVariables().values();
   }
 
   @Override
   public boolean hasValueSet(VariableEntity entity) {
     if(!variableAnalysed) analyseVariables();
 
+    JoinIndex index = getJoinIndex();
+    // the entity may have been written since the index was built
+    return index != null && index.getEntities().contains(entity) || hasValueSetInTables(entity);
+  }
+
+  private boolean hasValueSetInTables(VariableEntity entity) {
     for(ValueTable table : getTables()) {
       if(table.hasValueSet(entity)) {
         return true;
@@ -309,18 +351,17 @@ public class JoinTable implements ValueTable, Initialisable {
     return sb.toString();
   }
 
-  private synchronized Iterable<Variable> unionOfVariables() {
+  private synchronized Map<String, Variable> unionOfVariables() {
     if(unionOfVariables == null) {
-      unionOfVariables = new LinkedHashSet<>();
+      unionOfVariables = new LinkedHashMap<>();
 
       if(!variableAnalysed) analyseVariables();
 
-      Collection<String> unionOfVariableNames = new LinkedHashSet<>();
       for(ValueTable table : getTables()) {
         for(Variable variable : table.getVariables()) {
-          // Add returns true if the set did not already contain the value
-          if(unionOfVariableNames.add(variable.getName())) {
-            unionOfVariables.add(variable);
+          // keep the first variable with this name
+          if(!unionOfVariables.containsKey(variable.getName())) {
+            unionOfVariables.put(variable.getName(), variable);
           }
         }
       }
@@ -329,6 +370,65 @@ public class JoinTable implements ValueTable, Initialisable {
     return unionOfVariables;
   }
 
+  /**
+   * Get the index of the entities for a read of one entity: the timestamps of the tables are not checked again, see
+   * {@link #updateJoinIndex()}. The index may then miss the value sets written since it was built: only the value sets
+   * it has are trusted, the tables are asked for the other ones.
+   *
+   * @return null if the tables cannot be indexed
+   */
+  @Nullable
+  private JoinIndex getJoinIndex() {
+    return joinIndexChecked ? joinIndex : updateJoinIndex();
+  }
+
+  /**
+   * Get the entities of the tables, indexed when all the tables have a last update timestamp: the index is then kept
+   * until one of the tables is updated. The timestamps are checked when the entities are requested, as they may cost a
+   * query per table.
+   *
+   * @return null if a table has no last update timestamp, or a last update which is the time it is read at
+   */
+  @Nullable
+  private synchronized JoinIndex updateJoinIndex() {
+    long[] lastUpdates = getLastUpdates();
+    JoinIndex index = joinIndex;
+    if(lastUpdates == null) {
+      index = null;
+    } else if(index == null || !index.isUpToDate(lastUpdates)) {
+      // a last update that changes from one read to the next does not tell when the table was updated
+      index = Arrays.equals(lastUpdates, getLastUpdates()) ? new JoinIndex(getTables(), lastUpdates) : null;
+    }
+    joinIndex = index;
+    joinIndexChecked = true;
+    return index;
+  }
+
+  /**
+   * @return null if a table has no last update timestamp, or if it is not older than the time it was read at
+   */
+  @Nullable
+  private long[] getLastUpdates() {
+    long now = System.currentTimeMillis();
+    List<ValueTable> joinedTables = getTables();
+    long[] lastUpdates = new long[joinedTables.size()];
+    for(int i = 0; i < lastUpdates.length; i++) {
+      Value lastUpdate = joinedTables.get(i).getTimestamps().getLastUpdate();
+      if(lastUpdate.isNull()) return null;
+      lastUpdates[i] = ((Date) lastUpdate.getValue()).getTime();
+      if(lastUpdates[i] >= now) return null;
+    }
+    return lastUpdates;
+  }
+
+  private int[] getTableIndexes(List<ValueTable> joinedTables) {
+    int[] indexes = new int[joinedTables.size()];
+    for(int i = 0; i < indexes.length; i++) {
+      indexes[i] = getTables().indexOf(joinedTables.get(i));
+    }
+    return indexes;
+  }
+
   @NotNull
   private synchronized List<ValueTable> getTablesWithVariable(@NotNull JoinableVariable joinableVariable)
       throws NoSuchVariableException {
@@ -368,12 +468,66 @@ public class JoinTable implements ValueTable, Initialisable {
 
   @Override
   public int getValueSetCount() {
-    return Iterables.size(getValueSets());
+    return getVariableEntities().size();
   }
 
   @Override
   public int getVariableEntityCount() {
-    return Iterables.size(getVariableEntities());
+    return getVariableEntities().size();
+  }
+
+  /**
+   * The entities of the joined tables (their union) and, for each entity, the tables that have a value set for it, as
+   * of the last update of the tables.
+   */
+  private static class JoinIndex {
+
+    private final long[] lastUpdates;
+
+    private final VariableEntityDictionary dictionary;
+
+    @NotNull
+    private final VariableEntitySet entities;
+
+    // the entities of each table, in the order of the tables
+    @NotNull
+    private final VariableEntitySet[] tableEntities;
+
+    private JoinIndex(List<ValueTable> tables, long[] lastUpdates) {
+      this.lastUpdates = lastUpdates;
+      dictionary = MagmaEngine.get().getVariableEntityDictionary();
+      tableEntities = new VariableEntitySet[tables.size()];
+      VariableEntitySet.Builder union = VariableEntitySet.builder();
+      for(int i = 0; i < tableEntities.length; i++) {
+        // a copy in the ordinals of the current engine, whatever the set returned by the table
+        tableEntities[i] = VariableEntitySet.builder().addAll(tables.get(i).getVariableEntities()).build();
+        union.addAll(tableEntities[i]);
+      }
+      entities = union.build();
+    }
+
+    private boolean isUpToDate(long[] updates) {
+      return Arrays.equals(lastUpdates, updates);
+    }
+
+    @NotNull
+    private VariableEntitySet getEntities() {
+      return entities;
+    }
+
+    /**
+     * The tables that have a value set for an entity, by their position in the join.
+     */
+    @NotNull
+    private BitSet getTables(VariableEntity entity) {
+      int ordinal = dictionary.findOrdinal(entity);
+      BitSet tables = new BitSet(tableEntities.length);
+      if(ordinal < 0) return tables;
+      for(int i = 0; i < tableEntities.length; i++) {
+        if(tableEntities[i].containsOrdinal(ordinal)) tables.set(i);
+      }
+      return tables;
+    }
   }
 
   static class JoinedValueSet extends ValueSetBean {
@@ -384,29 +538,47 @@ public class JoinTable implements ValueTable, Initialisable {
     @NotNull
     private final Map<String, Timestamps> timestampsByTable = Maps.newHashMap();
 
-    JoinedValueSet(@NotNull ValueTable table, @NotNull VariableEntity entity) {
+    /**
+     * The tables that had a value set for the entity when the join was indexed, by their position in the join, if
+     * known.
+     */
+    @Nullable
+    private final BitSet entityTables;
+
+    JoinedValueSet(@NotNull JoinTable table, @NotNull VariableEntity entity, @Nullable BitSet entityTables) {
       super(table, entity);
+      this.entityTables = entityTables;
     }
 
     @NotNull
     @Override
     public Timestamps getTimestamps() {
       List<Timestamps> timestampses = Lists.newArrayList();
-      for(ValueTable valueTable : ((JoinTable) getValueTable()).getTables()) {
-        if(valueTable.hasValueSet(getVariableEntity())) {
+      List<ValueTable> valueTables = ((JoinTable) getValueTable()).getTables();
+      for(int i = 0; i < valueTables.size(); i++) {
+        ValueTable valueTable = valueTables.get(i);
+        if(hasValueSet(valueTable, i)) {
           timestampses.add(valueTable.getValueSetTimestamps(getVariableEntity()));
         }
       }
       return new UnionTimestamps(timestampses);
     }
 
-    synchronized Iterable<ValueSet> getInnerTableValueSets(Iterable<ValueTable> valueTables) {
+    /**
+     * Get the value sets of the entity in some of the joined tables.
+     *
+     * @param valueTables the tables
+     * @param tableIndexes the positions of these tables in the join
+     * @return
+     */
+    synchronized Iterable<ValueSet> getInnerTableValueSets(List<ValueTable> valueTables, int... tableIndexes) {
       List<ValueSet> valueSets = Lists.newArrayList();
-      for(ValueTable valueTable : valueTables) {
+      for(int i = 0; i < valueTables.size(); i++) {
+        ValueTable valueTable = valueTables.get(i);
         if(valueSetsByTable.containsKey(valueTable.getTableReference())) {
           ValueSet valueSet = valueSetsByTable.get(valueTable.getTableReference());
           if(valueSet != null) valueSets.add(valueSet);
-        } else if(valueTable.hasValueSet(getVariableEntity())) {
+        } else if(hasValueSet(valueTable, tableIndexes[i])) {
           ValueSet valueSet = valueTable.getValueSet(getVariableEntity());
           valueSetsByTable.put(valueTable.getTableReference(), valueSet);
           valueSets.add(valueSet);
@@ -414,6 +586,12 @@ public class JoinTable implements ValueTable, Initialisable {
       }
       return valueSets;
     }
+
+    private boolean hasValueSet(ValueTable valueTable, int tableIndex) {
+      // a table may have a value set written since the join was indexed
+      return entityTables != null && tableIndex >= 0 && entityTables.get(tableIndex) ||
+          valueTable.hasValueSet(getVariableEntity());
+    }
   }
 
   private static class JoinedVariableValueSource extends AbstractVariableValueSourceWrapper implements VectorSource {
@@ -421,14 +599,19 @@ public class JoinTable implements ValueTable, Initialisable {
     @NotNull
     private final List<ValueTable> owners;
 
+    // the positions of the owners in the join
+    @NotNull
+    private final int[] ownerIndexes;
+
     @NotNull
     private final String variableName;
 
     private JoinedVariableValueSource(@NotNull String variableName, @NotNull List<ValueTable> owners,
-        @NotNull VariableValueSource wrapped) {
+        @NotNull int[] ownerIndexes, @NotNull VariableValueSource wrapped) {
       super(wrapped);
       this.variableName = variableName;
       this.owners = owners;
+      this.ownerIndexes = ownerIndexes;
     }
 
     private VariableValueSource getWrapped(ValueTable table) {
@@ -439,7 +622,7 @@ public class JoinTable implements ValueTable, Initialisable {
     @Override
     public Value getValue(ValueSet valueSet) {
       // get inner value sets
-      for(ValueSet joinedValueSet : ((JoinedValueSet) valueSet).getInnerTableValueSets(owners)) {
+      for(ValueSet joinedValueSet : ((JoinedValueSet) valueSet).getInnerTableValueSets(owners, ownerIndexes)) {
         Value value = getWrapped(joinedValueSet.getValueTable()).getValue(joinedValueSet);
         if(!value.isNull()) return value;
       }
@@ -0,0 +1,322 @@
+package org.obiba.magma.views;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.Datasource;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableWriter;
+import org.obiba.magma.ValueTableWriter.ValueSetWriter;
+import org.obiba.magma.ValueTableWriter.VariableWriter;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.AbstractValueTableWrapper;
+import org.obiba.magma.support.DatasourceCopier;
+import org.obiba.magma.type.DateTimeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@link View} which variables and values are stored in a table of another datasource (e.g. a JDBC or Hibernate
+ * one), named after the view. Reads are served by this table, without evaluating the where clause nor the derived
+ * variables of the view.
+ * <p/>
+ * The table is updated by {@link #refresh()}: only the entities which value set in the table the view is applied to was
+ * updated after the last update it was evaluated at are evaluated again, and the entities that are no longer in the
+ * view are removed. This last update is stored with each materialized value set, in a variable that this view does not
+ * expose, so that the updates made while a refresh runs are seen by the next one. The whole view is evaluated again when
+ * its variables differ from the materialized ones. Changes in other tables that derived variables refer to are not
+ * detected: use {@link #refresh(boolean)} to force the evaluation of all the entities.
+ */
+public class MaterializedView extends AbstractValueTableWrapper {
+
+  private static final Logger log = LoggerFactory.getLogger(MaterializedView.class);
+
+  private static final int REFRESH_BATCH_SIZE = 100;
+
+  /**
+   * The materialized variable which value is the last update of the value set of the view it was evaluated from.
+   */
+  static final String SOURCE_UPDATE_VARIABLE = "_sourceLastUpdate";
+
+  @NotNull
+  private final View view;
+
+  @NotNull
+  private final Datasource datasource;
+
+  /**
+   * @param view the view to materialize
+   * @param datasource the datasource that stores the values of the view
+   */
+  @SuppressWarnings("ConstantConditions")
+  public MaterializedView(@NotNull View view, @NotNull Datasource datasource) {
+    if(view == null) throw new IllegalArgumentException("view cannot be null");
+    if(datasource == null) throw new IllegalArgumentException("datasource cannot be null");
+    this.view = view;
+    this.datasource = datasource;
+  }
+
+  @NotNull
+  public View getView() {
+    return view;
+  }
+
+  /**
+   * The datasource that stores the values of the view.
+   *
+   * @return
+   */
+  @NotNull
+  public Datasource getMaterializationDatasource() {
+    return datasource;
+  }
+
+  /**
+   * Get the materialized table, after a first refresh if there is none yet.
+   *
+   * @return
+   */
+  @Override
+  public ValueTable getWrappedValueTable() {
+    if(!datasource.hasValueTable(view.getName())) {
+      try {
+        refresh();
+      } catch(IOException e) {
+        throw new MagmaRuntimeException("Cannot materialize view '" + view.getName() + "'", e);
+      }
+    }
+    return datasource.getValueTable(view.getName());
+  }
+
+  @Override
+  public Datasource getDatasource() {
+    return view.getDatasource();
+  }
+
+  @Override
+  public String getName() {
+    return view.getName();
+  }
+
+  @Override
+  public String getEntityType() {
+    return view.getEntityType();
+  }
+
+  @Override
+  public String getTableReference() {
+    return view.getTableReference();
+  }
+
+  @Override
+  public boolean isView() {
+    return true;
+  }
+
+  @Override
+  public boolean hasVariable(String name) {
+    return !SOURCE_UPDATE_VARIABLE.equals(name) && super.hasVariable(name);
+  }
+
+  @Override
+  public Variable getVariable(String name) throws NoSuchVariableException {
+    if(SOURCE_UPDATE_VARIABLE.equals(name)) throw new NoSuchVariableException(getName(), name);
+    return super.getVariable(name);
+  }
+
+  @Override
+  public Iterable<Variable> getVariables() {
+    return Iterables.filter(super.getVariables(), new Predicate<Variable>() {
+      @Override
+      public boolean apply(Variable input) {
+        return !SOURCE_UPDATE_VARIABLE.equals(input.getName());
+      }
+    });
+  }
+
+  @Override
+  public VariableValueSource getVariableValueSource(String variableName) throws NoSuchVariableException {
+    if(SOURCE_UPDATE_VARIABLE.equals(variableName)) throw new NoSuchVariableException(getName(), variableName);
+    return super.getVariableValueSource(variableName);
+  }
+
+  @Override
+  public int getVariableCount() {
+    return Iterables.size(getVariables());
+  }
+
+  /**
+   * Evaluate again the entities which value set was updated since the last refresh, and remove the ones that are no
+   * longer in the view.
+   *
+   * @return the number of value sets written or removed
+   * @throws IOException
+   */
+  public int refresh() throws IOException {
+    return refresh(false);
+  }
+
+  /**
+   * Update the materialized table.
+   *
+   * @param full whether all the entities of the view are evaluated again, whatever their timestamps
+   * @return the number of value sets written or removed
+   * @throws IOException
+   */
+  public synchronized int refresh(boolean full) throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    String tableName = view.getName();
+    ValueTable materialized = datasource.hasValueTable(tableName) ? datasource.getValueTable(tableName) : null;
+    boolean rebuild = full || materialized == null || !hasSameVariables(materialized);
+
+    List<Variable> variables = ImmutableList.copyOf(view.getVariables());
+    Set<VariableEntity> entities = view.getVariableEntities();
+    List<VariableEntity> removed = materialized == null
+        ? ImmutableList.<VariableEntity>of()
+        : ImmutableList.copyOf(Sets.difference(materialized.getVariableEntities(), entities));
+    List<VariableEntity> updated = rebuild
+        ? ImmutableList.copyOf(entities)
+        : getUpdatedEntities(entities, materialized);
+
+    if(rebuild && materialized != null) {
+      removeVariables(materialized);
+    }
+    try(ValueTableWriter tableWriter = datasource.createWriter(tableName, view.getEntityType())) {
+      if(rebuild) {
+        writeVariables(tableWriter);
+      }
+      for(List<VariableEntity> batch : Iterables.partition(updated, REFRESH_BATCH_SIZE)) {
+        writeValueSets(tableWriter, variables, batch);
+      }
+      for(VariableEntity entity : removed) {
+        try(ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity)) {
+          valueSetWriter.remove();
+        }
+      }
+    }
+    log.info("Refreshed materialized view '{}' (full={}): {} value sets written and {} removed in {}", tableName,
+        rebuild, updated.size(), removed.size(), stopwatch);
+    return updated.size() + removed.size();
+  }
+
+  /**
+   * Whether the materialized variables are the ones of the view, with the same attributes (including the script of the
+   * derived ones), and the last update of the value sets they were evaluated from.
+   */
+  private boolean hasSameVariables(ValueTable materialized) {
+    if(!materialized.hasVariable(SOURCE_UPDATE_VARIABLE)) return false;
+    int count = 1;
+    for(Variable variable : view.getVariables()) {
+      if(!materialized.hasVariable(variable.getName())) return false;
+      Variable materializedVariable = materialized.getVariable(variable.getName());
+      if(isTypeChanged(variable, materializedVariable) ||
+          !Sets.newHashSet(variable.getAttributes()).equals(Sets.newHashSet(materializedVariable.getAttributes()))) {
+        return false;
+      }
+      count++;
+    }
+    return count == Iterables.size(materialized.getVariables());
+  }
+
+  private static boolean isTypeChanged(Variable variable, Variable materializedVariable) {
+    return variable.getValueType() != materializedVariable.getValueType() ||
+        variable.isRepeatable() != materializedVariable.isRepeatable();
+  }
+
+  /**
+   * The entities which value set in the view was updated after the last update it was evaluated at.
+   */
+  private List<VariableEntity> getUpdatedEntities(Iterable<VariableEntity> entities, ValueTable materialized) {
+    Variable sourceUpdateVariable = materialized.getVariable(SOURCE_UPDATE_VARIABLE);
+    List<VariableEntity> updated = Lists.newArrayList();
+    for(VariableEntity entity : entities) {
+      if(!materialized.hasValueSet(entity) || laterThan(getLastUpdate(view.getValueSetTimestamps(entity)),
+          materialized.getValue(sourceUpdateVariable, materialized.getValueSet(entity)))) {
+        updated.add(entity);
+      }
+    }
+    return updated;
+  }
+
+  private static Value getLastUpdate(Timestamps timestamps) {
+    return timestamps == null ? DateTimeType.get().nullValue() : timestamps.getLastUpdate();
+  }
+
+  /**
+   * Same as {@link IncrementalWhereClause#laterThan(Timestamps, Timestamps)}: missing timestamps are considered as
+   * updated.
+   */
+  private static boolean laterThan(Value u1, Value u2) {
+    return u1.isNull() || u2.isNull() || u1.compareTo(u2) > 0;
+  }
+
+  /**
+   * Remove the materialized variables that are no longer in the view, and the ones which value type or repeatability
+   * changed, with their values: a datasource may not support changing them in place. The removal is committed by a
+   * writer of its own, before the variables are written again.
+   */
+  private void removeVariables(ValueTable materialized) throws IOException {
+    try(ValueTableWriter tableWriter = datasource.createWriter(materialized.getName(), view.getEntityType());
+        VariableWriter variableWriter = tableWriter.writeVariables()) {
+      for(Variable variable : ImmutableList.copyOf(materialized.getVariables())) {
+        if(SOURCE_UPDATE_VARIABLE.equals(variable.getName())) continue;
+        if(!view.hasVariable(variable.getName()) || isTypeChanged(view.getVariable(variable.getName()), variable)) {
+          variableWriter.removeVariable(variable);
+        }
+      }
+    }
+  }
+
+  private void writeVariables(ValueTableWriter tableWriter) throws IOException {
+    try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+      DatasourceCopier.Builder.newCopier().build().copyMetadata(view, variableWriter);
+      variableWriter.writeVariable(getSourceUpdateVariable());
+    }
+  }
+
+  private Variable getSourceUpdateVariable() {
+    return Variable.Builder.newVariable(SOURCE_UPDATE_VARIABLE, DateTimeType.get(), view.getEntityType()).build();
+  }
+
+  /**
+   * Write the values of a batch of entities, the variables of the view being evaluated together (see
+   * {@link View#getValues(List, List)}). Null values are written too, as they replace the previous ones. The last update
+   * of each value set is read before its evaluation: an update made in the meantime is evaluated by the next refresh.
+   */
+  private void writeValueSets(ValueTableWriter tableWriter, List<Variable> variables, List<VariableEntity> entities) {
+    List<Value> sourceUpdates = Lists.newArrayListWithCapacity(entities.size());
+    List<ValueSet> valueSets = Lists.newArrayListWithCapacity(entities.size());
+    for(VariableEntity entity : entities) {
+      sourceUpdates.add(getLastUpdate(view.getValueSetTimestamps(entity)));
+      valueSets.add(view.getValueSet(entity));
+    }
+    List<List<Value>> values = view.getValues(variables, valueSets);
+    Variable sourceUpdateVariable = getSourceUpdateVariable();
+    for(int i = 0; i < entities.size(); i++) {
+      try(ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entities.get(i))) {
+        for(int j = 0; j < variables.size(); j++) {
+          valueSetWriter.writeValue(variables.get(j), values.get(j).get(i));
+        }
+        valueSetWriter.writeValue(sourceUpdateVariable, sourceUpdates.get(i));
+      }
+    }
+  }
+
+}
@@ -10,6 +10,7 @@ import java.util.SortedSet;
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
+import org.obiba.magma.BatchValueSource;
 import org.obiba.magma.Datasource;
 import org.obiba.magma.Disposable;
 import org.obiba.magma.Initialisable;
@@ -19,6 +20,7 @@ import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueType;
@@ -31,7 +33,10 @@ import org.obiba.magma.support.AbstractValueTableWrapper;
 import org.obiba.magma.support.AbstractVariableValueSourceWrapper;
 import org.obiba.magma.support.Disposables;
 import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.Values;
 import org.obiba.magma.support.VariableEntitiesCache;
+import org.obiba.magma.support.VariableEntitySet;
+import org.obiba.magma.support.VectorValueBlock;
 import org.obiba.magma.transform.BijectiveFunction;
 import org.obiba.magma.transform.BijectiveFunctions;
 import org.obiba.magma.transform.TransformingValueTable;
@@ -55,6 +60,11 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
 
   private static final Logger log = LoggerFactory.getLogger(View.class);
 
+  /**
+   * Number of value sets submitted at once to a {@link BatchWhereClause}.
+   */
+  private static final int WHERE_BATCH_SIZE = 100;
+
   private String name;
 
   @NotNull
@@ -140,6 +150,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
 
   public void setName(String name) {
     this.name = name;
+    MagmaEngine.registryChanged();
   }
 
   @NotNull
@@ -161,7 +172,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
    * Returns true is this is a {@link View} of derived variables, false if this is a {@code View} of selected (existing)
    * variables.
    */
-  private boolean isViewOfDerivedVariables() {
+  public boolean isViewOfDerivedVariables() {
     return !(getListClause() instanceof NoneClause);
   }
 
@@ -205,6 +216,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
     if(updated == null) updated = DateTimeType.get().nullValue();
     if(updated.getValueType() != DateTimeType.get()) throw new IllegalArgumentException();
     this.updated = updated;
+    if(where instanceof CachingWhereClause) ((CachingWhereClause) where).evict(this);
   }
 
   @SuppressWarnings({ "AssignmentToMethodParameter", "PMD.AvoidReassigningParameters" })
@@ -264,19 +276,33 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
   public Iterable<ValueSet> getValueSets() {
     // do not use Guava functional stuff to avoid multiple iterations over valueSets
     List<ValueSet> valueSets = Lists.newArrayList();
-    for(ValueSet valueSet : super.getValueSets()) {
-      if(getWhereClause().where(valueSet, this)) { // taking into account the WhereClause
-        // replacing each ValueSet with one that points at the current View
-        valueSet = getValueSetMappingFunction().apply(valueSet);
-        // result of transformation might have returned a non-mappable entity
-        if(valueSet != null && valueSet.getVariableEntity() != null) {
-          valueSets.add(valueSet);
+    if(getWhereClause() instanceof BatchWhereClause) {
+      BatchWhereClause batchWhere = (BatchWhereClause) getWhereClause();
+      for(List<ValueSet> batch : Iterables.partition(super.getValueSets(), WHERE_BATCH_SIZE)) {
+        boolean[] selected = batchWhere.where(batch, this);
+        for(int i = 0; i < selected.length; i++) {
+          if(selected[i]) addMappedValueSet(valueSets, batch.get(i));
+        }
+      }
+    } else {
+      for(ValueSet valueSet : super.getValueSets()) {
+        if(getWhereClause().where(valueSet, this)) { // taking into account the WhereClause
+          addMappedValueSet(valueSets, valueSet);
         }
       }
     }
     return valueSets;
   }
 
+  private void addMappedValueSet(Collection<ValueSet> valueSets, ValueSet valueSet) {
+    // replacing each ValueSet with one that points at the current View
+    ValueSet mapped = getValueSetMappingFunction().apply(valueSet);
+    // result of transformation might have returned a non-mappable entity
+    if(mapped != null && mapped.getVariableEntity() != null) {
+      valueSets.add(mapped);
+    }
+  }
+
   @Override
   public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
     VariableEntity unmapped = getVariableEntityMappingFunction().unapply(entity);
@@ -372,6 +398,29 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
     return super.getValue(variable, getValueSetMappingFunction().unapply(valueSet));
   }
 
+  /**
+   * Get the values of several variables of this view for several of its value sets. When the view is made of derived
+   * variables which {@link ListClause} is a {@link BatchListClause}, they are evaluated together.
+   *
+   * @param variables
+   * @param valueSets
+   * @return the values of each variable, in the order of the variables, then in the order of the value sets
+   */
+  public List<List<Value>> getValues(List<Variable> variables, List<ValueSet> valueSets) {
+    if(isViewOfDerivedVariables() && getListClause() instanceof BatchListClause) {
+      List<ValueSet> unmapped = Lists.newArrayListWithCapacity(valueSets.size());
+      for(ValueSet valueSet : valueSets) {
+        unmapped.add(getValueSetMappingFunction().unapply(valueSet));
+      }
+      return ((BatchListClause) getListClause()).getValues(variables, unmapped);
+    }
+    List<List<Value>> values = Lists.newArrayListWithCapacity(variables.size());
+    for(Variable variable : variables) {
+      values.add(Values.getValues(getVariableValueSource(variable.getName()), valueSets));
+    }
+    return values;
+  }
+
   private Value getListClauseValue(Variable variable, ValueSet valueSet) {
     return getListClauseVariableValueSource(variable.getName()).getValue(valueSet);
   }
@@ -395,6 +444,13 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
     return getVariableValueSourceMappingFunction().apply(super.getVariableValueSource(variableName));
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @Override
   public synchronized Set<VariableEntity> getVariableEntities() {
     Value tableWrapperLastUpdate = getTimestamps().getLastUpdate();
@@ -434,8 +490,12 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
 
   protected Set<VariableEntity> loadVariableEntities() {
     // do not use Guava functional stuff to avoid multiple iterations over entities
-    ImmutableSet.Builder<VariableEntity> builder = ImmutableSet.builder();
-    if(hasVariables()) {
+    VariableEntitySet.Builder builder = VariableEntitySet.builder();
+    if(hasVariables() && getWhereClause() instanceof BatchWhereClause) {
+      for(List<VariableEntity> batch : Iterables.partition(super.getVariableEntities(), WHERE_BATCH_SIZE)) {
+        addSelectedVariableEntities(builder, batch);
+      }
+    } else if(hasVariables()) {
       for(VariableEntity entity : super.getVariableEntities()) {
         // transform super.getVariableEntities() using getVariableEntityMappingFunction()
         // (which may modified entity identifiers)
@@ -451,6 +511,30 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
     return builder.build();
   }
 
+  /**
+   * Same as filtering the mapped entities with {@link #hasValueSet(VariableEntity)}, except that their value sets are
+   * submitted at once to the {@link BatchWhereClause}.
+   */
+  private void addSelectedVariableEntities(VariableEntitySet.Builder builder,
+      Iterable<VariableEntity> entities) {
+    List<VariableEntity> candidates = Lists.newArrayList();
+    List<ValueSet> valueSets = Lists.newArrayList();
+    for(VariableEntity entity : entities) {
+      VariableEntity mapped = getVariableEntityMappingFunction().apply(entity);
+      VariableEntity unmapped = mapped == null ? null : getVariableEntityMappingFunction().unapply(mapped);
+      if(unmapped != null && super.hasValueSet(unmapped)) {
+        candidates.add(mapped);
+        valueSets.add(super.getValueSet(unmapped));
+      }
+    }
+    if(valueSets.isEmpty()) return;
+
+    boolean[] selected = ((BatchWhereClause) getWhereClause()).where(valueSets, this);
+    for(int i = 0; i < selected.length; i++) {
+      if(selected[i]) builder.add(candidates.get(i));
+    }
+  }
+
   public void setDatasource(ViewAwareDatasource datasource) {
     viewDatasource = datasource;
   }
@@ -465,6 +549,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
   public void setSelectClause(@NotNull SelectClause selectClause) {
     Preconditions.checkArgument(selectClause != null, "null selectClause");
     select = selectClause;
+    MagmaEngine.registryChanged();
   }
 
   @SuppressWarnings("ConstantConditions")
@@ -477,6 +562,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
   public void setListClause(@NotNull ListClause listClause) {
     Preconditions.checkArgument(listClause != null, "null listClause");
     variables = listClause;
+    MagmaEngine.registryChanged();
   }
 
   @NotNull
@@ -522,7 +608,7 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
     return !(select instanceof NoneClause) || variables.getVariableValueSources().iterator().hasNext();
   }
 
-  protected class ViewVariableValueSource extends AbstractVariableValueSourceWrapper {
+  protected class ViewVariableValueSource extends AbstractVariableValueSourceWrapper implements BatchValueSource {
 
     public ViewVariableValueSource(VariableValueSource wrapped) {
       super(wrapped);
@@ -534,6 +620,15 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
       return getWrapped().getValue(getValueSetMappingFunction().unapply(valueSet));
     }
 
+    @Override
+    public List<Value> getValues(List<ValueSet> valueSets) {
+      List<ValueSet> unmapped = Lists.newArrayListWithCapacity(valueSets.size());
+      for(ValueSet valueSet : valueSets) {
+        unmapped.add(getValueSetMappingFunction().unapply(valueSet));
+      }
+      return Values.getValues(getWrapped(), unmapped);
+    }
+
     @NotNull
     @Override
     public VectorSource asVectorSource() {
@@ -148,34 +148,40 @@ public class ViewAwareDatasource extends AbstractDatasourceWrapper {
     views.put(view.getName(), view);
     view.setDatasource(this);
     lastUpdate = DateTimeType.get().now();
+    MagmaEngine.registryChanged();
   }
 
   public synchronized void removeView(String name) {
     if(views.containsKey(name)) {
       View view = views.get(name);
-      evictVariableEntitiesCache(view);
+      evictViewCaches(view);
       views.remove(name);
       Disposables.dispose(view);
       lastUpdate = DateTimeType.get().now();
+      MagmaEngine.registryChanged();
     }
   }
 
   public synchronized void renameView(String name, String newName) {
     if(views.containsKey(name)) {
       View view = views.remove(name);
-      evictVariableEntitiesCache(view);
+      evictViewCaches(view);
       view.setName(newName);
       views.put(newName, view);
       lastUpdate = DateTimeType.get().now();
+      MagmaEngine.registryChanged();
     }
   }
 
-  private void evictVariableEntitiesCache(View view) {
+  private void evictViewCaches(View view) {
     if (MagmaEngine.get().hasExtension(MagmaCacheExtension.class)) {
       MagmaCacheExtension cacheExtension = MagmaEngine.get().getExtension(MagmaCacheExtension.class);
       if (cacheExtension.hasVariableEntitiesCache()) {
         cacheExtension.getVariableEntitiesCache().evict(view.getTableReference());
       }
+      if (cacheExtension.hasWhereClauseCache()) {
+        cacheExtension.getWhereClauseCache().evict(view.getTableCacheKey());
+      }
     }
   }
 
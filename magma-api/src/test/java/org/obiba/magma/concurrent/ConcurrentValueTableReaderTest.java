@@ -0,0 +1,112 @@
+package org.obiba.magma.concurrent;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ConcurrentValueTableReaderTest extends AbstractMagmaTest {
+
+  private static final int NB_ENTITIES = 1000;
+
+  @Test
+  public void test_read_one_by_one() {
+    StaticValueTable table = createTable();
+    RecordingCallback callback = new RecordingCallback();
+    ConcurrentValueTableReader.Builder.newReader().from(table).to(callback).withReaders(4).withBufferSize(10).build()
+        .read();
+    assertRead(callback);
+  }
+
+  @Test
+  public void test_read_by_batches() {
+    StaticValueTable table = createTable();
+    RecordingCallback callback = new RecordingCallback();
+    // batch size does not divide the number of entities: the last batches are partial
+    ConcurrentValueTableReader.Builder.newReader().from(table).to(callback).withReaders(4).withBufferSize(2)
+        .withBatchSize(7).build().read();
+    assertRead(callback);
+  }
+
+  @Test
+  public void test_cancelled_read_completes() {
+    StaticValueTable table = createTable();
+    RecordingCallback callback = new RecordingCallback() {
+      @Override
+      public boolean isCancelled() {
+        return true;
+      }
+    };
+    ConcurrentValueTableReader.Builder.newReader().from(table).to(callback).withReaders(4).build().read();
+    assertThat(callback.completed).isTrue();
+    assertThat(callback.values).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_invalid_batch_size() {
+    ConcurrentValueTableReader.Builder.newReader().withBatchSize(0);
+  }
+
+  private void assertRead(RecordingCallback callback) {
+    assertThat(callback.entities).hasSize(NB_ENTITIES);
+    assertThat(callback.completed).isTrue();
+    assertThat(callback.values).hasSize(NB_ENTITIES);
+    for(Map.Entry<String, Value> entry : callback.values.entrySet()) {
+      assertThat(entry.getValue()).isEqualTo(IntegerType.get().valueOf(Integer.valueOf(entry.getKey())));
+    }
+  }
+
+  private StaticValueTable createTable() {
+    List<String> identifiers = Lists.newArrayList();
+    for(int i = 0; i < NB_ENTITIES; i++) {
+      identifiers.add(Integer.toString(i));
+    }
+    StaticValueTable table = new StaticValueTable(new StaticDatasource("ds"), "table", identifiers);
+    Variable variable = Variable.Builder.newVariable("var", IntegerType.get(), "Participant").build();
+    for(String identifier : identifiers) {
+      table.addValues(identifier, variable, Integer.valueOf(identifier));
+    }
+    return table;
+  }
+
+  private static class RecordingCallback implements ConcurrentValueTableReader.ConcurrentReaderCallback {
+
+    private final Map<String, Value> values = Maps.newHashMap();
+
+    private List<VariableEntity> entities;
+
+    private boolean completed;
+
+    @Override
+    public void onBegin(List<VariableEntity> entities, Variable... variables) {
+      this.entities = entities;
+    }
+
+    @Override
+    public void onValues(VariableEntity entity, Variable[] variables, Value... values) {
+      assertThat(this.values.put(entity.getIdentifier(), values[0])).isNull();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.obiba.magma.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Set;
+
+import org.junit.Test;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.test.AbstractMagmaTest;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class VariableEntitySetTest extends AbstractMagmaTest {
+
+  private static final VariableEntity P1 = new VariableEntityBean("Participant", "1");
+
+  private static final VariableEntity P2 = new VariableEntityBean("Participant", "2");
+
+  private static final VariableEntity P3 = new VariableEntityBean("Participant", "3");
+
+  private static final VariableEntity I1 = new VariableEntityBean("Instrument", "1");
+
+  @Test
+  public void test_dictionary_gives_one_ordinal_per_entity() {
+    VariableEntityDictionary dictionary = MagmaEngine.get().getVariableEntityDictionary();
+    int ordinal = dictionary.getOrdinal(P1);
+    assertThat(dictionary.getOrdinal(new VariableEntityBean("Participant", "1"))).isEqualTo(ordinal);
+    assertThat(dictionary.getOrdinal(I1)).isNotEqualTo(ordinal);
+    assertThat(dictionary.getEntity(ordinal)).isEqualTo(P1);
+    assertThat(dictionary.findOrdinal(new VariableEntityBean("Participant", "unknown"))).isEqualTo(-1);
+  }
+
+  @Test
+  public void test_set_view() {
+    Set<VariableEntity> entities = VariableEntitySet.copyOf(ImmutableSet.of(P1, P2, I1));
+    assertThat(entities).hasSize(3);
+    assertThat(entities.contains(new VariableEntityBean("Participant", "2"))).isTrue();
+    assertThat(entities.contains(P3)).isFalse();
+    assertThat(entities.contains(new VariableEntityBean("Instrument", "2"))).isFalse();
+    assertThat(entities).isEqualTo(ImmutableSet.of(P1, P2, I1));
+    assertThat(ImmutableSet.of(P1, P2, I1)).isEqualTo(entities);
+    assertThat(entities.hashCode()).isEqualTo(ImmutableSet.of(P1, P2, I1).hashCode());
+  }
+
+  @Test
+  public void test_union_intersection_difference() {
+    VariableEntitySet set12 = VariableEntitySet.copyOf(ImmutableSet.of(P1, P2));
+    VariableEntitySet set23 = VariableEntitySet.copyOf(ImmutableSet.of(P2, P3));
+
+    assertThat(set12.union(set23)).isEqualTo(ImmutableSet.of(P1, P2, P3));
+    assertThat(set12.intersection(set23)).isEqualTo(ImmutableSet.of(P2));
+    assertThat(set12.difference(set23)).isEqualTo(ImmutableSet.of(P1));
+    assertThat(set12.intersection(ImmutableSet.of(P2, P3))).isEqualTo(ImmutableSet.of(P2));
+    assertThat(set12.difference(ImmutableSet.of(P2, P3))).isEqualTo(ImmutableSet.of(P1));
+    assertThat(set12.union(set23).containsAll(set12)).isTrue();
+    assertThat(set12.containsAll(set23)).isFalse();
+  }
+
+  @Test
+  public void test_copyOf_does_not_copy_entity_set() {
+    VariableEntitySet entities = VariableEntitySet.copyOf(ImmutableSet.of(P1, P2));
+    assertThat(VariableEntitySet.copyOf(entities)).isSameAs(entities);
+    assertThat(VariableEntitySet.copyOf(ImmutableSet.<VariableEntity>of())).isSameAs(VariableEntitySet.of());
+  }
+
+  @Test
+  public void test_iteration_order_is_first_seen_order() {
+    VariableEntity first = new VariableEntityBean("Participant", "z-first");
+    VariableEntity second = new VariableEntityBean("Participant", "a-second");
+    VariableEntitySet.copyOf(ImmutableSet.of(first, second));
+    assertThat(Lists.newArrayList(VariableEntitySet.copyOf(ImmutableSet.of(second, first)))).containsExactly(first,
+        second);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void test_set_is_immutable() {
+    VariableEntitySet.copyOf(ImmutableSet.of(P1)).add(P2);
+  }
+
+  @Test
+  public void test_serialization() throws Exception {
+    VariableEntitySet entities = VariableEntitySet.copyOf(ImmutableSet.of(P1, P2, I1));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(entities);
+    }
+    try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Object read = in.readObject();
+      assertThat(read).isInstanceOf(VariableEntitySet.class);
+      assertThat(read).isEqualTo(entities);
+    }
+  }
+
+}
@@ -0,0 +1,50 @@
+package org.obiba.magma.support;
+
+import java.util.SortedSet;
+
+import org.junit.Test;
+import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.ValueBlock;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class VectorValueBlockTest extends AbstractMagmaTest {
+
+  @Test
+  public void test_columns_are_ordered_as_entities() {
+    StaticDatasource ds = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(ds, "table", ImmutableList.of("2", "1", "3"));
+    Variable name = Variable.Builder.newVariable("name", TextType.get(), "Participant").build();
+    Variable age = Variable.Builder.newVariable("age", IntegerType.get(), "Participant").build();
+    table.addValues("1", name, "one", age, 1);
+    table.addValues("2", name, "two", age, 2);
+    table.addValues("3", name, "three", age, 3);
+
+    SortedSet<VariableEntity> entities = Sets.<VariableEntity>newTreeSet(table.getVariableEntities());
+    ValueBlock block = table.getValueBlock(ImmutableList.of(name, age), entities);
+
+    assertThat(block.getVariableEntities()).isEqualTo(entities);
+    assertThat(block.getVariables()).containsExactly(name, age);
+    assertThat(block.getValues(name)).containsExactly(TextType.get().valueOf("one"), TextType.get().valueOf("two"),
+        TextType.get().valueOf("three"));
+    assertThat(Iterables.get(block.getValues(age), 2)).isEqualTo(IntegerType.get().valueOf(3));
+  }
+
+  @Test(expected = NoSuchVariableException.class)
+  public void test_unknown_variable() {
+    StaticDatasource ds = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(ds, "table", ImmutableList.of("1"));
+    table.getValueBlock(ImmutableList.of(Variable.Builder.newVariable("x", TextType.get(), "Participant").build()),
+        Sets.<VariableEntity>newTreeSet(table.getVariableEntities()));
+  }
+
+}
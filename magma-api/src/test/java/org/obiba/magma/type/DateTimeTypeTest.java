@@ -5,13 +5,20 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
+import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueType;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -141,6 +148,50 @@ public class DateTimeTypeTest extends BaseValueTypeTest {
     assertThat(new Date(expected.getTimeInMillis())).isEqualTo((Date) value.getValue());
   }
 
+  @Test
+  public void test_valueOfThatIncludesTimezoneOffset() {
+    Calendar expected = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    expected.clear();
+    expected.set(2011, Calendar.JANUARY, 25, 19, 0, 47);
+    expected.set(Calendar.MILLISECOND, 12);
+    Value value = DateTimeType.get().valueOf("2011-01-25T14:30:47.012-0430");
+    assertThat(new Date(expected.getTimeInMillis())).isEqualTo((Date) value.getValue());
+  }
+
+  @Test(expected = MagmaRuntimeException.class)
+  public void test_valueOfInvalidDay() {
+    DateTimeType.get().valueOf("2011-02-29 14:30");
+  }
+
+  @Test
+  public void test_valueOfFromSeveralThreads() throws Exception {
+    Calendar expected = Calendar.getInstance();
+    expected.clear();
+    expected.set(2011, Calendar.JANUARY, 25, 14, 30, 47);
+    final Date date = new Date(expected.getTimeInMillis());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = Lists.newArrayList();
+      for(int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            for(int j = 0; j < 1000; j++) {
+              String string = j % 2 == 0 ? "2011.01.25 14:30:47" : DateTimeType.get().toString(date);
+              if(!date.equals(DateTimeType.get().valueOf(string).getValue())) return false;
+            }
+            return true;
+          }
+        }));
+      }
+      for(Future<Boolean> future : futures) {
+        assertThat(future.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private void assertValueOfUsingDateFormat(String dateFormat) {
     assertValueOfUsingDateFormat(dateFormat, 0);
   }
@@ -144,6 +144,16 @@ public class DateTypeTest extends BaseValueTypeTest {
     getValueType().valueOf("2011_11_10");
   }
 
+  @Test(expected = MagmaRuntimeException.class)
+  public void test_valueOf_invalidDay() {
+    getValueType().valueOf("31/04/2011");
+  }
+
+  @Test
+  public void test_valueOf_singleDigitFields() {
+    assertThat(getValueType().valueOf("5/3/2011").getValue()).isEqualTo(new MagmaDate(2011, Calendar.MARCH, 5));
+  }
+
   @Test
   public void test_toString_nullValueReturnsNull() {
     String s = getValueType().toString((Object) null);
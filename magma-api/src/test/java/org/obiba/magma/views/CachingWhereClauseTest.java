@@ -0,0 +1,227 @@
+package org.obiba.magma.views;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.obiba.magma.MagmaCacheExtension;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.TimestampsBean;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.NullTimestamps;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.ValueSetBean;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.TextType;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CachingWhereClauseTest extends AbstractMagmaTest {
+
+  private final Map<String, Long> updates = Maps.newHashMap();
+
+  private final CountingClause clause = new CountingClause();
+
+  private TimestampedTable source;
+
+  private View view;
+
+  @Before
+  @Override
+  public void before() {
+    super.before();
+    source = new TimestampedTable(new StaticDatasource("source"), "table", updates, ImmutableList.of("1", "2", "3"));
+    source.addVariables(TextType.get(), "A");
+    for(String identifier : ImmutableList.of("1", "2", "3")) {
+      source.addValues(identifier, "A", "a" + identifier);
+      updates.put(identifier, 1000L);
+    }
+    view = View.Builder.newView("view", source).where(clause).cacheWhere().build();
+  }
+
+  @Test
+  public void test_entity_is_evaluated_once() {
+    assertThat(view.hasValueSet(entity("1"))).isTrue();
+    assertThat(view.hasValueSet(entity("1"))).isTrue();
+    assertThat(view.hasValueSet(entity("2"))).isFalse();
+    assertThat(view.hasValueSet(entity("2"))).isFalse();
+    assertThat(clause.count).isEqualTo(2);
+  }
+
+  @Test
+  public void test_updated_value_set_is_evaluated_again() {
+    view.hasValueSet(entity("1"));
+    updates.put("1", 2000L);
+    view.hasValueSet(entity("1"));
+    assertThat(clause.count).isEqualTo(2);
+  }
+
+  @Test
+  public void test_updated_view_is_evaluated_again() {
+    view.hasValueSet(entity("1"));
+    view.setUpdated(DateTimeType.get().valueOf(new Date(3000L)));
+    view.hasValueSet(entity("1"));
+    view.hasValueSet(entity("1"));
+    assertThat(clause.count).isEqualTo(2);
+  }
+
+  @Test
+  public void test_view_timestamps_are_not_read_for_each_value_set() {
+    view.hasValueSet(entity("1"));
+    int reads = source.timestampsReads;
+    view.hasValueSet(entity("1"));
+    view.hasValueSet(entity("2"));
+    view.getValueSet(entity("1"));
+    assertThat(source.timestampsReads).isEqualTo(reads);
+  }
+
+  @Test
+  public void test_view_updated_now_keeps_results() {
+    source.updatedNow = true;
+    view.getValueSets();
+    view.getValueSets();
+    assertThat(clause.count).isEqualTo(3);
+  }
+
+  @Test
+  public void test_value_sets_without_timestamps_are_always_evaluated() {
+    updates.clear();
+    view.setUpdated(null);
+    view.hasValueSet(entity("1"));
+    view.hasValueSet(entity("1"));
+    assertThat(clause.count).isEqualTo(2);
+  }
+
+  @Test
+  public void test_batch_evaluates_uncached_value_sets_only() {
+    view.hasValueSet(entity("3"));
+    assertThat(Iterables.size(view.getValueSets())).isEqualTo(2);
+    assertThat(clause.count).isEqualTo(3);
+    assertThat(Iterables.size(view.getValueSets())).isEqualTo(2);
+    assertThat(clause.count).isEqualTo(3);
+  }
+
+  @Test
+  public void test_results_are_stored_in_cache_manager() {
+    ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("magma-where-clause");
+    MagmaEngine.get().extend(new MagmaCacheExtension(cacheManager));
+    view.hasValueSet(entity("1"));
+    assertThat(cacheManager.getCache("magma-where-clause").get(view.getTableCacheKey())).isNotNull();
+
+    cacheManager.getCache("magma-where-clause").evict(view.getTableCacheKey());
+    view.hasValueSet(entity("1"));
+    assertThat(clause.count).isEqualTo(2);
+  }
+
+  @Test
+  public void test_results_of_sparse_ordinals() {
+    CachingWhereClause.WhereClauseResults results = new CachingWhereClause.WhereClauseResults(1000L);
+    for(int i = 0; i < 1000; i++) {
+      results.put(i * 1000003, i, i % 2 == 0);
+    }
+    for(int i = 0; i < 1000; i++) {
+      assertThat(results.get(i * 1000003, i)).isEqualTo(i % 2 == 0);
+      assertThat(results.get(i * 1000003, i + 1)).isNull();
+    }
+    assertThat(results.get(1, 0)).isNull();
+  }
+
+  @Test
+  public void test_results_without_view_update_are_kept_when_view_gets_one() {
+    CachingWhereClause.WhereClauseResults results = new CachingWhereClause.WhereClauseResults(
+        CachingWhereClause.WhereClauseResults.NO_UPDATE);
+    results.put(1, 1000L, true);
+    assertThat(results.isUpToDate(2000L)).isTrue();
+    assertThat(results.get(1, 1000L)).isTrue();
+    assertThat(results.isUpToDate(3000L)).isFalse();
+  }
+
+  @Test
+  public void test_ordinal_updates_are_replaced() {
+    CachingWhereClause.OrdinalUpdates updates = new CachingWhereClause.OrdinalUpdates();
+    updates.put(42, 1000L);
+    updates.put(42, 2000L);
+    assertThat(updates.size()).isEqualTo(1);
+    assertThat(updates.contains(42, 1000L)).isFalse();
+    assertThat(updates.contains(42, 2000L)).isTrue();
+  }
+
+  private static VariableEntity entity(String identifier) {
+    return new VariableEntityBean("Participant", identifier);
+  }
+
+  /**
+   * Selects the entities which identifier is odd, counting its evaluations.
+   */
+  private static class CountingClause implements WhereClause {
+
+    private int count;
+
+    @Override
+    public boolean where(ValueSet valueSet) {
+      return where(valueSet, null);
+    }
+
+    @Override
+    public boolean where(ValueSet valueSet, View view) {
+      count++;
+      return Integer.parseInt(valueSet.getVariableEntity().getIdentifier()) % 2 == 1;
+    }
+  }
+
+  /**
+   * A table which value sets are updated at the given times, counting the reads of its own timestamps.
+   */
+  private static class TimestampedTable extends StaticValueTable {
+
+    private final Map<String, Long> updates;
+
+    private int timestampsReads;
+
+    private boolean updatedNow;
+
+    private TimestampedTable(StaticDatasource datasource, String name, Map<String, Long> updates,
+        Iterable<String> entities) {
+      super(datasource, name, ImmutableSet.copyOf(entities));
+      this.updates = updates;
+    }
+
+    @Override
+    public ValueSet getValueSet(VariableEntity entity) {
+      return new ValueSetBean(this, entity) {
+        @Override
+        public Timestamps getTimestamps() {
+          return getValueSetTimestamps(getVariableEntity());
+        }
+      };
+    }
+
+    @Override
+    public Timestamps getTimestamps() {
+      timestampsReads++;
+      return updatedNow
+          ? new TimestampsBean(DateTimeType.get().valueOf(new Date(0)), DateTimeType.get().now())
+          : super.getTimestamps();
+    }
+
+    @Override
+    public Timestamps getValueSetTimestamps(VariableEntity entity) {
+      Long update = updates.get(entity.getIdentifier());
+      if(update == null) return NullTimestamps.get();
+      return new TimestampsBean(DateTimeType.get().valueOf(new Date(0)), DateTimeType.get().valueOf(new Date(update)));
+    }
+  }
+
+}
@@ -1,26 +1,40 @@
 package org.obiba.magma.views;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.validation.constraints.NotNull;
+
+import org.easymock.IAnswer;
 import org.junit.Test;
 import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.TimestampsBean;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.NullTimestamps;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.TextType;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
@@ -214,6 +228,78 @@ public class JoinTableTest extends AbstractMagmaTest {
     assertThat(joinTable.getValueSet(newEntity("2"))).isNotNull();
   }
 
+  @Test
+  public void test_getVariableEntities_indexed_until_update() {
+    JoinTable joinTable = JoinTableBuilder.newBuilder() //
+        .withMockTable(newTableMock().withEntities("1").withLastUpdates(1000, 1000, 1000, 2000)) //
+        .withMockTable(newTableMock().withEntities("1", "2").withLastUpdates(1000)).build();
+
+    Set<VariableEntity> entities = joinTable.getVariableEntities();
+    assertThat(entities).isEqualTo(ImmutableSet.of(newEntity("1"), newEntity("2")));
+    assertThat(joinTable.getVariableEntities()).isSameAs(entities);
+    // first table updated
+    assertThat(joinTable.getVariableEntities()).isNotSameAs(entities).isEqualTo(entities);
+  }
+
+  @Test
+  public void test_hasValueSet_and_getValueSet_use_index() {
+    // the tables are only asked for the value sets the index does not have, the mocks would fail otherwise
+    JoinTable joinTable = JoinTableBuilder.newBuilder() //
+        .withMockTable(newTableMock().withEntities("1").withLastUpdates(1000).expectHasValueSet("2", false)
+            .expectHasValueSet("3", false)) //
+        .withMockTable(newTableMock().withEntities("1", "2").withLastUpdates(1000).expectValueSetTimestamps("2")
+            .expectHasValueSet("3", false)) //
+        .build();
+
+    assertThat(joinTable.hasValueSet(newEntity("1"))).isTrue();
+    assertThat(joinTable.hasValueSet(newEntity("2"))).isTrue();
+    assertThat(joinTable.hasValueSet(newEntity("3"))).isFalse();
+    assertThat(joinTable.getValueSet(newEntity("2")).getVariableEntity()).isEqualTo(newEntity("2"));
+    assertThat(joinTable.getValueSetTimestamps(newEntity("2"))).isNotNull();
+  }
+
+  @Test
+  public void test_table_which_last_update_changes_on_every_read_is_not_indexed() {
+    AtomicInteger reads = new AtomicInteger();
+    JoinTable joinTable = JoinTableBuilder.newBuilder() //
+        .withMockTable(newTableMock().withEntities("1").withChangingLastUpdate(reads).expectHasValueSet("2", false)) //
+        .withMockTable(newTableMock().withEntities("1", "2").withLastUpdates(1000).expectHasValueSet("2", true)) //
+        .build();
+
+    assertThat(joinTable.getVariableEntities()).isEqualTo(ImmutableSet.of(newEntity("1"), newEntity("2")));
+    int entitiesReads = reads.get();
+    // the timestamps are not read again for each entity
+    for(int i = 0; i < 10; i++) {
+      assertThat(joinTable.hasValueSet(newEntity("2"))).isTrue();
+      assertThat(joinTable.getValueSet(newEntity("2"))).isNotNull();
+    }
+    assertThat(reads.get()).isEqualTo(entitiesReads);
+  }
+
+  @Test
+  public void test_value_sets_written_after_index_are_found() {
+    WritableTable first = new WritableTable("first", "A", "1");
+    WritableTable second = new WritableTable("second", "B");
+    first.write("1", "A", "a1");
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(first, second));
+    assertThat(joinTable.getVariableEntities()).containsOnly(newEntity("1"));
+
+    // a new entity
+    second.write("2", "B", "b2");
+    assertThat(joinTable.hasValueSet(newEntity("2"))).isTrue();
+    ValueSet valueSet = joinTable.getValueSet(newEntity("2"));
+    assertThat(joinTable.getValue(joinTable.getVariable("B"), valueSet)).isEqualTo(TextType.get().valueOf("b2"));
+
+    // an entity that a table newly holds
+    second.write("1", "B", "b1");
+    valueSet = joinTable.getValueSet(newEntity("1"));
+    assertThat(joinTable.getValue(joinTable.getVariable("A"), valueSet)).isEqualTo(TextType.get().valueOf("a1"));
+    assertThat(joinTable.getValue(joinTable.getVariable("B"), valueSet)).isEqualTo(TextType.get().valueOf("b1"));
+
+    // the timestamps are checked again when the entities are requested
+    assertThat(joinTable.getVariableEntities()).containsOnly(newEntity("1"), newEntity("2"));
+  }
+
   //TODO testGetValue but hard to test with mockups
   // @Test
 //  public void testGetValue() {
@@ -243,6 +329,49 @@ public class JoinTableTest extends AbstractMagmaTest {
   // Helper Methods
   //
 
+  /**
+   * A table which entities are the ones written, updated at each write.
+   */
+  private static class WritableTable extends StaticValueTable {
+
+    private final Set<String> written = Sets.newHashSet();
+
+    private long lastUpdate = 1000;
+
+    private WritableTable(String name, String variable, String... entities) {
+      super(new StaticDatasource("ds"), name, ImmutableSet.copyOf(entities));
+      addVariables(TextType.get(), variable);
+      written.addAll(Arrays.asList(entities));
+    }
+
+    private void write(String identifier, String variable, String value) {
+      addValues(identifier, variable, value);
+      written.add(identifier);
+      lastUpdate++;
+    }
+
+    @Override
+    public boolean hasValueSet(VariableEntity entity) {
+      return written.contains(entity.getIdentifier());
+    }
+
+    @Override
+    public Set<VariableEntity> getVariableEntities() {
+      ImmutableSet.Builder<VariableEntity> entities = ImmutableSet.builder();
+      for(String identifier : written) {
+        entities.add(newEntity(identifier));
+      }
+      return entities.build();
+    }
+
+    @NotNull
+    @Override
+    public Timestamps getTimestamps() {
+      return new TimestampsBean(DateTimeType.get().valueOf(new Date(0)),
+          DateTimeType.get().valueOf(new Date(lastUpdate)));
+    }
+  }
+
   static class JoinTableBuilder {
 
     private final List<ValueTable> mocks = new ArrayList<>();
@@ -293,6 +422,10 @@ public class JoinTableTest extends AbstractMagmaTest {
 
     private final Collection<Variable> variables = new HashSet<>();
 
+    private final List<Timestamps> timestamps = new ArrayList<>();
+
+    private IAnswer<Timestamps> changingLastUpdate;
+
     static MockValueTableBuilder newTableMock() {
       return newTableMock(PARTICIPANT_ENTITY_TYPE);
     }
@@ -337,12 +470,53 @@ public class JoinTableTest extends AbstractMagmaTest {
       return this;
     }
 
+    MockValueTableBuilder expectValueSetTimestamps(String identifier) {
+      expect(mock.getValueSetTimestamps(new VariableEntityBean(entityType, identifier))).andReturn(NullTimestamps.get())
+          .once();
+      return this;
+    }
+
+    /**
+     * The last update of the table, one per call to getTimestamps(), the last one being kept for the next calls.
+     */
+    MockValueTableBuilder withLastUpdates(long... lastUpdates) {
+      for(long lastUpdate : lastUpdates) {
+        timestamps.add(new TimestampsBean(DateTimeType.get().valueOf(new Date(0)),
+            DateTimeType.get().valueOf(new Date(lastUpdate))));
+      }
+      return this;
+    }
+
+    /**
+     * The last update of the table changes on every call to getTimestamps().
+     */
+    MockValueTableBuilder withChangingLastUpdate(final AtomicInteger reads) {
+      changingLastUpdate = new IAnswer<Timestamps>() {
+        @Override
+        public Timestamps answer() throws Throwable {
+          return new TimestampsBean(DateTimeType.get().valueOf(new Date(0)),
+              DateTimeType.get().valueOf(new Date(1000 + reads.incrementAndGet())));
+        }
+      };
+      return this;
+    }
+
     MockValueTableBuilder withEntities(String... identifiers) {
       expect(mock.getVariableEntities()).andReturn(createEntitySet(entityType, identifiers)).anyTimes();
       return this;
     }
 
     ValueTable build() {
+      if(changingLastUpdate != null) {
+        expect(mock.getTimestamps()).andAnswer(changingLastUpdate).anyTimes();
+      } else if(timestamps.isEmpty()) {
+        expect(mock.getTimestamps()).andReturn(NullTimestamps.get()).anyTimes();
+      } else {
+        for(int i = 0; i < timestamps.size() - 1; i++) {
+          expect(mock.getTimestamps()).andReturn(timestamps.get(i)).once();
+        }
+        expect(mock.getTimestamps()).andReturn(timestamps.get(timestamps.size() - 1)).anyTimes();
+      }
       replay(mock);
       return mock;
     }
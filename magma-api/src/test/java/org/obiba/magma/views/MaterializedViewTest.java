@@ -0,0 +1,162 @@
+package org.obiba.magma.views;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.TimestampsBean;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.NullTimestamps;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class MaterializedViewTest extends AbstractMagmaTest {
+
+  private final Map<String, Long> sourceUpdates = Maps.newHashMap();
+
+  private final Map<String, Long> materializedUpdates = Maps.newHashMap();
+
+  private StaticValueTable source;
+
+  private MaterializedView materializedView;
+
+  @Before
+  @Override
+  public void before() {
+    super.before();
+    source = new TimestampedTable(new StaticDatasource("source"), "table", sourceUpdates,
+        ImmutableList.of("1", "2", "3"));
+    source.addVariables(TextType.get(), "A");
+    for(String identifier : ImmutableList.of("1", "2", "3")) {
+      source.addValues(identifier, "A", "a" + identifier);
+      sourceUpdates.put(identifier, 1000L);
+    }
+
+    StaticDatasource datasource = new StaticDatasource("materialized");
+    datasource.addValueTable(
+        new TimestampedTable(datasource, "view", materializedUpdates, ImmutableList.<String>of()));
+    materializedView = new MaterializedView(View.Builder.newView("view", source).build(), datasource);
+  }
+
+  @Test
+  public void test_first_refresh_writes_all_value_sets() throws Exception {
+    assertThat(materializedView.refresh()).isEqualTo(3);
+    assertThat(materializedView.getVariableEntities()).hasSize(3);
+    assertThat(materializedView.getValue(materializedView.getVariable("A"), materializedView.getValueSet(entity("2")))
+        .toString()).isEqualTo("a2");
+  }
+
+  @Test
+  public void test_refresh_writes_updated_value_sets_only() throws Exception {
+    materializedView.refresh();
+    assertThat(materializedView.refresh()).isEqualTo(0);
+
+    source.addValues("2", "A", "updated");
+    sourceUpdates.put("2", System.currentTimeMillis() + 60000);
+    assertThat(materializedView.refresh()).isEqualTo(1);
+    assertThat(materializedView.getValue(materializedView.getVariable("A"), materializedView.getValueSet(entity("2")))
+        .toString()).isEqualTo("updated");
+  }
+
+  @Test
+  public void test_refresh_writes_value_sets_updated_during_previous_refresh() throws Exception {
+    materializedView.refresh();
+
+    // updated before the end of the refresh, after being evaluated
+    sourceUpdates.put("2", 2000L);
+    assertThat(materializedView.refresh()).isEqualTo(1);
+    assertThat(materializedView.refresh()).isEqualTo(0);
+  }
+
+  @Test
+  public void test_source_updates_are_not_exposed() throws Exception {
+    materializedView.refresh();
+    assertThat(materializedView.getVariables()).hasSize(1);
+    assertThat(materializedView.getVariableCount()).isEqualTo(1);
+    assertThat(materializedView.hasVariable(MaterializedView.SOURCE_UPDATE_VARIABLE)).isFalse();
+  }
+
+  @Test
+  public void test_full_refresh_writes_all_value_sets() throws Exception {
+    materializedView.refresh();
+    assertThat(materializedView.refresh(true)).isEqualTo(3);
+  }
+
+  @Test
+  public void test_variables_change_writes_all_value_sets() throws Exception {
+    materializedView.refresh();
+    source.addVariables(TextType.get(), "B");
+    assertThat(materializedView.refresh()).isEqualTo(3);
+    assertThat(materializedView.hasVariable("B")).isTrue();
+  }
+
+  @Test
+  public void test_value_type_change_writes_all_value_sets() throws Exception {
+    materializedView.refresh();
+    source.removeVariable("A");
+    source.addVariables(IntegerType.get(), "A");
+    for(String identifier : ImmutableList.of("1", "2", "3")) {
+      source.addValues(identifier, "A", identifier);
+    }
+    assertThat(materializedView.refresh()).isEqualTo(3);
+    assertThat(materializedView.getVariable("A").getValueType()).isEqualTo(IntegerType.get());
+    assertThat(materializedView.getValue(materializedView.getVariable("A"), materializedView.getValueSet(entity("2"))))
+        .isEqualTo(IntegerType.get().valueOf(2));
+  }
+
+  @Test
+  public void test_materialized_on_first_read() {
+    StaticDatasource datasource = new StaticDatasource("empty");
+    materializedView = new MaterializedView(materializedView.getView(), datasource);
+    assertThat(materializedView.getName()).isEqualTo("view");
+    assertThat(materializedView.getVariableEntities()).hasSize(3);
+    assertThat(datasource.hasValueTable("view")).isTrue();
+    assertThat(materializedView.isView()).isTrue();
+  }
+
+  private static VariableEntity entity(String identifier) {
+    return new VariableEntityBean("Participant", identifier);
+  }
+
+  /**
+   * A table which value sets are updated at the given times, or when written if no time is given.
+   */
+  private static class TimestampedTable extends StaticValueTable {
+
+    private final Map<String, Long> updates;
+
+    private TimestampedTable(StaticDatasource datasource, String name, Map<String, Long> updates,
+        Iterable<String> entities) {
+      super(datasource, name, ImmutableSet.copyOf(entities));
+      this.updates = updates;
+    }
+
+    @Override
+    public StaticValueTable addValues(String entity, Object... variableAndValues) {
+      updates.put(entity, System.currentTimeMillis());
+      return super.addValues(entity, variableAndValues);
+    }
+
+    @Override
+    public Timestamps getValueSetTimestamps(VariableEntity entity) {
+      Long update = updates.get(entity.getIdentifier());
+      if(update == null) return NullTimestamps.get();
+      return new TimestampsBean(DateTimeType.get().valueOf(new Date(0)), DateTimeType.get().valueOf(new Date(update)));
+    }
+
+  }
+
+}
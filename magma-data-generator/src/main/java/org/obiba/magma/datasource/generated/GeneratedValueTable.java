@@ -17,12 +17,14 @@ import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.support.VectorValueBlock;
 import org.obiba.magma.type.DateTimeType;
 
 import com.google.common.base.Function;
@@ -187,6 +189,13 @@ public class GeneratedValueTable implements ValueTable {
     return generators.get(variableName);
   }
 
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new VectorValueBlock(this, variables, entities);
+  }
+
   @Override
   public Iterable<Variable> getVariables() {
     return dictionary;
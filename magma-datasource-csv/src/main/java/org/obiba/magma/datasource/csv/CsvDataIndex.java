@@ -0,0 +1,207 @@
+package org.obiba.magma.datasource.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.MagmaRuntimeException;
+
+import com.google.common.collect.ObjectArrays;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+/**
+ * Index of the records of a CSV data file by entity identifier: each record is located by its byte offsets in the file
+ * and read by seeking to it. Memory usage only depends on the number of entities, not on the size of the file.
+ * <p/>
+ * The file is indexed in one pass, incrementally: records appended to the file after it was indexed are indexed on
+ * next lookup. When an identifier appears more than once, the last record wins.
+ */
+class CsvDataIndex {
+
+  private static final byte LF = '\n';
+
+  private static final byte CR = '\r';
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File dataFile;
+
+  private final Charset charset;
+
+  private final CSVParser parser;
+
+  private final byte quote;
+
+  private final Map<String, CsvIndexEntry> entries = new HashMap<>();
+
+  /**
+   * Number of raw lines, then of records (first rows and header), to be skipped before the data records.
+   */
+  private int linesToSkip;
+
+  private int recordsToSkip;
+
+  /**
+   * Position up to which the file was indexed.
+   */
+  private long indexedLength;
+
+  @Nullable
+  private RandomAccessFile dataAccess;
+
+  CsvDataIndex(File dataFile, Charset charset, CSVParser parser, char quote, int firstRow) {
+    this.dataFile = dataFile;
+    this.charset = charset;
+    this.parser = parser;
+    this.quote = (byte) quote;
+    // same positioning as the data file reader: lines skipped by the reader, then rows and header
+    linesToSkip = firstRow - 1;
+    recordsToSkip = firstRow;
+  }
+
+  /**
+   * Whether records can be delimited by looking at the bytes of the file: newline and quote characters must be encoded
+   * on a single byte of the same value (UTF-8, ISO-8859-x etc.).
+   *
+   * @param charset
+   * @param quote
+   * @return
+   */
+  static boolean isSupported(Charset charset, char quote) {
+    return isSingleByte("\n", charset) && isSingleByte("\r", charset) && isSingleByte(String.valueOf(quote), charset);
+  }
+
+  private static boolean isSingleByte(String str, Charset charset) {
+    byte[] bytes = str.getBytes(charset);
+    return bytes.length == 1 && bytes[0] == str.charAt(0);
+  }
+
+  /**
+   * Get the parsed record of the entity.
+   *
+   * @param identifier
+   * @return null if there is no record for this entity
+   */
+  @Nullable
+  synchronized String[] getLine(String identifier) {
+    try {
+      update();
+      CsvIndexEntry entry = entries.get(identifier);
+      return entry == null ? null : parse(read(entry));
+    } catch(IOException e) {
+      throw new MagmaRuntimeException("Failed reading CSV data file", e);
+    }
+  }
+
+  synchronized void close() {
+    if(dataAccess == null) return;
+    try {
+      dataAccess.close();
+    } catch(IOException e) {
+      // ignore
+    } finally {
+      dataAccess = null;
+    }
+  }
+
+  /**
+   * Index the records that were added since last indexation.
+   *
+   * @throws IOException
+   */
+  private void update() throws IOException {
+    if(!dataFile.exists() || dataFile.length() <= indexedLength) return;
+
+    try(InputStream in = new FileInputStream(dataFile)) {
+      long skipped = 0;
+      while(skipped < indexedLength) {
+        skipped += in.skip(indexedLength - skipped);
+      }
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long start = indexedLength;
+      long position = indexedLength;
+      boolean quoted = false;
+      byte previous = 0;
+      int read;
+      while((read = in.read(buffer)) != -1) {
+        int recordStart = 0;
+        for(int i = 0; i < read; i++) {
+          byte b = buffer[i];
+          if(b == quote && linesToSkip == 0) {
+            quoted = !quoted;
+          } else if((b == LF || b == CR) && !quoted) {
+            // line feed of a CR-LF line end
+            boolean lineEnd = b == LF && previous == CR && i == recordStart && record.size() == 0;
+            if(!lineEnd) {
+              record.write(buffer, recordStart, i + 1 - recordStart);
+              addRecord(record.toByteArray(), start, position + i + 1);
+              record.reset();
+            }
+            recordStart = i + 1;
+            start = position + recordStart;
+          }
+          previous = b;
+        }
+        record.write(buffer, recordStart, read - recordStart);
+        position += read;
+      }
+      // last record may not be terminated by a line end
+      if(record.size() > 0) addRecord(record.toByteArray(), start, position);
+      indexedLength = position;
+    }
+  }
+
+  private void addRecord(byte[] bytes, long start, long end) throws IOException {
+    if(linesToSkip > 0) {
+      linesToSkip--;
+      return;
+    }
+    if(recordsToSkip > 0) {
+      recordsToSkip--;
+      return;
+    }
+    String[] line = parse(bytes);
+    if(line.length > 0 && !line[0].isEmpty()) {
+      entries.put(line[0], new CsvIndexEntry(start, end));
+    }
+  }
+
+  private byte[] read(CsvIndexEntry entry) throws IOException {
+    if(dataAccess == null) {
+      dataAccess = new RandomAccessFile(dataFile, "r");
+    }
+    byte[] bytes = new byte[(int) (entry.getEnd() - entry.getStart())];
+    dataAccess.seek(entry.getStart());
+    dataAccess.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Parse a record the way the CSV data file reader does: line ends are normalized to '\n' and the record end is
+   * dropped.
+   *
+   * @param bytes
+   * @return
+   * @throws IOException
+   */
+  private String[] parse(byte[] bytes) throws IOException {
+    int length = bytes.length;
+    while(length > 0 && (bytes[length - 1] == LF || bytes[length - 1] == CR)) {
+      length--;
+    }
+    String record = new String(bytes, 0, length, charset).replace("\r\n", "\n");
+    String[] line = parser.parseLineMulti(record);
+    // un-terminated quoted field at end of file: keep what was read, as the reader does
+    return parser.isPending() ? ObjectArrays.concat(line, parser.parseLineMulti(null), String.class) : line;
+  }
+}
@@ -2,14 +2,16 @@ package org.obiba.magma.datasource.csv;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
@@ -21,6 +23,8 @@ import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.NoSuchValueSetException;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
@@ -28,8 +32,10 @@ import org.obiba.magma.VariableEntity;
 import org.obiba.magma.datasource.csv.converter.VariableConverter;
 import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.DatasourceParsingException;
+import org.obiba.magma.support.ValueBlockBean;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.support.VariableEntityProvider;
+import org.obiba.magma.support.VariableEntitySet;
 import org.obiba.magma.type.TextType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,10 +73,17 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
 
   final Set<VariableEntity> entities = new LinkedHashSet<>();
 
-  private final Map<String, String[]> entityLinesBuffer = new LinkedHashMap<>();
+  /**
+   * Immutable copy of the entities, until some are added.
+   */
+  @Nullable
+  private volatile VariableEntitySet entitySet;
 
   private CSVReader csvDataReader;
 
+  @Nullable
+  private CsvDataIndex dataIndex;
+
   private boolean isVariablesFileEmpty;
 
   private boolean isDataFileEmpty;
@@ -110,22 +123,48 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
 
   @Override
   public Set<VariableEntity> getVariableEntities() {
-    return ImmutableSet.copyOf(variableEntityProvider.getVariableEntities());
+    VariableEntitySet set = entitySet;
+    if(set == null) {
+      set = VariableEntitySet.copyOf(variableEntityProvider.getVariableEntities());
+      entitySet = set;
+    }
+    return set;
+  }
+
+  void addVariableEntity(VariableEntity entity) {
+    if(entities.add(entity)) entitySet = null;
   }
 
   @Override
-  public synchronized ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
+  public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
     if(!entities.contains(entity)) {
       throw new NoSuchValueSetException(this, entity);
     }
-    // check if line is in the buffer
-    if(entityLinesBuffer.containsKey(entity.getIdentifier())) {
-      String[] line = entityLinesBuffer.get(entity.getIdentifier());
-      entityLinesBuffer.remove(entity.getIdentifier());
-      return new CsvValueSet(this, entity, dataHeaderMap, line);
+    return new CsvValueSet(this, entity, dataHeaderMap, readEntityLine(entity));
+  }
+
+  /**
+   * Reads the block with a single forward pass over the data file, without going through the shared reader and its
+   * lines buffer.
+   */
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    List<Variable> blockVariables = new ArrayList<>();
+    for(Variable variable : variables) {
+      blockVariables.add(getVariableValueSource(variable.getName()).getVariable());
+    }
+    Map<String, String[]> lines = readEntityLines(entities);
+    ValueBlockBean block = new ValueBlockBean(this, entities);
+    for(Variable variable : blockVariables) {
+      List<Value> column = new ArrayList<>(entities.size());
+      for(VariableEntity entity : entities) {
+        column.add(new CsvValueSet(this, entity, dataHeaderMap, lines.get(entity.getIdentifier())).getValue(variable));
+      }
+      block.addColumn(variable, column);
     }
-    // read line from data file
-    return readValueSet(entity);
+    return block;
   }
 
   @Override
@@ -142,6 +181,7 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
   @Override
   public void dispose() {
     resetCsvDataReader();
+    resetDataIndex();
   }
 
   //
@@ -149,40 +189,49 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
   //
 
   /**
-   * Read the value set from the data CSV file and buffer any other entities that could have encountered.
+   * Read the line of the entity from the data CSV file, using the data file index when the file encoding allows it.
    *
    * @param entity
    * @return
    */
-  @SuppressWarnings({ "OverlyLongMethod", "PMD.NcssMethodCount" })
-  private ValueSet readValueSet(VariableEntity entity) {
-    boolean found = false;
-    String[] line = null;
-    try {
-      boolean firstRead = csvDataReader == null;
-      String[] current = getCsvDataReader().readNext();
+  @Nullable
+  private String[] readEntityLine(VariableEntity entity) {
+    if(dataFile == null) return null;
+    CsvDataIndex index = getDataIndex();
+    return index == null
+        ? readEntityLines(ImmutableSet.of(entity)).get(entity.getIdentifier())
+        : index.getLine(entity.getIdentifier());
+  }
+
+  /**
+   * Read the lines of the requested entities from the data CSV file in one pass, stopping as soon as they are all
+   * found.
+   *
+   * @param requested
+   * @return the lines by entity identifier
+   */
+  private Map<String, String[]> readEntityLines(Set<VariableEntity> requested) {
+    Map<String, String[]> lines = new HashMap<>();
+    Set<String> identifiers = new HashSet<>();
+    for(VariableEntity entity : requested) {
+      if(entities.contains(entity)) identifiers.add(entity.getIdentifier());
+    }
+    if(identifiers.isEmpty()) return lines;
+
+    try(CSVReader reader = newCsvDataReader()) {
+      if(reader == null) return lines;
       // skip header
-      if(firstRead) current = getCsvDataReader().readNext();
-      while(current != null && !found) {
-        String id = current.length > 0 ? current[0] : "";
-        if(entity.getIdentifier().equals(id)) {
-          line = current;
-          found = true;
-        } else {
-          // put in the buffer
-          entityLinesBuffer.put(id, current);
-          current = getCsvDataReader().readNext();
+      String[] current = reader.readNext();
+      while(current != null && lines.size() < identifiers.size()) {
+        current = reader.readNext();
+        if(current != null && current.length > 0 && identifiers.contains(current[0])) {
+          lines.put(current[0], current);
         }
       }
-      if(!found) {
-        // re-read from the start
-        resetCsvDataReader();
-        return getValueSet(entity);
-      }
     } catch(IOException e) {
       throw new MagmaRuntimeException("Failed reading CSV data file", e);
     }
-    return new CsvValueSet(this, entity, dataHeaderMap, line);
+    return lines;
   }
 
   private void initialiseVariables() throws IOException {
@@ -299,21 +348,57 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
    *
    * @return
    */
-  @SuppressWarnings("OverlyNestedMethod")
   private CSVReader getCsvDataReader() {
     if(csvDataReader == null) {
-      csvDataReader = getCsvDatasource().getCsvReader(dataFile);
-      try {
-        // move to the first row
-        if(csvDataReader != null) for(int i = 1; i < getCsvDatasource().getFirstRow(); i++)
-          csvDataReader.readNext();
-      } catch(IOException e) {
-        // ignore
-      }
+      csvDataReader = newCsvDataReader();
     }
     return csvDataReader;
   }
 
+  /**
+   * Create a new CSV reader of the data file, positioned at the first row.
+   *
+   * @return
+   */
+  @Nullable
+  @SuppressWarnings("OverlyNestedMethod")
+  private CSVReader newCsvDataReader() {
+    CSVReader reader = getCsvDatasource().getCsvReader(dataFile);
+    try {
+      // move to the first row
+      if(reader != null) for(int i = 1; i < getCsvDatasource().getFirstRow(); i++)
+        reader.readNext();
+    } catch(IOException e) {
+      // ignore
+    }
+    return reader;
+  }
+
+  /**
+   * Get the index of the data file (create it if necessary).
+   *
+   * @return null if the records cannot be indexed with this character set
+   */
+  @Nullable
+  private synchronized CsvDataIndex getDataIndex() {
+    if(dataIndex == null) {
+      Charset charset = Charset.forName(getCharacterSet());
+      char quote = getCsvDatasource().getQuote().getCharacter();
+      if(CsvDataIndex.isSupported(charset, quote)) {
+        //noinspection ConstantConditions
+        dataIndex = new CsvDataIndex(dataFile, charset, getCsvDatasource().getCsvParser(), quote,
+            getCsvDatasource().getFirstRow());
+      }
+    }
+    return dataIndex;
+  }
+
+  private synchronized void resetDataIndex() {
+    if(dataIndex == null) return;
+    dataIndex.close();
+    dataIndex = null;
+  }
+
   /**
    * Close the CSV data file reader and prepare for next creation.
    */
@@ -429,7 +514,7 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
       String identifier = line[0];
       if(Strings.isNullOrEmpty(identifier)) continue;
       isDataFileEmpty = false;
-      entities.add(new VariableEntityBean(entityType, identifier));
+      addVariableEntity(new VariableEntityBean(entityType, identifier));
     }
   }
 
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.MagmaRuntimeException;
@@ -22,12 +23,22 @@ import org.slf4j.LoggerFactory;
 
 import au.com.bytecode.opencsv.CSVWriter;
 
+/**
+ * Writes to the variables and data files of a {@link CsvValueTable}. Each file is opened once, on first write, and the
+ * buffered rows are flushed when the variables or value set writers are closed, and when this writer is closed.
+ */
 public class CsvValueTableWriter implements ValueTableWriter {
 
   private static final Logger log = LoggerFactory.getLogger(CsvValueSet.class);
 
   private final CsvValueTable valueTable;
 
+  @Nullable
+  private CSVWriter variableWriter;
+
+  @Nullable
+  private CSVWriter valueWriter;
+
   public CsvValueTableWriter(CsvValueTable valueTable) {
     this.valueTable = valueTable;
   }
@@ -44,27 +55,66 @@ public class CsvValueTableWriter implements ValueTableWriter {
   }
 
   @Override
-  public void close() {
+  public synchronized void close() {
+    try {
+      if(variableWriter != null) variableWriter.close();
+      if(valueWriter != null) valueWriter.close();
+    } catch(IOException e) {
+      throw new MagmaRuntimeException(e);
+    } finally {
+      variableWriter = null;
+      valueWriter = null;
+    }
+  }
+
+  private synchronized void writeVariableToCsv(String... strings) {
+    if(variableWriter == null) {
+      variableWriter = valueTable.getVariableWriter();
+      if(variableWriter == null) {
+        throw new DatasourceParsingException(
+            "Cannot create variable writer. Table " + valueTable.getName() + " does not have variable file.",
+            "CsvCannotCreateWriter", valueTable.getName());
+      }
+    }
+    log.trace("write '{}'", Arrays.toString(strings));
+    variableWriter.writeNext(strings);
+  }
+
+  private synchronized void writeValueToCsv(String... strings) {
+    if(valueWriter == null) {
+      valueWriter = valueTable.getValueWriter();
+      if(valueWriter == null) {
+        throw new DatasourceParsingException(
+            "Cannot create data writer. Table " + valueTable.getName() + " does not have data file.",
+            "CsvCannotCreateWriter", valueTable.getName());
+      }
+    }
+    log.trace("write '{}'", Arrays.toString(strings));
+    valueWriter.writeNext(strings);
+  }
+
+  private synchronized void flush(@Nullable CSVWriter writer) {
+    if(writer == null) return;
+    try {
+      writer.flush();
+    } catch(IOException e) {
+      throw new MagmaRuntimeException(e);
+    }
   }
 
   private class CsvVariableWriter implements VariableWriter {
 
     @Override
     public void writeVariable(@NotNull Variable variable) {
-      try {
-
-        VariableConverter variableConverter = valueTable.getVariableConverter();
-        if(valueTable.isVariablesFileEmpty()) {
-          // Write Header
-          writeVariableToCsv(variableConverter.getHeader());
-          valueTable.setVariablesFileEmpty(false);
-        }
-
-        String[] line = variableConverter.marshal(variable);
-        writeVariableToCsv(line);
-      } catch(IOException e) {
-        throw new MagmaRuntimeException(e);
+      VariableConverter variableConverter = valueTable.getVariableConverter();
+      if(valueTable.isVariablesFileEmpty()) {
+        // Write Header
+        writeVariableToCsv(variableConverter.getHeader());
+        valueTable.setVariablesFileEmpty(false);
       }
+
+      String[] line = variableConverter.marshal(variable);
+      writeVariableToCsv(line);
     }
 
     @Override
@@ -72,20 +122,10 @@ public class CsvValueTableWriter implements ValueTableWriter {
       throw new UnsupportedOperationException("Variable cannot be removed from a CSV file");
     }
 
-    private void writeVariableToCsv(String... strings) throws IOException {
-      try(CSVWriter writer = valueTable.getVariableWriter()) {
-        if(writer == null) {
-          throw new DatasourceParsingException(
-              "Cannot create variable writer. Table " + valueTable.getName() + " does not have variable file.",
-              "CsvCannotCreateWriter", valueTable.getName());
-        }
-        log.trace("write '{}'", Arrays.toString(strings));
-        writer.writeNext(strings);
-      }
-    }
-
     @Override
-    public void close() {}
+    public void close() {
+      flush(variableWriter);
+    }
 
   }
 
@@ -106,6 +146,8 @@ public class CsvValueTableWriter implements ValueTableWriter {
 
       // Populate with existing values, if available
       if(valueTable.hasValueSet(entity)) {
+        // the existing values may not have been flushed yet
+        flush(valueWriter);
         ValueSet valueSet = valueTable.getValueSet(entity);
         for(Variable variable : valueTable.getVariables()) {
           writeValue(variable, valueTable.getValue(variable, valueSet));
@@ -180,18 +222,6 @@ public class CsvValueTableWriter implements ValueTableWriter {
       csvLine.setHeaderMap(getExistingHeaderMap());
     }
 
-    private void writeValueToCsv(String... strings) throws IOException {
-      try(CSVWriter writer = valueTable.getValueWriter()) {
-        if(writer == null) {
-          throw new DatasourceParsingException(
-              "Cannot create data writer. Table " + valueTable.getName() + " does not have data file.",
-              "CsvCannotCreateWriter", valueTable.getName());
-        }
-        log.trace("write '{}'", Arrays.toString(strings));
-        writer.writeNext(strings);
-      }
-    }
-
     private Map<String, Integer> getExistingHeaderMap() {
       return valueTable.getDataHeaderMap();
     }
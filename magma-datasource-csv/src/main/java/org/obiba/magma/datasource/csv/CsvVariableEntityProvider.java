@@ -38,6 +38,6 @@ public class CsvVariableEntityProvider implements VariableEntityProvider {
   }
 
   public void add(VariableEntity entity) {
-    if (!valueTable.entities.contains(entity)) valueTable.entities.add(entity);
+    valueTable.addVariableEntity(entity);
   }
 }
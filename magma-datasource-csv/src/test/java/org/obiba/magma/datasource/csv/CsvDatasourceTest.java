@@ -557,6 +557,31 @@ public class CsvDatasourceTest extends AbstractMagmaTest {
     assertEolValue(table, "5", "Nero", "NERO CLAVDIVS CAESAR AVGVSTVS GERMANICVS");
   }
 
+  @Test
+  public void test_random_access_to_indexed_data() throws IOException {
+    File dataFile = File.createTempFile("magma", "test-index");
+    dataFile.deleteOnExit();
+    FileUtils.writeStringToFile(dataFile, "entity_id,Name,\"Complete name\"\n" + //
+        "1,Augustus,\"GAIVS IVLIVS \nCAESAR, OCTAVIANVS\"\r\n" + //
+        "2,Tiberius,\"TIBERIVS \"\"IVLIVS\"\" CAESAR AVGVSTVS\"\r\n" + //
+        "\"3\",Caligula,\"GAIVS IVLIVS CAESAR AVGVSTVS GERMANICVS\"", "utf-8");
+
+    CsvDatasource datasource = new CsvDatasource("csv-datasource")
+        .addValueTable("Table1", dataFile, DEFAULT_ENTITY_TYPE);
+    datasource.initialise();
+    ValueTable table = datasource.getValueTable("Table1");
+
+    assertEolValue(table, "3", "Caligula", "GAIVS IVLIVS CAESAR AVGVSTVS GERMANICVS");
+    assertEolValue(table, "1", "Augustus", "GAIVS IVLIVS \nCAESAR, OCTAVIANVS");
+    assertEolValue(table, "2", "Tiberius", "TIBERIVS \"IVLIVS\" CAESAR AVGVSTVS");
+
+    // records appended after indexation are found, last record of an entity wins
+    FileUtils.writeStringToFile(dataFile, "\n1,Octavian,\"GAIVS IVLIVS CAESAR OCTAVIANVS\"\n", "utf-8", true);
+    assertEolValue(table, "1", "Octavian", "GAIVS IVLIVS CAESAR OCTAVIANVS");
+    assertEolValue(table, "3", "Caligula", "GAIVS IVLIVS CAESAR AVGVSTVS GERMANICVS");
+    datasource.dispose();
+  }
+
   private void assertEolVariable(ValueTable table, String name) {
     Variable variable = table.getVariable(name);
     assertThat(variable).isNotNull();
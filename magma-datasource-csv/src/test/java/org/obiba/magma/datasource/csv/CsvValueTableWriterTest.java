@@ -153,6 +153,43 @@ public class CsvValueTableWriterTest extends AbstractMagmaTest {
     }
   }
 
+  @Test
+  public void test_writing_many_value_sets_with_one_table_writer() throws Exception {
+    File tempTestDirectory = new TempTableBuilder("TableDataOnly").addData().build();
+    File dataFile = new File(tempTestDirectory.getCanonicalFile() + "/TableDataOnly", "data.csv");
+    CsvDatasource writeDatasource = new CsvDatasource("csv-datasource").addValueTable("TableDataOnly", null, dataFile);
+    writeDatasource.initialise();
+
+    Variable teaVariable = Variable.Builder.newVariable("tea", TextType.get(), "Participant").build();
+    Variable coffeeVariable = Variable.Builder.newVariable("coffee", TextType.get(), "Participant").build();
+    int nbEntities = 1000;
+    try(ValueTableWriter tableWriter = writeDatasource.createWriter("TableDataOnly", "Participant")) {
+      for(int i = 0; i < nbEntities; i++) {
+        try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", "p" + i))) {
+          valueSetWriter.writeValue(teaVariable, TextType.get().valueOf("tea " + i));
+          valueSetWriter.writeValue(coffeeVariable, TextType.get().valueOf("coffee " + i));
+        }
+      }
+      // value set written again before being flushed
+      try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter
+          .writeValueSet(new VariableEntityBean("Participant", "p0"))) {
+        valueSetWriter.writeValue(teaVariable, TextType.get().valueOf("Earl Grey"));
+        valueSetWriter.writeValue(coffeeVariable, TextType.get().valueOf("Second Cup"));
+      }
+    }
+
+    CsvDatasource readDatasource = new CsvDatasource("read-datasource").addValueTable("TableDataOnly", null, dataFile);
+    readDatasource.initialise();
+    ValueTable table = readDatasource.getValueTable("TableDataOnly");
+    assertThat(table.getVariableEntities()).hasSize(nbEntities);
+    ValueSet valueSet = table.getValueSet(new VariableEntityBean("Participant", "p0"));
+    assertThat(table.getValue(table.getVariable("tea"), valueSet).toString()).isEqualTo("Earl Grey");
+    assertThat(table.getValue(table.getVariable("coffee"), valueSet).toString()).isEqualTo("Second Cup");
+    valueSet = table.getValueSet(new VariableEntityBean("Participant", "p" + (nbEntities - 1)));
+    assertThat(table.getValue(table.getVariable("tea"), valueSet).toString()).isEqualTo("tea " + (nbEntities - 1));
+  }
+
   @Test
   public void test_writing_data_only_adding_new_value_set() throws Exception {
     File tempTestDirectory = new TempTableBuilder("TableDataOnly").addData().build();
@@ -0,0 +1,199 @@
+package org.obiba.magma.datasource.fs;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSequence;
+import org.obiba.magma.ValueType;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+
+/**
+ * Binary format of the value sets of a table, used from datasource version 2. Each value set entry is a record of
+ * length-prefixed values, which variable name and value type are referred to by their index in a dictionary shared by
+ * all the value set entries of the table.
+ * <p/>
+ * Value set record: number of values, then for each value its dictionary index, its kind (null, value, null sequence
+ * or sequence) and its string representation (sequences are prefixed by their size).
+ */
+class BinaryValueSets {
+
+  static final String DICTIONARY_NAME = "valuesets.dict";
+
+  static final String ENTRY_EXTENSION = ".bin";
+
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private static final byte NULL_VALUE = 0;
+
+  private static final byte VALUE = 1;
+
+  private static final byte NULL_SEQUENCE = 2;
+
+  private static final byte SEQUENCE = 3;
+
+  private final List<String> variableNames = Lists.newArrayList();
+
+  private final List<ValueType> valueTypes = Lists.newArrayList();
+
+  private final Table<String, ValueType, Integer> indices = HashBasedTable.create();
+
+  private boolean modified = false;
+
+  static boolean isBinaryEntry(String entryName) {
+    return entryName.endsWith(ENTRY_EXTENSION);
+  }
+
+  synchronized boolean isModified() {
+    return modified;
+  }
+
+  synchronized void readDictionary(InputStream input) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    int size = in.readInt();
+    for(int i = 0; i < size; i++) {
+      String name = in.readUTF();
+      ValueType valueType = ValueType.Factory.forName(in.readUTF());
+      indices.put(name, valueType, variableNames.size());
+      variableNames.add(name);
+      valueTypes.add(valueType);
+    }
+  }
+
+  synchronized void writeDictionary(OutputStream output) throws IOException {
+    DataOutputStream out = new DataOutputStream(output);
+    out.writeInt(variableNames.size());
+    for(int i = 0; i < variableNames.size(); i++) {
+      out.writeUTF(variableNames.get(i));
+      out.writeUTF(valueTypes.get(i).getName());
+    }
+    out.flush();
+    modified = false;
+  }
+
+  /**
+   * Read a value set record.
+   *
+   * @param input
+   * @return the values by variable name
+   * @throws IOException
+   */
+  Map<String, Value> read(InputStream input) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    ImmutableMap.Builder<String, Value> values = ImmutableMap.builder();
+    int size = in.readInt();
+    for(int i = 0; i < size; i++) {
+      int index = in.readInt();
+      ValueType valueType;
+      String name;
+      synchronized(this) {
+        if(index < 0 || index >= variableNames.size()) {
+          throw new IOException("Value set record refers to variable #" + index + " which is not in the dictionary '" +
+              DICTIONARY_NAME + "' (" + variableNames.size() + " variables): the table was not closed properly");
+        }
+        valueType = valueTypes.get(index);
+        name = variableNames.get(index);
+      }
+      values.put(name, readValue(in, valueType));
+    }
+    return values.build();
+  }
+
+  /**
+   * Write a value set record.
+   *
+   * @param output
+   * @param values the values by variable name
+   * @throws IOException
+   */
+  void write(OutputStream output, Map<String, Value> values) throws IOException {
+    DataOutputStream out = new DataOutputStream(output);
+    out.writeInt(values.size());
+    for(Map.Entry<String, Value> entry : values.entrySet()) {
+      Value value = entry.getValue();
+      out.writeInt(getIndex(entry.getKey(), value.getValueType()));
+      writeValue(out, value);
+    }
+    out.flush();
+  }
+
+  private synchronized int getIndex(String name, ValueType valueType) {
+    Integer index = indices.get(name, valueType);
+    if(index == null) {
+      index = variableNames.size();
+      indices.put(name, valueType, index);
+      variableNames.add(name);
+      valueTypes.add(valueType);
+      modified = true;
+    }
+    return index;
+  }
+
+  private Value readValue(DataInputStream in, ValueType valueType) throws IOException {
+    switch(in.readByte()) {
+      case NULL_VALUE:
+        return valueType.nullValue();
+      case VALUE:
+        return valueType.valueOf(readString(in));
+      case NULL_SEQUENCE:
+        return valueType.nullSequence();
+      case SEQUENCE:
+        int size = in.readInt();
+        List<Value> sequence = Lists.newArrayListWithCapacity(size);
+        for(int i = 0; i < size; i++) {
+          sequence.add(in.readByte() == NULL_VALUE ? valueType.nullValue() : valueType.valueOf(readString(in)));
+        }
+        return valueType.sequenceOf(sequence);
+      default:
+        throw new IOException("Unexpected value kind in value set record");
+    }
+  }
+
+  private void writeValue(DataOutputStream out, Value value) throws IOException {
+    if(value.isSequence()) {
+      if(value.isNull()) {
+        out.writeByte(NULL_SEQUENCE);
+        return;
+      }
+      ValueSequence sequence = value.asSequence();
+      out.writeByte(SEQUENCE);
+      out.writeInt(sequence.getSize());
+      for(Value element : sequence.getValue()) {
+        if(element.isNull()) {
+          out.writeByte(NULL_VALUE);
+        } else {
+          out.writeByte(VALUE);
+          writeString(out, element.toString());
+        }
+      }
+    } else if(value.isNull()) {
+      out.writeByte(NULL_VALUE);
+    } else {
+      out.writeByte(VALUE);
+      writeString(out, value.toString());
+    }
+  }
+
+  private String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, CHARSET);
+  }
+
+  private void writeString(DataOutputStream out, String str) throws IOException {
+    byte[] bytes = str.getBytes(CHARSET);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+}
@@ -1,9 +1,13 @@
 package org.obiba.magma.datasource.fs;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
@@ -32,6 +36,7 @@ import org.obiba.magma.support.AbstractDatasource;
 import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.type.TextType;
 import org.obiba.magma.xstream.MagmaXStreamExtension;
+import org.obiba.magma.xstream.XStreamFactory;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -54,6 +59,18 @@ public class FsDatasource extends AbstractDatasource {
    */
   private static final Charset CHARSET = Charset.availableCharsets().get("UTF-8");
 
+  static final String VERSION_ATTRIBUTE = "magma.datasource.fs.version";
+
+  /**
+   * Version of the XML value sets archives, still supported for reading and writing.
+   */
+  static final String XML_VERSION = "1";
+
+  /**
+   * Version of the new archives: value sets are stored in a binary format, see {@link BinaryValueSets}.
+   */
+  static final String CURRENT_VERSION = "2";
+
   private final File datasourceArchive;
 
   @Nullable
@@ -88,7 +105,7 @@ public class FsDatasource extends AbstractDatasource {
       readAttributes();
       newDatasource = false;
     } else {
-      setAttributeValue("magma.datasource.fs.version", TextType.get().valueOf("1"));
+      setAttributeValue(VERSION_ATTRIBUTE, TextType.get().valueOf(CURRENT_VERSION));
       setAttributeValue("magma.datasource.fs.encrypted",
           hasEncryptionStrategy() ? BooleanType.get().trueValue() : BooleanType.get().falseValue());
     }
@@ -155,6 +172,15 @@ public class FsDatasource extends AbstractDatasource {
     return datasourceEncryptionStrategy != null;
   }
 
+  /**
+   * Whether value sets are written in the binary format, according to the version of the datasource.
+   *
+   * @return
+   */
+  boolean hasBinaryValueSets() {
+    return hasAttribute(VERSION_ATTRIBUTE) && !XML_VERSION.equals(getAttributeStringValue(VERSION_ATTRIBUTE));
+  }
+
   protected boolean isEncrypted() {
     if(hasAttribute("magma.datasource.fs.encrypted")) {
       Value value = getAttributeValue("magma.datasource.fs.encrypted");
@@ -214,9 +240,18 @@ public class FsDatasource extends AbstractDatasource {
     return new File(datasourceArchive, name);
   }
 
+  /**
+   * Get the XStream instance shared by the datasources of the same version. The current version is used until the
+   * version of an existing datasource is read.
+   *
+   * @return
+   */
   XStream getXStreamInstance() {
-    // TODO: Use the FsDatasource version to obtain the proper XStream instance
-    return MagmaEngine.get().getExtension(MagmaXStreamExtension.class).getXStreamFactory().createXStream();
+    MagmaXStreamExtension extension = MagmaEngine.get().getExtension(MagmaXStreamExtension.class);
+    XStreamFactory factory = hasAttribute(VERSION_ATTRIBUTE)
+        ? extension.getXStreamFactory(getAttributeStringValue(VERSION_ATTRIBUTE))
+        : null;
+    return (factory == null ? extension.getXStreamFactory() : factory).getXStream();
   }
 
   @Nullable
@@ -240,16 +275,24 @@ public class FsDatasource extends AbstractDatasource {
   }
 
   Reader createReader(File entry) {
+    return new InputStreamReader(createInputStream(entry), CHARSET);
+  }
+
+  Writer createWriter(File entry) {
+    return new OutputStreamWriter(createOutputStream(entry), CHARSET);
+  }
+
+  InputStream createInputStream(File entry) {
     try {
-      return new InputStreamReader(inputStreamWrapper.wrap(new FileInputStream(entry), entry), CHARSET);
+      return new BufferedInputStream(inputStreamWrapper.wrap(new FileInputStream(entry), entry));
     } catch(FileNotFoundException e) {
       throw new MagmaRuntimeException(e);
     }
   }
 
-  Writer createWriter(File entry) {
+  OutputStream createOutputStream(File entry) {
     try {
-      return new OutputStreamWriter(outputStreamWrapper.wrap(new FileOutputStream(entry), entry), CHARSET);
+      return new BufferedOutputStream(outputStreamWrapper.wrap(new FileOutputStream(entry), entry));
     } catch(FileNotFoundException e) {
       throw new MagmaRuntimeException(e);
     }
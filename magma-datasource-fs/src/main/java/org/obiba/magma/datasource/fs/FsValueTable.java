@@ -2,9 +2,12 @@ package org.obiba.magma.datasource.fs;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.Map;
 
 import javax.validation.constraints.NotNull;
 
@@ -26,8 +29,9 @@ import org.obiba.magma.datasource.fs.FsDatasource.InputCallback;
 import org.obiba.magma.datasource.fs.FsDatasource.OutputCallback;
 import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.ValueSetBean;
-import org.obiba.magma.xstream.XStreamValueSet;
+import org.obiba.magma.xstream.XStreamValueSetReader;
 
+import com.google.common.collect.ImmutableMap;
 import com.thoughtworks.xstream.XStream;
 
 import de.schlichtherle.io.File;
@@ -49,6 +53,11 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
    */
   private final FsVariableEntityProvider variableEntityProvider;
 
+  /**
+   * Dictionary and format of the binary value set entries
+   */
+  private final BinaryValueSets binaryValueSets = new BinaryValueSets();
+
   FsValueTable(FsDatasource datasource, String name) {
     super(datasource, name);
     valueTableEntry = datasource.getEntry(name);
@@ -69,6 +78,7 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
     try {
       variableEntityProvider.initialise();
       readVariables();
+      readBinaryValueSetsDictionary();
     } catch(RuntimeException e) {
       throw e;
     } catch(Exception e) {
@@ -79,6 +89,7 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
   @Override
   public void dispose() {
     variableEntityProvider.dispose();
+    writeBinaryValueSetsDictionary();
   }
 
   @NotNull
@@ -114,6 +125,37 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
     return getDatasource().createWriter(getEntry(name));
   }
 
+  OutputStream createOutputStream(String name) {
+    return getDatasource().createOutputStream(getEntry(name));
+  }
+
+  BinaryValueSets getBinaryValueSets() {
+    return binaryValueSets;
+  }
+
+  /**
+   * Write the dictionary of the binary value set entries if new variables were added to it, so that the entries written
+   * so far can be read even if the table is not disposed.
+   */
+  void writeBinaryValueSetsDictionary() {
+    synchronized(binaryValueSets) {
+      if(!binaryValueSets.isModified()) return;
+      try(OutputStream output = createOutputStream(BinaryValueSets.DICTIONARY_NAME)) {
+        binaryValueSets.writeDictionary(output);
+      } catch(IOException e) {
+        throw new MagmaRuntimeException(e);
+      }
+    }
+  }
+
+  private void readBinaryValueSetsDictionary() throws IOException {
+    File entry = getEntry(BinaryValueSets.DICTIONARY_NAME);
+    if(!entry.exists()) return;
+    try(InputStream input = getDatasource().createInputStream(entry)) {
+      binaryValueSets.readDictionary(input);
+    }
+  }
+
   private void readVariables() {
     readEntry("variables.xml", new InputCallback<Void>() {
       @SuppressWarnings("InfiniteLoopStatement")
@@ -159,7 +201,7 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
     @NotNull
     @Override
     public Value getValue(ValueSet valueSet) {
-      return ((LazyValueSet) valueSet).getValueSet().getValue(variable);
+      return ((LazyValueSet) valueSet).getValue(variable);
     }
 
     @Override
@@ -178,30 +220,51 @@ class FsValueTable extends AbstractValueTable implements Initialisable, Disposab
   private class LazyValueSet extends ValueSetBean {
 
     @SuppressWarnings("TransientFieldInNonSerializableClass")
-    private transient volatile XStreamValueSet valueSet;
+    private transient volatile Map<String, Value> values;
 
     LazyValueSet(ValueTable table, VariableEntity entity) {
       super(table, entity);
     }
 
-    XStreamValueSet getValueSet() {
-      if(valueSet == null) {
-        valueSet = readValueSet(getVariableEntity());
+    Value getValue(Variable variable) {
+      if(values == null) {
+        values = readValues(getVariableEntity());
       }
-      return valueSet;
+      Value value = values.get(variable.getName());
+      return value == null ? variable.getValueType().nullValue() : value;
     }
 
-    private XStreamValueSet readValueSet(VariableEntity entity) {
+    /**
+     * Read the values of the entity's entry, either binary or a {@link org.obiba.magma.xstream.XStreamValueSet}.
+     *
+     * @param entity
+     * @return
+     */
+    private Map<String, Value> readValues(VariableEntity entity) {
       String entryName = variableEntityProvider.getEntityFile(entity);
       if(entryName == null) {
         throw new NoSuchValueSetException(FsValueTable.this, entity);
       }
-      return readEntry(entryName, new InputCallback<XStreamValueSet>() {
+      if(BinaryValueSets.isBinaryEntry(entryName)) {
+        return readBinaryValues(entryName);
+      }
+      Map<String, Value> entityValues = readEntry(entryName, new InputCallback<Map<String, Value>>() {
         @Override
-        public XStreamValueSet readEntry(Reader reader) throws IOException {
-          return (XStreamValueSet) xstream.fromXML(reader);
+        public Map<String, Value> readEntry(Reader reader) throws IOException {
+          return XStreamValueSetReader.read(reader);
         }
       });
+      return entityValues == null ? ImmutableMap.<String, Value>of() : entityValues;
+    }
+
+    private Map<String, Value> readBinaryValues(String entryName) {
+      File entry = getEntry(entryName);
+      if(!entry.exists()) return ImmutableMap.of();
+      try(InputStream input = getDatasource().createInputStream(entry)) {
+        return binaryValueSets.read(input);
+      } catch(IOException e) {
+        throw new MagmaRuntimeException("Cannot read value set entry '" + entryName + "' of table '" + getName() + "'", e);
+      }
     }
 
   }
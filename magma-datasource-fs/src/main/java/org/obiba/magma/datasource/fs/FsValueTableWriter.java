@@ -2,7 +2,9 @@ package org.obiba.magma.datasource.fs;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Map;
 
 import javax.validation.constraints.NotNull;
 
@@ -12,6 +14,7 @@ import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.xstream.XStreamValueSet;
 
+import com.google.common.collect.Maps;
 import com.thoughtworks.xstream.XStream;
 
 class FsValueTableWriter implements ValueTableWriter {
@@ -29,6 +32,9 @@ class FsValueTableWriter implements ValueTableWriter {
   @Override
   public ValueSetWriter writeValueSet(@NotNull VariableEntity entity) {
     String entry = valueTable.getVariableEntityProvider().addEntity(entity);
+    if(BinaryValueSets.isBinaryEntry(entry)) {
+      return new BinaryValueSetWriter(entry);
+    }
     try {
       return new XStreamValueSetWriter(valueTable.createWriter(entry),
           new XStreamValueSet(valueTable.getName(), entity));
@@ -48,6 +54,7 @@ class FsValueTableWriter implements ValueTableWriter {
 
   @Override
   public void close() {
+    valueTable.writeBinaryValueSetsDictionary();
   }
 
   private class XStreamVariableWriter implements VariableWriter {
@@ -117,4 +124,34 @@ class FsValueTableWriter implements ValueTableWriter {
       throw new UnsupportedOperationException();
     }
   }
+
+  private class BinaryValueSetWriter implements ValueSetWriter {
+
+    private final String entry;
+
+    private final Map<String, Value> values = Maps.newLinkedHashMap();
+
+    private BinaryValueSetWriter(String entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public void writeValue(@NotNull Variable variable, Value value) {
+      values.put(variable.getName(), value);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      try(OutputStream os = valueTable.createOutputStream(entry)) {
+        valueTable.getBinaryValueSets().write(os, values);
+      } catch(IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 }
@@ -115,7 +115,8 @@ class FsVariableEntityProvider implements VariableEntityProvider, Initialisable,
 
   String addEntity(VariableEntity entity) {
     if(!entityToFile.containsKey(entity)) {
-      entityToFile.put(entity, entryFilenameFormat.format(entityToFile.size() + 1) + ".xml");
+      String extension = valueTable.getDatasource().hasBinaryValueSets() ? BinaryValueSets.ENTRY_EXTENSION : ".xml";
+      entityToFile.put(entity, entryFilenameFormat.format(entityToFile.size() + 1) + extension);
       entityToFileMapModified = true;
     }
     return getEntityFile(entity);
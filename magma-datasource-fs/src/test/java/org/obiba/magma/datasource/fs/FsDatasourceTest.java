@@ -0,0 +1,181 @@
+package org.obiba.magma.datasource.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.obiba.magma.Datasource;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableWriter;
+import org.obiba.magma.ValueTableWriter.ValueSetWriter;
+import org.obiba.magma.ValueTableWriter.VariableWriter;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.Disposables;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+import org.obiba.magma.xstream.MagmaXStreamExtension;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+public class FsDatasourceTest {
+
+  private Variable name;
+
+  private Variable age;
+
+  private Variable codes;
+
+  @Rule
+  public TemporaryFolder directory = new TemporaryFolder();
+
+  @Before
+  public void before() {
+    new MagmaEngine().extend(new MagmaXStreamExtension());
+    name = Variable.Builder.newVariable("NAME", TextType.get(), "Participant").build();
+    age = Variable.Builder.newVariable("AGE", IntegerType.get(), "Participant").build();
+    codes = Variable.Builder.newVariable("CODES", IntegerType.get(), "Participant").repeatable().build();
+  }
+
+  @After
+  public void after() {
+    MagmaEngine.get().shutdown();
+  }
+
+  @Test
+  public void test_binary_value_sets_round_trip() {
+    File archive = new File(directory.getRoot(), "v2.zip");
+    FsDatasource datasource = createDatasource(archive);
+    writeValueSets(datasource);
+    Disposables.dispose(datasource);
+
+    datasource = createDatasource(archive);
+    assertThat(datasource.getAttributeStringValue(FsDatasource.VERSION_ATTRIBUTE)).isEqualTo(
+        FsDatasource.CURRENT_VERSION);
+    FsValueTable table = (FsValueTable) datasource.getValueTable("table");
+    assertThat(table.getVariableEntityProvider().getEntityFile(entity("1"))).endsWith(BinaryValueSets.ENTRY_EXTENSION);
+    assertValueSets(table);
+    Disposables.dispose(datasource);
+  }
+
+  @Test
+  public void test_xml_value_sets_of_version_1_are_read() throws IOException {
+    File archive = new File(directory.getRoot(), "v1.zip");
+    try(InputStream fixture = getClass().getResourceAsStream("v1.zip")) {
+      Files.copy(fixture, archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    FsDatasource datasource = createDatasource(archive);
+    assertThat(datasource.getAttributeStringValue(FsDatasource.VERSION_ATTRIBUTE)).isEqualTo(FsDatasource.XML_VERSION);
+    FsValueTable table = (FsValueTable) datasource.getValueTable("table");
+    assertValueSets(table);
+
+    try(ValueTableWriter tableWriter = datasource.createWriter("table", "Participant");
+        ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity("3"))) {
+      valueSetWriter.writeValue(name, TextType.get().valueOf("Jim"));
+    }
+    assertThat(table.getVariableEntityProvider().getEntityFile(entity("3"))).endsWith(".xml");
+    assertThat(table.getValue(name, table.getValueSet(entity("3")))).isEqualTo(TextType.get().valueOf("Jim"));
+    Disposables.dispose(datasource);
+  }
+
+  @Test
+  public void test_dictionary_is_written_when_writer_is_closed() {
+    FsDatasource datasource = createDatasource(new File(directory.getRoot(), "v2.zip"));
+    writeValueSets(datasource);
+    FsValueTable table = (FsValueTable) datasource.getValueTable("table");
+    assertThat(table.getEntry(BinaryValueSets.DICTIONARY_NAME).exists()).isTrue();
+    assertThat(table.getBinaryValueSets().isModified()).isFalse();
+    Disposables.dispose(datasource);
+  }
+
+  @Test
+  public void test_missing_dictionary_fails_with_clear_error() throws IOException {
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    try(OutputStream output = record) {
+      new BinaryValueSets().write(output, ImmutableMap.<String, Value>of("NAME", TextType.get().valueOf("Jane")));
+    }
+    try {
+      new BinaryValueSets().read(new ByteArrayInputStream(record.toByteArray()));
+      fail("Expected IOException");
+    } catch(IOException e) {
+      assertThat(e.getMessage()).contains(BinaryValueSets.DICTIONARY_NAME);
+    }
+  }
+
+  @Test(expected = MagmaRuntimeException.class)
+  public void test_unreadable_value_set_entry_fails_with_magma_exception() throws IOException {
+    FsDatasource datasource = createDatasource(new File(directory.getRoot(), "v2.zip"));
+    writeValueSets(datasource);
+    FsValueTable table = (FsValueTable) datasource.getValueTable("table");
+    try(OutputStream output = table.createOutputStream(table.getVariableEntityProvider().getEntityFile(entity("1")))) {
+      output.write(new byte[] { 0, 0, 0, 1, 0, 0, 0, 99 });
+    }
+    try {
+      table.getValue(name, table.getValueSet(entity("1")));
+    } finally {
+      Disposables.dispose(datasource);
+    }
+  }
+
+  private FsDatasource createDatasource(File archive) {
+    FsDatasource datasource = new FsDatasource("fs", archive);
+    Initialisables.initialise(datasource);
+    return datasource;
+  }
+
+  private void writeValueSets(Datasource datasource) {
+    try(ValueTableWriter tableWriter = datasource.createWriter("table", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(name);
+        variableWriter.writeVariable(age);
+        variableWriter.writeVariable(codes);
+      }
+      try(ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity("1"))) {
+        valueSetWriter.writeValue(name, TextType.get().valueOf("Jane"));
+        valueSetWriter.writeValue(age, IntegerType.get().valueOf(42));
+        valueSetWriter.writeValue(codes,
+            IntegerType.get().sequenceOf(ImmutableList.of(IntegerType.get().valueOf(1), IntegerType.get().valueOf(2))));
+      }
+      try(ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity("2"))) {
+        valueSetWriter.writeValue(name, TextType.get().valueOf("John"));
+        valueSetWriter.writeValue(age, IntegerType.get().nullValue());
+      }
+    }
+  }
+
+  private void assertValueSets(ValueTable table) {
+    assertThat(table.getVariableEntities()).containsOnly(entity("1"), entity("2"));
+    assertThat(table.getValue(name, table.getValueSet(entity("1")))).isEqualTo(TextType.get().valueOf("Jane"));
+    assertThat(table.getValue(age, table.getValueSet(entity("1")))).isEqualTo(IntegerType.get().valueOf(42));
+    assertThat(table.getValue(codes, table.getValueSet(entity("1")))).isEqualTo(
+        IntegerType.get().sequenceOf(ImmutableList.of(IntegerType.get().valueOf(1), IntegerType.get().valueOf(2))));
+    assertThat(table.getValue(name, table.getValueSet(entity("2")))).isEqualTo(TextType.get().valueOf("John"));
+    assertThat(table.getValue(age, table.getValueSet(entity("2")))).isEqualTo(IntegerType.get().nullValue());
+    assertThat(table.getValue(codes, table.getValueSet(entity("2"))).isNull()).isTrue();
+  }
+
+  private static VariableEntity entity(String identifier) {
+    return new VariableEntityBean("Participant", identifier);
+  }
+
+}
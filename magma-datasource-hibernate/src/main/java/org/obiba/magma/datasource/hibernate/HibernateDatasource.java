@@ -14,24 +14,32 @@ import java.util.concurrent.ConcurrentMap;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
 import org.obiba.core.service.impl.hibernate.AssociationCriteria;
 import org.obiba.core.service.impl.hibernate.AssociationCriteria.Operation;
 import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.NoSuchValueTableException;
 import org.obiba.magma.Timestamped;
 import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueTableWriter;
 import org.obiba.magma.datasource.hibernate.converter.AttributeAwareConverter;
 import org.obiba.magma.datasource.hibernate.converter.HibernateMarshallingContext;
 import org.obiba.magma.datasource.hibernate.domain.AttributeState;
+import org.obiba.magma.datasource.hibernate.domain.CategoryState;
 import org.obiba.magma.datasource.hibernate.domain.DatasourceState;
+import org.obiba.magma.datasource.hibernate.domain.ValueSetValue;
 import org.obiba.magma.datasource.hibernate.domain.ValueTableState;
 import org.obiba.magma.datasource.hibernate.domain.VariableState;
+import org.obiba.magma.datasource.hibernate.type.TypedValueHibernateType;
 import org.obiba.magma.support.AbstractDatasource;
 import org.obiba.magma.support.UnionTimestamps;
 import org.slf4j.Logger;
@@ -42,6 +50,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 
 /**
  * Datasource based on entity-attribute-value model.
@@ -52,10 +61,21 @@ public class HibernateDatasource extends AbstractDatasource {
 
   public static final String TYPE = "hibernate";
 
+  private static final int MIGRATION_BATCH_SIZE = 1000;
+
   private final SessionFactory sessionFactory;
 
   private Serializable datasourceId;
 
+  private int bulkImportBatchSize = 1;
+
+  private boolean typedValueColumns = false;
+
+  /**
+   * Number of entities which value sets are loaded per query when iterating over the value sets of a table.
+   */
+  private int valueSetsPrefetchSize = 100;
+
   /**
    * A Map of {@code org.hibernate.Transaction} to a list of all {@code HibernateValueTable} involved in the
    * transaction. This map uses weak keys, meaning that when the transaction object is no longer reference anywhere, its
@@ -300,6 +320,103 @@ public class HibernateDatasource extends AbstractDatasource {
     return sessionFactory;
   }
 
+  /**
+   * Set the number of value sets the writers persist at once. When greater than 1, the writers are in bulk-import mode:
+   * the session is flushed every {@code bulkImportBatchSize} value sets (and when the writer is closed) so that the
+   * values are inserted in JDBC batches (see {@code hibernate.jdbc.batch_size}), and the new value sets are neither
+   * refreshed nor locked.
+   *
+   * @param bulkImportBatchSize
+   */
+  public void setBulkImportBatchSize(int bulkImportBatchSize) {
+    Preconditions.checkArgument(bulkImportBatchSize > 0, "bulkImportBatchSize must be greater than 0");
+    this.bulkImportBatchSize = bulkImportBatchSize;
+  }
+
+  public int getBulkImportBatchSize() {
+    return bulkImportBatchSize;
+  }
+
+  public int getValueSetsPrefetchSize() {
+    return valueSetsPrefetchSize;
+  }
+
+  public void setValueSetsPrefetchSize(int valueSetsPrefetchSize) {
+    Preconditions.checkArgument(valueSetsPrefetchSize > 0, "valueSetsPrefetchSize must be greater than 0");
+    this.valueSetsPrefetchSize = valueSetsPrefetchSize;
+  }
+
+  /**
+   * Set whether the integer, decimal, date, datetime and boolean values are written in columns of their native SQL type
+   * (see {@link TypedValueHibernateType}) instead of their text representation. Values are read from either layout, use
+   * {@link #migrateValueColumns()} to convert the values already persisted.
+   *
+   * @param typedValueColumns
+   */
+  public void setTypedValueColumns(boolean typedValueColumns) {
+    this.typedValueColumns = typedValueColumns;
+  }
+
+  public boolean isTypedValueColumns() {
+    return typedValueColumns;
+  }
+
+  /**
+   * Converts the persisted values of all the tables to the current value columns layout (see
+   * {@link #setTypedValueColumns(boolean)}). Note that a Hibernate transaction must be active.
+   *
+   * @return the number of values converted
+   */
+  public int migrateValueColumns() {
+    Session session = sessionFactory.getCurrentSession();
+    int converted = 0;
+    for(ValueTable valueTable : getValueTables()) {
+      ScrollableResults results = session.getNamedQuery("findValuesByTable") //
+          .setParameter("valueTableId", ((HibernateValueTable) valueTable).getValueTableId()) //
+          .scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        int read = 0;
+        while(results.next()) {
+          ValueSetValue valueSetValue = (ValueSetValue) results.get(0);
+          Value value = valueSetValue.getValue();
+          if(valueSetValue.isTyped() != typedValueColumns && TypedValueHibernateType.isTyped(value)) {
+            valueSetValue.setValue(value, typedValueColumns);
+            converted++;
+          }
+          if(++read % MIGRATION_BATCH_SIZE == 0) {
+            session.flush();
+            session.clear();
+          }
+        }
+      } finally {
+        results.close();
+      }
+      session.flush();
+      session.clear();
+      log.info("Value columns of table {} migrated", valueTable.getName());
+    }
+    return converted;
+  }
+
+  /**
+   * Returns the second-level cache statistics (hits, misses, puts) of the variable dictionaries, i.e. the variables,
+   * their categories and their attributes, by cache region name. Statistics are only collected when
+   * {@code hibernate.generate_statistics} is enabled.
+   *
+   * @return
+   */
+  public Map<String, SecondLevelCacheStatistics> getVariableCacheStatistics() {
+    Statistics statistics = sessionFactory.getStatistics();
+    Map<String, SecondLevelCacheStatistics> regions = Maps.newTreeMap();
+    for(String region : statistics.getSecondLevelCacheRegionNames()) {
+      if(region.contains(VariableState.class.getName()) || region.contains(CategoryState.class.getName())) {
+        SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+        if(regionStatistics != null) regions.put(region, regionStatistics);
+      }
+    }
+    return regions;
+  }
+
   DatasourceState getDatasourceState() {
     return (DatasourceState) sessionFactory.getCurrentSession().get(DatasourceState.class, datasourceId);
   }
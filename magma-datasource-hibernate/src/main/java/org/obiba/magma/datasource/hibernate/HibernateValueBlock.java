@@ -0,0 +1,88 @@
+package org.obiba.magma.datasource.hibernate;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.datasource.hibernate.HibernateVariableValueSourceFactory.HibernateVariableValueSource;
+import org.obiba.magma.datasource.hibernate.domain.ValueSetValue;
+import org.obiba.magma.support.ValueBlockBean;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads a block of values with one scroll over the value_set_value rows of the requested variables, instead of one
+ * query per value set.
+ */
+class HibernateValueBlock extends ValueBlockBean {
+
+  /**
+   * Maximum number of variable ids in the IN clause of a query.
+   */
+  private static final int VARIABLES_PER_QUERY = 500;
+
+  HibernateValueBlock(HibernateValueTable valueTable, Iterable<Variable> variables,
+      SortedSet<VariableEntity> entities) {
+    super(valueTable, entities);
+    List<HibernateVariableValueSource> sources = Lists.newArrayList();
+    for(Variable variable : variables) {
+      sources.add((HibernateVariableValueSource) valueTable.getVariableValueSource(variable.getName()));
+    }
+    Map<String, Value[]> rows = Maps.newHashMapWithExpectedSize(entities.size());
+    for(VariableEntity entity : entities) {
+      rows.put(entity.getIdentifier(), new Value[sources.size()]);
+    }
+    if(!entities.isEmpty()) {
+      for(int from = 0; from < sources.size(); from += VARIABLES_PER_QUERY) {
+        readRows(valueTable, sources, from, Math.min(from + VARIABLES_PER_QUERY, sources.size()), rows);
+      }
+    }
+
+    for(int i = 0; i < sources.size(); i++) {
+      HibernateVariableValueSource source = sources.get(i);
+      List<Value> column = Lists.newArrayListWithCapacity(entities.size());
+      for(VariableEntity entity : entities) {
+        Value value = rows.get(entity.getIdentifier())[i];
+        column.add(value == null ? nullValue(source.getVariable()) : value);
+      }
+      addColumn(source.getVariable(), column);
+    }
+  }
+
+  private static void readRows(HibernateValueTable valueTable, List<HibernateVariableValueSource> sources, int from,
+      int to, Map<String, Value[]> rows) {
+    Map<Serializable, Integer> positions = Maps.newHashMap();
+    for(int i = from; i < to; i++) {
+      positions.put(sources.get(i).getVariableId(), i);
+    }
+    Query query = valueTable.getDatasource().getSessionFactory().getCurrentSession()
+        .getNamedQuery("findValuesByTableAndVariables") //
+        .setParameter("valueTableId", valueTable.getValueTableId()) //
+        .setParameterList("variableIds", positions.keySet());
+    ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      while(results.next()) {
+        Value[] row = rows.get(results.getString(0));
+        if(row == null) continue;
+        int position = positions.get(results.get(1));
+        row[position] = sources.get(position).getValue((Serializable) results.get(3),
+            ValueSetValue.getValue((Value) results.get(2), (Value) results.get(4)));
+      }
+    } finally {
+      results.close();
+    }
+  }
+
+  private static Value nullValue(Variable variable) {
+    return variable.isRepeatable() ? variable.getValueType().nullSequence() : variable.getValueType().nullValue();
+  }
+
+}
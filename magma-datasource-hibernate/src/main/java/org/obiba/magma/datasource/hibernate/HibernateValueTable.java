@@ -8,7 +8,6 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 
@@ -32,6 +31,7 @@ import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.TimestampsBean;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
@@ -52,10 +52,11 @@ import org.obiba.magma.type.DateTimeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Predicate;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 @SuppressWarnings("OverlyCoupledClass")
@@ -102,6 +103,61 @@ class HibernateValueTable extends AbstractValueTable {
     return new HibernateValueSet(entity, criteria.getCriteria().setFetchMode("values", FetchMode.JOIN));
   }
 
+  /**
+   * Overridden to load the value sets, with their values, by blocks of entities (see
+   * {@link HibernateDatasource#setValueSetsPrefetchSize(int)}) instead of one query per entity.
+   */
+  @Override
+  public Iterable<ValueSet> getValueSets() {
+    int prefetchSize = getDatasource().getValueSetsPrefetchSize();
+    if(prefetchSize <= 1) return super.getValueSets();
+
+    return Iterables.concat(Iterables.transform(Iterables.partition(getVariableEntities(), prefetchSize),
+        new Function<List<VariableEntity>, Iterable<ValueSet>>() {
+          @Override
+          public Iterable<ValueSet> apply(List<VariableEntity> input) {
+            return loadValueSets(input);
+          }
+        }));
+  }
+
+  private Iterable<ValueSet> loadValueSets(List<VariableEntity> entities) {
+    Session session = getDatasource().getSessionFactory().getCurrentSession();
+    List<String> identifiers = Lists.newArrayListWithCapacity(entities.size());
+    for(VariableEntity entity : entities) {
+      identifiers.add(entity.getIdentifier());
+    }
+    Map<String, ValueSetState> states = Maps.newHashMapWithExpectedSize(entities.size());
+    for(Object obj : session.createCriteria(ValueSetState.class) //
+        .createAlias("variableEntity", "ve") //
+        .add(Restrictions.eq("valueTable.id", valueTableId)) //
+        .add(Restrictions.eq("ve.type", getEntityType())) //
+        .add(Restrictions.in("ve.identifier", identifiers)) //
+        .setFetchMode("values", FetchMode.JOIN) //
+        .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY) //
+        .list()) {
+      ValueSetState state = (ValueSetState) obj;
+      states.put(state.getVariableEntity().getIdentifier(), state);
+      // do not accumulate the blocks in the session
+      session.evict(state);
+      session.evict(state.getVariableEntity());
+    }
+
+    ImmutableList.Builder<ValueSet> valueSets = ImmutableList.builder();
+    for(VariableEntity entity : entities) {
+      ValueSetState state = states.get(entity.getIdentifier());
+      valueSets.add(state == null ? getValueSet(entity) : new HibernateValueSet(entity, state));
+    }
+    return valueSets.build();
+  }
+
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new HibernateValueBlock(this, variables, entities);
+  }
+
   @Override
   public boolean canDropValueSets() {
     return true;
@@ -238,28 +294,33 @@ class HibernateValueTable extends AbstractValueTable {
     };
   }
 
+  /**
+   * Overridden to look up the committed sources by name first, then the uncommitted ones when a transaction exists on
+   * this table and is visible in the current session.
+   */
   @Override
-  public VariableValueSource getVariableValueSource(final String variableName) throws NoSuchVariableException {
-    try {
-      return Iterables.find(getSources(), new Predicate<VariableValueSource>() {
-        @Override
-        public boolean apply(VariableValueSource variableValueSource) {
-          return variableValueSource.getVariable().getName().equals(variableName);
-        }
-      });
-    } catch(NoSuchElementException e) {
+  public VariableValueSource getVariableValueSource(String variableName) throws NoSuchVariableException {
+    VariableValueSource source = findVariableValueSource(variableName);
+    if(source == null) {
       throw new NoSuchVariableException(getName(), variableName);
     }
+    return source;
   }
 
   @Override
   public boolean hasVariable(String variableName) {
-    for(VariableValueSource source : getSources()) {
-      if(source.getVariable().getName().equals(variableName)) {
-        return true;
-      }
+    return findVariableValueSource(variableName) != null;
+  }
+
+  @Nullable
+  private VariableValueSource findVariableValueSource(String variableName) {
+    if(super.hasVariable(variableName)) {
+      return super.getVariableValueSource(variableName);
+    }
+    if(getDatasource().hasTableTransaction(getName())) {
+      return getDatasource().getTableTransaction(getName()).getUncommittedSource(variableName);
     }
-    return false;
+    return null;
   }
 
   /**
@@ -326,6 +387,12 @@ class HibernateValueTable extends AbstractValueTable {
       this.valueSetCriteria = valueSetCriteria;
     }
 
+    HibernateValueSet(VariableEntity entity, @NotNull ValueSetState valueSetState) {
+      super(HibernateValueTable.this, entity);
+      valueSetCriteria = null;
+      this.valueSetState = valueSetState;
+    }
+
     synchronized ValueSetState getValueSetState() {
       if(valueSetState == null) {
         valueSetState = (ValueSetState) valueSetCriteria.uniqueResult();
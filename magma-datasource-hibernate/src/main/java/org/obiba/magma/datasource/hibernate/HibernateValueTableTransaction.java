@@ -2,7 +2,12 @@ package org.obiba.magma.datasource.hibernate;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 import javax.validation.constraints.NotNull;
 
@@ -10,6 +15,8 @@ import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Transaction synchronisation for modifications made to a {@code HibernateValueTable}.
@@ -25,12 +32,20 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
 
   private final boolean createTableTransaction;
 
-  private final List<VariableValueSource> uncommittedSources = Lists.newLinkedList();
+  /**
+   * Uncommitted sources by variable name, in the order they were added.
+   */
+  private final Map<String, VariableValueSource> uncommittedSources = Maps.newLinkedHashMap();
 
-  private final List<VariableValueSource> uncommittedRemovedSources = Lists.newLinkedList();
+  private final Set<VariableValueSource> uncommittedRemovedSources = Sets.newLinkedHashSet();
 
   private final List<VariableEntity> uncommittedEntities = Lists.newLinkedList();
 
+  /**
+   * Identifiers of the entities which value set was written in this transaction, by any of its writers.
+   */
+  private final Set<String> writtenEntities = Sets.newHashSet();
+
   private final HibernateValueTableWriter transactionWriter;
 
   HibernateValueTableTransaction(@NotNull HibernateValueTable valueTable, boolean newTable) {
@@ -49,6 +64,25 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
     return valueTable;
   }
 
+  /**
+   * Returns true when the value table is created by this transaction, i.e. it has no value sets yet.
+   *
+   * @return
+   */
+  public boolean isNewTable() {
+    return createTableTransaction;
+  }
+
+  /**
+   * Record that the value set of an entity is written in this transaction.
+   *
+   * @param identifier
+   * @return true if the value set of this entity was not written yet in this transaction
+   */
+  public boolean addWrittenEntity(String identifier) {
+    return writtenEntities.add(identifier);
+  }
+
   /**
    * Adds all {@code VariableValueSource} and {@code VariableEntity} to the {@code HibernateValueTable}. If the
    * {@code HibernateValueTable} was created during this transaction, it will also be added to the
@@ -58,7 +92,7 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
   protected void commit() {
     super.commit();
     valueTable.commitEntities(uncommittedEntities);
-    valueTable.commitSources(uncommittedSources);
+    valueTable.commitSources(uncommittedSources.values());
     valueTable.commitRemovedSources(uncommittedRemovedSources);
 
     if(createTableTransaction) {
@@ -71,6 +105,7 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
   @Override
   protected void rollback() {
     super.rollback();
+    writtenEntities.clear();
     uncommittedEntities.clear();
     uncommittedSources.clear();
     uncommittedRemovedSources.clear();
@@ -82,7 +117,11 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
    * @param source the new {@code VariableValueSource}.
    */
   public void addSource(VariableValueSource source) {
-    uncommittedSources.add(source);
+    uncommittedSources.put(source.getName(), source);
+    // a variable written again after being removed replaces the removed one, it is not removed at commit
+    for(Iterator<VariableValueSource> removed = uncommittedRemovedSources.iterator(); removed.hasNext(); ) {
+      if(removed.next().getName().equals(source.getName())) removed.remove();
+    }
   }
 
   public void removeSource(VariableValueSource source) {
@@ -95,11 +134,23 @@ class HibernateValueTableTransaction extends HibernateDatasourceSynchronization
    * @return
    */
   public List<VariableValueSource> getUncommittedSources() {
-    List<VariableValueSource> copy = Lists.newArrayList(uncommittedSources);
+    List<VariableValueSource> copy = Lists.newArrayList(uncommittedSources.values());
     copy.removeAll(uncommittedRemovedSources);
     return Collections.unmodifiableList(copy);
   }
 
+  /**
+   * Returns the uncommitted source of the variable, if it was added and not removed in this transaction.
+   *
+   * @param variableName
+   * @return null if there is no such source
+   */
+  @Nullable
+  public VariableValueSource getUncommittedSource(String variableName) {
+    VariableValueSource source = uncommittedSources.get(variableName);
+    return source == null || uncommittedRemovedSources.contains(source) ? null : source;
+  }
+
   /**
    * Add a {@code VariableValueSource} to the list of uncommitted sources to be added after transaction completion.
    *
@@ -3,6 +3,7 @@
  */
 package org.obiba.magma.datasource.hibernate;
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -61,7 +62,17 @@ class HibernateValueTableWriter implements ValueTableWriter {
 
   private boolean dirty = false;
 
-  private final HibernateMarshallingContext context;
+  private HibernateMarshallingContext context;
+
+  /**
+   * {@code VariableState} ids by variable name, resolved once per variable.
+   */
+  private final Map<String, Serializable> variableStateIds = Maps.newHashMap();
+
+  /**
+   * Number of value sets written and not flushed yet.
+   */
+  private int pendingValueSets = 0;
 
   HibernateValueTableWriter(HibernateValueTableTransaction transaction) {
     if(transaction == null) throw new IllegalArgumentException("transaction cannot be null");
@@ -85,17 +96,56 @@ class HibernateValueTableWriter implements ValueTableWriter {
 
   @Override
   public VariableWriter writeVariables() {
+    // a previous variable writer cleared the session: marshal against the current state of the table
+    context = valueTable.createContext();
     return new HibernateVariableWriter();
   }
 
   @Override
   public void close() {
+    if(!errorOccurred && pendingValueSets > 0) {
+      flushValueSets();
+    }
   }
 
   private void updateTableLastUpdate() {
     valueTable.getValueTableState().setUpdated(new Date());
   }
 
+  private boolean isBulkImport() {
+    return valueTable.getDatasource().getBulkImportBatchSize() > 1;
+  }
+
+  private boolean isTypedValueColumns() {
+    return valueTable.getDatasource().isTypedValueColumns();
+  }
+
+  /**
+   * Persists the pending value sets and empty the Session so we don't fill it up.
+   */
+  private void flushValueSets() {
+    if(dirty) {
+      updateTableLastUpdate();
+      dirty = false;
+    }
+    session.flush();
+    session.clear();
+    pendingValueSets = 0;
+  }
+
+  @Nullable
+  private VariableState getVariableState(Variable variable) {
+    Serializable id = variableStateIds.get(variable.getName());
+    if(id != null) {
+      return (VariableState) session.load(VariableState.class, id);
+    }
+    VariableState variableState = variableConverter.getStateForVariable(variable, valueTable.createContext());
+    if(variableState != null && variableState.getId() != null) {
+      variableStateIds.put(variable.getName(), variableState.getId());
+    }
+    return variableState;
+  }
+
   private class HibernateVariableWriter implements VariableWriter {
 
     private HibernateVariableWriter() {
@@ -124,6 +174,7 @@ class HibernateValueTableWriter implements ValueTableWriter {
       errorOccurred = true;
 
       VariableState variableState = valueTable.getVariableState(variable);
+      variableStateIds.remove(variable.getName());
 
       deleteVariableValues(variable, variableState);
 
@@ -176,8 +227,10 @@ class HibernateValueTableWriter implements ValueTableWriter {
     }
 
     private void deleteVariableCategories(IEntity variableState) {
+      // restrict the second-level cache invalidation to the category attributes
       session.createSQLQuery("delete from category_attributes where category_id in " + //
           "(select c.id from category c where c.variable_id = " + variableState.getId() + ")") //
+          .addSynchronizedQuerySpace("category_attributes") //
           .executeUpdate();
 
       int deletedCategories = session.createQuery("delete CategoryState where variable = :variable")
@@ -187,6 +240,7 @@ class HibernateValueTableWriter implements ValueTableWriter {
 
     private void deleteVariable(VariableState variableState) {
       session.createSQLQuery("delete from variable_attributes where variable_id = " + variableState.getId())
+          .addSynchronizedQuerySpace("variable_attributes") //
           .executeUpdate();
 
       int deletedVariables = session.createQuery("delete VariableState where valueTable = :table and name = :name")
@@ -232,18 +286,13 @@ class HibernateValueTableWriter implements ValueTableWriter {
       // find entity or create it
       VariableEntityState variableEntityState = entityConverter.marshal(entity, context);
 
-      // Will update version timestamp if it exists
-      ValueSetState state = (ValueSetState) AssociationCriteria.create(ValueSetState.class, session) //
-          .add("valueTable", Operation.eq, valueTable.getValueTableState()) //
-          .add("variableEntity", Operation.eq, variableEntityState) //
-          .getCriteria() //
-          .uniqueResult();
-
+      ValueSetState state = findValueSetState(variableEntityState);
+      boolean bulkImport = isBulkImport();
       if(state == null) {
         state = new ValueSetState(valueTable.getValueTableState(), variableEntityState);
         // Persists the ValueSet
         session.save(state);
-        session.refresh(state); //OPAL-2635
+        if(!bulkImport) session.refresh(state); //OPAL-2635
         values = Maps.newHashMap();
         isNewValueSet = true;
       } else {
@@ -251,10 +300,34 @@ class HibernateValueTableWriter implements ValueTableWriter {
         isNewValueSet = false;
       }
 
-      session.buildLockRequest(new LockOptions(LockMode.PESSIMISTIC_FORCE_INCREMENT).setScope(false)).lock(state);
+      // Will update version timestamp if it exists
+      if(!bulkImport || !isNewValueSet) {
+        session.buildLockRequest(new LockOptions(LockMode.PESSIMISTIC_FORCE_INCREMENT).setScope(false)).lock(state);
+      }
       valueSetState = state;
     }
 
+    /**
+     * Look for the value set of the entity, unless in bulk-import mode, the table was created in this transaction and
+     * the entity was not written yet in this transaction.
+     *
+     * @param variableEntityState
+     * @return null if there is no such value set
+     */
+    @Nullable
+    private ValueSetState findValueSetState(VariableEntityState variableEntityState) {
+      boolean written = !transaction.addWrittenEntity(entity.getIdentifier());
+      if(isBulkImport() && transaction.isNewTable() && !written) return null;
+
+      // the value set may be pending in the session
+      if(written && pendingValueSets > 0) flushValueSets();
+      return (ValueSetState) AssociationCriteria.create(ValueSetState.class, session) //
+          .add("valueTable", Operation.eq, valueTable.getValueTableState()) //
+          .add("variableEntity", Operation.eq, variableEntityState) //
+          .getCriteria() //
+          .uniqueResult();
+    }
+
     @Override
     @SuppressWarnings("PMD.NcssMethodCount")
     public void writeValue(@NotNull Variable variable, @NotNull Value value) {
@@ -264,7 +337,7 @@ class HibernateValueTableWriter implements ValueTableWriter {
       if(value == null) throw new IllegalArgumentException("value cannot be null");
 
       try {
-        VariableState variableState = variableConverter.getStateForVariable(variable, valueTable.createContext());
+        VariableState variableState = getVariableState(variable);
         if(variableState == null) {
           throw new NoSuchVariableException(valueTable.getName(), variable.getName());
         }
@@ -296,7 +369,7 @@ class HibernateValueTableWriter implements ValueTableWriter {
       if(BinaryType.get().equals(value.getValueType())) {
         writeBinaryValue(valueSetValue, value, false);
       } else {
-        valueSetValue.setValue(value);
+        valueSetValue.setValue(value, isTypedValueColumns());
       }
 
       addValue(variable, valueSetValue);
@@ -309,7 +382,7 @@ class HibernateValueTableWriter implements ValueTableWriter {
         if(BinaryType.get().equals(value.getValueType())) {
           writeBinaryValue(valueSetValue, value, true);
         } else {
-          valueSetValue.setValue(value);
+          valueSetValue.setValue(value, isTypedValueColumns());
         }
       }
     }
@@ -392,14 +465,9 @@ class HibernateValueTableWriter implements ValueTableWriter {
           transaction.addEntity(entity);
         }
 
-        if(dirty) {
-          updateTableLastUpdate();
-          dirty = false;
+        if(++pendingValueSets >= valueTable.getDatasource().getBulkImportBatchSize()) {
+          flushValueSets();
         }
-
-        // persists valueSetState and empty the Session so we don't fill it up
-        session.flush();
-        session.clear();
       }
     }
 
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.FetchMode;
@@ -59,7 +60,7 @@ class HibernateVariableValueSourceFactory implements VariableValueSourceFactory
         .create(VariableState.class, getCurrentSession())
         .add("valueTable", Operation.eq, valueTable.getValueTableState()) //
         .addSortingClauses(SortingClause.create("id")) //
-        .getCriteria().setFetchMode("categories", FetchMode.JOIN).list();
+        .getCriteria().setFetchMode("categories", FetchMode.JOIN).setCacheable(true).list();
     for(VariableState v : variables) {
       sources.add(createSource(v));
     }
@@ -102,14 +103,20 @@ class HibernateVariableValueSourceFactory implements VariableValueSourceFactory
       return (VariableState) getCurrentSession().get(VariableState.class, ensureVariableId());
     }
 
+    @NotNull
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * The variable state, its categories and attributes are read from the second-level cache when available.
+     */
     @NotNull
     @Override
     public synchronized Variable getVariable() {
       if(variable == null) {
-        VariableState state = (VariableState) getCurrentSession().createCriteria(VariableState.class)
-            .add(Restrictions.idEq(ensureVariableId())).setFetchMode("categories", FetchMode.JOIN) //
-            .uniqueResult();
-        unmarshall(state);
+        unmarshall(getVariableState());
       }
       return variable;
     }
@@ -175,11 +182,39 @@ class HibernateVariableValueSourceFactory implements VariableValueSourceFactory
       variable = VariableConverter.getInstance().unmarshal(state, null);
     }
 
+    /**
+     * Get the value as read from a value set, or a null value when the value set has no value for this variable.
+     *
+     * @param valueSetId
+     * @param value
+     * @return
+     */
+    Value getValue(Serializable valueSetId, @Nullable Value value) {
+      if(value == null) {
+        return getVariable().isRepeatable() ? getValueType().nullSequence() : getValueType().nullValue();
+      }
+
+      if(getValueType().equals(BinaryType.get())) {
+        ValueLoaderFactory factory = new HibernateValueLoaderFactory(valueTable.getDatasource().getSessionFactory(),
+            ensureVariableId(), valueSetId);
+        return getVariable().isRepeatable()
+            ? BinaryType.get().sequenceOfReferences(factory, value)
+            : BinaryType.get().valueOfReference(factory, value);
+      }
+
+      return value;
+    }
+
+    Serializable getVariableId() {
+      return ensureVariableId();
+    }
+
     private Serializable ensureVariableId() {
       if(variableId == null) {
         IEntity state = (IEntity) getCurrentSession().createCriteria(VariableState.class) //
             .add(Restrictions.eq("name", name))//
-            .add(Restrictions.eq("valueTable", valueTable.getValueTableState())).uniqueResult();
+            .add(Restrictions.eq("valueTable", valueTable.getValueTableState())) //
+            .setCacheable(true).uniqueResult();
         if(state == null) throw new IllegalStateException("variable '" + name + "' not persisted yet.");
         variableId = state.getId();
       }
@@ -243,7 +278,8 @@ class HibernateVariableValueSourceFactory implements VariableValueSourceFactory
         // Scroll until we find the required entity or reach the end of the results
         while(hasNextResults && !found) {
           String id = results.getString(0);
-          Value value = getValue((Serializable) results.get(2), (Value) results.get(1));
+          Value value = getValue((Serializable) results.get(2),
+              ValueSetValue.getValue((Value) results.get(1), (Value) results.get(3)));
           valueMap.put(id, value);
           if(entity.getIdentifier().equals(id)) {
             found = true;
@@ -268,22 +304,6 @@ class HibernateVariableValueSourceFactory implements VariableValueSourceFactory
         return value;
       }
 
-      private Value getValue(Serializable valueSetId, Value value) {
-        if(value == null) {
-          return getVariable().isRepeatable() ? getValueType().nullSequence() : getValueType().nullValue();
-        }
-
-        if(getValueType().equals(BinaryType.get())) {
-          ValueLoaderFactory factory = new HibernateValueLoaderFactory(valueTable.getDatasource().getSessionFactory(),
-              ensureVariableId(), valueSetId);
-          return getVariable().isRepeatable()
-              ? BinaryType.get().sequenceOfReferences(factory, value)
-              : BinaryType.get().valueOfReference(factory, value);
-        }
-
-        return value;
-      }
-
       @Override
       public void remove() {
         throw new UnsupportedOperationException();
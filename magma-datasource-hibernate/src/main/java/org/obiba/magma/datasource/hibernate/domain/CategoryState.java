@@ -20,8 +20,12 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 @Entity
 @Table(name = "category")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @SuppressWarnings("UnusedDeclaration")
 public class CategoryState extends AbstractAttributeAwareEntity implements Timestamped {
 
@@ -41,6 +45,7 @@ public class CategoryState extends AbstractAttributeAwareEntity implements Times
 
   @ElementCollection // always cascaded
   @CollectionTable(name = "category_attributes", joinColumns = @JoinColumn(name = "category_id"))
+  @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
   private List<AttributeState> attributes;
 
   public CategoryState() { }
@@ -24,19 +24,24 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Version;
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.annotations.Columns;
 import org.hibernate.annotations.Type;
 import org.hibernate.annotations.TypeDef;
+import org.hibernate.annotations.TypeDefs;
 import org.obiba.magma.Value;
+import org.obiba.magma.datasource.hibernate.type.TypedValueHibernateType;
 import org.obiba.magma.datasource.hibernate.type.ValueHibernateType;
 
 import com.google.common.base.Objects;
 
 @Entity
 @Table(name = "value_set_value")
-@TypeDef(name = "value", typeClass = ValueHibernateType.class)
+@TypeDefs({ //
+    @TypeDef(name = "value", typeClass = ValueHibernateType.class), //
+    @TypeDef(name = "typed_value", typeClass = TypedValueHibernateType.class) })
 @NamedQueries({ //
     @NamedQuery(name = "findValuesByTable",
         query = "SELECT vsv FROM ValueSetValue vsv WHERE vsv.id.valueSet " + //
@@ -44,7 +49,11 @@ import com.google.common.base.Objects;
     @NamedQuery(name = "deleteValueSetValues",
         query = "DELETE FROM ValueSetValue WHERE id.valueSet.id IN (:valueSetIds)"),
     @NamedQuery(name = "deleteVariableValueSetValues",
-        query = "DELETE FROM ValueSetValue WHERE id.variable.id = :variableId") })
+        query = "DELETE FROM ValueSetValue WHERE id.variable.id = :variableId"), //
+    @NamedQuery(name = "findValuesByTableAndVariables",
+        query = "SELECT vs.variableEntity.identifier, vsv.id.variable.id, vsv.value, vs.id, vsv.typedValue " + //
+            "FROM ValueSetState AS vs INNER JOIN vs.values AS vsv " + //
+            "WHERE vs.valueTable.id = :valueTableId AND vsv.id.variable.id IN (:variableIds)") })
 public class ValueSetValue implements Timestamped, Serializable {
 
   private static final long serialVersionUID = 4356913652103162813L;
@@ -59,6 +68,19 @@ public class ValueSetValue implements Timestamped, Serializable {
       @Column(name = "value", length = Integer.MAX_VALUE, nullable = false) })
   private Value value;
 
+  /**
+   * The value when persisted in its typed column, in which case {@code value} only holds its value type with an empty
+   * string.
+   */
+  @Type(type = "typed_value")
+  @Columns(columns = { //
+      @Column(name = "integer_value"), //
+      @Column(name = "decimal_value"), //
+      @Column(name = "date_value"), //
+      @Column(name = "datetime_value"), //
+      @Column(name = "boolean_value") })
+  private Value typedValue;
+
   @SuppressWarnings("FieldMayBeFinal")
   @Temporal(TemporalType.TIMESTAMP)
   @Column(insertable = true, updatable = false, nullable = false)
@@ -81,14 +103,46 @@ public class ValueSetValue implements Timestamped, Serializable {
   }
 
   public void setValue(Value value) {
+    setValue(value, false);
+  }
+
+  /**
+   * Set the value, in its typed column when requested and supported by its value type.
+   *
+   * @param value
+   * @param typed
+   */
+  public void setValue(Value value, boolean typed) {
     if(value.isNull()) {
       throw new IllegalArgumentException("cannot persist null values");
     }
-    this.value = value;
+    if(typed && TypedValueHibernateType.isTyped(value)) {
+      this.value = value.getValueType().nullValue();
+      typedValue = value;
+    } else {
+      this.value = value;
+      typedValue = null;
+    }
   }
 
   public Value getValue() {
-    return value;
+    return getValue(value, typedValue);
+  }
+
+  public boolean isTyped() {
+    return typedValue != null;
+  }
+
+  /**
+   * Get the value from the value and typed value columns, as selected by a query.
+   *
+   * @param value
+   * @param typedValue
+   * @return null if there is no value
+   */
+  @Nullable
+  public static Value getValue(@Nullable Value value, @Nullable Value typedValue) {
+    return typedValue == null ? value : typedValue;
   }
 
   @Override
@@ -40,7 +40,7 @@ import org.obiba.magma.datasource.hibernate.type.ValueTypeHibernateType;
 @TypeDef(name = "value_type", typeClass = ValueTypeHibernateType.class)
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @NamedQuery(name = "allValues",
-    query = "select vs.variableEntity.identifier, vsv.value, vs.id from ValueSetState as vs " + //
+    query = "select vs.variableEntity.identifier, vsv.value, vs.id, vsv.typedValue from ValueSetState as vs " + //
         "left outer join vs.values as vsv with vsv.id.variable.id = :variableId " + //
         "where vs.valueTable.id = :valueTableId " + //
         "order by vs.variableEntity.identifier")
@@ -58,6 +58,7 @@ public class VariableState extends AbstractAttributeAwareEntity implements Times
 
   @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "variable")
   @OrderColumn(name = "category_index")
+  @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
   private List<CategoryState> categories;
 
   @Column(nullable = false)
@@ -83,6 +84,7 @@ public class VariableState extends AbstractAttributeAwareEntity implements Times
 
   @ElementCollection // always cascaded
   @CollectionTable(name = "variable_attributes", joinColumns = @JoinColumn(name = "variable_id"))
+  @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
   private List<AttributeState> attributes;
 
   public VariableState() { }
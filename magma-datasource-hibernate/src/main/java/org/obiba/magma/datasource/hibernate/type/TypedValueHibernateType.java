@@ -0,0 +1,247 @@
+package org.obiba.magma.datasource.hibernate.type;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.dom4j.Node;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metamodel.relational.Size;
+import org.hibernate.type.AbstractType;
+import org.obiba.magma.MagmaDate;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.base.Objects;
+
+/**
+ * A Hibernate Type for persisting non-sequence {@code Value} instances in a column of their native SQL type, so that
+ * they are read without parsing and can be indexed or aggregated by the database. The strategy uses 5 nullable
+ * columns, only the one of the value type is set:
+ * <ul>
+ * <li>integer_value: {@link IntegerType} values</li>
+ * <li>decimal_value: {@link DecimalType} values</li>
+ * <li>date_value: {@link DateType} values</li>
+ * <li>datetime_value: {@link DateTimeType} values, as milliseconds since the epoch so that no precision is lost</li>
+ * <li>boolean_value: {@link BooleanType} values</li>
+ * </ul>
+ */
+public class TypedValueHibernateType extends AbstractType {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int INTEGER = 0;
+
+  private static final int DECIMAL = 1;
+
+  private static final int DATE = 2;
+
+  private static final int DATETIME = 3;
+
+  private static final int BOOLEAN = 4;
+
+  /**
+   * Returns true when the value can be persisted in a typed column.
+   *
+   * @param value
+   * @return
+   */
+  public static boolean isTyped(Value value) {
+    return !value.isSequence() && !value.isNull() && isTyped(value.getValueType());
+  }
+
+  /**
+   * Returns true when the values of this type can be persisted in a typed column.
+   *
+   * @param valueType
+   * @return
+   */
+  public static boolean isTyped(ValueType valueType) {
+    return getColumn(valueType) >= 0;
+  }
+
+  private static int getColumn(ValueType valueType) {
+    if(valueType == IntegerType.get()) return INTEGER;
+    if(valueType == DecimalType.get()) return DECIMAL;
+    if(valueType == DateType.get()) return DATE;
+    if(valueType == DateTimeType.get()) return DATETIME;
+    if(valueType == BooleanType.get()) return BOOLEAN;
+    return -1;
+  }
+
+  @Override
+  public int getColumnSpan(Mapping mapping) throws MappingException {
+    return 5;
+  }
+
+  @Override
+  public String getName() {
+    return "TypedValue";
+  }
+
+  @Override
+  public boolean isDirty(Object old, Object current, boolean[] checkable, SessionImplementor session)
+      throws HibernateException {
+    return !Objects.equal(old, current);
+  }
+
+  @Override
+  public boolean isMutable() {
+    // Value instances are immutable
+    return false;
+  }
+
+  @Override
+  public Object nullSafeGet(ResultSet rs, String name, SessionImplementor session, Object owner)
+      throws HibernateException, SQLException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Nullable
+  @Override
+  public Object nullSafeGet(ResultSet rs, String[] names, SessionImplementor session, Object owner)
+      throws HibernateException, SQLException {
+    long integerValue = rs.getLong(names[INTEGER]);
+    if(!rs.wasNull()) return IntegerType.get().valueOf(integerValue);
+
+    double decimalValue = rs.getDouble(names[DECIMAL]);
+    if(!rs.wasNull()) return DecimalType.get().valueOf(decimalValue);
+
+    Date dateValue = rs.getDate(names[DATE]);
+    if(dateValue != null) return DateType.get().valueOf(new MagmaDate(dateValue));
+
+    long datetimeValue = rs.getLong(names[DATETIME]);
+    if(!rs.wasNull()) return DateTimeType.get().valueOf(new Date(datetimeValue));
+
+    boolean booleanValue = rs.getBoolean(names[BOOLEAN]);
+    if(!rs.wasNull()) return BooleanType.get().valueOf(booleanValue);
+
+    return null;
+  }
+
+  @Override
+  public void nullSafeSet(PreparedStatement st, Object obj, int index, boolean[] settable, SessionImplementor session)
+      throws HibernateException, SQLException {
+    int column = obj == null ? -1 : getColumn(((Value) obj).getValueType());
+    int offset = 0;
+    for(int i = 0; i < settable.length; i++) {
+      if(settable[i]) {
+        if(i == column) {
+          setColumn(st, index + offset, column, (Value) obj);
+        } else {
+          st.setNull(index + offset, sqlType(i));
+        }
+        offset++;
+      }
+    }
+  }
+
+  @Override
+  public void nullSafeSet(PreparedStatement st, Object obj, int index, SessionImplementor session)
+      throws HibernateException, SQLException {
+    nullSafeSet(st, obj, index, new boolean[] { true, true, true, true, true }, session);
+  }
+
+  private void setColumn(PreparedStatement st, int index, int column, Value value) throws SQLException {
+    switch(column) {
+      case INTEGER:
+        st.setLong(index, (Long) value.getValue());
+        break;
+      case DECIMAL:
+        st.setDouble(index, (Double) value.getValue());
+        break;
+      case DATE:
+        st.setDate(index, new java.sql.Date(((MagmaDate) value.getValue()).asDate().getTime()));
+        break;
+      case DATETIME:
+        st.setLong(index, ((Date) value.getValue()).getTime());
+        break;
+      case BOOLEAN:
+        st.setBoolean(index, (Boolean) value.getValue());
+        break;
+      default:
+        throw new IllegalArgumentException("Not a typed value: " + value.getValueType().getName());
+    }
+  }
+
+  private int sqlType(int column) {
+    return sqlTypes(null)[column];
+  }
+
+  @Override
+  public Class<?> getReturnedClass() {
+    return Value.class;
+  }
+
+  @Override
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public Object replace(Object original, Object target, SessionImplementor session, Object owner, Map copyCache)
+      throws HibernateException {
+    // It is safe to return the original parameter since Value instances are immutable
+    return original;
+  }
+
+  @Override
+  public Object fromXMLNode(Node xml, Mapping factory) throws HibernateException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setToXMLNode(Node node, Object value, SessionFactoryImplementor factory) throws HibernateException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int[] sqlTypes(Mapping mapping) throws MappingException {
+    return new int[] { Types.BIGINT, Types.DOUBLE, Types.DATE, Types.BIGINT, Types.BIT };
+  }
+
+  @Override
+  public boolean[] toColumnNullness(Object value, Mapping mapping) {
+    boolean[] nullness = new boolean[5];
+    if(value != null) {
+      nullness[getColumn(((Value) value).getValueType())] = true;
+    }
+    return nullness;
+  }
+
+  @Override
+  public String toLoggableString(Object value, SessionFactoryImplementor factory) throws HibernateException {
+    return value == null ? "null" : value.toString();
+  }
+
+  @Override
+  public Object deepCopy(Object value, SessionFactoryImplementor factory) throws HibernateException {
+    if(value == null) return null;
+    return ((Value) value).copy();
+  }
+
+  @Override
+  public Size[] dictatedSizes(Mapping mapping) throws MappingException {
+    return defaultSizes(mapping);
+  }
+
+  @Override
+  public Size[] defaultSizes(Mapping mapping) throws MappingException {
+    Size[] sizes = new Size[5];
+    for(int i = 0; i < sizes.length; i++) {
+      sizes[i] = new Size();
+    }
+    return sizes;
+  }
+
+}
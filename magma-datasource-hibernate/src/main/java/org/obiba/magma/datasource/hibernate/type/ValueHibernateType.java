@@ -29,6 +29,8 @@ import com.google.common.base.Strings;
  * <li>is_sequence: stores true when the {@code Value} is a {@code ValueSequence},false otherwise.</li>
  * <li>value: stores the value returned by {@code value.toString()}</li>
  * </ul>
+ * A value stored in its typed column (see {@link TypedValueHibernateType}) has an empty string value and is read as a
+ * null value here.
  */
 public class ValueHibernateType extends AbstractType {
 
@@ -75,6 +77,9 @@ public class ValueHibernateType extends AbstractType {
     ValueType valueType = ValueType.Factory.forName(valueTypeName);
     boolean isSequence = rs.getBoolean(names[1]);
     String stringValue = rs.getString(names[2]);
+    if(!isSequence && Strings.isNullOrEmpty(stringValue) && TypedValueHibernateType.isTyped(valueType)) {
+      return valueType.nullValue();
+    }
     return isSequence ? valueType.sequenceOf(stringValue) : valueType.valueOf(stringValue);
   }
 
@@ -91,7 +96,7 @@ public class ValueHibernateType extends AbstractType {
       st.setBoolean(index + offset++, value.isSequence());
     }
     if(settable[2]) {
-      st.setString(index + offset, value.toString());
+      st.setString(index + offset, Strings.nullToEmpty(value.isNull() ? null : value.toString()));
     }
   }
 
@@ -145,7 +150,8 @@ public class ValueHibernateType extends AbstractType {
 
   @Override
   public Object deepCopy(Object value, SessionFactoryImplementor factory) throws HibernateException {
-    if(value == null) return null;
+    // null values of typed values cannot be copied from their text representation
+    if(value == null || ((Value) value).isNull()) return value;
     return ((Value) value).copy();
   }
 
@@ -10,6 +10,7 @@ import java.util.TreeSet;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,13 +39,18 @@ import org.obiba.magma.datasource.hibernate.domain.ValueTableState;
 import org.obiba.magma.datasource.hibernate.domain.VariableState;
 import org.obiba.magma.support.DatasourceCopier;
 import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.BinaryType;
+import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.DateType;
 import org.obiba.magma.type.DecimalType;
 import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
+import org.obiba.magma.views.MaterializedView;
+import org.obiba.magma.views.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -55,6 +61,7 @@ import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -1151,6 +1158,47 @@ public class HibernateDatasourceTest {
     });
   }
 
+  @Test
+  public void test_materialized_view_variable_value_type_change() {
+    final StaticValueTable source = new StaticValueTable(new StaticDatasource("source"), "source",
+        ImmutableSet.of("1", "2"));
+    source.addVariables(TextType.get(), "A");
+    source.addValues("1", "A", "one").addValues("2", "A", "two");
+    final View view = View.Builder.newView(TABLE, source).build();
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        MagmaEngine.get().addDatasource(ds);
+        assertThat(new MaterializedView(view, ds).refresh()).isEqualTo(2);
+      }
+    });
+
+    source.removeVariable("A");
+    source.addVariables(IntegerType.get(), "A");
+    source.addValues("1", "A", 1).addValues("2", "A", 2);
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        assertThat(new MaterializedView(view, getDatasource()).refresh()).isEqualTo(2);
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        MaterializedView materializedView = new MaterializedView(view, getDatasource());
+        Variable variable = materializedView.getVariable("A");
+        assertThat(variable.getValueType()).isEqualTo(IntegerType.get());
+        assertThat(materializedView.getValue(variable, materializedView.getValueSet(new VariableEntityBean(PARTICIPANT,
+            "2")))).isEqualTo(IntegerType.get().valueOf(2));
+        assertThat(materializedView.refresh()).isEqualTo(2);
+      }
+    });
+  }
+
   @Test
   public void test_count_variables() {
 
@@ -1204,6 +1252,260 @@ public class HibernateDatasourceTest {
     });
   }
 
+  @Test
+  public void test_bulk_import() {
+
+    final List<Variable> variables = new ArrayList<>();
+    for(int i = 0; i < 20; i++) {
+      variables.add(Variable.Builder.newVariable("Variable " + i, IntegerType.get(), PARTICIPANT).build());
+    }
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        ds.setBulkImportBatchSize(30);
+        MagmaEngine.get().addDatasource(ds);
+        try(ValueTableWriter tableWriter = ds.createWriter(TABLE, PARTICIPANT)) {
+          try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+            for(Variable variable : variables) {
+              variableWriter.writeVariable(variable);
+            }
+          }
+          for(int i = 0; i < 100; i++) {
+            try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter
+                .writeValueSet(new VariableEntityBean(PARTICIPANT, "" + i))) {
+              for(int j = 0; j < variables.size(); j++) {
+                valueSetWriter.writeValue(variables.get(j), IntegerType.get().valueOf(i * j));
+              }
+            }
+          }
+          // rewrite a value set still pending in the session
+          try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter
+              .writeValueSet(new VariableEntityBean(PARTICIPANT, "99"))) {
+            valueSetWriter.writeValue(variables.get(0), IntegerType.get().valueOf(-1));
+          }
+        }
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        ValueTable valueTable = getDatasource().getValueTable(TABLE);
+        assertThat(valueTable.getValueSetCount()).isEqualTo(100);
+        for(int i = 0; i < 100; i++) {
+          ValueSet valueSet = valueTable.getValueSet(new VariableEntityBean(PARTICIPANT, "" + i));
+          for(int j = 0; j < variables.size(); j++) {
+            long expected = i == 99 && j == 0 ? -1 : i * j;
+            assertThat(valueTable.getValue(variables.get(j), valueSet).getValue()).isEqualTo(expected);
+          }
+        }
+      }
+    });
+  }
+
+  @Test
+  public void test_two_writers_on_new_table_in_one_transaction() {
+    writeSameValueSetWithTwoWriters(1);
+  }
+
+  @Test
+  public void test_two_bulk_import_writers_on_new_table_in_one_transaction() {
+    writeSameValueSetWithTwoWriters(30);
+  }
+
+  private void writeSameValueSetWithTwoWriters(final int bulkImportBatchSize) {
+    final Variable variable = Variable.Builder.newVariable("Test Variable", IntegerType.get(), PARTICIPANT).build();
+    final VariableEntity entity = new VariableEntityBean(PARTICIPANT, "1");
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        ds.setBulkImportBatchSize(bulkImportBatchSize);
+        MagmaEngine.get().addDatasource(ds);
+        for(int i = 1; i <= 2; i++) {
+          try(ValueTableWriter tableWriter = ds.createWriter(TABLE, PARTICIPANT)) {
+            try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+              variableWriter.writeVariable(variable);
+            }
+            try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity)) {
+              valueSetWriter.writeValue(variable, IntegerType.get().valueOf(i));
+            }
+          }
+        }
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        ValueTable valueTable = getDatasource().getValueTable(TABLE);
+        assertThat(valueTable.getValueSetCount()).isEqualTo(1);
+        assertThat(valueTable.getValue(variable, valueTable.getValueSet(entity)).getValue()).isEqualTo(2L);
+      }
+    });
+  }
+
+  @Test
+  public void test_value_sets_iteration() {
+
+    final ImmutableSet<Variable> variables = ImmutableSet.of(//
+        Variable.Builder.newVariable("Test Variable", IntegerType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Test Repeatable", TextType.get(), PARTICIPANT).repeatable().build(), //
+        Variable.Builder.newVariable("Other Variable", DecimalType.get(), PARTICIPANT).build());
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        ValueTable generatedValueTable = new GeneratedValueTable(ds, variables, 250);
+        MagmaEngine.get().addDatasource(ds);
+        DatasourceCopier.Builder.newCopier().build().copy(generatedValueTable, TABLE, ds);
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = getDatasource();
+        ds.setValueSetsPrefetchSize(100);
+        ValueTable valueTable = ds.getValueTable(TABLE);
+        int count = 0;
+        for(ValueSet valueSet : valueTable.getValueSets()) {
+          ValueSet expected = valueTable.getValueSet(valueSet.getVariableEntity());
+          for(Variable variable : variables) {
+            assertThat(valueTable.getValue(variable, valueSet)).isEqualTo(valueTable.getValue(variable, expected));
+          }
+          assertThat(valueSet.getTimestamps().getLastUpdate())
+              .isEqualTo(expected.getTimestamps().getLastUpdate());
+          count++;
+        }
+        assertThat(count).isEqualTo(250);
+      }
+    });
+  }
+
+  @Test
+  public void test_typed_value_columns() {
+
+    final List<Variable> variables = ImmutableList.of( //
+        Variable.Builder.newVariable("Integer", IntegerType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Decimal", DecimalType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Date", DateType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("DateTime", DateTimeType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Boolean", BooleanType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Text", TextType.get(), PARTICIPANT).build(), //
+        Variable.Builder.newVariable("Repeatable", IntegerType.get(), PARTICIPANT).repeatable().build());
+    final List<Value> values = ImmutableList.of( //
+        IntegerType.get().valueOf(42), //
+        DecimalType.get().valueOf(4.2), //
+        DateType.get().valueOf("2014-03-07"), //
+        DateTimeType.get().valueOf(new Date(1394203200000L)), //
+        BooleanType.get().trueValue(), //
+        TextType.get().valueOf("forty-two"), //
+        IntegerType.get().sequenceOf("4,2"));
+    final VariableEntity entity = new VariableEntityBean(PARTICIPANT, "1");
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        ds.setTypedValueColumns(true);
+        MagmaEngine.get().addDatasource(ds);
+        try(ValueTableWriter tableWriter = ds.createWriter(TABLE, PARTICIPANT)) {
+          try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+            for(Variable variable : variables) {
+              variableWriter.writeVariable(variable);
+            }
+          }
+          try(ValueTableWriter.ValueSetWriter valueSetWriter = tableWriter.writeValueSet(entity)) {
+            for(int i = 0; i < variables.size(); i++) {
+              valueSetWriter.writeValue(variables.get(i), values.get(i));
+            }
+          }
+        }
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        assertThat(countTypedValues()).isEqualTo(5);
+        assertValues(variables, values, entity);
+
+        HibernateDatasource ds = getDatasource();
+        ds.setTypedValueColumns(false);
+        assertThat(ds.migrateValueColumns()).isEqualTo(5);
+      }
+    });
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        assertThat(countTypedValues()).isEqualTo(0);
+        assertValues(variables, values, entity);
+      }
+    });
+  }
+
+  private int countTypedValues() {
+    return ((Number) sessionFactory.getCurrentSession().createSQLQuery(
+        "SELECT COUNT(*) FROM value_set_value WHERE integer_value IS NOT NULL OR decimal_value IS NOT NULL " +
+            "OR date_value IS NOT NULL OR datetime_value IS NOT NULL OR boolean_value IS NOT NULL").uniqueResult())
+        .intValue();
+  }
+
+  private void assertValues(List<Variable> variables, List<Value> values, VariableEntity entity) {
+    ValueTable valueTable = getDatasource().getValueTable(TABLE);
+    ValueSet valueSet = valueTable.getValueSet(entity);
+    for(int i = 0; i < variables.size(); i++) {
+      Variable variable = variables.get(i);
+      assertThat(valueTable.getValue(variable, valueSet)).isEqualTo(values.get(i));
+      Iterable<Value> vector = valueTable.getVariableValueSource(variable.getName()).asVectorSource()
+          .getValues(Sets.newTreeSet(ImmutableList.of(entity)));
+      assertThat(Iterables.getOnlyElement(vector)).isEqualTo(values.get(i));
+    }
+  }
+
+  @Test
+  public void test_variable_cache_statistics() {
+
+    transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+      @Override
+      protected void doAction(TransactionStatus status) throws Exception {
+        HibernateDatasource ds = createDatasource();
+        MagmaEngine.get().addDatasource(ds);
+        try(ValueTableWriter tableWriter = ds.createWriter(TABLE, PARTICIPANT);
+            VariableWriter variableWriter = tableWriter.writeVariables()) {
+          variableWriter.writeVariable(Variable.Builder.newVariable("Variable", IntegerType.get(), PARTICIPANT) //
+              .addCategories("1", "2").addAttribute("label", "Variable").build());
+        }
+      }
+    });
+
+    sessionFactory.getStatistics().clear();
+    for(int i = 0; i < 2; i++) {
+      transactionTemplate.execute(new TransactionCallbackRuntimeExceptions() {
+        @Override
+        protected void doAction(TransactionStatus status) throws Exception {
+          ValueTable valueTable = createDatasource().getValueTable(TABLE);
+          assertThat(valueTable.hasVariable("Variable")).isTrue();
+          assertThat(valueTable.getVariable("Variable").getCategories()).hasSize(2);
+          assertThat(valueTable.getVariable("Variable").getAttributeStringValue("label")).isEqualTo("Variable");
+        }
+      });
+    }
+
+    long hits = 0;
+    for(SecondLevelCacheStatistics statistics : getDatasource().getVariableCacheStatistics().values()) {
+      hits += statistics.getHitCount();
+    }
+    assertThat(getDatasource().getVariableCacheStatistics()).isNotEmpty();
+    assertThat(hits).isGreaterThan(0);
+  }
+
   @Test
   // See http://jira.obiba.org/jira/browse/OPAL-2423
   public void test_get_binary_values_as_vector() throws IOException {
@@ -162,6 +162,16 @@ public class JdbcDatasource extends AbstractDatasource {
     return true;
   }
 
+  /**
+   * Each table writer buffers its own batch of statements and executes it in a transaction of its own when full or when
+   * the writer is closed, so that concurrent writers share neither statements nor transactions. Writers are declared
+   * concurrent only when batching is enabled.
+   */
+  @Override
+  public boolean canWriteConcurrently() {
+    return settings.getBatchSize() > 1;
+  }
+
   @Override
   public void drop() {
     for(ValueTable valueTable : ImmutableList.copyOf(getValueTables())) {
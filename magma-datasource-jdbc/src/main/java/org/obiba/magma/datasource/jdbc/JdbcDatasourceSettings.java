@@ -46,6 +46,12 @@ public class JdbcDatasourceSettings {
 
   private int batchSize = 100;
 
+  /**
+   * Number of entities which values are loaded per query when iterating over the value sets of a table or over the
+   * values of a variable.
+   */
+  private int valueSetsPrefetchSize = 100;
+
   //
   // Constructors
   //
@@ -77,6 +83,17 @@ public class JdbcDatasourceSettings {
     this.batchSize = batchSize;
   }
 
+  public int getValueSetsPrefetchSize() {
+    return valueSetsPrefetchSize;
+  }
+
+  public void setValueSetsPrefetchSize(int valueSetsPrefetchSize) {
+    if(valueSetsPrefetchSize < 1 || valueSetsPrefetchSize > MAX_BATCH_SIZE)
+      throw new IllegalArgumentException("Invalid valueSetsPrefetchSize");
+
+    this.valueSetsPrefetchSize = valueSetsPrefetchSize;
+  }
+
   public void setDefaultEntityType(@NotNull String defaultEntityType) {
     this.defaultEntityType = defaultEntityType;
   }
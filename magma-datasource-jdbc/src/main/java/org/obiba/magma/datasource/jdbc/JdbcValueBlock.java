@@ -0,0 +1,139 @@
+package org.obiba.magma.datasource.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.ValueBlockBean;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads a block of values with a single scan of the SQL table: one query selects the columns of all the requested
+ * variables and only the rows of the requested entities are kept. Values are put in their column as the rows are
+ * streamed, without holding the rows.
+ */
+class JdbcValueBlock extends ValueBlockBean {
+
+  JdbcValueBlock(JdbcValueTable valueTable, Iterable<Variable> variables, SortedSet<VariableEntity> entities) {
+    super(valueTable, entities);
+    List<JdbcVariableValueSource> sources = getSources(valueTable, variables);
+
+    final Map<String, Integer> positions = Maps.newHashMapWithExpectedSize(entities.size());
+    for(VariableEntity entity : entities) {
+      positions.put(entity.getIdentifier(), positions.size());
+    }
+    final Value[][] columns = new Value[sources.size()][entities.size()];
+    if(!entities.isEmpty() && !sources.isEmpty()) {
+      // few entities are selected by identifier, otherwise the whole table is scanned once
+      boolean selected = entities.size() <= valueTable.getDatasource().getSettings().getValueSetsPrefetchSize();
+      scan(valueTable, sources, selected ? entities : null, new RowHandler() {
+        @Override
+        public void handle(String identifier, Value[] row) {
+          Integer position = positions.get(identifier);
+          if(position == null) return;
+          for(int i = 0; i < row.length; i++) {
+            columns[i][position] = row[i];
+          }
+        }
+      });
+    }
+
+    for(int i = 0; i < sources.size(); i++) {
+      Variable variable = sources.get(i).getVariable();
+      Value[] column = columns[i];
+      for(int j = 0; j < column.length; j++) {
+        if(column[j] == null) column[j] = nullValue(variable);
+      }
+      addColumn(variable, Arrays.asList(column));
+    }
+  }
+
+  static List<JdbcVariableValueSource> getSources(JdbcValueTable valueTable, Iterable<Variable> variables) {
+    List<JdbcVariableValueSource> sources = Lists.newArrayList();
+    for(Variable variable : variables) {
+      sources.add((JdbcVariableValueSource) valueTable.getVariableValueSource(variable.getName()));
+    }
+    return sources;
+  }
+
+  /**
+   * Read the columns of the sources with a single query. Rows are streamed by the driver, by fetches of
+   * {@link JdbcDatasourceSettings#getValueSetsPrefetchSize()} rows, and handed over one at a time.
+   *
+   * @param valueTable
+   * @param sources
+   * @param entities the entities which rows are selected, null for all the rows of the table
+   * @param handler
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressWarnings("SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING")
+  static void scan(final JdbcValueTable valueTable, final List<JdbcVariableValueSource> sources,
+      @Nullable SortedSet<VariableEntity> entities, final RowHandler handler) {
+    final JdbcDatasource datasource = valueTable.getDatasource();
+    StringBuilder columns = new StringBuilder(valueTable.getEntityIdentifierColumnsSql());
+    for(JdbcVariableValueSource source : sources) {
+      columns.append(", ").append(datasource.escapeColumnName(source.getColumnName()));
+    }
+    final int offset = valueTable.getSettings().getEntityIdentifierColumns().size();
+
+    String sql = String.format("SELECT %s FROM %s", columns, datasource.escapeTableName(valueTable.getSqlName()));
+    Object[] params = new Object[0];
+    if(entities != null) {
+      sql += " WHERE " + valueTable.getEntitiesWhereClause(entities.size());
+      params = valueTable.getEntitiesParameters(entities);
+    }
+
+    final PreparedStatementSetter paramsSetter = new ArgumentPreparedStatementSetter(params);
+    datasource.getJdbcTemplate().query(sql, new PreparedStatementSetter() {
+      @Override
+      public void setValues(PreparedStatement ps) throws SQLException {
+        ps.setFetchSize(datasource.getSettings().getValueSetsPrefetchSize());
+        paramsSetter.setValues(ps);
+      }
+    }, new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet rs) throws SQLException {
+        Value[] row = new Value[sources.size()];
+        for(int i = 0; i < row.length; i++) {
+          row[i] = getValue(sources.get(i).getVariable(), rs.getObject(offset + i + 1));
+        }
+        handler.handle(valueTable.buildEntityIdentifier(rs), row);
+      }
+    });
+  }
+
+  private static Value getValue(Variable variable, Object resObj) {
+    if(resObj == null) return nullValue(variable);
+    ValueType valueType = variable.getValueType();
+    return variable.isRepeatable() ? valueType.sequenceOf(resObj.toString()) : valueType.valueOf(resObj);
+  }
+
+  private static Value nullValue(Variable variable) {
+    return variable.isRepeatable() ? variable.getValueType().nullSequence() : variable.getValueType().nullValue();
+  }
+
+  interface RowHandler {
+
+    /**
+     * @param identifier the identifier of the row's entity
+     * @param row the values of the row, in the order of the scanned sources
+     */
+    void handle(String identifier, Value[] row);
+
+  }
+
+}
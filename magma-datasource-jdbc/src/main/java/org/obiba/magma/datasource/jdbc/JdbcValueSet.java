@@ -18,11 +18,8 @@ import org.springframework.jdbc.core.RowMapper;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.base.Predicates;
-import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 public class JdbcValueSet extends ValueSetBean {
 
@@ -30,31 +27,42 @@ public class JdbcValueSet extends ValueSetBean {
 
   private final String sqlTableName;
 
-  private RowMapper<Map<String, Value>> mapper;
+  private final RowMapper<Map<String, Value>> mapper;
+
+  /**
+   * True when the values (including binary ones) were loaded along with other value sets of the same block.
+   */
+  private final boolean prefetched;
 
   public JdbcValueSet(final JdbcValueTable valueTable, VariableEntity variableEntity) {
     super(valueTable, variableEntity);
     resultSetCache = new HashMap<>();
     sqlTableName = valueTable.getSettings().getSqlTableName();
+    prefetched = false;
 
     mapper = new RowMapper<Map<String, Value>>() {
       @Override
       public Map<String, Value> mapRow(ResultSet rs, int rowNum) throws SQLException {
-        Map<String, Value> res = Maps.newHashMap();
-
-        for(int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-          if(!getValueTable().getSettings().getEntityIdentifierColumns().contains(rs.getMetaData().getColumnName(i))) {
-            String variableName = valueTable.getVariableName(rs.getMetaData().getColumnName(i));
-            Value variableValue = SqlTypes.valueTypeFor(rs.getMetaData().getColumnType(i)).valueOf(rs.getObject(i));
-            res.put(variableName, variableValue);
-          }
-        }
-
-        return res;
+        return valueTable.mapValueSetRow(rs);
       }
     };
   }
 
+  /**
+   * Value set which values were already loaded by {@link JdbcValueTable#getValueSets()}: no further query is issued.
+   *
+   * @param valueTable
+   * @param variableEntity
+   * @param values values by variable name, empty if the entity has no row
+   */
+  JdbcValueSet(JdbcValueTable valueTable, VariableEntity variableEntity, Map<String, Value> values) {
+    super(valueTable, variableEntity);
+    resultSetCache = new HashMap<>(values);
+    sqlTableName = valueTable.getSettings().getSqlTableName();
+    prefetched = true;
+    mapper = null;
+  }
+
   @NotNull
   @Override
   public JdbcValueTable getValueTable() {
@@ -68,11 +76,16 @@ public class JdbcValueSet extends ValueSetBean {
   }
 
   public Value getValue(Variable variable) {
-    if(variable.getValueType().isBinary()) return getBinaryValue(variable);
+    if(variable.getValueType().isBinary() && !prefetched) return getBinaryValue(variable);
 
     loadResultSetCache();
 
-    Value value = convertValue(variable, resultSetCache.get(variable.getName()));
+    Value cached = resultSetCache.get(variable.getName());
+    if(cached == null) {
+      return variable.isRepeatable() ? variable.getValueType().nullSequence() : variable.getValueType().nullValue();
+    }
+
+    Value value = convertValue(variable, cached);
     resultSetCache.put(variable.getName(), value);
     return value;
   }
@@ -113,8 +126,8 @@ public class JdbcValueSet extends ValueSetBean {
   }
 
   private synchronized void loadResultSetCache() {
-    if(resultSetCache.isEmpty()) {
-      List<Map<String, Value>> rows = loadValues(getNonBinaryColumns(), mapper);
+    if(!prefetched && resultSetCache.isEmpty()) {
+      List<Map<String, Value>> rows = loadValues(getValueTable().getValueSetColumnNames(false), mapper);
 
       for(Map<String, Value> row : rows) {
         resultSetCache.putAll(row);
@@ -122,29 +135,6 @@ public class JdbcValueSet extends ValueSetBean {
     }
   }
 
-  private List<String> getNonBinaryColumns() {
-    List<String> columns = Lists.newArrayList(
-        Iterables.filter(Iterables.transform(getValueTable().getVariables(), new Function<Variable, String>() {
-          @Nullable
-          @Override
-          public String apply(@Nullable Variable input) {
-            if(input.getValueType().isBinary()) return null;
-
-            return getValueTable().getVariableSqlName(input.getName());
-          }
-        }), Predicates.notNull()));
-
-    String created = getValueTable().getCreatedTimestampColumnName();
-
-    if(!Strings.isNullOrEmpty(created)) columns.add(created);
-
-    String updated = getValueTable().getUpdatedTimestampColumnName();
-
-    if(!Strings.isNullOrEmpty(updated)) columns.add(updated);
-
-    return columns;
-  }
-
   private <T> List<T> loadValues(List<String> columnNames, RowMapper<T> rowMapper) {
     final JdbcDatasource datasource = getValueTable().getDatasource();
     List<String> entityIdentifierColumns = getValueTable().getSettings().getEntityIdentifierColumns();
@@ -1,12 +1,16 @@
 package org.obiba.magma.datasource.jdbc;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.SortedSet;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
@@ -16,9 +20,12 @@ import org.obiba.magma.Category;
 import org.obiba.magma.Datasource;
 import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.NoSuchValueSetException;
+import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTableScanner;
 import org.obiba.magma.ValueType;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
@@ -28,14 +35,19 @@ import org.obiba.magma.datasource.jdbc.support.CreateTableChangeBuilder;
 import org.obiba.magma.datasource.jdbc.support.TableUtils;
 import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.DateTimeType;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -50,7 +62,7 @@ import static org.obiba.magma.datasource.jdbc.JdbcValueTableWriter.*;
 import static org.obiba.magma.datasource.jdbc.support.TableUtils.newTable;
 
 @SuppressWarnings("OverlyCoupledClass")
-class JdbcValueTable extends AbstractValueTable {
+class JdbcValueTable extends AbstractValueTable implements ValueTableScanner {
 
   private final JdbcValueTableSettings settings;
 
@@ -124,6 +136,45 @@ class JdbcValueTable extends AbstractValueTable {
     return new JdbcValueSet(this, entity);
   }
 
+  /**
+   * Value sets are loaded by blocks of {@link JdbcDatasourceSettings#getValueSetsPrefetchSize()} entities, one query
+   * per block.
+   */
+  @Override
+  public Iterable<ValueSet> getValueSets() {
+    int prefetchSize = getDatasource().getSettings().getValueSetsPrefetchSize();
+    if(prefetchSize <= 1) return super.getValueSets();
+
+    return Iterables.concat(Iterables.transform(Iterables.partition(getVariableEntities(), prefetchSize),
+        new Function<List<VariableEntity>, Iterable<ValueSet>>() {
+          @Override
+          public Iterable<ValueSet> apply(List<VariableEntity> input) {
+            return loadValueSets(input);
+          }
+        }));
+  }
+
+  @NotNull
+  @Override
+  public ValueBlock getValueBlock(Iterable<Variable> variables, SortedSet<VariableEntity> entities)
+      throws NoSuchVariableException {
+    return new JdbcValueBlock(this, variables, entities);
+  }
+
+  /**
+   * Streams the rows of a single query over the columns of the variables, see {@link JdbcValueBlock}.
+   */
+  @Override
+  public void scan(@NotNull Iterable<Variable> variables, @NotNull final ValuesHandler handler)
+      throws NoSuchVariableException {
+    JdbcValueBlock.scan(this, JdbcValueBlock.getSources(this, variables), null, new JdbcValueBlock.RowHandler() {
+      @Override
+      public void handle(String identifier, Value[] row) {
+        handler.handle(new VariableEntityBean(getEntityType(), identifier), Arrays.asList(row));
+      }
+    });
+  }
+
   @Override
   public Timestamps getValueSetTimestamps(VariableEntity entity) throws NoSuchValueSetException {
     return new ValueSetTimestamps(entity, getCreatedTimestampColumnName(), getUpdatedTimestampColumnName());
@@ -464,6 +515,133 @@ class JdbcValueTable extends AbstractValueTable {
     return entityIdentifier.toString();
   }
 
+  /**
+   * Get the columns holding the values of a value set: variable columns and timestamp columns.
+   *
+   * @param withBinaries whether binary variable columns are included
+   * @return
+   */
+  List<String> getValueSetColumnNames(boolean withBinaries) {
+    List<String> columns = Lists.newArrayList();
+    for(Variable variable : getVariables()) {
+      if(withBinaries || !variable.getValueType().isBinary()) columns.add(getVariableSqlName(variable.getName()));
+    }
+
+    String created = getCreatedTimestampColumnName();
+    if(!Strings.isNullOrEmpty(created)) columns.add(created);
+
+    String updated = getUpdatedTimestampColumnName();
+    if(!Strings.isNullOrEmpty(updated)) columns.add(updated);
+
+    return columns;
+  }
+
+  /**
+   * Read the values of the current row, by variable name. Entity identifier columns are skipped.
+   *
+   * @param rs
+   * @return
+   * @throws SQLException
+   */
+  Map<String, Value> mapValueSetRow(ResultSet rs) throws SQLException {
+    Map<String, Value> res = Maps.newHashMap();
+    ResultSetMetaData metaData = rs.getMetaData();
+    List<String> entityIdentifierColumns = getSettings().getEntityIdentifierColumns();
+
+    for(int i = 1; i <= metaData.getColumnCount(); i++) {
+      String columnName = metaData.getColumnName(i);
+      if(!entityIdentifierColumns.contains(columnName)) {
+        res.put(getVariableName(columnName), SqlTypes.valueTypeFor(metaData.getColumnType(i)).valueOf(rs.getObject(i)));
+      }
+    }
+
+    return res;
+  }
+
+  /**
+   * Build a where clause matching the given number of entities, to be used with
+   * {@link #getEntitiesParameters(Iterable)}.
+   *
+   * @param count number of entities
+   * @return
+   */
+  String getEntitiesWhereClause(int count) {
+    final JdbcDatasource datasource = getDatasource();
+    List<String> entityIdentifierColumns = getSettings().getEntityIdentifierColumns();
+
+    if(entityIdentifierColumns.size() == 1) {
+      return String.format("%s IN (%s)", datasource.escapeColumnName(entityIdentifierColumns.get(0)),
+          Joiner.on(", ").join(Collections.nCopies(count, "?")));
+    }
+
+    String entityClause = "(" + Joiner.on(" AND ")
+        .join(Iterables.transform(entityIdentifierColumns, new Function<String, String>() {
+          @Override
+          public String apply(String input) {
+            return String.format("%s = ?", datasource.escapeColumnName(input));
+          }
+        })) + ")";
+    return Joiner.on(" OR ").join(Collections.nCopies(count, entityClause));
+  }
+
+  /**
+   * Get the identifier column values of the entities, in the order of {@link #getEntitiesWhereClause(int)}.
+   *
+   * @param entities
+   * @return
+   */
+  Object[] getEntitiesParameters(Iterable<VariableEntity> entities) {
+    boolean multipleColumns = getSettings().getEntityIdentifierColumns().size() > 1;
+    List<Object> params = Lists.newArrayList();
+    for(VariableEntity entity : entities) {
+      // identifiers are split only when made of several columns, as they may contain dashes (e.g. UUIDs)
+      if(multipleColumns) {
+        params.addAll(Arrays.asList(entity.getIdentifier().split("-")));
+      } else {
+        params.add(entity.getIdentifier());
+      }
+    }
+    return params.toArray();
+  }
+
+  /**
+   * Load the value sets of the given entities with a single query.
+   *
+   * @param entities
+   * @return
+   */
+  private Iterable<ValueSet> loadValueSets(List<VariableEntity> entities) {
+    final JdbcDatasource datasource = getDatasource();
+    List<String> entityIdentifierColumns = getSettings().getEntityIdentifierColumns();
+    List<String> columns = Lists.newArrayList(entityIdentifierColumns);
+    columns.addAll(getValueSetColumnNames(true));
+
+    Iterable<String> escapedColumnNames = Iterables.transform(columns, new Function<String, String>() {
+      @Override
+      public String apply(String input) {
+        return datasource.escapeColumnName(input);
+      }
+    });
+
+    String sql = String.format("SELECT %s FROM %s WHERE %s", Joiner.on(", ").join(escapedColumnNames),
+        datasource.escapeTableName(getSqlName()), getEntitiesWhereClause(entities.size()));
+
+    final Map<String, Map<String, Value>> rows = Maps.newHashMap();
+    datasource.getJdbcTemplate().query(sql, getEntitiesParameters(entities), new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet rs) throws SQLException {
+        rows.put(buildEntityIdentifier(rs), mapValueSetRow(rs));
+      }
+    });
+
+    List<ValueSet> valueSets = Lists.newArrayListWithCapacity(entities.size());
+    for(VariableEntity entity : entities) {
+      Map<String, Value> values = rows.get(entity.getIdentifier());
+      valueSets.add(new JdbcValueSet(this, entity, values == null ? Collections.<String, Value>emptyMap() : values));
+    }
+    return valueSets;
+  }
+
   String getVariableSqlName(String variableName) {
     if(getVariablesMap().containsKey(variableName)) return getVariablesMap().get(variableName);
 
@@ -20,7 +20,7 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
 
   private final JdbcValueTable valueTable;
 
-  private Set<VariableEntity> entities = new LinkedHashSet<>();
+  private volatile Set<VariableEntity> entities = new LinkedHashSet<>();
 
   JdbcVariableEntityProvider(JdbcValueTable valueTable) {
     super(valueTable.getEntityType());
@@ -30,7 +30,6 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
   @Override
   public void initialise() {
     JdbcDatasource datasource = valueTable.getDatasource();
-    entities = new LinkedHashSet<>();
     List<VariableEntity> results = datasource.getJdbcTemplate().query(String
             .format("SELECT %s FROM %s", valueTable.getEntityIdentifierColumnsSql(),
                 datasource.escapeTableName(valueTable.getSqlName())), new RowMapper<VariableEntity>() {
@@ -39,7 +38,8 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
             return new VariableEntityBean(valueTable.getEntityType(), valueTable.buildEntityIdentifier(rs));
           }
         });
-    entities.addAll(results);
+    // replaced at once as concurrent value set writers may be looking up entities
+    entities = new LinkedHashSet<>(results);
   }
 
   @NotNull
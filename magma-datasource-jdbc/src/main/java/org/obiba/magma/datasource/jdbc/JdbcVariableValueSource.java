@@ -1,12 +1,13 @@
 package org.obiba.magma.datasource.jdbc;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 
 import javax.validation.constraints.NotNull;
@@ -19,8 +20,14 @@ import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.VectorSource;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import liquibase.structure.core.Column;
 
@@ -76,6 +83,10 @@ class JdbcVariableValueSource extends AbstractVariableValueSource implements Var
     return variable.getValueType();
   }
 
+  String getColumnName() {
+    return columnName;
+  }
+
   @Override
   public boolean supportVectorSource() {
     return true;
@@ -87,6 +98,13 @@ class JdbcVariableValueSource extends AbstractVariableValueSource implements Var
     return this;
   }
 
+  /**
+   * Few entities (up to {@link JdbcDatasourceSettings#getValueSetsPrefetchSize()}, as in {@link JdbcValueBlock}) are
+   * queried with their identifiers in the where clause, so that only requested rows are transferred. Larger sets are
+   * read by pages of the table ordered by entity identifier, each page starting after the last identifier of the
+   * previous one: no query has a where clause of thousands of parameters and at most about one page of values is held
+   * in memory.
+   */
   @Override
   public Iterable<Value> getValues(final SortedSet<VariableEntity> entities) {
 
@@ -94,76 +112,61 @@ class JdbcVariableValueSource extends AbstractVariableValueSource implements Var
 
       @Override
       public Iterator<Value> iterator() {
-        try {
-          return new ValueIterator(valueTable.getDatasource().getJdbcTemplate().getDataSource().getConnection(),
-              entities);
-        } catch(SQLException e) {
-          throw new RuntimeException(e);
-        }
+        boolean paged = entities.size() > valueTable.getDatasource().getSettings().getValueSetsPrefetchSize() &&
+            valueTable.getSettings().getEntityIdentifierColumns().size() == 1;
+        return paged ? new PagedValueIterator(entities) : new BlockValueIterator(entities);
       }
 
     };
   }
 
-  private class ValueIterator implements Iterator<Value> {
-
-    private final Connection connection;
-
-    private final PreparedStatement statement;
+  private Value getValueFromResult(ResultSet rs) throws SQLException {
+    Object resObj = rs.getObject(columnName);
+    if(resObj == null) {
+      return nullValue();
+    }
+    if(variable.isRepeatable()) {
+      return getValueType().sequenceOf(resObj.toString());
+    }
+    return getValueType().valueOf(resObj);
+  }
 
-    private final ResultSet rs;
+  private Value nullValue() {
+    return variable.isRepeatable() ? getValueType().nullSequence() : getValueType().nullValue();
+  }
 
-    private final Iterator<VariableEntity> entities;
+  /**
+   * Reads the values of the entities by blocks of {@link JdbcDatasourceSettings#getValueSetsPrefetchSize()} entities,
+   * each block being queried with the entity identifiers in the where clause.
+   */
+  private class BlockValueIterator implements Iterator<Value> {
 
-    private boolean hasNextResults;
+    private final Iterator<List<VariableEntity>> blocks;
 
-    private boolean closed = false;
+    private Iterator<VariableEntity> blockEntities = Iterators.emptyIterator();
 
-    private final Map<String, Value> valueMap = Maps.newHashMap();
+    private Map<String, Value> blockValues = Maps.newHashMap();
 
-    @edu.umd.cs.findbugs.annotations.SuppressWarnings("SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING")
-    private ValueIterator(Connection connection, Iterable<VariableEntity> entities) throws SQLException {
-      this.connection = connection;
-      JdbcDatasource datasource = valueTable.getDatasource();
-      String escapedIdentifierColumns = valueTable.getEntityIdentifierColumnsSql();
-      statement = connection.prepareStatement(
-          String.format("SELECT %s, %s FROM %s ORDER BY %s", escapedIdentifierColumns,
-              datasource.escapeColumnName(columnName), datasource.escapeTableName(valueTable.getSqlName()), escapedIdentifierColumns));
-      rs = statement.executeQuery();
-      hasNextResults = rs.next();
-      this.entities = entities.iterator();
-      closeCursorIfNecessary();
+    private BlockValueIterator(Iterable<VariableEntity> entities) {
+      blocks = Iterables.partition(entities, valueTable.getDatasource().getSettings().getValueSetsPrefetchSize())
+          .iterator();
     }
 
     @Override
     public boolean hasNext() {
-      return entities.hasNext();
+      return blockEntities.hasNext() || blocks.hasNext();
     }
 
     @Override
     public Value next() {
-      VariableEntity entity = entities.next();
-      String nextId = entity.getIdentifier();
-
-      if(valueMap.containsKey(nextId)) return getValueFromMap(entity);
-
-      try {
-        // Scroll until we find the required entity or reach the end of the results
-        boolean found = false;
-        while(hasNextResults && !found) {
-          String id = valueTable.buildEntityIdentifier(rs);
-          valueMap.put(id, getValueFromResult());
-          hasNextResults = rs.next();
-          found = nextId.equals(id);
-        }
-
-        closeCursorIfNecessary();
-
-        if(valueMap.containsKey(nextId)) return getValueFromMap(entity);
-        return getVariable().isRepeatable() ? getValueType().nullSequence() : getValueType().nullValue();
-      } catch(SQLException e) {
-        throw new RuntimeException(e);
+      if(!blockEntities.hasNext()) {
+        List<VariableEntity> block = blocks.next();
+        loadBlock(block);
+        blockEntities = block.iterator();
       }
+
+      Value value = blockValues.get(blockEntities.next().getIdentifier());
+      return value == null ? nullValue() : value;
     }
 
     @Override
@@ -171,59 +174,107 @@ class JdbcVariableValueSource extends AbstractVariableValueSource implements Var
       throw new UnsupportedOperationException();
     }
 
-    private Value getValueFromResult() throws SQLException {
-      Object resObj = rs.getObject(columnName);
-      if(resObj == null) {
-        return variable.isRepeatable() ? getValueType().nullSequence() : getValueType().nullValue();
-      }
-      if(variable.isRepeatable()) {
-        return getValueType().sequenceOf(resObj.toString());
+    private void loadBlock(List<VariableEntity> entities) {
+      JdbcDatasource datasource = valueTable.getDatasource();
+      String sql = String.format("SELECT %s, %s FROM %s WHERE %s", valueTable.getEntityIdentifierColumnsSql(),
+          datasource.escapeColumnName(columnName), datasource.escapeTableName(valueTable.getSqlName()),
+          valueTable.getEntitiesWhereClause(entities.size()));
+
+      blockValues.clear();
+      datasource.getJdbcTemplate().query(sql, valueTable.getEntitiesParameters(entities), new RowCallbackHandler() {
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+          blockValues.put(valueTable.buildEntityIdentifier(rs), getValueFromResult(rs));
+        }
+      });
+    }
+  }
+
+  /**
+   * Reads the values of the entities by pages of {@link JdbcDatasourceSettings#getValueSetsPrefetchSize()} rows of the
+   * table ordered by its (single) entity identifier column, a page starting after the last identifier of the previous
+   * one. The values of the requested entities are kept until they are iterated. While the database order is the one of
+   * the entities, an entity which identifier is before the last one read has no row; otherwise (e.g. numeric identifier
+   * column) the pages are read until its row is found or the table is exhausted.
+   */
+  private class PagedValueIterator implements Iterator<Value> {
+
+    private final Iterator<VariableEntity> entities;
+
+    private final Set<String> requested;
+
+    private final Map<String, Value> pending = Maps.newHashMap();
+
+    private final int pageSize = valueTable.getDatasource().getSettings().getValueSetsPrefetchSize();
+
+    private Object lastKey;
+
+    private String lastIdentifier;
+
+    private boolean ordered = true;
+
+    private boolean exhausted;
+
+    private PagedValueIterator(Collection<VariableEntity> entities) {
+      this.entities = entities.iterator();
+      requested = Sets.newHashSetWithExpectedSize(entities.size());
+      for(VariableEntity entity : entities) {
+        requested.add(entity.getIdentifier());
       }
-      return getValueType().valueOf(resObj);
+    }
 
+    @Override
+    public boolean hasNext() {
+      return entities.hasNext();
     }
 
-    private void closeCursorIfNecessary() {
-      if(!closed) {
-        // Close the cursor if we don't have any more results or no more entities to return
-        if(!hasNextResults || !hasNext()) {
-          closed = true;
-          closeQuietly(rs, statement, connection);
+    @Override
+    public Value next() {
+      String identifier = entities.next().getIdentifier();
+      while(true) {
+        Value value = pending.remove(identifier);
+        if(value != null) return value;
+        if(exhausted || ordered && lastIdentifier != null && lastIdentifier.compareTo(identifier) > 0) {
+          return nullValue();
         }
+        loadPage();
       }
     }
 
-    /**
-     * No duplicate of entities, so remove value from map once get.
-     *
-     * @param entity
-     * @return
-     */
-    private Value getValueFromMap(VariableEntity entity) {
-      Value value = valueMap.get(entity.getIdentifier());
-      valueMap.remove(entity.getIdentifier());
-      return value;
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
     }
 
-    @SuppressWarnings({ "OverlyStrongTypeCast", "ChainOfInstanceofChecks" })
-    private void closeQuietly(Object... objs) {
-      if(objs != null) {
-        for(Object o : objs) {
-          try {
-            if(o instanceof ResultSet) {
-              ((ResultSet) o).close();
-            }
-            if(o instanceof Statement) {
-              ((Statement) o).close();
-            }
-            if(o instanceof Connection) {
-              ((Connection) o).close();
-            }
-          } catch(SQLException e) {
-            // ignored
-          }
+    @edu.umd.cs.findbugs.annotations.SuppressWarnings("SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING")
+    private void loadPage() {
+      JdbcDatasource datasource = valueTable.getDatasource();
+      String idColumn = valueTable.getEntityIdentifierColumnsSql();
+      String sql = String.format("SELECT %s, %s FROM %s%s ORDER BY %s", idColumn,
+          datasource.escapeColumnName(columnName), datasource.escapeTableName(valueTable.getSqlName()),
+          lastKey == null ? "" : " WHERE " + idColumn + " > ?", idColumn);
+
+      final Object[] params = lastKey == null ? new Object[0] : new Object[] { lastKey };
+      final int[] rows = { 0 };
+      datasource.getJdbcTemplate().query(sql, new PreparedStatementSetter() {
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+          ps.setMaxRows(pageSize);
+          ps.setFetchSize(pageSize);
+          new ArgumentPreparedStatementSetter(params).setValues(ps);
         }
-      }
+      }, new RowCallbackHandler() {
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+          rows[0]++;
+          lastKey = rs.getObject(1);
+          String identifier = valueTable.buildEntityIdentifier(rs);
+          if(lastIdentifier != null && lastIdentifier.compareTo(identifier) >= 0) ordered = false;
+          lastIdentifier = identifier;
+          if(requested.contains(identifier)) pending.put(identifier, getValueFromResult(rs));
+        }
+      });
+      exhausted = rows[0] < pageSize;
     }
   }
 }
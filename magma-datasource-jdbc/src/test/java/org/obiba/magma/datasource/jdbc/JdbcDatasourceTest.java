@@ -1,8 +1,14 @@
 package org.obiba.magma.datasource.jdbc;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
+import javax.validation.constraints.NotNull;
 
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -12,17 +18,23 @@ import org.junit.runner.RunWith;
 import org.obiba.core.test.spring.Dataset;
 import org.obiba.core.test.spring.DbUnitAwareTestExecutionListener;
 import org.obiba.magma.Category;
+import org.obiba.magma.DatasourceCopierThroughputListener;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableScanner;
 import org.obiba.magma.ValueTableWriter;
 import org.obiba.magma.ValueTableWriter.ValueSetWriter;
 import org.obiba.magma.ValueTableWriter.VariableWriter;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VectorSource;
+import org.obiba.magma.support.MultithreadedDatasourceCopier;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.test.AbstractMagmaTest;
 import org.obiba.magma.test.SchemaTestExecutionListener;
@@ -38,6 +50,8 @@ import org.springframework.test.context.support.DirtiesContextTestExecutionListe
 import org.springframework.test.context.transaction.TransactionConfiguration;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -320,6 +334,255 @@ public class JdbcDatasourceTest extends AbstractMagmaTest {
     jdbcDatasource.dispose();
   }
 
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_prefetchedValueSets() {
+    JdbcDatasourceSettings settings = getDataSourceSettings();
+    settings.setValueSetsPrefetchSize(2);
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, settings);
+    jdbcDatasource.initialise();
+
+    try(ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+      }
+
+      Variable myVar1 = jdbcDatasource.getValueTable("MY_TABLE").getVariable("MY_VAR1");
+      for(int i = 1; i <= 5; i++) {
+        try(ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", String.valueOf(i)))) {
+          valueSetWriter.writeValue(myVar1, IntegerType.get().valueOf(i * 10));
+        }
+      }
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    Variable myVar1 = vt.getVariable("MY_VAR1");
+    assertThat(vt.getValueSets()).hasSize(5);
+    for(ValueSet valueSet : vt.getValueSets()) {
+      long expected = Long.parseLong(valueSet.getVariableEntity().getIdentifier()) * 10;
+      assertThat(vt.getValue(myVar1, valueSet)).isEqualTo(IntegerType.get().valueOf(expected));
+    }
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_vectorSourceReadsRequestedEntitiesByBlocks() {
+    JdbcDatasourceSettings settings = getDataSourceSettings();
+    settings.setValueSetsPrefetchSize(10);
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, settings);
+    jdbcDatasource.initialise();
+
+    try(ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+      }
+
+      Variable myVar1 = jdbcDatasource.getValueTable("MY_TABLE").getVariable("MY_VAR1");
+      for(int i = 100; i < 200; i++) {
+        try(ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", String.valueOf(i)))) {
+          valueSetWriter.writeValue(myVar1, IntegerType.get().valueOf(i));
+        }
+      }
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    VectorSource vector = vt.getVariableValueSource("MY_VAR1").asVectorSource();
+
+    SortedSet<VariableEntity> all = new TreeSet<>(vt.getVariableEntities());
+    int count = 0;
+    for(Value value : vector.getValues(all)) {
+      assertThat(value).isEqualTo(IntegerType.get().valueOf(100 + count++));
+    }
+    assertThat(count).isEqualTo(100);
+
+    SortedSet<VariableEntity> subset = new TreeSet<>();
+    subset.add(new VariableEntityBean("Participant", "150"));
+    subset.add(new VariableEntityBean("Participant", "199"));
+    subset.add(new VariableEntityBean("Participant", "999"));
+    assertThat(vector.getValues(subset))
+        .containsExactly(IntegerType.get().valueOf(150), IntegerType.get().valueOf(199), IntegerType.get().nullValue());
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_vectorSourceReadsLargeSubsetsByPages() {
+    JdbcDatasourceSettings settings = getDataSourceSettings();
+    settings.setValueSetsPrefetchSize(10);
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, settings);
+    jdbcDatasource.initialise();
+
+    try(ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+      }
+
+      Variable myVar1 = jdbcDatasource.getValueTable("MY_TABLE").getVariable("MY_VAR1");
+      for(int i = 100; i < 200; i++) {
+        try(ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", String.valueOf(i)))) {
+          valueSetWriter.writeValue(myVar1, IntegerType.get().valueOf(i));
+        }
+      }
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    VectorSource vector = vt.getVariableValueSource("MY_VAR1").asVectorSource();
+
+    SortedSet<VariableEntity> subset = new TreeSet<>();
+    List<Value> expected = Lists.newArrayList();
+    subset.add(new VariableEntityBean("Participant", "099"));
+    expected.add(IntegerType.get().nullValue());
+    for(int i = 100; i < 200; i += 2) {
+      subset.add(new VariableEntityBean("Participant", String.valueOf(i)));
+      expected.add(IntegerType.get().valueOf(i));
+      if(i == 150) {
+        subset.add(new VariableEntityBean("Participant", "150a"));
+        expected.add(IntegerType.get().nullValue());
+      }
+    }
+    subset.add(new VariableEntityBean("Participant", "999"));
+    expected.add(IntegerType.get().nullValue());
+    assertThat(Lists.newArrayList(vector.getValues(subset))).isEqualTo(expected);
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_scanAndValueBlockOfWholeTable() {
+    JdbcDatasourceSettings settings = getDataSourceSettings();
+    settings.setValueSetsPrefetchSize(10);
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, settings);
+    jdbcDatasource.initialise();
+
+    try(ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR2", IntegerType.get(), "Participant").build());
+      }
+
+      ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+      Variable myVar1 = vt.getVariable("MY_VAR1");
+      Variable myVar2 = vt.getVariable("MY_VAR2");
+      for(int i = 100; i < 150; i++) {
+        try(ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", String.valueOf(i)))) {
+          valueSetWriter.writeValue(myVar1, IntegerType.get().valueOf(i));
+          if(i % 2 == 0) valueSetWriter.writeValue(myVar2, IntegerType.get().valueOf(-i));
+        }
+      }
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt).isInstanceOf(ValueTableScanner.class);
+    List<Variable> variables = Lists.newArrayList(vt.getVariable("MY_VAR1"), vt.getVariable("MY_VAR2"));
+
+    final Map<String, List<Value>> scanned = Maps.newHashMap();
+    ((ValueTableScanner) vt).scan(variables, new ValueTableScanner.ValuesHandler() {
+      @Override
+      public void handle(@NotNull VariableEntity entity, @NotNull List<Value> values) {
+        scanned.put(entity.getIdentifier(), values);
+      }
+    });
+    assertThat(scanned).hasSize(50);
+    assertThat(scanned.get("120")).containsExactly(IntegerType.get().valueOf(120), IntegerType.get().valueOf(-120));
+    assertThat(scanned.get("121")).containsExactly(IntegerType.get().valueOf(121), IntegerType.get().nullValue());
+
+    SortedSet<VariableEntity> entities = new TreeSet<>(vt.getVariableEntities());
+    entities.add(new VariableEntityBean("Participant", "999"));
+    ValueBlock block = vt.getValueBlock(variables, entities);
+    int count = 0;
+    for(Value value : block.getValues(variables.get(0))) {
+      assertThat(value).isEqualTo(count < 50 ? IntegerType.get().valueOf(100 + count) : IntegerType.get().nullValue());
+      count++;
+    }
+    assertThat(count).isEqualTo(51);
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_vectorSourceReadsHyphenatedIdentifiers() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, getDataSourceSettings());
+    jdbcDatasource.initialise();
+
+    try(ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try(VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+      }
+
+      Variable myVar1 = jdbcDatasource.getValueTable("MY_TABLE").getVariable("MY_VAR1");
+      for(int i = 1; i <= 2; i++) {
+        try(ValueSetWriter valueSetWriter = tableWriter
+            .writeValueSet(new VariableEntityBean("Participant", "0f8e-4a2b-" + i))) {
+          valueSetWriter.writeValue(myVar1, IntegerType.get().valueOf(i));
+        }
+      }
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    VectorSource vector = vt.getVariableValueSource("MY_VAR1").asVectorSource();
+    assertThat(vector.getValues(new TreeSet<>(vt.getVariableEntities())))
+        .containsExactly(IntegerType.get().valueOf(1), IntegerType.get().valueOf(2));
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_concurrentWriters() throws IOException {
+    JdbcDatasourceSettings settings = getDataSourceSettings();
+    settings.setBatchSize(10);
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, settings);
+    jdbcDatasource.initialise();
+    assertThat(jdbcDatasource.canWriteConcurrently()).isTrue();
+
+    List<String> identifiers = Lists.newArrayList();
+    for(int i = 0; i < 200; i++) {
+      identifiers.add(String.valueOf(1000 + i));
+    }
+    StaticValueTable source = new StaticValueTable(new StaticDatasource("source"), "MY_TABLE", identifiers);
+    Variable myVar1 = Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build();
+    for(String identifier : identifiers) {
+      source.addValues(identifier, myVar1, Long.valueOf(identifier));
+    }
+
+    final AtomicLong throughputs = new AtomicLong();
+    MultithreadedDatasourceCopier.Builder.newCopier().from(source).to(jdbcDatasource).withWriters(3)
+        .withProgressListener(new DatasourceCopierThroughputListener() {
+          @Override
+          public void throughput(String table, double readsPerSecond, double writesPerSecond) {
+            throughputs.incrementAndGet();
+          }
+
+          @Override
+          public void status(String table, long entitiesCopied, long entitiesToCopy, int percentComplete) {
+          }
+        }).build().copy();
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getValueSetCount()).isEqualTo(200);
+    VariableEntity entity = new VariableEntityBean("Participant", "1150");
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(entity)))
+        .isEqualTo(IntegerType.get().valueOf(1150));
+    assertThat(throughputs.get()).isGreaterThan(0);
+
+    jdbcDatasource.dispose();
+  }
+
   //
   // Methods
   //
@@ -173,6 +173,16 @@ public class MongoDBDatasource extends AbstractDatasource {
     return true;
   }
 
+  /**
+   * Each table writer buffers its own batch of value set documents and upserts them by entity when the batch is full or
+   * when the writer is closed, so that concurrent writers share no batch. Writers are declared concurrent only when
+   * batching is enabled.
+   */
+  @Override
+  public boolean canWriteConcurrently() {
+    return batchSize > 1;
+  }
+
   @Override
   public void drop() {
     for(String name : getValueTableNames()) {
@@ -0,0 +1,61 @@
+package org.obiba.magma.js;
+
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The values of the derived variables of a view computed during an evaluation pass (see {@link EvaluationPlan}), by
+ * variable name and entity. A variable referred to with <code>$this('VAR')</code> by several other variables is then
+ * evaluated once per entity.
+ * <p/>
+ * Entities are the ones of the table the view is applied to, as the derived variables are evaluated from its value
+ * sets.
+ */
+public final class DerivedValues {
+
+  private final ValueTable view;
+
+  private final ConcurrentMap<String, ConcurrentMap<VariableEntity, Value>> values = Maps.newConcurrentMap();
+
+  DerivedValues(ValueTable view) {
+    this.view = view;
+  }
+
+  /**
+   * Get the values of the evaluation pass of a view, if any.
+   *
+   * @param context
+   * @param view
+   * @return null if the view is not being evaluated by an {@link EvaluationPlan}
+   */
+  @Nullable
+  public static DerivedValues fromContext(MagmaContext context, ValueTable view) {
+    if(!context.has(DerivedValues.class)) return null;
+    DerivedValues derivedValues = context.peek(DerivedValues.class);
+    return derivedValues.view == view ? derivedValues : null;
+  }
+
+  @Nullable
+  public Value get(String name, VariableEntity entity) {
+    ConcurrentMap<VariableEntity, Value> variableValues = values.get(name);
+    return variableValues == null ? null : variableValues.get(entity);
+  }
+
+  public void put(String name, VariableEntity entity, Value value) {
+    ConcurrentMap<VariableEntity, Value> variableValues = values.get(name);
+    if(variableValues == null) {
+      ConcurrentMap<VariableEntity, Value> newValues = Maps.newConcurrentMap();
+      variableValues = values.putIfAbsent(name, newValues);
+      if(variableValues == null) variableValues = newValues;
+    }
+    variableValues.put(entity, value);
+  }
+
+}
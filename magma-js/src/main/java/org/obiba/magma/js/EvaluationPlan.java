@@ -0,0 +1,143 @@
+package org.obiba.magma.js;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.Values;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The evaluation of several derived variables of a view, stage after stage in the order of their dependencies (see
+ * {@link org.obiba.magma.js.validation.VariableScriptValidator#getEvaluationStages(ValueTable, Iterable, Map)}). The
+ * variables of a stage are independent from each other and are evaluated concurrently when the stage parallelism of
+ * the {@link MagmaJsExtension} is greater than 1.
+ * <p/>
+ * The values are kept in {@link DerivedValues} for the duration of the evaluation, so that the variables of the later
+ * stages get the ones of the previous stages without evaluating them again.
+ */
+public final class EvaluationPlan {
+
+  private static final Logger log = LoggerFactory.getLogger(EvaluationPlan.class);
+
+  private final ValueTable view;
+
+  private final List<List<VariableValueSource>> stages;
+
+  /**
+   * @param view the view, or table, the variables are derived in
+   * @param stages the sources of the variables to evaluate, by stage
+   */
+  public EvaluationPlan(ValueTable view, List<List<VariableValueSource>> stages) {
+    this.view = view;
+    this.stages = stages;
+  }
+
+  /**
+   * Evaluate the variables for several value sets.
+   *
+   * @param valueSets the value sets of the table the view is applied to
+   * @return the values of each variable by name, in the order of the value sets
+   */
+  public Map<String, List<Value>> evaluate(List<ValueSet> valueSets) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    DerivedValues derivedValues = new DerivedValues(view);
+    Map<String, List<Value>> values = Maps.newHashMap();
+    for(List<VariableValueSource> stage : stages) {
+      ForkJoinPool pool = getStageEvaluationPool(stage);
+      if(pool == null) {
+        for(VariableValueSource source : stage) {
+          values.put(source.getVariable().getName(), evaluate(source, valueSets, derivedValues));
+        }
+      } else {
+        evaluateInParallel(pool, stage, valueSets, derivedValues, values);
+      }
+    }
+    log.trace("Evaluation of {} stages for {} value sets in {}", stages.size(), valueSets.size(), stopwatch);
+    return values;
+  }
+
+  @Nullable
+  private ForkJoinPool getStageEvaluationPool(List<VariableValueSource> stage) {
+    // nested evaluations are not split again
+    if(stage.size() < 2 || ForkJoinTask.inForkJoinPool()) return null;
+    if(!MagmaEngine.get().hasExtension(MagmaJsExtension.class)) return null;
+
+    return MagmaEngine.get().getExtension(MagmaJsExtension.class).getStageEvaluationPool();
+  }
+
+  private void evaluateInParallel(ForkJoinPool pool, List<VariableValueSource> stage, final List<ValueSet> valueSets,
+      final DerivedValues derivedValues, Map<String, List<Value>> values) {
+    List<Callable<List<Value>>> evaluations = Lists.newArrayListWithCapacity(stage.size());
+    for(final VariableValueSource source : stage) {
+      evaluations.add(new Callable<List<Value>>() {
+        @Override
+        public List<Value> call() throws Exception {
+          return evaluate(source, valueSets, derivedValues);
+        }
+      });
+    }
+    List<Future<List<Value>>> futures = pool.invokeAll(evaluations);
+    for(int i = 0; i < stage.size(); i++) {
+      values.put(stage.get(i).getVariable().getName(), getStageValues(futures.get(i)));
+    }
+  }
+
+  private List<Value> getStageValues(Future<List<Value>> future) {
+    try {
+      return future.get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MagmaJsRuntimeException("Evaluation interrupted", e);
+    } catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new MagmaJsRuntimeException("Evaluation failed: " + cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Evaluate a variable with the values of the previous stages in context, and keep its values for the next stages.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Value> evaluate(final VariableValueSource source, final List<ValueSet> valueSets,
+      final DerivedValues derivedValues) {
+    return (List<Value>) ContextFactory.getGlobal().call(new ContextAction() {
+      @Override
+      public Object run(Context ctx) {
+        MagmaContext context = MagmaContext.asMagmaContext(ctx);
+        context.push(DerivedValues.class, derivedValues);
+        try {
+          List<Value> values = Values.getValues(source, valueSets);
+          String name = source.getVariable().getName();
+          for(int i = 0; i < values.size(); i++) {
+            derivedValues.put(name, valueSets.get(i).getVariableEntity(), values.get(i));
+          }
+          return values;
+        } finally {
+          context.pop(DerivedValues.class);
+        }
+      }
+    });
+  }
+
+}
@@ -4,9 +4,16 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
@@ -17,14 +24,20 @@ import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.Undefined;
+import org.obiba.magma.BatchValueSource;
 import org.obiba.magma.Initialisable;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueSource;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.VectorSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +46,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
@@ -45,7 +59,7 @@ import com.google.common.collect.Maps;
  *
  * @see ScriptableValue
  */
-public class JavascriptValueSource implements ValueSource, VectorSource, Initialisable {
+public class JavascriptValueSource implements ValueSource, BatchValueSource, VectorSource, Initialisable {
 
   private static final Logger log = LoggerFactory.getLogger(JavascriptValueSource.class);
 
@@ -61,6 +75,18 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
   @SuppressWarnings("TransientFieldInNonSerializableClass")
   private transient Script compiledScript;
 
+  // names of the variables of the current table referenced by the script
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient Set<String> tableVariableNames;
+
+  // literal variable references of the script, parsed once and bound until the registry changes
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient ScriptSymbolTable symbols;
+
+  // lookup tables of the literals given to map(), converted once
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient ScriptMapTables mapTables;
+
   @SuppressWarnings("ConstantConditions")
   public JavascriptValueSource(@NotNull ValueType type, @NotNull String script) {
     if(type == null) throw new IllegalArgumentException("type cannot be null");
@@ -92,6 +118,24 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
     return value;
   }
 
+  /**
+   * Evaluate the script for several value sets within a single entry in the script engine context.
+   *
+   * @param valueSets
+   * @return the values, in the order of the value sets
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Value> getValues(List<ValueSet> valueSets) {
+    initialiseIfNot();
+    if(valueSets.isEmpty()) return ImmutableList.of();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    List<Value> values = (List<Value>) ContextFactory.getGlobal()
+        .call(new ValueSetsEvaluationContextAction(valueSets));
+    log.trace("Evaluation of {} for {} value sets in {}", getScriptName(), valueSets.size(), stopwatch);
+    return values;
+  }
+
   @Override
   public boolean supportVectorSource() {
     return true;
@@ -107,6 +151,9 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
   @SuppressWarnings("unchecked")
   public Iterable<Value> getValues(SortedSet<VariableEntity> entities) {
     initialiseIfNot();
+    ForkJoinPool pool = getVectorEvaluationPool(entities);
+    if(pool != null) return getValuesInParallel(pool, entities);
+
     Stopwatch stopwatch = Stopwatch.createStarted();
     Iterable<Value> values = (Iterable<Value>) ContextFactory.getGlobal()
         .call(new ValueVectorEvaluationContextAction(entities));
@@ -114,6 +161,68 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
     return values;
   }
 
+  /**
+   * Whether the script can be evaluated outside of the calling thread's context, i.e. whether the evaluation context
+   * is fully set up by {@link #enterContext(MagmaContext, Scriptable)}.
+   */
+  protected boolean isContextIndependent() {
+    return false;
+  }
+
+  @Nullable
+  private ForkJoinPool getVectorEvaluationPool(@Nullable SortedSet<VariableEntity> entities) {
+    // nested vector evaluations are not split again
+    if(entities == null || !isContextIndependent() || ForkJoinTask.inForkJoinPool()) return null;
+    if(!MagmaEngine.get().hasExtension(MagmaJsExtension.class)) return null;
+
+    MagmaJsExtension extension = MagmaEngine.get().getExtension(MagmaJsExtension.class);
+    return entities.size() < 2 * extension.getVectorChunkSize() ? null : extension.getVectorEvaluationPool();
+  }
+
+  /**
+   * Split the entities in contiguous chunks which vectors are evaluated concurrently, each in its own context and with
+   * its own {@code VectorCache}, and reassemble the values in the order of the entities.
+   */
+  @SuppressWarnings("unchecked")
+  private Iterable<Value> getValuesInParallel(ForkJoinPool pool, SortedSet<VariableEntity> entities) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    MagmaJsExtension extension = MagmaEngine.get().getExtension(MagmaJsExtension.class);
+    int chunkSize = Math.max(extension.getVectorChunkSize(),
+        (entities.size() + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+
+    List<Callable<List<Value>>> chunks = Lists.newArrayList();
+    for(final List<VariableEntity> chunk : Iterables.partition(entities, chunkSize)) {
+      chunks.add(new Callable<List<Value>>() {
+        @Override
+        public List<Value> call() throws Exception {
+          Iterable<Value> values = (Iterable<Value>) ContextFactory.getGlobal()
+              .call(new ValueVectorEvaluationContextAction(new TreeSet<>(chunk)));
+          return ImmutableList.copyOf(values);
+        }
+      });
+    }
+
+    ImmutableList.Builder<Value> values = ImmutableList.builder();
+    for(Future<List<Value>> future : pool.invokeAll(chunks)) {
+      values.addAll(getChunkValues(future));
+    }
+    log.trace("Parallel vector evaluation of {} in {} chunks in {}", getScriptName(), chunks.size(), stopwatch);
+    return values.build();
+  }
+
+  private List<Value> getChunkValues(Future<List<Value>> future) {
+    try {
+      return future.get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MagmaJsRuntimeException("Vector evaluation interrupted", e);
+    } catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new MagmaJsRuntimeException("Vector evaluation failed: " + cause.getMessage(), cause);
+    }
+  }
+
   @NotNull
   @Override
   public ValueType getValueType() {
@@ -133,6 +242,9 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
             return context.compileString(getScript(), getScriptName(), 1, null);
           }
         });
+        tableVariableNames = ScriptReferences.tableVariableNames(getScript(), getScriptName());
+        symbols = ScriptSymbolTable.of(getScript(), getScriptName());
+        mapTables = ScriptMapTables.of(getScript(), getScriptName());
       } catch(Exception e) {
         log.error("Script compilation failed: {}", getScript(), e);
         throw new MagmaJsRuntimeException("Script compilation failed: " + e.getMessage(), e);
@@ -170,11 +282,15 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
       // Don't pollute the global scope
       Scriptable scope = context.newLocalScope();
 
+      context.push(ScriptSymbolTable.class, symbols);
+      context.push(ScriptMapTables.class, mapTables);
       enterContext(context, scope);
       try {
         return eval(context, scope);
       } finally {
         exitContext(context);
+        context.pop(ScriptMapTables.class);
+        context.pop(ScriptSymbolTable.class);
       }
     }
 
@@ -264,6 +380,47 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
 
   }
 
+  private final class ValueSetsEvaluationContextAction extends AbstractEvaluationContextAction {
+
+    private final List<ValueSet> valueSets;
+
+    ValueSetsEvaluationContextAction(List<ValueSet> valueSets) {
+      this.valueSets = valueSets;
+    }
+
+    @Override
+    void enterContext(MagmaContext context, Scriptable scope) {
+      // done for each value set, see eval()
+    }
+
+    @Override
+    void exitContext(MagmaContext context) {
+    }
+
+    @Override
+    Object eval(MagmaContext context, Scriptable scope) {
+      List<Value> values = Lists.newArrayListWithCapacity(valueSets.size());
+      for(ValueSet valueSet : valueSets) {
+        // a fresh scope for each value set, so that the variables declared by the script do not leak
+        Scriptable valueSetScope = context.newLocalScope();
+        context.push(ValueSet.class, valueSet);
+        context.push(ValueTable.class, valueSet.getValueTable());
+        context.push(VariableEntity.class, valueSet.getVariableEntity());
+        JavascriptValueSource.this.enterContext(context, valueSetScope);
+        try {
+          values.add(asValue(compiledScript.exec(context, valueSetScope)));
+        } finally {
+          JavascriptValueSource.this.exitContext(context);
+          context.pop(VariableEntity.class);
+          context.pop(ValueTable.class);
+          context.pop(ValueSet.class);
+        }
+      }
+      return values;
+    }
+
+  }
+
   private final class ValueVectorEvaluationContextAction extends AbstractEvaluationContextAction {
 
     @Nullable
@@ -284,6 +441,27 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
       super.enterContext(context, scope);
       context.push(SortedSet.class, getEntities(context));
       context.push(VectorCache.class, vectorCache);
+      prefetchVectors(context);
+    }
+
+    /**
+     * When the script references several variables of the current table, read their vectors at once.
+     */
+    @SuppressWarnings("unchecked")
+    private void prefetchVectors(MagmaContext context) {
+      if(tableVariableNames.size() < 2 || !context.has(ValueTable.class)) return;
+
+      ValueTable table = context.peek(ValueTable.class);
+      List<VariableValueSource> sources = Lists.newArrayList();
+      for(String name : tableVariableNames) {
+        try {
+          VariableValueSource source = symbols.resolve(name, table).getSource();
+          if(source.supportVectorSource()) sources.add(source);
+        } catch(NoSuchVariableException e) {
+          // will be reported if reached during evaluation
+        }
+      }
+      if(sources.size() > 1) vectorCache.prefetch(table, sources, context.peek(SortedSet.class));
     }
 
     @Override
@@ -326,6 +504,8 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
        */
       private void initContext(VariableEntity variableEntity) {
         ContextFactory.getGlobal().enterContext(context);
+        context.push(ScriptSymbolTable.class, symbols);
+        context.push(ScriptMapTables.class, mapTables);
         JavascriptValueSource.this.enterContext(context, scope);
         context.push(VectorCache.class, vectorCache);
         context.push(SortedSet.class, entities);
@@ -337,6 +517,8 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
         context.pop(VectorCache.class).next();
         context.pop(SortedSet.class);
         context.pop(VariableEntity.class);
+        context.pop(ScriptMapTables.class);
+        context.pop(ScriptSymbolTable.class);
         Context.exit();
       }
     }
@@ -356,6 +538,21 @@ public class JavascriptValueSource implements ValueSource, VectorSource, Initial
       index++;
     }
 
+    /**
+     * Read the vectors of several variables of a table with a single {@link ValueTable#getValueBlock(Iterable,
+     * SortedSet)} call.
+     */
+    void prefetch(ValueTable table, Iterable<VariableValueSource> sources, SortedSet<VariableEntity> entities) {
+      List<Variable> variables = Lists.newArrayList();
+      for(VariableValueSource source : sources) {
+        variables.add(source.getVariable());
+      }
+      ValueBlock block = table.getValueBlock(variables, entities);
+      for(VariableValueSource source : sources) {
+        vectors.put(source.asVectorSource(), new VectorHolder<>(block.getValues(source.getVariable()).iterator()));
+      }
+    }
+
     // Returns the value of the current "row" for the specified vector
     @SuppressWarnings("unchecked")
     public Value get(MagmaContext context, VectorSource source) {
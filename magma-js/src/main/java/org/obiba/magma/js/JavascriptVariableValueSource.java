@@ -1,5 +1,6 @@
 package org.obiba.magma.js;
 
+import java.util.List;
 import java.util.SortedSet;
 
 import javax.annotation.Nullable;
@@ -87,6 +88,12 @@ public class JavascriptVariableValueSource extends JavascriptValueSource impleme
     return super.getValue(valueSet);
   }
 
+  @Override
+  public List<Value> getValues(List<ValueSet> valueSets) {
+    validateScript();
+    return super.getValues(valueSets);
+  }
+
   @Override
   public Iterable<Value> getValues(SortedSet<VariableEntity> entities) {
     validateScript();
@@ -111,6 +118,11 @@ public class JavascriptVariableValueSource extends JavascriptValueSource impleme
     }
   }
 
+  @Override
+  protected boolean isContextIndependent() {
+    return valueTable != null;
+  }
+
   @Override
   protected void enterContext(MagmaContext context, Scriptable scope) {
     super.enterContext(context, scope);
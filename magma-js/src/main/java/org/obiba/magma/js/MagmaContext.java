@@ -4,6 +4,7 @@ import java.util.EmptyStackException;
 import java.util.Stack;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
@@ -49,8 +50,9 @@ public class MagmaContext extends Context {
    * @return a new instance of {@code Scriptable} for use as a top-level scope.
    */
   public Scriptable newLocalScope() {
-    // Create a new object within the sharedScope
-    Scriptable scope = newObject(sharedScope());
+    // Create a new object directly: its prototype and parent scope are replaced below, so there is no need to go
+    // through the javascript Object constructor
+    Scriptable scope = new NativeObject();
     // Set its prototype
     scope.setPrototype(sharedScope());
     // Remove its parent scope (makes it a top-level scope)
@@ -1,21 +1,122 @@
 package org.obiba.magma.js;
 
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nullable;
+
 import org.mozilla.javascript.ContextFactory;
+import org.obiba.magma.Disposable;
 import org.obiba.magma.MagmaEngineExtension;
 
 /**
  * A {@code MagmaEngine} extension for creating derived variables using JavaScript.
  */
-public class MagmaJsExtension implements MagmaEngineExtension {
+public class MagmaJsExtension implements MagmaEngineExtension, Disposable {
 
   private static final long serialVersionUID = 2071830136892020358L;
 
+  private static final int DEFAULT_VECTOR_CHUNK_SIZE = 500;
+
   private transient MagmaContextFactory magmaContextFactory = new MagmaContextFactory();
 
+  private int vectorParallelism = 1;
+
+  private int vectorChunkSize = DEFAULT_VECTOR_CHUNK_SIZE;
+
+  private int stageParallelism = 1;
+
+  @Nullable
+  private transient ForkJoinPool vectorEvaluationPool;
+
+  @Nullable
+  private transient ForkJoinPool stageEvaluationPool;
+
   public void setMagmaContextFactory(MagmaContextFactory magmaContextFactory) {
     this.magmaContextFactory = magmaContextFactory;
   }
 
+  /**
+   * Number of threads evaluating the vectors of the derived variables. Default is 1: vectors are evaluated by the
+   * calling thread, entity after entity. When greater than 1, large vectors are split in chunks evaluated concurrently,
+   * so the value tables referred to by the scripts must support concurrent reads.
+   *
+   * @param vectorParallelism
+   */
+  public synchronized void setVectorParallelism(int vectorParallelism) {
+    if(vectorParallelism < 1) throw new IllegalArgumentException("vectorParallelism must be greater than 0");
+    this.vectorParallelism = vectorParallelism;
+    // the pool will be re-created with the new parallelism
+    dispose();
+  }
+
+  public int getVectorParallelism() {
+    return vectorParallelism;
+  }
+
+  /**
+   * Number of threads evaluating the independent derived variables of a view, when the values of several variables are
+   * requested at once (see {@link EvaluationPlan}). Default is 1: variables are evaluated by the calling thread. When
+   * greater than 1, the variables of a stage are evaluated by other threads, which do not share the resources bound to
+   * the calling thread (such as a Hibernate session or a transaction): the value tables referred to by the scripts must
+   * support concurrent reads without them.
+   *
+   * @param stageParallelism
+   */
+  public synchronized void setStageParallelism(int stageParallelism) {
+    if(stageParallelism < 1) throw new IllegalArgumentException("stageParallelism must be greater than 0");
+    this.stageParallelism = stageParallelism;
+    if(stageEvaluationPool != null) {
+      stageEvaluationPool.shutdown();
+      stageEvaluationPool = null;
+    }
+  }
+
+  public int getStageParallelism() {
+    return stageParallelism;
+  }
+
+  /**
+   * Minimum number of entities evaluated by a thread when vectors are evaluated concurrently.
+   *
+   * @param vectorChunkSize
+   */
+  public void setVectorChunkSize(int vectorChunkSize) {
+    if(vectorChunkSize < 1) throw new IllegalArgumentException("vectorChunkSize must be greater than 0");
+    this.vectorChunkSize = vectorChunkSize;
+  }
+
+  public int getVectorChunkSize() {
+    return vectorChunkSize;
+  }
+
+  /**
+   * Get the pool evaluating the vectors concurrently.
+   *
+   * @return null if vectors are not evaluated concurrently
+   */
+  @Nullable
+  synchronized ForkJoinPool getVectorEvaluationPool() {
+    if(vectorParallelism < 2) return null;
+    if(vectorEvaluationPool == null) {
+      vectorEvaluationPool = new ForkJoinPool(vectorParallelism);
+    }
+    return vectorEvaluationPool;
+  }
+
+  /**
+   * Get the pool evaluating the independent derived variables of a view concurrently.
+   *
+   * @return null if these variables are not evaluated concurrently
+   */
+  @Nullable
+  synchronized ForkJoinPool getStageEvaluationPool() {
+    if(stageParallelism < 2) return null;
+    if(stageEvaluationPool == null) {
+      stageEvaluationPool = new ForkJoinPool(stageParallelism);
+    }
+    return stageEvaluationPool;
+  }
+
   @Override
   public String getName() {
     return "magma-js";
@@ -31,4 +132,16 @@ public class MagmaJsExtension implements MagmaEngineExtension {
     }
 
   }
+
+  @Override
+  public synchronized void dispose() {
+    if(vectorEvaluationPool != null) {
+      vectorEvaluationPool.shutdown();
+      vectorEvaluationPool = null;
+    }
+    if(stageEvaluationPool != null) {
+      stageEvaluationPool.shutdown();
+      stageEvaluationPool = null;
+    }
+  }
 }
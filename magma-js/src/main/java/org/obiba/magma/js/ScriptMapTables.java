@@ -0,0 +1,191 @@
+package org.obiba.magma.js;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.KeywordLiteral;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NumberLiteral;
+import org.mozilla.javascript.ast.ObjectLiteral;
+import org.mozilla.javascript.ast.ObjectProperty;
+import org.mozilla.javascript.ast.StringLiteral;
+import org.mozilla.javascript.ast.UnaryExpression;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The lookup tables of the object literals a script gives to <code>map()</code>, such as
+ * <code>$('SMOKER').map({'YES':1, 'NO':0})</code>. A literal creates a new javascript object at each evaluation: the
+ * table converted from the first one is kept with the compiled script and reused by the next evaluations, in any
+ * thread, instead of walking the object again.
+ * <p/>
+ * A literal is cached when its keys and values are constants and when the objects the script gives to
+ * <code>map()</code> tell it apart by their size and one of its named keys.
+ */
+public final class ScriptMapTables {
+
+  private static final ScriptMapTables NONE = new ScriptMapTables(ImmutableListMultimap.<Integer, MapLiteral>of());
+
+  // cached literals by number of keys
+  private final ListMultimap<Integer, MapLiteral> literals;
+
+  private ScriptMapTables(ListMultimap<Integer, MapLiteral> literals) {
+    this.literals = literals;
+  }
+
+  /**
+   * Find the literals of a script which lookup tables can be cached.
+   *
+   * @param script
+   * @param scriptName
+   * @return
+   */
+  public static ScriptMapTables of(String script, String scriptName) {
+    List<ObjectLiteral> objectLiterals = ScriptReferences.mapLiterals(script, scriptName);
+    if(objectLiterals == null || objectLiterals.isEmpty()) return NONE;
+
+    List<Set<String>> keys = Lists.newArrayList();
+    for(ObjectLiteral objectLiteral : objectLiterals) {
+      keys.add(getKeys(objectLiteral));
+    }
+    ImmutableListMultimap.Builder<Integer, MapLiteral> literals = ImmutableListMultimap.builder();
+    for(int i = 0; i < objectLiterals.size(); i++) {
+      if(keys.get(i) == null || !isConstant(objectLiterals.get(i))) continue;
+      String key = getDistinctKey(keys, i);
+      if(key != null) literals.put(keys.get(i).size(), new MapLiteral(key));
+    }
+    return new ScriptMapTables(literals.build());
+  }
+
+  /**
+   * Get the lookup tables of the script being evaluated. When there are none (the script was not compiled by a
+   * {@code JavascriptValueSource}), nothing is cached.
+   *
+   * @param context
+   * @return
+   */
+  public static ScriptMapTables fromContext(MagmaContext context) {
+    return context.has(ScriptMapTables.class) ? context.peek(ScriptMapTables.class) : NONE;
+  }
+
+  /**
+   * Get the lookup table of the given javascript map, converted once for all the evaluations of the script.
+   *
+   * @param valueMap an object given to <code>map()</code>
+   * @return null if the map is not a cached literal of the script
+   */
+  @Nullable
+  public Map<Object, Object> getLookupMap(ScriptableObject valueMap) {
+    if(literals.isEmpty()) return null;
+    for(MapLiteral literal : literals.get(valueMap.size())) {
+      if(valueMap.has(literal.key, valueMap)) {
+        Map<Object, Object> lookupMap = literal.lookupMap;
+        if(lookupMap == null) {
+          lookupMap = asLookupMap(valueMap);
+          literal.lookupMap = lookupMap;
+        }
+        return lookupMap;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Copy the properties of a javascript map in a java map, keyed as in the javascript map by name or by index.
+   *
+   * @param valueMap
+   * @return
+   */
+  public static Map<Object, Object> asLookupMap(ScriptableObject valueMap) {
+    Map<Object, Object> lookupMap = Maps.newHashMap();
+    for(Object id : valueMap.getAllIds()) {
+      lookupMap.put(id, id instanceof Integer ? valueMap.get((Integer) id, null) : valueMap.get((String) id, null));
+    }
+    return lookupMap;
+  }
+
+  /**
+   * @return the keys of the literal as property names, null if one of them is not a constant
+   */
+  @Nullable
+  private static Set<String> getKeys(ObjectLiteral objectLiteral) {
+    Set<String> keys = Sets.newHashSet();
+    for(ObjectProperty property : objectLiteral.getElements()) {
+      AstNode key = property.getLeft();
+      if(property.isMethod()) return null;
+      if(key instanceof Name) {
+        keys.add(((Name) key).getIdentifier());
+      } else if(key instanceof StringLiteral) {
+        keys.add(((StringLiteral) key).getValue());
+      } else if(key instanceof NumberLiteral) {
+        keys.add(ScriptRuntime.numberToString(((NumberLiteral) key).getNumber(), 10));
+      } else {
+        return null;
+      }
+    }
+    return keys;
+  }
+
+  private static boolean isConstant(ObjectLiteral objectLiteral) {
+    for(ObjectProperty property : objectLiteral.getElements()) {
+      AstNode value = property.getRight();
+      if(value instanceof UnaryExpression && (((UnaryExpression) value).getOperator() == Token.NEG ||
+          ((UnaryExpression) value).getOperator() == Token.POS)) {
+        value = ((UnaryExpression) value).getOperand();
+      }
+      boolean constant = value instanceof StringLiteral || value instanceof NumberLiteral ||
+          value instanceof KeywordLiteral &&
+              (value.getType() == Token.NULL || ((KeywordLiteral) value).isBooleanLiteral());
+      if(!constant) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get a named key of a literal that none of the other literals of the same size have. Keys starting with a digit are
+   * skipped as javascript may store them as indexes.
+   *
+   * @return null if the literal cannot be told apart
+   */
+  @Nullable
+  private static String getDistinctKey(List<Set<String>> keys, int index) {
+    Set<String> literalKeys = keys.get(index);
+    for(String key : literalKeys) {
+      if(key.isEmpty() || Character.isDigit(key.charAt(0))) continue;
+      boolean distinct = true;
+      for(int i = 0; i < keys.size() && distinct; i++) {
+        // literals which keys are not known could have any size
+        Set<String> otherKeys = keys.get(i);
+        distinct = i == index ||
+            otherKeys != null && (otherKeys.size() != literalKeys.size() || !otherKeys.contains(key));
+      }
+      if(distinct) return key;
+    }
+    return null;
+  }
+
+  private static final class MapLiteral {
+
+    private final String key;
+
+    // converted from the first object of this literal, racing conversions are equivalent
+    @Nullable
+    private volatile Map<Object, Object> lookupMap;
+
+    private MapLiteral(String key) {
+      this.key = key;
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package org.obiba.magma.js;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.ObjectLiteral;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.StringLiteral;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Static analysis of a script: finds the variables it references with literal names and the maps it gives to
+ * <code>map()</code>.
+ */
+final class ScriptReferences {
+
+  /**
+   * Global methods returning the value of the variable which name is given as first argument.
+   */
+  private static final Set<String> VALUE_METHODS = ImmutableSet.of("$", "$val", "$value");
+
+  /**
+   * Global methods which arguments are all variable names.
+   */
+  private static final Set<String> REFERENCE_METHODS = ImmutableSet.of("$", "$val", "$value", "$this", "$join");
+
+  private static final String MAP_METHOD = "map";
+
+  private ScriptReferences() {}
+
+  /**
+   * Get the names of the variables of the current table that are referenced by a literal, such as
+   * <code>$('VAR')</code>. References to other tables (fully qualified names) and computed names are ignored.
+   *
+   * @param script
+   * @param scriptName
+   * @return
+   */
+  static Set<String> tableVariableNames(String script, String scriptName) {
+    final Set<String> names = Sets.newLinkedHashSet();
+    parse(script, scriptName).visit(new NodeVisitor() {
+      @Override
+      public boolean visit(AstNode node) {
+        if(node instanceof FunctionCall) {
+          String name = getLiteralArgument((FunctionCall) node);
+          if(name != null && !name.contains(":")) names.add(name);
+        }
+        return true;
+      }
+    });
+    return names;
+  }
+
+  /**
+   * Get all the variable references made by a literal in the script, whether they are names of the current table, of
+   * the current view (<code>$this('VAR')</code>), of another table or joined references (<code>$join('ds.t:VAR',
+   * 'ID')</code>). Computed names are ignored.
+   *
+   * @param script
+   * @param scriptName
+   * @return
+   */
+  static Set<String> variableReferences(String script, String scriptName) {
+    final Set<String> names = Sets.newLinkedHashSet();
+    parse(script, scriptName).visit(new NodeVisitor() {
+      @Override
+      public boolean visit(AstNode node) {
+        if(node instanceof FunctionCall && isCallTo((FunctionCall) node, REFERENCE_METHODS)) {
+          for(AstNode argument : ((FunctionCall) node).getArguments()) {
+            if(argument instanceof StringLiteral) names.add(((StringLiteral) argument).getValue());
+          }
+        }
+        return true;
+      }
+    });
+    return names;
+  }
+
+  /**
+   * Get the object literals given as first argument to <code>map()</code>, such as
+   * <code>$('SMOKER').map({'YES':1, 'NO':0})</code>.
+   *
+   * @param script
+   * @param scriptName
+   * @return null if <code>map()</code> is also called with another kind of argument, or referenced without being called
+   */
+  @Nullable
+  static List<ObjectLiteral> mapLiterals(String script, String scriptName) {
+    final List<ObjectLiteral> literals = Lists.newArrayList();
+    final boolean[] unknown = { false };
+    parse(script, scriptName).visit(new NodeVisitor() {
+      @Override
+      public boolean visit(AstNode node) {
+        if(node instanceof FunctionCall && isMapCall((FunctionCall) node)) {
+          List<AstNode> arguments = ((FunctionCall) node).getArguments();
+          if(!arguments.isEmpty() && arguments.get(0) instanceof ObjectLiteral) {
+            literals.add((ObjectLiteral) arguments.get(0));
+          } else if(arguments.isEmpty() || !(arguments.get(0) instanceof FunctionNode)) {
+            // a function argument is for Array.prototype.map()
+            unknown[0] = true;
+          }
+        } else if(isMapProperty(node) &&
+            !(node.getParent() instanceof FunctionCall && ((FunctionCall) node.getParent()).getTarget() == node)) {
+          unknown[0] = true;
+        }
+        return true;
+      }
+    });
+    return unknown[0] ? null : literals;
+  }
+
+  private static AstRoot parse(String script, String scriptName) {
+    return new Parser(new CompilerEnvirons()).parse(script, scriptName, 1);
+  }
+
+  private static boolean isMapCall(FunctionCall call) {
+    AstNode target = call.getTarget();
+    return isMapProperty(target) || target instanceof Name && MAP_METHOD.equals(((Name) target).getIdentifier());
+  }
+
+  private static boolean isMapProperty(AstNode node) {
+    return node instanceof PropertyGet && MAP_METHOD.equals(((PropertyGet) node).getProperty().getIdentifier());
+  }
+
+  private static boolean isCallTo(FunctionCall call, Set<String> methods) {
+    return call.getTarget() instanceof Name && methods.contains(((Name) call.getTarget()).getIdentifier());
+  }
+
+  @Nullable
+  private static String getLiteralArgument(FunctionCall call) {
+    if(!isCallTo(call, VALUE_METHODS)) {
+      return null;
+    }
+    List<AstNode> arguments = call.getArguments();
+    return arguments.size() == 1 && arguments.get(0) instanceof StringLiteral
+        ? ((StringLiteral) arguments.get(0)).getValue()
+        : null;
+  }
+}
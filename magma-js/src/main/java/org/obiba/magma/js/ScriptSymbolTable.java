@@ -0,0 +1,170 @@
+package org.obiba.magma.js;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.NoSuchValueSetException;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.MagmaEngineVariableResolver;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+/**
+ * The variables referenced by literal names in a script, such as <code>$('VAR')</code>, <code>$this('VAR')</code> or
+ * <code>$join('ds.t:VAR','ID')</code>. The names are parsed once, when the script is compiled, and bound to their
+ * {@code VariableValueSource} the first time they are reached, for the table they are resolved from.
+ * <p/>
+ * Bindings are shared by all the evaluations of the script, in any thread, until the
+ * {@link MagmaEngine#getRegistryGeneration()} changes: a datasource, table, view or variable that was added, removed or
+ * replaced in the meantime is then honoured by resolving the references again.
+ */
+public final class ScriptSymbolTable {
+
+  private static final ScriptSymbolTable UNBOUND = new ScriptSymbolTable(
+      ImmutableMap.<String, MagmaEngineVariableResolver>of());
+
+  private final Map<String, MagmaEngineVariableResolver> references;
+
+  private volatile Bindings bindings = new Bindings(MagmaEngine.getRegistryGeneration());
+
+  private ScriptSymbolTable(Map<String, MagmaEngineVariableResolver> references) {
+    this.references = references;
+  }
+
+  /**
+   * Create the symbol table of a script, from the references found by its static analysis.
+   *
+   * @param script
+   * @param scriptName
+   * @return
+   */
+  public static ScriptSymbolTable of(String script, String scriptName) {
+    ImmutableMap.Builder<String, MagmaEngineVariableResolver> references = ImmutableMap.builder();
+    for(String name : ScriptReferences.variableReferences(script, scriptName)) {
+      references.put(name, MagmaEngineVariableResolver.valueOf(name));
+    }
+    return new ScriptSymbolTable(references.build());
+  }
+
+  /**
+   * Get the symbol table of the script being evaluated. When there is none (the script was not compiled by a
+   * {@code JavascriptValueSource} or a {@code JavascriptClause}), references are resolved without being bound.
+   *
+   * @param context
+   * @return
+   */
+  public static ScriptSymbolTable fromContext(MagmaContext context) {
+    return context.has(ScriptSymbolTable.class) ? context.peek(ScriptSymbolTable.class) : UNBOUND;
+  }
+
+  /**
+   * Get the variable referenced by the given name, relative to the context table. Names that were not found by the
+   * static analysis of the script are resolved without being bound.
+   *
+   * @param name the variable reference
+   * @param context the table from which the reference is resolved
+   * @return
+   */
+  public Symbol resolve(String name, @Nullable ValueTable context) {
+    MagmaEngineVariableResolver reference = references.get(name);
+    if(reference == null) {
+      return new Symbol(MagmaEngineVariableResolver.valueOf(name), context);
+    }
+
+    // read the generation before resolving, so that a binding is never older than its generation
+    long generation = MagmaEngine.getRegistryGeneration();
+    Bindings current = bindings;
+    if(current.generation != generation) {
+      current = new Bindings(generation);
+      bindings = current;
+    }
+    ConcurrentMap<String, Symbol> symbols = current.getSymbols(context);
+    Symbol symbol = symbols.get(name);
+    if(symbol == null) {
+      symbol = new Symbol(reference, context);
+      symbols.put(name, symbol);
+    }
+    return symbol;
+  }
+
+  /**
+   * The symbols bound at a generation of the registry, by context table.
+   */
+  private static final class Bindings {
+
+    private final long generation;
+
+    // weak identity keys: views and tables that are replaced are not retained
+    private final ConcurrentMap<ValueTable, ConcurrentMap<String, Symbol>> byTable = new MapMaker().weakKeys()
+        .makeMap();
+
+    private final ConcurrentMap<String, Symbol> withoutTable = Maps.newConcurrentMap();
+
+    private Bindings(long generation) {
+      this.generation = generation;
+    }
+
+    private ConcurrentMap<String, Symbol> getSymbols(@Nullable ValueTable context) {
+      if(context == null) return withoutTable;
+      ConcurrentMap<String, Symbol> symbols = byTable.get(context);
+      if(symbols == null) {
+        ConcurrentMap<String, Symbol> newSymbols = Maps.newConcurrentMap();
+        symbols = byTable.putIfAbsent(context, newSymbols);
+        if(symbols == null) symbols = newSymbols;
+      }
+      return symbols;
+    }
+  }
+
+  /**
+   * A variable reference bound to its table and {@code VariableValueSource}.
+   */
+  public static final class Symbol {
+
+    private final ValueTable table;
+
+    private final VariableValueSource source;
+
+    private Symbol(MagmaEngineVariableResolver reference, @Nullable ValueTable context) {
+      table = reference.resolveTable(context);
+      source = table.getVariableValueSource(reference.getVariableName());
+    }
+
+    public ValueTable getValueTable() {
+      return table;
+    }
+
+    public VariableValueSource getSource() {
+      return source;
+    }
+
+    /**
+     * Returns true if the specified {@code ValueSet} is within a different table than the referenced one.
+     *
+     * @param valueSet
+     * @return
+     */
+    public boolean isJoin(ValueSet valueSet) {
+      return table != valueSet.getValueTable();
+    }
+
+    /**
+     * Get the value set of the referenced table for the entity of the specified {@code ValueSet}.
+     *
+     * @param valueSet
+     * @return
+     * @throws NoSuchValueSetException
+     */
+    public ValueSet join(ValueSet valueSet) throws NoSuchValueSetException {
+      return table.getValueSet(valueSet.getVariableEntity());
+    }
+  }
+
+}
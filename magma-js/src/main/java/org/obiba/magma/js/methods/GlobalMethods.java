@@ -28,12 +28,14 @@ import org.obiba.magma.ValueType;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.js.DerivedValues;
 import org.obiba.magma.js.JavascriptValueSource.VectorCache;
 import org.obiba.magma.js.MagmaContext;
 import org.obiba.magma.js.MagmaJsEvaluationRuntimeException;
+import org.obiba.magma.js.ScriptSymbolTable;
+import org.obiba.magma.js.ScriptSymbolTable.Symbol;
 import org.obiba.magma.js.ScriptableValue;
 import org.obiba.magma.js.ScriptableVariable;
-import org.obiba.magma.support.MagmaEngineVariableResolver;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.type.DateTimeType;
@@ -288,9 +290,9 @@ public final class GlobalMethods extends AbstractGlobalMethodProvider {
     Value identifier = valueFromContext(context, thisObj, name).getValue();
 
     // Find the joined named source
-    MagmaEngineVariableResolver reference = MagmaEngineVariableResolver.valueOf(joinedName);
-    ValueTable joinedTable = reference.resolveTable(valueTable);
-    VariableValueSource joinedSource = reference.resolveSource(valueTable);
+    Symbol joined = ScriptSymbolTable.fromContext(context).resolve(joinedName, valueTable);
+    ValueTable joinedTable = joined.getValueTable();
+    VariableValueSource joinedSource = joined.getSource();
 
     return new ScriptableValue(thisObj, getJoinedValue(joinedTable, joinedSource, identifier, flat),
         joinedSource.getVariable().getUnit());
@@ -471,19 +473,23 @@ public final class GlobalMethods extends AbstractGlobalMethodProvider {
   private static Scriptable valueFromViewContext(MagmaContext context, Scriptable thisObj, String name) {
     View view = context.peek(View.class);
 
-    MagmaEngineVariableResolver reference = MagmaEngineVariableResolver.valueOf(name);
-
     // Find the named source, which is in this context a view variable value source.
-    VariableValueSource source = reference.resolveSource(view);
+    VariableValueSource source = ScriptSymbolTable.fromContext(context).resolve(name, view).getSource();
 
     // Test whether this is a vector-oriented evaluation or a ValueSet-oriented evaluation
     if(context.has(VectorCache.class)) {
       return valuesForVector(context, thisObj, source);
     }
     ValueSet valueSet = context.peek(ValueSet.class);
-    // The ValueSet is the one of the "from" table of the view
-    ValueSet viewValueSet = view.getValueSetMappingFunction().apply(valueSet);
-    Value value = source.getValue(viewValueSet);
+    // The value may have been computed already in this evaluation pass
+    DerivedValues derivedValues = DerivedValues.fromContext(context, view);
+    Value value = derivedValues == null ? null : derivedValues.get(name, valueSet.getVariableEntity());
+    if(value == null) {
+      // The ValueSet is the one of the "from" table of the view
+      ValueSet viewValueSet = view.getValueSetMappingFunction().apply(valueSet);
+      value = source.getValue(viewValueSet);
+      if(derivedValues != null) derivedValues.put(name, valueSet.getVariableEntity(), value);
+    }
     return new ScriptableValue(thisObj, value, source.getVariable().getUnit());
   }
 
@@ -501,13 +507,12 @@ public final class GlobalMethods extends AbstractGlobalMethodProvider {
 
   private static ScriptableValue valueFromContext(MagmaContext context, Scriptable thisObj, String name) {
     ValueTable valueTable = context.peek(ValueTable.class);
-    MagmaEngineVariableResolver reference = MagmaEngineVariableResolver.valueOf(name);
-    VariableValueSource variableSource = reference.resolveSource(valueTable);
+    Symbol symbol = ScriptSymbolTable.fromContext(context).resolve(name, valueTable);
 
     // Test whether this is a vector-oriented evaluation or a ValueSet-oriented evaluation
     return context.has(VectorCache.class)
-        ? valuesForVector(context, thisObj, variableSource)
-        : valueForValueSet(context, thisObj, reference, variableSource);
+        ? valuesForVector(context, thisObj, symbol.getSource())
+        : valueForValueSet(context, thisObj, symbol);
   }
 
   private static ScriptableValue valuesForVector(MagmaContext context, Scriptable thisObj, VariableValueSource source) {
@@ -517,14 +522,14 @@ public final class GlobalMethods extends AbstractGlobalMethodProvider {
     return new ScriptableValue(thisObj, value, source.getVariable().getUnit());
   }
 
-  private static ScriptableValue valueForValueSet(MagmaContext context, Scriptable thisObj,
-      MagmaEngineVariableResolver reference, VariableValueSource variableSource) {
+  private static ScriptableValue valueForValueSet(MagmaContext context, Scriptable thisObj, Symbol symbol) {
+    VariableValueSource variableSource = symbol.getSource();
     ValueSet valueSet = context.peek(ValueSet.class);
     // Tests whether this valueSet is in the same table as the referenced ValueTable
-    if(reference.isJoin(valueSet)) {
+    if(symbol.isJoin(valueSet)) {
       // Resolve the joined valueSet
       try {
-        valueSet = reference.join(valueSet);
+        valueSet = symbol.join(valueSet);
       } catch(NoSuchValueSetException e) {
         // Entity does not have a ValueSet in joined collection
         // Return a null value
@@ -669,11 +674,8 @@ public final class GlobalMethods extends AbstractGlobalMethodProvider {
   }
 
   private static Variable variableFromContext(MagmaContext context, String name) {
-    MagmaEngineVariableResolver reference = MagmaEngineVariableResolver.valueOf(name);
-    VariableValueSource source = context.has(ValueTable.class)
-        ? reference.resolveSource(context.peek(ValueTable.class))
-        : reference.resolveSource();
-    return source.getVariable();
+    return ScriptSymbolTable.fromContext(context).resolve(name, valueTableFromContext(context)).getSource()
+        .getVariable();
   }
 
   private static Predicate<Value> getPredicate(Context ctx, Scriptable scope, Scriptable thisObj, Variable variable,
@@ -25,9 +25,29 @@ import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
 import org.unitsofmeasurement.unit.Unit;
 
+import com.google.common.math.LongMath;
+
 @SuppressWarnings({ "UnusedParameters", "UnusedDeclaration" })
 public class NumericMethods {
 
+  // integers which are exactly doubles
+  private static final double MAX_EXACT_INTEGER = 0x1p53;
+
+  // below, a double that is not exactly the result of an operation cannot be the integer closest to that result
+  private static final double MAX_DECIDABLE_INTEGER = 0x1p52;
+
+  private static final double MAX_LONG = 0x1p63;
+
+  // 2^27 + 1, splits a double in two halves which products are exact
+  private static final double SPLITTER = 0x1p27 + 1;
+
+  private static final double MAX_SPLIT = 0x1p995;
+
+  private static final double MIN_PRODUCT = 0x1p-960;
+
+  // the unit of operands without unit, and of their results
+  private static final String NO_UNIT = SI.ONE.toString();
+
   private NumericMethods() {
   }
 
@@ -38,6 +58,29 @@ public class NumericMethods {
         return lhs.divide(rhs, MathContext.DECIMAL128);
       }
 
+      @Override
+      public long operate(long lhs, long rhs) {
+        if(rhs == 0 || lhs % rhs != 0) throw new ArithmeticException("Not an integer quotient");
+        return lhs / rhs;
+      }
+
+      @Override
+      public double operate(double lhs, double rhs) {
+        return lhs / rhs;
+      }
+
+      @Override
+      public boolean isDecidable(double lhs, double rhs, double result) {
+        return Math.abs(result) > MIN_PRODUCT && isProductDecidable(result, rhs);
+      }
+
+      @Override
+      public boolean isExact(double lhs, double rhs, double result) {
+        // the quotient is exact when multiplying it by the divisor gives back the dividend
+        double product = result * rhs;
+        return product == lhs && productError(result, rhs, product) == 0;
+      }
+
       @Override
       public Unit<?> operate(Unit<?> lhs, Unit<?> rhs) {
         return lhs.divide(rhs);
@@ -48,6 +91,21 @@ public class NumericMethods {
       public BigDecimal operate(BigDecimal lhs, BigDecimal rhs) {
         return lhs.subtract(rhs);
       }
+
+      @Override
+      public long operate(long lhs, long rhs) {
+        return LongMath.checkedSubtract(lhs, rhs);
+      }
+
+      @Override
+      public double operate(double lhs, double rhs) {
+        return lhs - rhs;
+      }
+
+      @Override
+      public boolean isExact(double lhs, double rhs, double result) {
+        return sumError(lhs, -rhs, result) == 0;
+      }
     },
     MULTIPLY() {
       @Override
@@ -55,6 +113,26 @@ public class NumericMethods {
         return lhs.multiply(rhs);
       }
 
+      @Override
+      public long operate(long lhs, long rhs) {
+        return LongMath.checkedMultiply(lhs, rhs);
+      }
+
+      @Override
+      public double operate(double lhs, double rhs) {
+        return lhs * rhs;
+      }
+
+      @Override
+      public boolean isDecidable(double lhs, double rhs, double result) {
+        return lhs == 0 || rhs == 0 || isProductDecidable(lhs, rhs);
+      }
+
+      @Override
+      public boolean isExact(double lhs, double rhs, double result) {
+        return lhs == 0 || rhs == 0 || productError(lhs, rhs, result) == 0;
+      }
+
       @Override
       public Unit<?> operate(Unit<?> lhs, Unit<?> rhs) {
         return lhs.multiply(rhs);
@@ -65,6 +143,21 @@ public class NumericMethods {
       public BigDecimal operate(BigDecimal lhs, BigDecimal rhs) {
         return lhs.add(rhs);
       }
+
+      @Override
+      public long operate(long lhs, long rhs) {
+        return LongMath.checkedAdd(lhs, rhs);
+      }
+
+      @Override
+      public double operate(double lhs, double rhs) {
+        return lhs + rhs;
+      }
+
+      @Override
+      public boolean isExact(double lhs, double rhs, double result) {
+        return sumError(lhs, rhs, result) == 0;
+      }
     };
 
     /**
@@ -77,6 +170,38 @@ public class NumericMethods {
      */
     public abstract BigDecimal operate(BigDecimal lhs, BigDecimal rhs) throws ArithmeticException;
 
+    /**
+     * Performs this operation on integers
+     *
+     * @param lhs
+     * @param rhs
+     * @return
+     * @throws ArithmeticException when the result is not a long integer (overflow, non integer quotient)
+     */
+    public abstract long operate(long lhs, long rhs) throws ArithmeticException;
+
+    /**
+     * Performs this operation on doubles: the result is the exact result rounded to the nearest double.
+     *
+     * @param lhs
+     * @param rhs
+     * @return
+     */
+    public abstract double operate(double lhs, double rhs);
+
+    /**
+     * Returns true when {@link #isExact(double, double, double)} can tell if the double result is exact (no underflow
+     * nor overflow of the intermediate results).
+     */
+    public boolean isDecidable(double lhs, double rhs, double result) {
+      return true;
+    }
+
+    /**
+     * Returns true when the double result of this operation is its exact result.
+     */
+    public abstract boolean isExact(double lhs, double rhs, double result);
+
     public Unit<?> operate(Unit<?> lhs, Unit<?> rhs) {
       return lhs;
     }
@@ -596,6 +721,16 @@ public class NumericMethods {
   }
 
   static ScriptableValue operate(ScriptableValue thisObj, Object args[], Ops operation) {
+    Value primitiveValue = operatePrimitives(thisObj, args, operation);
+    if(primitiveValue != null) {
+      if(!hasUnit(thisObj, args)) return new ScriptableValue(thisObj, primitiveValue, NO_UNIT);
+      Unit<?> unit = UnitMethods.extractUnit(thisObj);
+      for(Object argument : args) {
+        unit = operation.operate(unit, UnitMethods.extractUnit(argument));
+      }
+      return new ScriptableValue(thisObj, primitiveValue, unit.toString());
+    }
+
     try {
       BigDecimal value = asBigDecimal(thisObj);
       if(value == null) return new ScriptableValue(thisObj, thisObj.getValueType().nullValue());
@@ -618,6 +753,127 @@ public class NumericMethods {
     }
   }
 
+  /**
+   * Performs the operation on primitive operands when its result is the one of the {@code BigDecimal} arithmetic:
+   * integers are operated as longs until an overflow, other numbers as doubles as long as each intermediate result is
+   * exact (the last one may be rounded, once, as {@code BigDecimal.doubleValue()} would).
+   *
+   * @param thisObj
+   * @param args
+   * @param operation
+   * @return the result, or null if the operation is to be performed with {@code BigDecimal}
+   */
+  @Nullable
+  private static Value operatePrimitives(ScriptableValue thisObj, Object[] args, Ops operation) {
+    double[] operands = new double[args.length + 1];
+    boolean integers = true;
+    for(int i = 0; i < operands.length; i++) {
+      Object operand = i == 0 ? thisObj : args[i - 1];
+      if(!isPrimitive(operand)) return null;
+      operands[i] = asPrimitive(operand);
+      integers &= Math.rint(operands[i]) == operands[i] && Math.abs(operands[i]) <= MAX_EXACT_INTEGER;
+    }
+    if(integers) {
+      try {
+        long result = (long) operands[0];
+        for(int i = 1; i < operands.length; i++) {
+          result = operation.operate(result, (long) operands[i]);
+        }
+        return IntegerType.get().valueOf(result);
+      } catch(ArithmeticException e) {
+        // overflow or decimal result
+      }
+    }
+    return operateDoubles(operands, operation);
+  }
+
+  @Nullable
+  private static Value operateDoubles(double[] operands, Ops operation) {
+    double result = operands[0];
+    for(int i = 1; i < operands.length; i++) {
+      double rhs = operands[i];
+      double value = operation.operate(result, rhs);
+      if(Double.isNaN(value) || Double.isInfinite(value) || !operation.isDecidable(result, rhs, value)) return null;
+      if(!operation.isExact(result, rhs, value)) {
+        // a rounded intermediate result would differ from the BigDecimal arithmetic, which keeps it exact
+        // or on 34 digits; a rounded result cannot be an integer below 2^52.
+        return i == operands.length - 1 && Math.abs(value) < MAX_DECIDABLE_INTEGER
+            ? DecimalType.get().valueOf(value)
+            : null;
+      }
+      result = value;
+    }
+    if(Math.rint(result) == result && result >= -MAX_LONG && result < MAX_LONG) {
+      return IntegerType.get().valueOf((long) result);
+    }
+    return DecimalType.get().valueOf(result);
+  }
+
+  private static boolean hasUnit(ScriptableValue thisObj, Object... args) {
+    if(hasUnit(thisObj)) return true;
+    for(Object argument : args) {
+      if(argument instanceof ScriptableValue && hasUnit((ScriptableValue) argument)) return true;
+    }
+    return false;
+  }
+
+  private static boolean hasUnit(ScriptableValue value) {
+    // results of operations on values without unit have the empty unit
+    return value.hasUnit() && !NO_UNIT.equals(value.getUnit());
+  }
+
+  /**
+   * Returns true if the operand is a number which {@code BigDecimal} representation is exactly its double value.
+   */
+  private static boolean isPrimitive(Object operand) {
+    if(operand instanceof ScriptableValue) {
+      Value value = ((ScriptableValue) operand).getValue();
+      if(value.isNull() || value.isSequence() || !value.getValueType().isNumeric()) return false;
+      double number = ((Number) value.getValue()).doubleValue();
+      return !Double.isNaN(number) && !Double.isInfinite(number);
+    }
+    if(operand instanceof Integer || operand instanceof Long || operand instanceof Double) {
+      // the BigDecimal is parsed from the string representation of the number: only integers are exactly doubles
+      double number = ((Number) operand).doubleValue();
+      return Math.rint(number) == number && Math.abs(number) <= MAX_EXACT_INTEGER;
+    }
+    return false;
+  }
+
+  private static double asPrimitive(Object operand) {
+    Object number = operand instanceof ScriptableValue ? ((ScriptableValue) operand).getValue().getValue() : operand;
+    return ((Number) number).doubleValue();
+  }
+
+  /**
+   * Returns the rounding error of the sum of two doubles (Knuth's TwoSum).
+   */
+  private static double sumError(double lhs, double rhs, double sum) {
+    double rhsPart = sum - lhs;
+    return lhs - (sum - rhsPart) + (rhs - rhsPart);
+  }
+
+  /**
+   * Returns the rounding error of the product of two doubles (Dekker's TwoProduct).
+   */
+  private static double productError(double lhs, double rhs, double product) {
+    double split = SPLITTER * lhs;
+    double lhsHigh = split - (split - lhs);
+    double lhsLow = lhs - lhsHigh;
+    split = SPLITTER * rhs;
+    double rhsHigh = split - (split - rhs);
+    double rhsLow = rhs - rhsHigh;
+    return lhsLow * rhsLow - (product - lhsHigh * rhsHigh - lhsLow * rhsHigh - lhsHigh * rhsLow);
+  }
+
+  /**
+   * Returns true when the factors can be split and the rounding error of their product is not subnormal.
+   */
+  private static boolean isProductDecidable(double lhs, double rhs) {
+    double product = Math.abs(lhs * rhs);
+    return Math.abs(lhs) < MAX_SPLIT && Math.abs(rhs) < MAX_SPLIT && product > MIN_PRODUCT && product < MAX_SPLIT;
+  }
+
   static Double asDouble(Object obj) {
     if(obj == null) return null;
     if(obj instanceof Number) {
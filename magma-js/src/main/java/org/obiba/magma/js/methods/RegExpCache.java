@@ -0,0 +1,93 @@
+package org.obiba.magma.js.methods;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Regular expressions given as strings to the text methods, compiled once and shared by all the evaluations rather
+ * than compiled again for each value.
+ */
+final class RegExpCache {
+
+  private static final int MAX_SIZE = 1000;
+
+  private static final String SPECIAL_CHARS = "\\^$.*+?()[]{}|";
+
+  private static final Cache<String, CompiledRegExp> compiled = CacheBuilder.newBuilder().maximumSize(MAX_SIZE)
+      .build();
+
+  private RegExpCache() {}
+
+  /**
+   * Get the compiled regular expression of a pattern.
+   *
+   * @param ctx
+   * @param pattern the pattern, as given to the method
+   * @param flags the flags, as given to the method, or null if none
+   * @param literal true when the pattern is searched as is, as the string pattern of {@code String.replace}
+   * @return
+   */
+  static CompiledRegExp compile(final Context ctx, Object pattern, @Nullable Object flags, boolean literal) {
+    String source = ScriptRuntime.toString(pattern);
+    final String regExp = literal ? quote(source) : source;
+    final String regExpFlags = flags == null ? null : ScriptRuntime.toString(flags);
+    // flags are letters: the last slash separates them from the expression
+    String key = regExp + "/" + (regExpFlags == null ? "" : regExpFlags);
+    try {
+      return compiled.get(key, new Callable<CompiledRegExp>() {
+        @Override
+        public CompiledRegExp call() throws Exception {
+          return new CompiledRegExp(ScriptRuntime.checkRegExpProxy(ctx).compileRegExp(ctx, regExp, regExpFlags));
+        }
+      });
+    } catch(ExecutionException | UncheckedExecutionException e) {
+      // compilation errors are reported as they would be by the RegExp constructor
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static String quote(String source) {
+    StringBuilder quoted = new StringBuilder(source.length() + 8);
+    for(int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if(SPECIAL_CHARS.indexOf(c) >= 0) quoted.append('\\');
+      quoted.append(c);
+    }
+    return quoted.toString();
+  }
+
+  /**
+   * The immutable compiled form of a regular expression.
+   */
+  static final class CompiledRegExp {
+
+    private final Object regExp;
+
+    private CompiledRegExp(Object regExp) {
+      this.regExp = regExp;
+    }
+
+    /**
+     * Get a new {@code RegExp} object, that holds its own matching state.
+     *
+     * @param ctx
+     * @param scope
+     * @return
+     */
+    Scriptable newRegExp(Context ctx, Scriptable scope) {
+      return ScriptRuntime.checkRegExpProxy(ctx).wrapRegExp(ctx, scope, regExp);
+    }
+  }
+
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
@@ -17,10 +18,14 @@ import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.RegExpProxy;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.regexp.NativeRegExp;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueType;
+import org.obiba.magma.js.MagmaContext;
 import org.obiba.magma.js.MagmaJsEvaluationRuntimeException;
 import org.obiba.magma.js.Rhino;
+import org.obiba.magma.js.ScriptMapTables;
 import org.obiba.magma.js.ScriptableValue;
 import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.type.DateTimeType;
@@ -195,13 +200,19 @@ public class TextMethods {
     com.google.common.base.Function<Value, Value> replaceFunction
         = new com.google.common.base.Function<Value, Value>() {
 
+      // a pattern with flags is compiled once for all the values
+      private Object[] replaceArgs;
+
       @Override
       public Value apply(Value input) {
         String stringValue = input == null || input.isNull() ? null : input.toString();
+        if(replaceArgs == null) replaceArgs = compileReplaceArgs(ctx, args);
 
         // Delegate to Javascript's String.replace method
+        Object[] regExpArgs = newRegExps(ctx, thisObj, replaceArgs);
         String result = (String) ScriptRuntime.checkRegExpProxy(ctx)
-            .action(ctx, thisObj, ScriptRuntime.toObject(ctx, thisObj, stringValue), args, RegExpProxy.RA_REPLACE);
+            .action(ctx, thisObj, ScriptRuntime.toObject(ctx, thisObj, stringValue), regExpArgs,
+                RegExpProxy.RA_REPLACE);
 
         return TextType.get().valueOf(result);
       }
@@ -209,6 +220,28 @@ public class TextMethods {
     return transformValue((ScriptableValue) thisObj, replaceFunction);
   }
 
+  /**
+   * Replace a string pattern followed by flags by its compiled regular expression, in which the string is searched as
+   * is. A string pattern without flags is not compiled: it is searched with {@code String.indexOf}.
+   */
+  private static Object[] compileReplaceArgs(Context ctx, Object... args) {
+    if(args.length < 3 || args[0] instanceof NativeRegExp) return args;
+    return new Object[] { RegExpCache.compile(ctx, args[0], args[2], true), args[1] };
+  }
+
+  /**
+   * Get a new {@code RegExp} of each compiled regular expression, as the {@code RegExp} holds the matching state.
+   */
+  private static Object[] newRegExps(Context ctx, Scriptable scope, Object... args) {
+    Object[] regExps = args.clone();
+    for(int i = 0; i < regExps.length; i++) {
+      if(regExps[i] instanceof RegExpCache.CompiledRegExp) {
+        regExps[i] = ((RegExpCache.CompiledRegExp) regExps[i]).newRegExp(ctx, scope);
+      }
+    }
+    return regExps;
+  }
+
   /**
    * <pre>
    *   $('TextVar').matches('regex1', 'regex2', ...)
@@ -219,6 +252,9 @@ public class TextMethods {
     com.google.common.base.Function<Value, Value> matchesFunction
         = new com.google.common.base.Function<Value, Value>() {
 
+      // string patterns are compiled once for all the values
+      private Object[] patterns;
+
       @Override
       public Value apply(Value input) {
         String stringValue = input == null || input.isNull() ? null : input.toString();
@@ -226,9 +262,10 @@ public class TextMethods {
         // Delegate to Javascript's String.replace method
         boolean matches = false;
         if(stringValue != null) {
-          for(Object arg : args) {
+          if(patterns == null) patterns = compileMatchArgs(ctx, args);
+          for(Object pattern : newRegExps(ctx, thisObj, patterns)) {
             Object result = ScriptRuntime.checkRegExpProxy(ctx)
-                .action(ctx, thisObj, ScriptRuntime.toObject(ctx, thisObj, stringValue), new Object[] { arg },
+                .action(ctx, thisObj, ScriptRuntime.toObject(ctx, thisObj, stringValue), new Object[] { pattern },
                     RegExpProxy.RA_MATCH);
             if(result != null) {
               matches = true;
@@ -242,6 +279,14 @@ public class TextMethods {
     return transformValue((ScriptableValue) thisObj, matchesFunction);
   }
 
+  private static Object[] compileMatchArgs(Context ctx, Object... args) {
+    Object[] patterns = new Object[args.length];
+    for(int i = 0; i < args.length; i++) {
+      patterns[i] = args[i] instanceof NativeRegExp ? args[i] : RegExpCache.compile(ctx, args[i], null, false);
+    }
+    return patterns;
+  }
+
   /**
    * Returns a new {@link ScriptableValue} of {@link TextType} combining the String value of this value with the String
    * values of the parameters parameters.
@@ -328,20 +373,27 @@ public class TextMethods {
     Value defaultValue = defaultValue(returnType, args);
     Value nullValue = nullValue(returnType, args);
 
+    // a literal of the script is converted once for all its evaluations
+    Map<Object, Object> lookupMap = ScriptMapTables.fromContext(MagmaContext.asMagmaContext(ctx))
+        .getLookupMap((ScriptableObject) valueMap);
+
     Value currentValue = sv.getValue();
     if(currentValue.isSequence()) {
       if(currentValue.isNull()) {
         return new ScriptableValue(thisObj, returnType.nullSequence());
       }
+      // otherwise the map is converted once for all the values of the sequence
+      if(lookupMap == null) lookupMap = ScriptMapTables.asLookupMap((ScriptableObject) valueMap);
       Collection<Value> newValues = new ArrayList<>();
       //noinspection ConstantConditions
       for(Value value : currentValue.asSequence().getValue()) {
-        newValues.add(lookupValue(ctx, thisObj, value, returnType, valueMap, defaultValue, nullValue));
+        newValues.add(lookupValue(ctx, thisObj, value, returnType, lookupMap, defaultValue, nullValue));
       }
       return new ScriptableValue(thisObj, returnType.sequenceOf(newValues));
     }
-    return new ScriptableValue(thisObj,
-        lookupValue(ctx, thisObj, currentValue, returnType, valueMap, defaultValue, nullValue));
+    return new ScriptableValue(thisObj, lookupMap == null
+        ? lookupValue(ctx, thisObj, currentValue, returnType, valueMap, defaultValue, nullValue)
+        : lookupValue(ctx, thisObj, currentValue, returnType, lookupMap, defaultValue, nullValue));
   }
 
   /**
@@ -481,6 +533,34 @@ public class TextMethods {
       }
     }
 
+    return mappedValue(ctx, thisObj, value, returnType, newValue, defaultValue);
+  }
+
+  /**
+   * Lookup {@code value} in the {@code valueMap} converted by {@link ScriptMapTables#asLookupMap(ScriptableObject)} and
+   * return the mapped value of type {@code returnType}
+   */
+  @SuppressWarnings("PMD.ExcessiveParameterList")
+  private static Value lookupValue(Context ctx, Scriptable thisObj, Value value, ValueType returnType,
+      Map<Object, Object> valueMap, Value defaultValue, Value nullValue) {
+
+    if(value.isNull()) return nullValue;
+
+    String asName = value.toString();
+    Object newValue = valueMap.containsKey(asName) ? valueMap.get(asName) : NativeObject.NOT_FOUND;
+    if(newValue == NativeObject.NOT_FOUND) {
+      Integer index = asJsIndex(value);
+      if(index != null && valueMap.containsKey(index)) {
+        newValue = valueMap.get(index);
+      }
+    }
+
+    return mappedValue(ctx, thisObj, value, returnType, newValue, defaultValue);
+  }
+
+  private static Value mappedValue(Context ctx, Scriptable thisObj, Value value, ValueType returnType,
+      @Nullable Object mapped, Value defaultValue) {
+    Object newValue = mapped;
     if(newValue == null) return returnType.nullValue();
 
     if(newValue == NativeObject.NOT_FOUND) return defaultValue;
@@ -510,6 +590,9 @@ public class TextMethods {
     Number asNumber = null;
     if(value.getValueType() == IntegerType.get()) {
       asNumber = (Number) value.getValue();
+    } else if(value.getValueType() == TextType.get() && !isNumeric(value.toString())) {
+      // the conversion would fail, avoid the cost of its exception
+      return null;
     } else {
       try {
         // Try a conversion. Throws a runtime exception when it fails
@@ -524,6 +607,16 @@ public class TextMethods {
     return null;
   }
 
+  /**
+   * Returns false when the string cannot be the representation of a number: it must start with a sign, a digit or a
+   * decimal point.
+   */
+  private static boolean isNumeric(String str) {
+    if(str.isEmpty()) return false;
+    char c = str.charAt(0);
+    return c == '-' || c == '+' || c == '.' || Character.isDigit(c);
+  }
+
   /**
    * Transform a value or values from a value sequence using the provided function.
    *
@@ -108,7 +108,7 @@ public class UnitMethods {
   }
 
   public static Unit<?> extractUnit(String value) {
-    if(value == null) return SI.ONE;
+    if(value == null || value.isEmpty()) return SI.ONE;
     try {
       // Try the common non-UCUM notation strings
       // This is tried first to use commonly used units like ft and yd instead of uncommon femto-ton (ft), etc.
@@ -3,7 +3,10 @@ package org.obiba.magma.js.validation;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +14,7 @@ import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
 import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.EvaluatorException;
 import org.mozilla.javascript.Parser;
 import org.mozilla.javascript.ast.AstRoot;
 import org.obiba.magma.AttributeAware;
@@ -28,7 +32,10 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import static org.obiba.magma.js.JavascriptVariableBuilder.SCRIPT_ATTRIBUTE_NAME;
 
@@ -86,6 +93,77 @@ public class VariableScriptValidator {
     }
   }
 
+  /**
+   * Sort derived variables of a view in stages, from the references they make to the other variables of the view
+   * (<code>$this('VAR')</code>): the variables of a stage only depend on variables of the previous stages, so that the
+   * variables of a stage can be evaluated independently from each other.
+   *
+   * @param view the view, or table, the variables are derived in
+   * @param variables the variables to evaluate
+   * @param viewVariables all the derived variables of the view, by name
+   * @return the stages, in the order they are to be evaluated
+   * @throws CircularVariableDependencyException
+   */
+  public static List<List<Variable>> getEvaluationStages(@NotNull ValueTable view, Iterable<Variable> variables,
+      Map<String, Variable> viewVariables) throws CircularVariableDependencyException {
+    Map<String, VariableRefNode> nodes = Maps.newHashMap();
+    Map<VariableRefNode, Integer> levels = Maps.newHashMap();
+    SortedMap<Integer, List<Variable>> stages = Maps.newTreeMap();
+    for(Variable variable : variables) {
+      int level = getEvaluationLevel(getViewNode(variable, view, nodes), viewVariables, nodes, levels);
+      if(!stages.containsKey(level)) {
+        stages.put(level, Lists.<Variable>newArrayList());
+      }
+      stages.get(level).add(variable);
+    }
+    return ImmutableList.copyOf(stages.values());
+  }
+
+  /**
+   * The level of a variable is the length of the longest chain of view variables it depends on.
+   */
+  private static int getEvaluationLevel(VariableRefNode node, Map<String, Variable> viewVariables,
+      Map<String, VariableRefNode> nodes, Map<VariableRefNode, Integer> levels) {
+    Integer level = levels.get(node);
+    if(level != null) {
+      if(level < 0) throw new CircularVariableDependencyException(node);
+      return level;
+    }
+    // being visited
+    levels.put(node, -1);
+    int nodeLevel = 0;
+    for(VariableRefCall variableRefCall : parseEvaluatedScript(node.getScript())) {
+      Variable callee = viewVariables.get(variableRefCall.getVariableRef());
+      if("$this".equals(variableRefCall.getMethod()) && callee != null) {
+        VariableRefNode calleeNode = getViewNode(callee, node.getValueTable(), nodes);
+        calleeNode.getCallers().add(node);
+        node.getCallees().add(calleeNode);
+        nodeLevel = Math.max(nodeLevel, getEvaluationLevel(calleeNode, viewVariables, nodes, levels) + 1);
+      }
+    }
+    levels.put(node, nodeLevel);
+    return nodeLevel;
+  }
+
+  private static Set<VariableRefCall> parseEvaluatedScript(@Nullable String script) {
+    if(Strings.isNullOrEmpty(script)) return ImmutableSet.of();
+    try {
+      return parseScript(script);
+    } catch(EvaluatorException e) {
+      // syntax errors are reported when the script is evaluated
+      return ImmutableSet.of();
+    }
+  }
+
+  private static VariableRefNode getViewNode(Variable variable, ValueTable view, Map<String, VariableRefNode> nodes) {
+    VariableRefNode node = nodes.get(variable.getName());
+    if(node == null) {
+      node = new VariableRefNode(variable.getVariableReference(view), view, getScript(variable));
+      nodes.put(variable.getName(), node);
+    }
+    return node;
+  }
+
   @VisibleForTesting
   static Set<VariableRefCall> parseScript(String script) {
     String clearScript = clearScriptComments(script);
@@ -1,6 +1,7 @@
 package org.obiba.magma.js.views;
 
 import java.io.Serializable;
+import java.util.List;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
@@ -16,14 +17,17 @@ import org.obiba.magma.ValueType;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.js.MagmaContext;
+import org.obiba.magma.js.ScriptSymbolTable;
 import org.obiba.magma.js.ScriptableValue;
 import org.obiba.magma.js.ScriptableVariable;
 import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.views.SelectClause;
+import org.obiba.magma.views.BatchWhereClause;
 import org.obiba.magma.views.View;
-import org.obiba.magma.views.WhereClause;
 
-public class JavascriptClause implements Initialisable, SelectClause, WhereClause {
+import com.google.common.collect.ImmutableList;
+
+public class JavascriptClause implements Initialisable, SelectClause, BatchWhereClause {
   //
   // Instance Variables
   //
@@ -36,6 +40,10 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
   @SuppressWarnings("TransientFieldInNonSerializableClass")
   private transient Script compiledScript;
 
+  // literal variable references of the script, bound until the registry changes
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient ScriptSymbolTable symbols;
+
   //
   // Constructors
   //
@@ -67,6 +75,7 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
         return cx.compileString(getScript(), getScriptName(), 1, null);
       }
     });
+    symbols = ScriptSymbolTable.of(getScript(), getScriptName());
   }
 
   //
@@ -119,7 +128,20 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
     }
     if(valueSet == null) throw new IllegalArgumentException("valueSet cannot be null");
 
-    return (Boolean) ContextFactory.getGlobal().call(new WhereContextAction(valueSet, view));
+    return ((boolean[]) ContextFactory.getGlobal().call(new WhereContextAction(ImmutableList.of(valueSet), view)))[0];
+  }
+
+  /**
+   * Select several value sets within a single entry in the script engine context.
+   */
+  @Override
+  public boolean[] where(List<ValueSet> valueSets, View view) {
+    if(compiledScript == null) {
+      throw new IllegalStateException("script hasn't been compiled. Call initialise() before calling where().");
+    }
+    if(valueSets == null) throw new IllegalArgumentException("valueSets cannot be null");
+
+    return (boolean[]) ContextFactory.getGlobal().call(new WhereContextAction(valueSets, view));
   }
 
   //
@@ -209,28 +231,41 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
   }
 
   private class WhereContextAction implements ContextAction {
-    private final ValueSet valueSet;
+    private final List<ValueSet> valueSets;
 
     private final View view;
 
-    WhereContextAction(ValueSet valueSet, View view) {
-      this.valueSet = valueSet;
+    WhereContextAction(List<ValueSet> valueSets, View view) {
+      this.valueSets = valueSets;
       this.view = view;
     }
 
     @Override
-    @SuppressWarnings("ChainOfInstanceofChecks")
     public Object run(Context ctx) {
       MagmaContext context = MagmaContext.asMagmaContext(ctx);
+      boolean[] selected = new boolean[valueSets.size()];
+      context.push(ScriptSymbolTable.class, symbols);
+      try {
+        for(int i = 0; i < selected.length; i++) {
+          selected[i] = where(context, valueSets.get(i));
+        }
+      } finally {
+        context.pop(ScriptSymbolTable.class);
+      }
+      return selected;
+    }
+
+    @SuppressWarnings("ChainOfInstanceofChecks")
+    private boolean where(MagmaContext context, ValueSet valueSet) {
       // Don't pollute the global scope
       Scriptable scope = context.newLocalScope();
 
       enterContext(context, scope, valueSet, view);
-      Object value = compiledScript.exec(ctx, scope);
+      Object value = compiledScript.exec(context, scope);
       exitContext(context, valueSet, view);
 
       if(value instanceof Boolean) {
-        return value;
+        return (Boolean) value;
       }
       if(value instanceof ScriptableValue) {
         return getValue((ScriptableValue) value);
@@ -238,10 +273,10 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
       return false;
     }
 
-    private Object getValue(ScriptableValue scriptable) {
+    private boolean getValue(ScriptableValue scriptable) {
       if (scriptable.getValue().isNull()) return false;
       try {
-        return BooleanType.get().valueOf(scriptable.getValue().getValue()).getValue();
+        return (Boolean) BooleanType.get().valueOf(scriptable.getValue().getValue()).getValue();
       } catch (Exception e) {
         return false;
       }
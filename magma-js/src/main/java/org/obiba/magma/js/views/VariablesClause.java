@@ -2,27 +2,40 @@ package org.obiba.magma.js.views;
 
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.validation.constraints.NotNull;
 
 import org.obiba.magma.Initialisable;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueTableWriter.VariableWriter;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.js.EvaluationPlan;
 import org.obiba.magma.js.JavascriptVariableValueSourceFactory;
+import org.obiba.magma.js.validation.CircularVariableDependencyException;
+import org.obiba.magma.js.validation.VariableScriptValidator;
 import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.views.BatchListClause;
 import org.obiba.magma.views.ListClause;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 /**
  * This implementation of {@link ListClause} will contain {@link Variable}s with a "script" attribute and/or a "sameAs"
  * attribute used to provide new custom variables derived from existing variables. Before use the initialise method must
  * be called to compile the JavaScript necessary to return the values of the derived variables.
  */
-public class VariablesClause implements ListClause, Initialisable {
+public class VariablesClause implements BatchListClause, Initialisable {
 
   private Set<Variable> variables = new LinkedHashSet<>();
 
@@ -35,6 +48,10 @@ public class VariablesClause implements ListClause, Initialisable {
   @SuppressWarnings("TransientFieldInNonSerializableClass")
   private transient boolean initialised = false;
 
+  // evaluation plans by names of the evaluated variables
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient Map<Set<String>, EvaluationPlan> evaluationPlans;
+
   public void setVariables(Collection<Variable> variables) {
     this.variables.clear();
     if(variables != null) {
@@ -64,6 +81,57 @@ public class VariablesClause implements ListClause, Initialisable {
     return variableValueSources;
   }
 
+  /**
+   * Evaluate the variables in the order of their dependencies, see {@link EvaluationPlan}.
+   *
+   * @throws CircularVariableDependencyException
+   */
+  @Override
+  public List<List<Value>> getValues(List<Variable> variables, List<ValueSet> valueSets) {
+    Map<String, List<Value>> values = getEvaluationPlan(variables).evaluate(valueSets);
+    List<List<Value>> variablesValues = Lists.newArrayListWithCapacity(variables.size());
+    for(Variable variable : variables) {
+      variablesValues.add(values.get(variable.getName()));
+    }
+    return variablesValues;
+  }
+
+  private EvaluationPlan getEvaluationPlan(Iterable<Variable> evaluated) {
+    if(!initialised) {
+      throw new IllegalStateException("The initialise() method must be called before getValues().");
+    }
+    Set<String> names = new LinkedHashSet<>();
+    for(Variable variable : evaluated) {
+      names.add(variable.getName());
+    }
+    EvaluationPlan plan = evaluationPlans.get(names);
+    if(plan == null) {
+      Map<String, VariableValueSource> sources = Maps.newHashMap();
+      Map<String, Variable> viewVariables = Maps.newHashMap();
+      for(VariableValueSource variableValueSource : variableValueSources) {
+        sources.put(variableValueSource.getVariable().getName(), variableValueSource);
+        viewVariables.put(variableValueSource.getVariable().getName(), variableValueSource.getVariable());
+      }
+      List<Variable> variablesToEvaluate = Lists.newArrayListWithCapacity(names.size());
+      for(String name : names) {
+        if(!viewVariables.containsKey(name)) throw new NoSuchVariableException(name);
+        variablesToEvaluate.add(viewVariables.get(name));
+      }
+      List<List<VariableValueSource>> stages = Lists.newArrayList();
+      for(List<Variable> stage : VariableScriptValidator
+          .getEvaluationStages(valueTable, variablesToEvaluate, viewVariables)) {
+        List<VariableValueSource> stageSources = Lists.newArrayListWithCapacity(stage.size());
+        for(Variable variable : stage) {
+          stageSources.add(sources.get(variable.getName()));
+        }
+        stages.add(stageSources);
+      }
+      plan = new EvaluationPlan(valueTable, stages);
+      evaluationPlans.put(ImmutableSet.copyOf(names), plan);
+    }
+    return plan;
+  }
+
   @Override
   public void initialise() {
     if(valueTable == null) {
@@ -80,7 +148,9 @@ public class VariablesClause implements ListClause, Initialisable {
 
       }
     }
+    evaluationPlans = Maps.newConcurrentMap();
     initialised = true;
+    MagmaEngine.registryChanged();
   }
 
   @Override
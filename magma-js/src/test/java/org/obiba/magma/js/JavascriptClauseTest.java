@@ -1,12 +1,24 @@
 package org.obiba.magma.js;
 
+import java.util.List;
+
 import org.junit.Test;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.js.views.JavascriptClause;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
+import org.obiba.magma.views.View;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -80,4 +92,24 @@ public class JavascriptClauseTest extends AbstractJsTest {
     verify(variableValueSourceMock).getVariable();
     verify(variableMock).getUnit();
   }
+
+  @Test
+  public void testViewWhereSelectsValueSetsByBatch() {
+    StaticDatasource datasource = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(datasource, "t", ImmutableSet.of("1", "2", "3"));
+    table.addVariables(IntegerType.get(), "A");
+    table.addValues("1", "A", 1).addValues("2", "A", 2).addValues("3", "A", 3);
+    datasource.addValueTable(table);
+    MagmaEngine.get().addDatasource(datasource);
+
+    JavascriptClause javascriptClause = new JavascriptClause("var a = $('A'); a.ge(2)");
+    View view = View.Builder.newView("view", table).where(javascriptClause).build();
+    Initialisables.initialise(view);
+
+    List<ValueSet> valueSets = Lists.newArrayList(table.getValueSets());
+    assertThat(javascriptClause.where(valueSets, null)).isEqualTo(new boolean[] { false, true, true });
+    assertThat(view.getVariableEntities())
+        .containsOnly(new VariableEntityBean("Participant", "2"), new VariableEntityBean("Participant", "3"));
+    assertThat(view.getValueSets()).hasSize(2);
+  }
 }
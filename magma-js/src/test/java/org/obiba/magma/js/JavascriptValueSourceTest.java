@@ -1,19 +1,30 @@
 package org.obiba.magma.js;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mozilla.javascript.EvaluatorException;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.DecimalType;
 import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -56,6 +67,81 @@ public class JavascriptValueSourceTest extends AbstractJsTest {
     assertThat(System.currentTimeMillis() - dateValue.getTime()).isLessThan(1000);
   }
 
+  @Test
+  public void test_references_follow_datasource_registry() {
+    StaticValueTable table = addTable("main", "t");
+    table.addValues("1", "A", 1);
+    addTable("other", "t").addValues("1", "A", 10);
+
+    JavascriptValueSource source = new JavascriptValueSource(IntegerType.get(), "$('A').plus($('other.t:A'))");
+    source.initialise();
+    ValueSet valueSet = table.getValueSet(new VariableEntityBean("Participant", "1"));
+    assertThat(source.getValue(valueSet).getValue()).isEqualTo(11l);
+
+    // replace the referenced datasource
+    MagmaEngine.get().removeDatasource(MagmaEngine.get().getDatasource("other"));
+    addTable("other", "t").addValues("1", "A", 20);
+    assertThat(source.getValue(valueSet).getValue()).isEqualTo(21l);
+  }
+
+  @Test
+  public void test_references_are_bound_once_per_script() {
+    StaticDatasource datasource = new StaticDatasource("counting");
+    final AtomicInteger lookups = new AtomicInteger();
+    StaticValueTable table = new StaticValueTable(datasource, "t", ImmutableSet.of("1", "2")) {
+      @Override
+      public VariableValueSource getVariableValueSource(String name) throws NoSuchVariableException {
+        lookups.incrementAndGet();
+        return super.getVariableValueSource(name);
+      }
+    };
+    table.addVariables(IntegerType.get(), "A");
+    table.addValues("1", "A", 1).addValues("2", "A", 2);
+    datasource.addValueTable(table);
+    MagmaEngine.get().addDatasource(datasource);
+
+    JavascriptValueSource source = new JavascriptValueSource(IntegerType.get(), "$('A').plus($('counting.t:A'))");
+    source.initialise();
+    ValueSet first = table.getValueSet(new VariableEntityBean("Participant", "1"));
+    ValueSet second = table.getValueSet(new VariableEntityBean("Participant", "2"));
+    assertThat(source.getValue(first).getValue()).isEqualTo(2l);
+    assertThat(source.getValue(second).getValue()).isEqualTo(4l);
+    assertThat(source.getValue(first).getValue()).isEqualTo(2l);
+    assertThat(lookups.get()).isEqualTo(2);
+
+    // replacing a variable invalidates the bindings
+    table.addVariables(IntegerType.get(), "A");
+    table.addValues("1", "A", 5);
+    assertThat(source.getValue(first).getValue()).isEqualTo(10l);
+    assertThat(lookups.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void test_value_sets_evaluation() {
+    StaticValueTable table = addTable("main", "t");
+    table.addValues("1", "A", 1).addValues("2", "A", 2);
+
+    // variables declared by the script must not leak from one value set to the other
+    JavascriptValueSource source = new JavascriptValueSource(IntegerType.get(),
+        "var b; if($('A').value() == 1) { b = 10 }; b ? b : $('A')");
+    source.initialise();
+    List<ValueSet> valueSets = ImmutableList.of(table.getValueSet(new VariableEntityBean("Participant", "1")),
+        table.getValueSet(new VariableEntityBean("Participant", "2")));
+    List<Value> values = source.getValues(valueSets);
+    assertThat(values).hasSize(2);
+    assertThat(values.get(0).getValue()).isEqualTo(10l);
+    assertThat(values.get(1).getValue()).isEqualTo(2l);
+  }
+
+  private StaticValueTable addTable(String datasourceName, String tableName) {
+    StaticDatasource datasource = new StaticDatasource(datasourceName);
+    StaticValueTable table = new StaticValueTable(datasource, tableName, ImmutableSet.of("1", "2"));
+    table.addVariables(IntegerType.get(), "A");
+    datasource.addValueTable(table);
+    MagmaEngine.get().addDatasource(datasource);
+    return table;
+  }
+
   @Test
   public void test_compile_error() {
     // Error is on second line of script
@@ -1,22 +1,31 @@
 package org.obiba.magma.js;
 
 import java.util.Date;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.junit.Test;
 import org.obiba.magma.Datasource;
 import org.obiba.magma.MagmaDate;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueType;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.VectorSource;
 import org.obiba.magma.support.ValueSetBean;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
 
+import com.google.common.collect.Lists;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -95,4 +104,54 @@ public class JavascriptVariableValueSourceTest extends AbstractJsTest {
     assertThat(value.toString()).isEqualTo("The Value");
   }
 
+
+  @Test
+  public void test_parallel_vector() {
+    final Variable a = Variable.Builder.newVariable("A", IntegerType.get(), "Participant").build();
+    VectorSource vector = new VectorSource() {
+      @Override
+      public ValueType getValueType() {
+        return IntegerType.get();
+      }
+
+      @Override
+      public Iterable<Value> getValues(SortedSet<VariableEntity> entities) {
+        List<Value> values = Lists.newArrayList();
+        for(VariableEntity entity : entities) {
+          values.add(IntegerType.get().valueOf(entity.getIdentifier()));
+        }
+        return values;
+      }
+    };
+    VariableValueSource mockSource = mock(VariableValueSource.class);
+    when(mockSource.getVariable()).thenReturn(a);
+    when(mockSource.supportVectorSource()).thenReturn(true);
+    when(mockSource.asVectorSource()).thenReturn(vector);
+
+    ValueTable mockTable = mock(ValueTable.class);
+    when(mockTable.getVariableValueSource("A")).thenReturn(mockSource);
+    Timestamps tableTimestamps = mock(Timestamps.class);
+    when(tableTimestamps.getLastUpdate()).thenReturn(DateType.get().valueOf(new MagmaDate(new Date())));
+    when(mockTable.getTimestamps()).thenReturn(tableTimestamps);
+
+    Variable variable = Variable.Builder.newVariable("B", IntegerType.get(), "Participant")
+        .extend(JavascriptVariableBuilder.class).setScript("$('A').plus(1)").build();
+    JavascriptVariableValueSource source = new JavascriptVariableValueSource(variable, mockTable);
+    source.initialise();
+
+    MagmaJsExtension extension = MagmaEngine.get().getExtension(MagmaJsExtension.class);
+    extension.setVectorParallelism(4);
+    extension.setVectorChunkSize(100);
+
+    SortedSet<VariableEntity> entities = new TreeSet<>();
+    for(int i = 0; i < 1000; i++) {
+      entities.add(new VariableEntityBean("Participant", String.format("%04d", i)));
+    }
+    List<Value> values = Lists.newArrayList(source.getValues(entities));
+    assertThat(values).hasSize(1000);
+    for(int i = 0; i < values.size(); i++) {
+      assertThat(values.get(i)).isEqualTo(IntegerType.get().valueOf(i + 1));
+    }
+  }
+
 }
@@ -0,0 +1,61 @@
+package org.obiba.magma.js;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ScriptableObject;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ScriptMapTablesTest {
+
+  @Test
+  public void test_literal_is_converted_once() {
+    ScriptMapTables tables = ScriptMapTables.of("$('A').map({'YES':1, 'NO':0}, 99)", "test");
+    Map<Object, Object> lookupMap = tables.getLookupMap(evaluate("({'YES':1, 'NO':0})"));
+    assertThat(lookupMap).isNotNull();
+    assertThat(lookupMap.get("YES")).isEqualTo(1.0);
+    assertThat(tables.getLookupMap(evaluate("({'YES':1, 'NO':0})"))).isSameAs(lookupMap);
+  }
+
+  @Test
+  public void test_literals_of_same_size_are_told_apart() {
+    ScriptMapTables tables = ScriptMapTables
+        .of("$('A').map({'YES':1, 'NO':0}).plus($('B').map({'YES':'y', 'MAYBE':'m'}))", "test");
+    assertThat(tables.getLookupMap(evaluate("({'YES':1, 'NO':0})")).get("NO")).isEqualTo(0.0);
+    assertThat(tables.getLookupMap(evaluate("({'YES':'y', 'MAYBE':'m'})")).get("MAYBE")).isEqualTo("m");
+  }
+
+  @Test
+  public void test_literal_with_computed_values_is_not_cached() {
+    ScriptMapTables tables = ScriptMapTables.of("$('A').map({'YES':$('B').value(), 'NO':0})", "test");
+    assertThat(tables.getLookupMap(evaluate("({'YES':1, 'NO':0})"))).isNull();
+  }
+
+  @Test
+  public void test_map_given_by_reference_disables_cache() {
+    ScriptMapTables tables = ScriptMapTables
+        .of("var m = {'YES':1, 'NO':0}; $('A').map({'YES':1, 'NO':0}).plus($('B').map(m))", "test");
+    assertThat(tables.getLookupMap(evaluate("({'YES':1, 'NO':0})"))).isNull();
+  }
+
+  @Test
+  public void test_array_map_is_ignored() {
+    ScriptMapTables tables = ScriptMapTables
+        .of("[1, 2].map(function(i) { return i; }); $('A').map({'YES':1, 'NO':0})", "test");
+    assertThat(tables.getLookupMap(evaluate("({'YES':1, 'NO':0})"))).isNotNull();
+  }
+
+  private static ScriptableObject evaluate(final String literal) {
+    return (ScriptableObject) ContextFactory.getGlobal().call(new ContextAction() {
+      @Override
+      public Object run(Context cx) {
+        return cx.evaluateString(cx.initStandardObjects(), literal, "test", 1, null);
+      }
+    });
+  }
+
+}
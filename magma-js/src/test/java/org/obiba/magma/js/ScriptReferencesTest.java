@@ -0,0 +1,35 @@
+package org.obiba.magma.js;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ScriptReferencesTest {
+
+  @Test
+  public void test_literal_references() {
+    assertThat(ScriptReferences.tableVariableNames("$('A').plus($val('B')).plus($value('C'))", "test"))
+        .containsExactly("A", "B", "C");
+  }
+
+  @Test
+  public void test_nested_references_are_found_once() {
+    assertThat(ScriptReferences.tableVariableNames("$('A').isNull().value() ? $('B') : $('A')", "test"))
+        .containsExactly("A", "B");
+  }
+
+  @Test
+  public void test_other_references_are_ignored() {
+    assertThat(ScriptReferences
+        .tableVariableNames("var n = 'A'; $(n).plus($('other:B')).plus($this('C')).plus($join('ds.t:D', 'E'))", "test"))
+        .isEmpty();
+  }
+
+  @Test
+  public void test_all_literal_references() {
+    assertThat(ScriptReferences
+        .variableReferences("var n = 'A'; $(n).plus($('other:B')).plus($this('C')).plus($join('ds.t:D', 'E', true))",
+            "test")).containsExactly("other:B", "C", "ds.t:D", "E");
+  }
+
+}
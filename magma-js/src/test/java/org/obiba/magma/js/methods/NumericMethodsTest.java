@@ -1,5 +1,7 @@
 package org.obiba.magma.js.methods;
 
+import java.math.BigDecimal;
+
 import org.junit.Test;
 import org.mozilla.javascript.Context;
 import org.obiba.magma.Value;
@@ -289,6 +291,45 @@ public class NumericMethodsTest extends AbstractJsTest {
     assertThat(result.getUnit()).isEqualTo("m/s2");
   }
 
+  @Test
+  public void test_decimal_operations_are_rounded_once() {
+    ScriptableValue result = evaluate("plus(newValue(0.2))", DecimalType.get().valueOf(0.1));
+    assertThat(result.getValue()).isEqualTo(DecimalType.get().valueOf(0.1 + 0.2));
+
+    // 0.1 + 0.2 + 0.3 is 0.6000000000000001 with doubles
+    result = evaluate("plus(newValue(0.2), newValue(0.3))", DecimalType.get().valueOf(0.1));
+    assertThat(result.getValue()).isEqualTo(DecimalType.get().valueOf(
+        new BigDecimal(0.1).add(new BigDecimal(0.2)).add(new BigDecimal(0.3)).doubleValue()));
+
+    result = evaluate("div(newValue(1.62).multiply(newValue(1.62)))", DecimalType.get().valueOf(73.4));
+    assertThat(result.getValue()).isEqualTo(DecimalType.get().valueOf(73.4 / (1.62 * 1.62)));
+  }
+
+  @Test
+  public void test_decimal_operations_with_integer_result() {
+    ScriptableValue result = evaluate("plus(newValue(0.5))", DecimalType.get().valueOf(0.5));
+    assertThat(result.getValue()).isEqualTo(IntegerType.get().valueOf(1));
+
+    result = evaluate("div(newValue(0.25))", DecimalType.get().valueOf(1.5));
+    assertThat(result.getValue()).isEqualTo(IntegerType.get().valueOf(6));
+
+    // the sum of the doubles 0.1 and 0.9 is rounded to 1.0
+    result = evaluate("plus(newValue(0.9))", DecimalType.get().valueOf(0.1));
+    assertThat(result.getValue()).isEqualTo(DecimalType.get().valueOf(1.0));
+  }
+
+  @Test
+  public void test_integer_operations_overflow() {
+    ScriptableValue result = evaluate("multiply(9007199254740992)", IntegerType.get().valueOf(9007199254740992L));
+    assertThat(result.getValue()).isEqualTo(DecimalType.get().valueOf(Math.pow(2, 106)));
+
+    result = evaluate("plus(9007199254740992, 9007199254740992)", IntegerType.get().valueOf(Long.MAX_VALUE / 2));
+    assertThat(result.getValue()).isEqualTo(IntegerType.get().valueOf(4629700416936869888L));
+
+    result = evaluate("div(4)", IntegerType.get().valueOf(8));
+    assertThat(result.getValue()).isEqualTo(IntegerType.get().valueOf(2));
+  }
+
   // gt (>)
 
   @Test
@@ -41,6 +41,14 @@ public class TextMethodsTest extends AbstractJsTest {
     assertThat(result.getValue()).isEqualTo(BooleanType.get().valueOf(true));
   }
 
+  @Test
+  public void testMatchesRegExp() {
+    ScriptableValue value = newValue(TextType.get().sequenceOf("Value,value"));
+    ScriptableValue result = TextMethods.matches(getCurrentContext(), value, new Object[] { "^V\\w+e$" }, null);
+    assertThat(result.getValue().asSequence().getValue())
+        .containsExactly(BooleanType.get().valueOf(true), BooleanType.get().valueOf(false));
+  }
+
   @Test
   public void testMatchesNull() {
     ScriptableValue value = newValue(TextType.get().nullValue());
@@ -138,6 +146,22 @@ public class TextMethodsTest extends AbstractJsTest {
     assertThat(result.getValue()).isEqualTo(TextType.get().valueOf("H2R"));
   }
 
+  @Test
+  public void testReplaceStringIsLiteral() {
+    ScriptableValue value = newValue(TextType.get().sequenceOf("a.b.c,d.e"));
+    ScriptableValue result = TextMethods.replace(getCurrentContext(), value, new Object[] { ".", "$&-" }, null);
+    assertThat(result.getValue()).isEqualTo(TextType.get().sequenceOf("a.-b.c,d.-e"));
+
+    result = TextMethods.replace(getCurrentContext(), value, new Object[] { ".", "-", "g" }, null);
+    assertThat(result.getValue()).isEqualTo(TextType.get().sequenceOf("a-b-c,d-e"));
+  }
+
+  @Test
+  public void testReplaceRegExp() {
+    ScriptableValue value = evaluate("replace(/(\\w)\\s(\\w)/, '$2$1')", TextType.get().valueOf("H2R 2E1"));
+    assertThat(value.getValue()).isEqualTo(TextType.get().valueOf("H22RE1"));
+  }
+
   @Test
   public void testStringConcatString() throws Exception {
     ScriptableValue hello = newValue(TextType.get().valueOf("Hello "));
@@ -315,6 +339,13 @@ public class TextMethodsTest extends AbstractJsTest {
     assertThat(value.getValue().asSequence()).isEqualTo(TextType.get().sequenceOf("1,2"));
   }
 
+  @Test
+  public void testMapWithIndexMappingAndSequenceInput() {
+    ScriptableValue value = evaluate("map({996:1, 'NO':null}, 'DEFAULT')", TextType.get().sequenceOf("996,NO,YES"));
+    assertThat(value.getValue().asSequence().getValue())
+        .containsExactly(TextType.get().valueOf("1"), TextType.get().nullValue(), TextType.get().valueOf("DEFAULT"));
+  }
+
   @Test
   public void testMapWithFunctionMapping() {
     ScriptableValue value = evaluate("map({'YES':function(value){return value.concat('-YES');}, 'NO':2})",
@@ -1,15 +1,26 @@
 package org.obiba.magma.js.views;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 import org.obiba.magma.Initialisable;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.js.AbstractJsTest;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.views.SelectClause;
 import org.obiba.magma.views.WhereClause;
 
+import com.google.common.collect.ImmutableSet;
+
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
@@ -120,6 +131,29 @@ public class JavascriptClauseTest extends AbstractJsTest {
     assertWhere("now()", false);
   }
 
+  @Test
+  public void test_where_binds_references_once() {
+    StaticDatasource datasource = new StaticDatasource("counting");
+    final AtomicInteger lookups = new AtomicInteger();
+    StaticValueTable table = new StaticValueTable(datasource, "t", ImmutableSet.of("1", "2")) {
+      @Override
+      public VariableValueSource getVariableValueSource(String name) throws NoSuchVariableException {
+        lookups.incrementAndGet();
+        return super.getVariableValueSource(name);
+      }
+    };
+    table.addVariables(IntegerType.get(), "A");
+    table.addValues("1", "A", 1).addValues("2", "A", 2);
+    datasource.addValueTable(table);
+    MagmaEngine.get().addDatasource(datasource);
+
+    JavascriptClause clause = new JavascriptClause("$('A').gt(1)");
+    clause.initialise();
+    assertThat(clause.where(table.getValueSet(new VariableEntityBean("Participant", "1")))).isFalse();
+    assertThat(clause.where(table.getValueSet(new VariableEntityBean("Participant", "2")))).isTrue();
+    assertThat(lookups.get()).isEqualTo(1);
+  }
+
   private void assertSelect(String script, boolean expected) {
     JavascriptClause clause = new JavascriptClause(script);
     clause.initialise();
@@ -1,15 +1,18 @@
 package org.obiba.magma.js.views;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.obiba.magma.MagmaDate;
+import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.NoSuchVariableException;
 import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
@@ -19,15 +22,27 @@ import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
 import org.obiba.magma.js.AbstractJsTest;
+import org.obiba.magma.js.MagmaJsExtension;
+import org.obiba.magma.js.validation.CircularVariableDependencyException;
 import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.DateType;
 import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
+import org.obiba.magma.views.View;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -295,6 +310,64 @@ public class VariablesClauseTest extends AbstractJsTest {
 
   }
 
+  @Test
+  public void test_getValues_evaluates_referenced_variables_once() {
+    assertReferencedVariablesEvaluatedOnce();
+  }
+
+  @Test
+  public void test_getValues_evaluates_stages_concurrently() {
+    MagmaEngine.get().getExtension(MagmaJsExtension.class).setStageParallelism(2);
+    assertReferencedVariablesEvaluatedOnce();
+  }
+
+  private void assertReferencedVariablesEvaluatedOnce() {
+    StaticValueTable table = new StaticValueTable(new StaticDatasource("ds"), "t", ImmutableSet.of("1", "2"));
+    table.addVariables(IntegerType.get(), "A");
+    table.addValues("1", "A", 1).addValues("2", "A", 2);
+    ValueTable from = spy(table);
+    VariableValueSource source = spy(table.getVariableValueSource("A"));
+    doReturn(source).when(from).getVariableValueSource("A");
+
+    Variable base = buildDerived("BASE", "$('A').plus(1)");
+    Variable plus = buildDerived("PLUS", "$this('BASE').plus(3)");
+    Variable twice = buildDerived("TWICE", "$this('BASE').multiply(2)");
+    View view = buildView(from, base, plus, twice);
+
+    List<ValueSet> valueSets = ImmutableList.of(view.getValueSet(new VariableEntityBean("Participant", "1")),
+        view.getValueSet(new VariableEntityBean("Participant", "2")));
+    List<List<Value>> values = view.getValues(ImmutableList.of(plus, twice, base), valueSets);
+
+    assertThat(values).hasSize(3);
+    assertThat(values.get(0)).containsExactly(IntegerType.get().valueOf(5), IntegerType.get().valueOf(6));
+    assertThat(values.get(1)).containsExactly(IntegerType.get().valueOf(4), IntegerType.get().valueOf(6));
+    assertThat(values.get(2)).containsExactly(IntegerType.get().valueOf(2), IntegerType.get().valueOf(3));
+    // once per entity
+    verify(source, times(2)).getValue(any(ValueSet.class));
+  }
+
+  @Test(expected = CircularVariableDependencyException.class)
+  public void test_getValues_with_circular_dependency() {
+    StaticValueTable table = new StaticValueTable(new StaticDatasource("ds"), "t", ImmutableSet.of("1"));
+    Variable x = buildDerived("X", "$this('Y')");
+    Variable y = buildDerived("Y", "$this('Z').plus(1)");
+    Variable z = buildDerived("Z", "$this('X')");
+    View view = buildView(table, x, y, z);
+    view.getValues(ImmutableList.of(x), ImmutableList.of(view.getValueSet(new VariableEntityBean("Participant", "1"))));
+  }
+
+  private static Variable buildDerived(String name, String script) {
+    return Variable.Builder.newVariable(name, IntegerType.get(), "Participant").addAttribute("script", script).build();
+  }
+
+  private static View buildView(ValueTable from, Variable... derived) {
+    VariablesClause clause = new VariablesClause();
+    clause.setVariables(Arrays.asList(derived));
+    View view = View.Builder.newView("view", from).list(clause).build();
+    Initialisables.initialise(view);
+    return view;
+  }
+
   private static Date constructDate(int year) {
     Calendar calendar = Calendar.getInstance();
     calendar.set(Calendar.HOUR, 7);
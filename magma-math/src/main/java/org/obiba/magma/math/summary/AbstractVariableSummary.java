@@ -11,8 +11,7 @@ import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableSortedSet;
 
 public abstract class AbstractVariableSummary implements VariableSummary {
 
@@ -36,17 +35,16 @@ public abstract class AbstractVariableSummary implements VariableSummary {
   }
 
   protected SortedSet<VariableEntity> getFilteredVariableEntities(@NotNull ValueTable table) {
-    if(offset == null && limit == null) return Sets.newTreeSet(table.getVariableEntities());
+    // a single sorted copy, array based, of which offset and limit select a range
+    ImmutableSortedSet<VariableEntity> entities = ImmutableSortedSet.copyOf(table.getVariableEntities());
+    if(offset == null && limit == null) return entities;
 
-    Iterable<VariableEntity> entities = Sets.newTreeSet(table.getVariableEntities());
     // Apply offset then limit (in that order)
-    if(offset != null) {
-      entities = Iterables.skip(entities, offset);
-    }
-    if(limit != null && limit >= 0) {
-      entities = Iterables.limit(entities, limit);
-    }
-    return Sets.newTreeSet(entities);
+    Preconditions.checkArgument(offset == null || offset >= 0, "Offset cannot be negative");
+    int from = offset == null ? 0 : Math.min(offset, entities.size());
+    int to = limit == null || limit < 0 ? entities.size() : (int) Math.min((long) from + limit, entities.size());
+    return from == to ? ImmutableSortedSet.<VariableEntity>of() : entities.subSet(entities.asList().get(from), true,
+        entities.asList().get(to - 1), true);
   }
 
   @NotNull
@@ -91,6 +89,11 @@ public abstract class AbstractVariableSummary implements VariableSummary {
     TVariableSummaryBuilder addTable(@NotNull ValueTable table, @NotNull ValueSource variableValueSource);
 
     TVariableSummaryBuilder addValue(@NotNull Value value);
+
+    /**
+     * Whether the summary is computed on a range of the entities of the table (see offset and limit).
+     */
+    boolean isFiltered();
   }
 
 }
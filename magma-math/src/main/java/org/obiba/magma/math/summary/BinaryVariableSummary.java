@@ -202,6 +202,11 @@ public class BinaryVariableSummary extends AbstractVariableSummary implements Se
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     @NotNull
     public BinaryVariableSummary build() {
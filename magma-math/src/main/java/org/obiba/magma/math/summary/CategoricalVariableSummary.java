@@ -300,6 +300,11 @@ public class CategoricalVariableSummary extends AbstractVariableSummary implemen
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     @NotNull
     public CategoricalVariableSummary build() {
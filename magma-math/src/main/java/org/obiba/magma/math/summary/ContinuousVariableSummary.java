@@ -249,6 +249,11 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     public Builder addValue(@NotNull Value value) {
       if(addedTable) {
@@ -216,6 +216,11 @@ public class DefaultVariableSummary extends AbstractVariableSummary implements S
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     @NotNull
     public DefaultVariableSummary build() {
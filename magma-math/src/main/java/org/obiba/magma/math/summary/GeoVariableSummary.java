@@ -251,6 +251,11 @@ public class GeoVariableSummary extends AbstractVariableSummary implements Seria
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     @NotNull
     public GeoVariableSummary build() {
@@ -221,6 +221,11 @@ public class TextVariableSummary extends AbstractVariableSummary implements Seri
       return this;
     }
 
+    @Override
+    public boolean isFiltered() {
+      return summary.isFiltered();
+    }
+
     @Override
     @NotNull
     public TextVariableSummary build() {
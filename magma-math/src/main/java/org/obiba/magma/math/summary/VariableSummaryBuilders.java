@@ -0,0 +1,141 @@
+package org.obiba.magma.math.summary;
+
+import java.util.List;
+import java.util.SortedSet;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueBlock;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSource;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableScanner;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.VectorSource;
+import org.obiba.magma.math.summary.AbstractVariableSummary.VariableSummaryBuilder;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Utility for computing the summaries of several variables of the same table with a single read of their values.
+ */
+public final class VariableSummaryBuilders {
+
+  private VariableSummaryBuilders() {}
+
+  /**
+   * Add the values of the whole table to each of the builders. When the table is a {@link ValueTableScanner}, the
+   * values of all the builders' variables are read by a single scan and handed over to the builders one value set at a
+   * time. Otherwise they are read at once with {@link ValueTable#getValueBlock(Iterable, SortedSet)} instead of one
+   * vector read per variable. Builders computing their summary on a range of the entities read their own values.
+   *
+   * @param table the table the builders' variables belong to
+   * @param builders
+   */
+  public static void addTable(@NotNull ValueTable table,
+      @NotNull Iterable<? extends VariableSummaryBuilder<?, ?>> builders) {
+    //noinspection ConstantConditions
+    Preconditions.checkArgument(table != null, "table cannot be null");
+    //noinspection ConstantConditions
+    Preconditions.checkArgument(builders != null, "builders cannot be null");
+
+    List<VariableSummaryBuilder<?, ?>> builderList = ImmutableList.copyOf(builders);
+    if(table instanceof ValueTableScanner) {
+      scan((ValueTableScanner) table, table, builderList);
+      return;
+    }
+
+    List<Variable> variables = Lists.newArrayListWithCapacity(builderList.size());
+    for(VariableSummaryBuilder<?, ?> builder : builderList) {
+      variables.add(builder.getVariable());
+    }
+
+    ValueBlock block = table.getValueBlock(variables, Sets.newTreeSet(table.getVariableEntities()));
+    for(VariableSummaryBuilder<?, ?> builder : builderList) {
+      VariableValueSource source = table.getVariableValueSource(builder.getVariable().getName());
+      builder.addTable(table, new ValueBlockValueSource(table, block, source));
+    }
+  }
+
+  private static void scan(ValueTableScanner scanner, ValueTable table, List<VariableSummaryBuilder<?, ?>> builders) {
+    final List<VariableSummaryBuilder<?, ?>> scanned = Lists.newArrayListWithCapacity(builders.size());
+    List<Variable> variables = Lists.newArrayListWithCapacity(builders.size());
+    for(VariableSummaryBuilder<?, ?> builder : builders) {
+      if(builder.isFiltered()) {
+        VariableValueSource source = table.getVariableValueSource(builder.getVariable().getName());
+        builder.addTable(table, new ValueBlockValueSource(table, null, source));
+      } else {
+        scanned.add(builder);
+        variables.add(builder.getVariable());
+      }
+    }
+    if(scanned.isEmpty()) return;
+
+    scanner.scan(variables, new ValueTableScanner.ValuesHandler() {
+      @Override
+      public void handle(@NotNull VariableEntity entity, @NotNull List<Value> values) {
+        for(int i = 0; i < values.size(); i++) {
+          scanned.get(i).addValue(values.get(i));
+        }
+      }
+    });
+  }
+
+  /**
+   * Serves the values of a variable from a {@link ValueBlock} when the requested entities are the ones of the block,
+   * otherwise (i.e. summary with offset or limit) reads a single column block of the requested entities.
+   */
+  private static class ValueBlockValueSource implements ValueSource, VectorSource {
+
+    private final ValueTable table;
+
+    @Nullable
+    private final ValueBlock block;
+
+    private final VariableValueSource source;
+
+    private ValueBlockValueSource(ValueTable table, @Nullable ValueBlock block, VariableValueSource source) {
+      this.table = table;
+      this.block = block;
+      this.source = source;
+    }
+
+    @NotNull
+    @Override
+    public ValueType getValueType() {
+      return source.getValueType();
+    }
+
+    @NotNull
+    @Override
+    public Value getValue(ValueSet valueSet) {
+      return source.getValue(valueSet);
+    }
+
+    @Override
+    public boolean supportVectorSource() {
+      return true;
+    }
+
+    @NotNull
+    @Override
+    public VectorSource asVectorSource() {
+      return this;
+    }
+
+    @Override
+    public Iterable<Value> getValues(SortedSet<VariableEntity> entities) {
+      Variable variable = source.getVariable();
+      if(block != null && block.getVariableEntities().equals(entities)) return block.getValues(variable);
+      return table.getValueBlock(ImmutableList.of(variable), entities).getValues(variable);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package org.obiba.magma.math.summary;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import org.junit.Test;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTableScanner;
+import org.obiba.magma.Variable;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class VariableSummaryBuildersTest extends AbstractMagmaTest {
+
+  @Test
+  public void test_summaries_from_one_block() {
+    StaticDatasource ds = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(ds, "table", ImmutableList.of("1", "2", "3"));
+    Variable smoker = Variable.Builder.newVariable("smoker", TextType.get(), "Participant").addCategories("YES", "NO")
+        .build();
+    Variable sex = Variable.Builder.newVariable("sex", TextType.get(), "Participant").addCategories("M", "F").build();
+    table.addValues("1", smoker, "YES", sex, "F");
+    table.addValues("2", smoker, "NO", sex, "F");
+    table.addValues("3", smoker, "YES", sex, "M");
+
+    CategoricalVariableSummary.Builder smokerBuilder = new CategoricalVariableSummary.Builder(smoker);
+    CategoricalVariableSummary.Builder sexBuilder = new CategoricalVariableSummary.Builder(sex);
+    VariableSummaryBuilders.addTable(table, ImmutableList.of(smokerBuilder, sexBuilder));
+
+    CategoricalVariableSummary smokerSummary = smokerBuilder.build();
+    assertThat(smokerSummary.getMode()).isEqualTo("YES");
+    assertThat(smokerSummary.getN()).isEqualTo(3);
+    assertThat(sexBuilder.build().getMode()).isEqualTo("F");
+  }
+
+  @Test
+  public void test_filtered_summary_reads_its_own_entities() {
+    StaticDatasource ds = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(ds, "table", ImmutableList.of("1", "2", "3"));
+    Variable smoker = Variable.Builder.newVariable("smoker", TextType.get(), "Participant").addCategories("YES", "NO")
+        .build();
+    table.addValues("1", smoker, "NO");
+    table.addValues("2", smoker, "YES");
+    table.addValues("3", smoker, "YES");
+
+    CategoricalVariableSummary.Builder builder = new CategoricalVariableSummary.Builder(smoker).filter(0, 1);
+    VariableSummaryBuilders.addTable(table, ImmutableList.of(builder));
+
+    CategoricalVariableSummary summary = builder.build();
+    assertThat(summary.getMode()).isEqualTo("NO");
+    assertThat(summary.getN()).isEqualTo(1);
+  }
+
+  @Test
+  public void test_summaries_from_one_scan() {
+    StaticDatasource ds = new StaticDatasource("ds");
+    ScannedTable table = new ScannedTable(ds, "table", ImmutableList.of("1", "2", "3"));
+    Variable smoker = Variable.Builder.newVariable("smoker", TextType.get(), "Participant").addCategories("YES", "NO")
+        .build();
+    Variable sex = Variable.Builder.newVariable("sex", TextType.get(), "Participant").addCategories("M", "F").build();
+    table.addValues("1", smoker, "NO", sex, "F");
+    table.addValues("2", smoker, "YES", sex, "F");
+    table.addValues("3", smoker, "YES", sex, "M");
+
+    CategoricalVariableSummary.Builder smokerBuilder = new CategoricalVariableSummary.Builder(smoker);
+    CategoricalVariableSummary.Builder sexBuilder = new CategoricalVariableSummary.Builder(sex);
+    CategoricalVariableSummary.Builder filteredBuilder = new CategoricalVariableSummary.Builder(smoker).filter(0, 1);
+    VariableSummaryBuilders.addTable(table, ImmutableList.of(smokerBuilder, filteredBuilder, sexBuilder));
+
+    assertThat(table.scans).isEqualTo(1);
+    CategoricalVariableSummary smokerSummary = smokerBuilder.build();
+    assertThat(smokerSummary.getMode()).isEqualTo("YES");
+    assertThat(smokerSummary.getN()).isEqualTo(3);
+    assertThat(sexBuilder.build().getMode()).isEqualTo("F");
+    CategoricalVariableSummary filteredSummary = filteredBuilder.build();
+    assertThat(filteredSummary.getMode()).isEqualTo("NO");
+    assertThat(filteredSummary.getN()).isEqualTo(1);
+  }
+
+  /**
+   * A table which values are scanned one value set at a time, counting its scans.
+   */
+  private static class ScannedTable extends StaticValueTable implements ValueTableScanner {
+
+    private int scans;
+
+    private ScannedTable(StaticDatasource datasource, String name, Collection<String> entities) {
+      super(datasource, name, entities);
+    }
+
+    @Override
+    public void scan(@NotNull Iterable<Variable> variables, @NotNull ValuesHandler handler) {
+      scans++;
+      for(ValueSet valueSet : getValueSets()) {
+        List<Value> values = Lists.newArrayList();
+        for(Variable variable : variables) {
+          values.add(getValue(variable, valueSet));
+        }
+        handler.handle(valueSet.getVariableEntity(), values);
+      }
+    }
+  }
+
+}
@@ -24,6 +24,23 @@ public class DefaultXStreamFactory implements XStreamFactory {
 
   private final transient List<Converter> converters = Lists.newArrayList();
 
+  @Nullable
+  private transient volatile XStream sharedXStream;
+
+  @Override
+  public XStream getXStream() {
+    XStream shared = sharedXStream;
+    if(shared == null) {
+      synchronized(this) {
+        if(sharedXStream == null) {
+          sharedXStream = createXStream();
+        }
+        shared = sharedXStream;
+      }
+    }
+    return shared;
+  }
+
   @Override
   public XStream createXStream() {
     return createXStream(null);
@@ -72,8 +89,10 @@ public class DefaultXStreamFactory implements XStreamFactory {
   }
 
   @Override
-  public void registerConverter(Converter converter) {
+  public synchronized void registerConverter(Converter converter) {
     converters.add(converter);
+    // shared instance will be created again with this converter
+    sharedXStream = null;
   }
 
 }
@@ -6,6 +6,14 @@ import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
 
 public interface XStreamFactory {
 
+  /**
+   * Get a shared {@code XStream} instance, created on first call. Once configured, an {@code XStream} instance is
+   * thread-safe and can be used concurrently for marshalling and unmarshalling.
+   *
+   * @return
+   */
+  XStream getXStream();
+
   XStream createXStream();
 
   XStream createXStream(ReflectionProvider reflectionProvider);
@@ -0,0 +1,93 @@
+package org.obiba.magma.xstream;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Reads the values of a marshalled {@link XStreamValueSet} with a streaming parser, without going through the XStream
+ * reflection based unmarshalling and its intermediate list and map of {@link XStreamValueSetValue}.
+ * <p/>
+ * The values are read as {@link org.obiba.magma.xstream.converter.ValueConverter} and
+ * {@link org.obiba.magma.xstream.converter.ValueSequenceConverter} would.
+ */
+public final class XStreamValueSetReader {
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+  }
+
+  private XStreamValueSetReader() {}
+
+  /**
+   * Read the values of a value set.
+   *
+   * @param reader the XML representation of a {@link XStreamValueSet}
+   * @return the values by variable name
+   */
+  public static Map<String, Value> read(Reader reader) {
+    try {
+      XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(reader);
+      try {
+        return readValues(xml);
+      } finally {
+        xml.close();
+      }
+    } catch(XMLStreamException e) {
+      throw new MagmaRuntimeException("Failed reading value set", e);
+    }
+  }
+
+  private static Map<String, Value> readValues(XMLStreamReader xml) throws XMLStreamException {
+    ImmutableMap.Builder<String, Value> values = ImmutableMap.builder();
+    String variable = null;
+    while(xml.hasNext()) {
+      if(xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+      if("variableValue".equals(xml.getLocalName())) {
+        variable = xml.getAttributeValue(null, "variable");
+      } else if("value".equals(xml.getLocalName()) && variable != null) {
+        values.put(variable, readValue(xml));
+        variable = null;
+      }
+    }
+    return values.build();
+  }
+
+  /**
+   * Read the value of the current element, positioned on its end when done.
+   *
+   * @param xml
+   * @return
+   * @throws XMLStreamException
+   */
+  private static Value readValue(XMLStreamReader xml) throws XMLStreamException {
+    ValueType valueType = ValueType.Factory.forName(xml.getAttributeValue(null, "valueType"));
+    if(!"sequence".equals(xml.getAttributeValue(null, "class"))) {
+      return valueType.valueOf(Strings.emptyToNull(xml.getElementText()));
+    }
+
+    String size = xml.getAttributeValue(null, "size");
+    Value[] values = null;
+    while(xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if(values == null) values = new Value[Integer.valueOf(size)];
+      int order = Integer.valueOf(xml.getAttributeValue(null, "order"));
+      values[order] = readValue(xml);
+    }
+    return values == null ? valueType.nullSequence() : valueType.sequenceOf(Arrays.asList(values));
+  }
+
+}
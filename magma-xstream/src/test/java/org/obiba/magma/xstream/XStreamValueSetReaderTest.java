@@ -0,0 +1,53 @@
+package org.obiba.magma.xstream;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import org.junit.Test;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class XStreamValueSetReaderTest extends AbstractMagmaXStreamTest {
+
+  @Test
+  public void test_read_marshalled_values() {
+    Variable text = Variable.Builder.newVariable("text", TextType.get(), "TestType").build();
+    Variable sequence = Variable.Builder.newVariable("sequence", IntegerType.get(), "TestType").repeatable().build();
+    Variable nullValue = Variable.Builder.newVariable("nullValue", TextType.get(), "TestType").build();
+    Variable nullSequence = Variable.Builder.newVariable("nullSequence", TextType.get(), "TestType").repeatable()
+        .build();
+
+    XStreamValueSet valueSet = new XStreamValueSet("testTable", new VariableEntityBean("TestType", "id"));
+    valueSet.setValue(text, TextType.get().valueOf("a < b & \"c\"\nd"));
+    valueSet.setValue(sequence, IntegerType.get()
+        .sequenceOf(ImmutableList.of(IntegerType.get().valueOf(1), IntegerType.get().nullValue(),
+            IntegerType.get().valueOf(3))));
+    valueSet.setValue(nullValue, TextType.get().nullValue());
+    valueSet.setValue(nullSequence, TextType.get().nullSequence());
+
+    String xml = getDefaultXStream().toXML(valueSet);
+    Map<String, Value> values = XStreamValueSetReader.read(new StringReader(xml));
+
+    assertThat(values).hasSize(4);
+    for(Variable variable : ImmutableList.of(text, sequence, nullValue, nullSequence)) {
+      assertThat(values.get(variable.getName())).isEqualTo(valueSet.getValue(variable));
+    }
+    assertThat(values.get("sequence").isSequence()).isTrue();
+    assertThat(values.get("nullSequence").isSequence()).isTrue();
+    assertThat(values.get("nullSequence").isNull()).isTrue();
+  }
+
+  @Test
+  public void test_shared_instance() {
+    DefaultXStreamFactory factory = new DefaultXStreamFactory();
+    assertThat(factory.getXStream()).isSameAs(factory.getXStream());
+  }
+
+}